@@ -1,14 +1,22 @@
 package fiji.plugin.trackmate;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
+import fiji.plugin.trackmate.features.FeatureColumn;
+import fiji.plugin.trackmate.features.LazyFeatureComputer;
+
 /**
  * This class represents the part of the {@link Model} that is in charge of
  * dealing with spot features and track features.
@@ -16,7 +24,7 @@ import org.jgrapht.graph.DefaultWeightedEdge;
  * @author Jean-Yves Tinevez, 2011, 2012
  *
  */
-public class FeatureModel
+public class FeatureModel implements ModelChangeListener
 {
 
 	/*
@@ -67,7 +75,28 @@ public class FeatureModel
 
 	private final Model model;
 
+	/**
+	 * Computes deferred features on demand. <code>null</code> if all features
+	 * are computed eagerly.
+	 */
+	private LazyFeatureComputer lazyFeatureComputer;
+
+	/*
+	 * Cached feature columns, for all the objects and for visible objects
+	 * only.
+	 */
+
+	private final ColumnCache spotColumns = new ColumnCache();
+
+	private final ColumnCache visibleSpotColumns = new ColumnCache();
+
+	private final ColumnCache edgeColumns = new ColumnCache();
+
+	private final ColumnCache visibleEdgeColumns = new ColumnCache();
+
+	private final ColumnCache trackColumns = new ColumnCache();
 
+	private final ColumnCache visibleTrackColumns = new ColumnCache();
 
 	/*
 	 * CONSTRUCTOR
@@ -94,7 +123,7 @@ public class FeatureModel
 
 	/**
 	 * Returns a new double array with all the values for the specified track
-	 * feature.
+	 * feature. Tracks for which the feature is not set are skipped.
 	 *
 	 * @param trackFeature
 	 *            the track feature to parse. Throw an
@@ -106,23 +135,12 @@ public class FeatureModel
 	 */
 	public double[] getTrackFeatureValues( final String trackFeature, final boolean visibleOnly )
 	{
-		if ( !trackFeatures.contains( trackFeature ) ) { throw new IllegalArgumentException( "Unknown track feature: " + trackFeature ); }
-		final Set< Integer > keys = model.getTrackModel().trackIDs( visibleOnly );
-		final double[] val = new double[ keys.size() ];
-		int index = 0;
-		for ( final Integer trackID : keys )
-		{
-			final Double tf = getTrackFeature( trackID, trackFeature );
-			if ( null == tf )
-				continue;
-			val[ index++ ] = tf.doubleValue();
-		}
-		return val;
+		return getTrackFeatureColumn( trackFeature, visibleOnly ).getValues().clone();
 	}
 
 	/**
 	 * Returns a new double array with all the values for the specified edge
-	 * feature.
+	 * feature. Edges for which the feature is not set are skipped.
 	 *
 	 * @param edgeFeature
 	 *            the track feature to parse. Throw an
@@ -133,28 +151,243 @@ public class FeatureModel
 	 * @return a new <code>double[]</code>, one element per edge.
 	 */
 	public double[] getEdgeFeatureValues( final String edgeFeature, final boolean visibleOnly )
+	{
+		return getEdgeFeatureColumn( edgeFeature, visibleOnly ).getValues().clone();
+	}
+
+	/*
+	 * FEATURE COLUMNS
+	 */
+
+	/**
+	 * Returns the column of values of the specified spot feature. Spots for
+	 * which the feature is not set or is {@link Double#NaN} are skipped.
+	 * <p>
+	 * The column is cached until spots are added, removed, modified or
+	 * filtered. Code that sets spot features directly on {@link Spot}s outside
+	 * of a model update must call {@link #invalidateSpotFeatureColumns()}.
+	 *
+	 * @param spotFeature
+	 *            the spot feature. Throw an {@link IllegalArgumentException}
+	 *            if the feature is unknown.
+	 * @param visibleOnly
+	 *            if <code>true</code>, will only include visible spots, all
+	 *            the spots otherwise.
+	 * @return the feature column.
+	 */
+	public FeatureColumn getSpotFeatureColumn( final String spotFeature, final boolean visibleOnly )
+	{
+		if ( !spotFeatures.contains( spotFeature ) ) { throw new IllegalArgumentException( "Unknown spot feature: " + spotFeature ); }
+		ensureSpotFeatures( Collections.singleton( spotFeature ) );
+		final ColumnCache cache = visibleOnly ? visibleSpotColumns : spotColumns;
+		final long version = cache.version();
+		FeatureColumn column = cache.get( spotFeature, version );
+		if ( null == column )
+		{
+			column = new FeatureColumn( model.getSpots().collectValues( spotFeature, visibleOnly ) );
+			cache.put( spotFeature, version, column );
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the columns of values of the specified spot features. Columns
+	 * that are not cached are computed in parallel.
+	 *
+	 * @param features
+	 *            the spot features. Throw an {@link IllegalArgumentException}
+	 *            if one of them is unknown.
+	 * @param visibleOnly
+	 *            if <code>true</code>, will only include visible spots, all
+	 *            the spots otherwise.
+	 * @return a new map from feature to column.
+	 * @see #getSpotFeatureColumn(String, boolean)
+	 */
+	public Map< String, FeatureColumn > getSpotFeatureColumns( final Collection< String > features, final boolean visibleOnly )
+	{
+		for ( final String feature : features )
+			if ( !spotFeatures.contains( feature ) ) { throw new IllegalArgumentException( "Unknown spot feature: " + feature ); }
+		ensureSpotFeatures( features );
+
+		final ColumnCache cache = visibleOnly ? visibleSpotColumns : spotColumns;
+		final long version = cache.version();
+		final Map< String, FeatureColumn > output = new HashMap< >( features.size() );
+		final List< String > missing = new ArrayList< >();
+		for ( final String feature : features )
+		{
+			final FeatureColumn column = cache.get( feature, version );
+			if ( null == column )
+				missing.add( feature );
+			else
+				output.put( feature, column );
+		}
+
+		if ( !missing.isEmpty() )
+		{
+			final Map< String, double[] > values = model.getSpots().collectValues( missing, visibleOnly );
+			for ( final String feature : missing )
+			{
+				final FeatureColumn column = new FeatureColumn( values.get( feature ) );
+				cache.put( feature, version, column );
+				output.put( feature, column );
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Returns the column of values of the specified edge feature. Edges for
+	 * which the feature is not set are skipped.
+	 * <p>
+	 * The column is cached until tracks are modified or filtered, or edge
+	 * features are computed. Code that stores edge features outside of a model
+	 * update must call {@link #invalidateTrackFeatureColumns()} once done.
+	 *
+	 * @param edgeFeature
+	 *            the edge feature. Throw an {@link IllegalArgumentException}
+	 *            if the feature is unknown.
+	 * @param visibleOnly
+	 *            if <code>true</code>, will only include edges in visible
+	 *            tracks, in all the tracks otherwise.
+	 * @return the feature column.
+	 */
+	public FeatureColumn getEdgeFeatureColumn( final String edgeFeature, final boolean visibleOnly )
 	{
 		if ( !edgeFeatures.contains( edgeFeature ) ) { throw new IllegalArgumentException( "Unknown edge feature: " + edgeFeature ); }
-		final Set< Integer > keys = model.getTrackModel().trackIDs( visibleOnly );
-		int nvals = 0;
-		for ( final Integer trackID : keys )
+		ensureEdgeFeature( edgeFeature );
+		final ColumnCache cache = visibleOnly ? visibleEdgeColumns : edgeColumns;
+		final long version = cache.version();
+		FeatureColumn column = cache.get( edgeFeature, version );
+		if ( null == column )
 		{
-			nvals += model.getTrackModel().trackEdges( trackID ).size();
+			final TrackModel tm = model.getTrackModel();
+			final Set< Integer > keys = tm.trackIDs( visibleOnly );
+			int nvals = 0;
+			for ( final Integer trackID : keys )
+				nvals += tm.trackEdges( trackID ).size();
+
+			final double[] val = new double[ nvals ];
+			int index = 0;
+			for ( final Integer trackID : keys )
+			{
+				for ( final DefaultWeightedEdge edge : tm.trackEdges( trackID ) )
+				{
+					final Double ef = getEdgeFeature( edge, edgeFeature );
+					if ( null == ef )
+						continue;
+					val[ index++ ] = ef.doubleValue();
+				}
+			}
+			column = new FeatureColumn( index == nvals ? val : Arrays.copyOf( val, index ) );
+			cache.put( edgeFeature, version, column );
 		}
+		return column;
+	}
 
-		final double[] val = new double[ nvals ];
-		int index = 0;
-		for ( final Integer trackID : keys )
+	/**
+	 * Returns the column of values of the specified track feature. Tracks for
+	 * which the feature is not set are skipped.
+	 * <p>
+	 * The column is cached until tracks are modified or filtered, or track
+	 * features are computed. Code that stores track features outside of a
+	 * model update must call {@link #invalidateTrackFeatureColumns()} once
+	 * done.
+	 *
+	 * @param trackFeature
+	 *            the track feature. Throw an {@link IllegalArgumentException}
+	 *            if the feature is unknown.
+	 * @param visibleOnly
+	 *            if <code>true</code>, will only include visible tracks, all
+	 *            the tracks otherwise.
+	 * @return the feature column.
+	 */
+	public FeatureColumn getTrackFeatureColumn( final String trackFeature, final boolean visibleOnly )
+	{
+		if ( !trackFeatures.contains( trackFeature ) ) { throw new IllegalArgumentException( "Unknown track feature: " + trackFeature ); }
+		ensureTrackFeature( trackFeature );
+		final ColumnCache cache = visibleOnly ? visibleTrackColumns : trackColumns;
+		final long version = cache.version();
+		FeatureColumn column = cache.get( trackFeature, version );
+		if ( null == column )
 		{
-			for ( final DefaultWeightedEdge edge : model.getTrackModel().trackEdges( trackID ) )
+			final Set< Integer > keys = model.getTrackModel().trackIDs( visibleOnly );
+			final double[] val = new double[ keys.size() ];
+			int index = 0;
+			for ( final Integer trackID : keys )
 			{
-				final Double ef = getEdgeFeature( edge, edgeFeature );
-				if ( null == ef )
+				final Double tf = getTrackFeature( trackID, trackFeature );
+				if ( null == tf )
 					continue;
-				val[ index++ ] = ef.doubleValue();
+				val[ index++ ] = tf.doubleValue();
 			}
+			column = new FeatureColumn( index == val.length ? val : Arrays.copyOf( val, index ) );
+			cache.put( trackFeature, version, column );
+		}
+		return column;
+	}
+
+	/**
+	 * Discards the cached spot feature columns. Must be called after spot
+	 * feature values were changed without a model update, for instance after
+	 * spot features were computed.
+	 */
+	public void invalidateSpotFeatureColumns()
+	{
+		spotColumns.invalidate();
+		visibleSpotColumns.invalidate();
+	}
+
+	/**
+	 * Discards the cached edge and track feature columns. Must be called after
+	 * edge or track feature values were stored without a model update, for
+	 * instance after edge or track features were computed.
+	 */
+	public void invalidateTrackFeatureColumns()
+	{
+		edgeColumns.invalidate();
+		visibleEdgeColumns.invalidate();
+		trackColumns.invalidate();
+		visibleTrackColumns.invalidate();
+	}
+
+	/**
+	 * Discards the cached columns of visible spots.
+	 */
+	void spotVisibilityChanged()
+	{
+		visibleSpotColumns.invalidate();
+	}
+
+	/**
+	 * Discards the cached columns that depend on the content of the model.
+	 */
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.MODEL_MODIFIED:
+			invalidateSpotFeatureColumns();
+			invalidateTrackFeatureColumns();
+			break;
+
+		case ModelChangeEvent.SPOTS_FILTERED:
+			spotVisibilityChanged();
+			break;
+
+		case ModelChangeEvent.TRACKS_COMPUTED:
+			invalidateTrackFeatureColumns();
+			break;
+
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			visibleEdgeColumns.invalidate();
+			visibleTrackColumns.invalidate();
+			break;
+
+		default:
+			break;
 		}
-		return val;
 	}
 
 	/*
@@ -188,6 +421,7 @@ public class FeatureModel
 
 	public Double getEdgeFeature( final DefaultWeightedEdge edge, final String featureName )
 	{
+		ensureEdgeFeature( featureName );
 		final ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
 		if ( null == map ) { return null; }
 		return map.get( featureName );
@@ -425,6 +659,7 @@ public class FeatureModel
 	 */
 	public Double getTrackFeature( final Integer trackID, final String feature )
 	{
+		ensureTrackFeature( feature );
 		final Map< String, Double > valueMap = trackFeatureValues.get( trackID );
 		return valueMap.get( feature );
 	}
@@ -438,35 +673,10 @@ public class FeatureModel
 	public Map< String, double[] > getTrackFeatureValues()
 	{
 		final Map< String, double[] > featureValues = new HashMap< >();
-		Double val;
-		final int nTracks = model.getTrackModel().nTracks( false );
 		for ( final String feature : trackFeatures )
 		{
-			// Make a double array to comply to JFreeChart histograms
-			boolean noDataFlag = true;
-			final double[] values = new double[ nTracks ];
-			int index = 0;
-			for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
-			{
-				val = getTrackFeature( trackID, feature );
-				if ( null == val )
-				{
-					continue;
-				}
-				values[ index++ ] = val;
-				noDataFlag = false;
-			}
-
-			if ( noDataFlag )
-			{
-				featureValues.put( feature, new double[ 0 ] ); // Empty array to
-				// signal no
-				// data
-			}
-			else
-			{
-				featureValues.put( feature, values );
-			}
+			// Empty array to signal no data.
+			featureValues.put( feature, getTrackFeatureColumn( feature, false ).getValues().clone() );
 		}
 		return featureValues;
 	}
@@ -573,6 +783,72 @@ public class FeatureModel
 		return spotFeatureIsInt;
 	}
 
+	/*
+	 * LAZY FEATURES
+	 */
+
+	/**
+	 * Sets the {@link LazyFeatureComputer} in charge of computing the deferred
+	 * features of this model when they are requested. <code>null</code> if
+	 * all features are computed eagerly.
+	 *
+	 * @param lazyFeatureComputer
+	 *            the lazy feature computer, or <code>null</code>.
+	 */
+	public void setLazyFeatureComputer( final LazyFeatureComputer lazyFeatureComputer )
+	{
+		this.lazyFeatureComputer = lazyFeatureComputer;
+	}
+
+	/**
+	 * Returns the {@link LazyFeatureComputer} of this model, or
+	 * <code>null</code> if all features are computed eagerly.
+	 *
+	 * @return the lazy feature computer.
+	 */
+	public LazyFeatureComputer getLazyFeatureComputer()
+	{
+		return lazyFeatureComputer;
+	}
+
+	/**
+	 * Ensures that the specified spot features are computed, if their
+	 * computation was deferred. Spot features being stored in the spots
+	 * themselves, this must be called before reading them when features might
+	 * be computed lazily. Edge and track features are computed when they are
+	 * accessed through this model.
+	 *
+	 * @param features
+	 *            the spot features that will be read.
+	 */
+	public void ensureSpotFeatures( final Collection< String > features )
+	{
+		if ( null != lazyFeatureComputer )
+			lazyFeatureComputer.ensureSpotFeatures( features );
+	}
+
+	/**
+	 * Ensures that all the declared features are computed, if their
+	 * computation was deferred.
+	 */
+	public void ensureAllFeatures()
+	{
+		if ( null != lazyFeatureComputer )
+			lazyFeatureComputer.ensureAll();
+	}
+
+	private void ensureEdgeFeature( final String feature )
+	{
+		if ( null != lazyFeatureComputer )
+			lazyFeatureComputer.ensureEdgeFeature( feature );
+	}
+
+	private void ensureTrackFeature( final String feature )
+	{
+		if ( null != lazyFeatureComputer )
+			lazyFeatureComputer.ensureTrackFeature( feature );
+	}
+
 	@Override
 	public String toString()
 	{
@@ -663,4 +939,55 @@ public class FeatureModel
 			}
 		}
 	}
+
+	/**
+	 * Feature columns cached by feature. Each column is tagged with the
+	 * version of the cache it was computed at, so that a column computed
+	 * while the cache is invalidated is never served afterwards.
+	 */
+	private static final class ColumnCache
+	{
+
+		private final AtomicLong version = new AtomicLong();
+
+		private final ConcurrentHashMap< String, Entry > columns = new ConcurrentHashMap< >();
+
+		private long version()
+		{
+			return version.get();
+		}
+
+		private FeatureColumn get( final String feature, final long atVersion )
+		{
+			final Entry entry = columns.get( feature );
+			return ( null == entry || entry.version != atVersion ) ? null : entry.column;
+		}
+
+		private void put( final String feature, final long atVersion, final FeatureColumn column )
+		{
+			if ( atVersion == version.get() )
+				columns.put( feature, new Entry( atVersion, column ) );
+		}
+
+		private void invalidate()
+		{
+			version.incrementAndGet();
+			if ( !columns.isEmpty() )
+				columns.clear();
+		}
+	}
+
+	private static final class Entry
+	{
+
+		private final long version;
+
+		private final FeatureColumn column;
+
+		private Entry( final long version, final FeatureColumn column )
+		{
+			this.version = version;
+			this.column = column;
+		}
+	}
 }
@@ -23,6 +23,8 @@ import fiji.plugin.trackmate.gui.TrackMateGUIController;
 import fiji.plugin.trackmate.gui.descriptors.ConfigureViewsDescriptor;
 import fiji.plugin.trackmate.gui.descriptors.SomeDialogDescriptor;
 import fiji.plugin.trackmate.io.IOUtils;
+import fiji.plugin.trackmate.io.TmBinaryFile;
+import fiji.plugin.trackmate.io.TmBinaryReader;
 import fiji.plugin.trackmate.io.TmXmlReader;
 import fiji.plugin.trackmate.io.TmXmlReader_v12;
 import fiji.plugin.trackmate.io.TmXmlReader_v20;
@@ -109,7 +111,7 @@ public class LoadTrackMatePlugIn_ extends SomeDialogDescriptor implements PlugIn
 				final File parent2 = parent == null ? null : parent.getParentFile();
 				file = new File( parent2 != null ? parent2 : parent != null ? parent : folder, "TrackMateData.xml" );
 			}
-			final File tmpFile = IOUtils.askForFileForLoading( file, "Load a TrackMate XML file", frame, logger );
+			final File tmpFile = IOUtils.askForFileForLoading( file, "Load a TrackMate file", frame, logger );
 			if ( null == tmpFile ) { return; }
 			file = tmpFile;
 		}
@@ -129,7 +131,7 @@ public class LoadTrackMatePlugIn_ extends SomeDialogDescriptor implements PlugIn
 		}
 
 		// Check if we have an ICY track XML file.
-		if ( checkIsICY( file ) )
+		if ( !TmBinaryFile.isBinaryFile( file ) && checkIsICY( file ) )
 		{
 			logger.log( "Detecting an ICY track XML file. Loading...\n" );
 			final LoadICYTrackPlugIn_ loadICY = new LoadICYTrackPlugIn_();
@@ -363,7 +365,7 @@ public class LoadTrackMatePlugIn_ extends SomeDialogDescriptor implements PlugIn
 	/**
 	 * Hook for subclassers: <br>
 	 * Creates the {@link TmXmlReader} instance that will be used to load the
-	 * file.
+	 * file. TrackMate binary files are read with a {@link TmBinaryReader}.
 	 *
 	 * @param lFile
 	 *            the file to read from.
@@ -371,6 +373,8 @@ public class LoadTrackMatePlugIn_ extends SomeDialogDescriptor implements PlugIn
 	 */
 	protected TmXmlReader createReader( final File lFile )
 	{
+		if ( TmBinaryFile.isBinaryFile( lFile ) )
+			return new TmBinaryReader( lFile );
 		return new TmXmlReader( lFile );
 	}
 
@@ -1,14 +1,17 @@
 package fiji.plugin.trackmate;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
 import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.graph.BranchDecompositionCache;
 
 /**
  * <h1>The model for the data managed by TrackMate trackmate.</h1>
@@ -43,6 +46,9 @@ public class Model
 
 	private final TrackModel trackModel;
 
+	/** The convex branch decompositions of the tracks, computed on demand. */
+	private final BranchDecompositionCache branchDecompositionCache;
+
 	// SPOTS
 
 	/** The spots managed by this model. */
@@ -107,6 +113,10 @@ public class Model
 	{
 		featureModel = createFeatureModel();
 		trackModel = createTrackModel();
+		branchDecompositionCache = new BranchDecompositionCache( trackModel );
+		// First listeners, so that others never see stale caches.
+		modelChangeListeners.add( branchDecompositionCache );
+		modelChangeListeners.add( featureModel );
 	}
 
 	/*
@@ -288,6 +298,8 @@ public class Model
 	public void clearTracks( final boolean doNotify )
 	{
 		trackModel.clear();
+		branchDecompositionCache.clear();
+		featureModel.invalidateTrackFeatureColumns();
 		if ( doNotify )
 		{
 			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.TRACKS_COMPUTED );
@@ -306,6 +318,17 @@ public class Model
 		return trackModel;
 	}
 
+	/**
+	 * Returns the cache of the convex branch decompositions of the tracks of
+	 * this model. Decompositions are kept until their track is modified.
+	 *
+	 * @return the {@link BranchDecompositionCache} of this model.
+	 */
+	public BranchDecompositionCache getBranchDecompositionCache()
+	{
+		return branchDecompositionCache;
+	}
+
 	/**
 	 * Sets the tracks stored in this model in bulk.
 	 * <p>
@@ -323,6 +346,8 @@ public class Model
 	public void setTracks( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final boolean doNotify )
 	{
 		trackModel.setGraph( graph );
+		branchDecompositionCache.clear();
+		featureModel.invalidateTrackFeatureColumns();
 		if ( doNotify )
 		{
 			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.TRACKS_COMPUTED );
@@ -355,6 +380,7 @@ public class Model
 	public void clearSpots( final boolean doNotify )
 	{
 		spots.clear();
+		featureModel.invalidateSpotFeatureColumns();
 		if ( doNotify )
 		{
 			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.SPOTS_COMPUTED );
@@ -375,6 +401,7 @@ public class Model
 	public void setSpots( final SpotCollection spots, final boolean doNotify )
 	{
 		this.spots = spots;
+		featureModel.invalidateSpotFeatureColumns();
 		if ( doNotify )
 		{
 			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.SPOTS_COMPUTED );
@@ -395,7 +422,13 @@ public class Model
 	 */
 	public void filterSpots( final Collection< FeatureFilter > spotFilters, final boolean doNotify )
 	{
+		final List< String > features = new ArrayList< >( spotFilters.size() );
+		for ( final FeatureFilter filter : spotFilters )
+			features.add( filter.feature );
+		featureModel.ensureSpotFeatures( features );
+
 		spots.filter( spotFilters );
+		featureModel.spotVisibilityChanged();
 		if ( doNotify )
 		{
 			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.SPOTS_FILTERED );
@@ -483,6 +516,7 @@ public class Model
 			return null;
 		}
 		spots.add( spotToMove, toFrame );
+		trackModel.frameChanged( spotToMove );
 		if ( DEBUG )
 		{
 			System.out.println( "[TrackMateModel] Moving " + spotToMove + " from frame " + fromFrame + " to frame " + toFrame );
@@ -769,6 +803,10 @@ public class Model
 			spotsToUpdate.addAll( spotsUpdated );
 		}
 
+		// Edited spots do not change the spot collection version by themselves.
+		if ( !spotsUpdated.isEmpty() )
+			spots.markModified();
+
 		// Initialize event
 		final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.MODEL_MODIFIED );
 
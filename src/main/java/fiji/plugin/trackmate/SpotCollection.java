@@ -14,6 +14,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fiji.plugin.trackmate.features.FeatureFilter;
 import net.imglib2.algorithm.MultiThreaded;
@@ -57,6 +58,9 @@ public class SpotCollection implements MultiThreaded
 	/** The frame by frame list of spot this object wrap. */
 	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap< >();
 
+	/** Incremented each time the content or the visibility of spots changes. */
+	private final AtomicLong version = new AtomicLong( 0 );
+
 	private int numThreads;
 
 	/*
@@ -126,6 +130,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void add( final Spot spot, final Integer frame )
 	{
+		version.incrementAndGet();
 		Set< Spot > spots = content.get( frame );
 		if ( null == spots )
 		{
@@ -152,6 +157,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public boolean remove( final Spot spot, final Integer frame )
 	{
+		version.incrementAndGet();
 		final Set< Spot > spots = content.get( frame );
 		if ( null == spots ) { return false; }
 		return spots.remove( spot );
@@ -165,6 +171,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void setVisible( final boolean visible )
 	{
+		version.incrementAndGet();
 		final Double val = visible ? ONE : ZERO;
 		final Collection< Integer > frames = content.keySet();
 
@@ -214,6 +221,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public final void filter( final FeatureFilter featurefilter )
 	{
+		version.incrementAndGet();
 
 		final Collection< Integer > frames = content.keySet();
 		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
@@ -296,6 +304,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public final void filter( final Collection< FeatureFilter > filters )
 	{
+		version.incrementAndGet();
 
 		final Collection< Integer > frames = content.keySet();
 		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
@@ -735,6 +744,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void put( final int frame, final Collection< Spot > spots )
 	{
+		version.incrementAndGet();
 		final Set< Spot > value = new HashSet< >( spots );
 		for ( final Spot spot : value )
 		{
@@ -744,6 +754,37 @@ public class SpotCollection implements MultiThreaded
 		content.put( frame, value );
 	}
 
+	/**
+	 * Returns the modification count of this collection. It is incremented
+	 * each time spots are added, removed, put or cleared, and each time their
+	 * visibility is changed by this collection. It is also incremented by
+	 * {@link #markModified()}, which the {@link Model} calls when spots are
+	 * edited through {@link Model#updateFeatures(Spot)}. It is not incremented
+	 * when the features of a spot are changed directly, nor when frames are
+	 * removed through the {@link #keySet()} view.
+	 * <p>
+	 * Two identical values returned by this method for the same collection
+	 * mean that its content and its visible spots did not change in between,
+	 * so that results computed from it can be reused.
+	 *
+	 * @return the modification count.
+	 */
+	public long getVersion()
+	{
+		return version.get();
+	}
+
+	/**
+	 * Increments the modification count of this collection, to signal that
+	 * the features of some of its spots changed.
+	 *
+	 * @see #getVersion()
+	 */
+	public void markModified()
+	{
+		version.incrementAndGet();
+	}
+
 	/**
 	 * Returns the first (lowest) frame currently in this collection.
 	 *
@@ -793,6 +834,7 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void clear()
 	{
+		version.incrementAndGet();
 		content.clear();
 	}
 
@@ -9,6 +9,7 @@ import fiji.plugin.trackmate.detection.SpotDetector;
 import fiji.plugin.trackmate.detection.SpotDetectorFactory;
 import fiji.plugin.trackmate.features.EdgeFeatureCalculator;
 import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.features.LazyFeatureComputer;
 import fiji.plugin.trackmate.features.SpotFeatureCalculator;
 import fiji.plugin.trackmate.features.TrackFeatureCalculator;
 import fiji.plugin.trackmate.tracking.SpotTracker;
@@ -56,6 +57,13 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm
 
 	protected int numThreads = Runtime.getRuntime().availableProcessors();
 
+	/**
+	 * If <code>true</code>, features are declared by the
+	 * <code>compute*Features()</code> methods but only computed when first
+	 * requested.
+	 */
+	protected boolean lazyFeatures = false;
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -148,6 +156,51 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm
 		return settings;
 	}
 
+	/**
+	 * Sets whether features are computed lazily. In lazy mode, the
+	 * <code>compute*Features()</code> methods only declare the features of the
+	 * analyzers configured in the settings. Each analyzer is run when one of
+	 * its features is first requested, through the {@link FeatureModel}, and
+	 * its results are cached until the model is modified. This is useful for
+	 * headless pipelines that only need a few of the configured features.
+	 *
+	 * @param lazyFeatures
+	 *            whether to compute features lazily.
+	 * @see LazyFeatureComputer
+	 */
+	public void setLazyFeatures( final boolean lazyFeatures )
+	{
+		this.lazyFeatures = lazyFeatures;
+	}
+
+	/**
+	 * Returns whether features are computed lazily.
+	 *
+	 * @return <code>true</code> if features are computed lazily.
+	 */
+	public boolean isLazyFeatures()
+	{
+		return lazyFeatures;
+	}
+
+	/**
+	 * Returns the {@link LazyFeatureComputer} of the model, registering a new
+	 * one if it has none yet.
+	 */
+	protected LazyFeatureComputer getLazyFeatureComputer()
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		LazyFeatureComputer lazyFeatureComputer = fm.getLazyFeatureComputer();
+		if ( null == lazyFeatureComputer )
+		{
+			lazyFeatureComputer = new LazyFeatureComputer( model, settings );
+			model.addModelChangeListener( lazyFeatureComputer );
+			fm.setLazyFeatureComputer( lazyFeatureComputer );
+		}
+		lazyFeatureComputer.setNumThreads( numThreads );
+		return lazyFeatureComputer;
+	}
+
 	/*
 	 * PROCESSES
 	 */
@@ -168,11 +221,20 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm
 	public boolean computeSpotFeatures( final boolean doLogIt )
 	{
 		final Logger logger = model.getLogger();
-		logger.log( "Computing spot features.\n" );
 		final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
 		calculator.setNumThreads( numThreads );
+		if ( lazyFeatures )
+		{
+			logger.log( "Spot features will be computed on demand.\n" );
+			calculator.declareFeatures();
+			getLazyFeatureComputer().deferSpotFeatures();
+			return true;
+		}
+
+		logger.log( "Computing spot features.\n" );
 		if ( calculator.checkInput() && calculator.process() )
 		{
+			model.getSpots().markModified();
 			if ( doLogIt )
 				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
 			return true;
@@ -200,6 +262,13 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm
 		final Logger logger = model.getLogger();
 		final EdgeFeatureCalculator calculator = new EdgeFeatureCalculator( model, settings );
 		calculator.setNumThreads( numThreads );
+		if ( lazyFeatures )
+		{
+			calculator.declareFeatures();
+			getLazyFeatureComputer().deferEdgeFeatures();
+			return true;
+		}
+
 		if ( !calculator.checkInput() || !calculator.process() )
 		{
 			errorMessage = "Edge features calculation failed:\n" + calculator.getErrorMessage();
@@ -224,6 +293,13 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm
 		final Logger logger = model.getLogger();
 		final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings );
 		calculator.setNumThreads( numThreads );
+		if ( lazyFeatures )
+		{
+			calculator.declareFeatures();
+			getLazyFeatureComputer().deferTrackFeatures();
+			return true;
+		}
+
 		if ( calculator.checkInput() && calculator.process() )
 		{
 			if ( doLogIt )
@@ -58,6 +58,12 @@ public class TrackModel
 
 	private final MyGraphListener mgl;
 
+	/**
+	 * The time-directed neighbor index, created on demand and kept up to date
+	 * by listening to the graph.
+	 */
+	private TimeDirectedNeighborIndex neighborIndex;
+
 	/*
 	 * TRANSACTION FIELDS
 	 */
@@ -157,6 +163,7 @@ public class TrackModel
 		if ( null != this.graph )
 		{
 			this.graph.removeGraphListener( mgl );
+			dropNeighborIndex();
 		}
 		this.graph = new ListenableUndirectedGraph< >( graph );
 		this.graph.addGraphListener( mgl );
@@ -200,6 +207,7 @@ public class TrackModel
 		if ( null != this.graph )
 		{
 			this.graph.removeGraphListener( mgl );
+			dropNeighborIndex();
 		}
 		this.graph = new ListenableUndirectedGraph< >( lGraph );
 		this.graph.addGraphListener( mgl );
@@ -747,7 +755,7 @@ public class TrackModel
 	public GraphIterator< Spot, DefaultWeightedEdge > getDepthFirstIterator( final Spot start, final boolean directed )
 	{
 		if ( directed )
-			return new TimeDirectedDepthFirstIterator( graph, start );
+			return new TimeDirectedDepthFirstIterator( graph, start, getDirectedNeighborIndex() );
 
 		return new DepthFirstIterator< >( graph, start );
 	}
@@ -773,14 +781,48 @@ public class TrackModel
 	public SortedDepthFirstIterator< Spot, DefaultWeightedEdge > getSortedDepthFirstIterator( final Spot start, final Comparator< Spot > comparator, final boolean directed )
 	{
 		if ( directed )
-			return new TimeDirectedSortedDepthFirstIterator( graph, start, comparator );
+			return new TimeDirectedSortedDepthFirstIterator( graph, start, comparator, getDirectedNeighborIndex() );
 
 		return new SortedDepthFirstIterator< >( graph, start, comparator );
 	}
 
-	public TimeDirectedNeighborIndex getDirectedNeighborIndex()
+	/**
+	 * Returns the time-directed neighbor index of this model. The index is
+	 * built on the first call, then shared and updated incrementally as the
+	 * tracks are edited.
+	 *
+	 * @return the neighbor index.
+	 */
+	public synchronized TimeDirectedNeighborIndex getDirectedNeighborIndex()
+	{
+		if ( null == neighborIndex )
+		{
+			neighborIndex = new TimeDirectedNeighborIndex( graph );
+			graph.addGraphListener( neighborIndex );
+		}
+		return neighborIndex;
+	}
+
+	/**
+	 * Notifies this model that the frame of a spot changed, so that the
+	 * neighbor index can be updated.
+	 *
+	 * @param spot
+	 *            the spot that was moved to another frame.
+	 */
+	synchronized void frameChanged( final Spot spot )
+	{
+		if ( null != neighborIndex )
+			neighborIndex.frameChanged( spot );
+	}
+
+	private synchronized void dropNeighborIndex()
 	{
-		return new TimeDirectedNeighborIndex( graph );
+		if ( null != neighborIndex )
+		{
+			graph.removeGraphListener( neighborIndex );
+			neighborIndex = null;
+		}
 	}
 
 	/**
@@ -40,6 +40,7 @@ public class ExportAllSpotsStatsAction extends AbstractTMAction
 
 		// Export spots
 		final Collection< String > spotFeatures = trackmate.getModel().getFeatureModel().getSpotFeatures();
+		fm.ensureSpotFeatures( spotFeatures );
 
 		// Create table
 		final ResultsTable spotTable = new ResultsTable();
@@ -46,6 +46,7 @@ public class ExportStatsToIJAction extends AbstractTMAction
 		logger.log( "  - Exporting spot statistics..." );
 		final Set< Integer > trackIDs = model.getTrackModel().trackIDs( true );
 		final Collection< String > spotFeatures = trackmate.getModel().getFeatureModel().getSpotFeatures();
+		fm.ensureSpotFeatures( spotFeatures );
 
 		// Create table
 		final ResultsTable spotTable = new ResultsTable();
@@ -11,6 +11,8 @@ import fiji.plugin.trackmate.gui.TrackMateGUIController;
 import fiji.plugin.trackmate.gui.TrackMateWizard;
 import fiji.plugin.trackmate.gui.descriptors.SomeDialogDescriptor;
 import fiji.plugin.trackmate.io.IOUtils;
+import fiji.plugin.trackmate.io.TmBinaryFile;
+import fiji.plugin.trackmate.io.TmBinaryReader;
 import fiji.plugin.trackmate.io.TmXmlReader;
 import fiji.plugin.trackmate.io.TmXmlReader_v12;
 import fiji.plugin.trackmate.io.TmXmlReader_v20;
@@ -69,7 +71,7 @@ public class MergeFileAction extends AbstractTMAction {
 		file = tmpFile;
 
 		// Read the file content
-		TmXmlReader reader = new TmXmlReader(file);
+		TmXmlReader reader = TmBinaryFile.isBinaryFile(file) ? new TmBinaryReader(file) : new TmXmlReader(file);
 		final Version version = new Version(reader.getVersion());
 		if (version.compareTo(new Version("2.0.0")) < 0) {
 			logger.log("Detecting a file version " + version + ". Using the right reader.\n", Logger.GREEN_COLOR);
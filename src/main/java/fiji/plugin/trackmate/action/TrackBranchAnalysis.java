@@ -9,28 +9,23 @@ import java.awt.Image;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.swing.ImageIcon;
 
-import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.SimpleDirectedGraph;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackMate;
-import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition;
-import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
-import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
+import fiji.plugin.trackmate.graph.CompactBranchDecomposition;
 import fiji.plugin.trackmate.gui.TrackMateGUIController;
 import fiji.plugin.trackmate.gui.TrackMateWizard;
 
@@ -74,99 +69,68 @@ public class TrackBranchAnalysis extends AbstractTMAction
 			return;
 		}
 
-		final TimeDirectedNeighborIndex neighborIndex = model.getTrackModel().getDirectedNeighborIndex();
+		final Map< Integer, CompactBranchDecomposition > decompositions = model.getBranchDecompositionCache().get( model.getTrackModel().unsortedTrackIDs( true ), true, false, trackmate.getNumThreads() );
 
 		final List< Branch > brs = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
+		for ( final Integer trackID : decompositions.keySet() )
 		{
-			final TrackBranchDecomposition branchDecomposition = ConvexBranchesDecomposition.processTrack( trackID, model.getTrackModel(), neighborIndex, true, false );
-			final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
+			final CompactBranchDecomposition decomposition = decompositions.get( trackID );
+			final String trackName = model.getTrackModel().name( trackID );
 
-			final Map< Branch, Set< List< Spot >> > successorMap = new HashMap<>();
-			final Map< Branch, Set< List< Spot >> > predecessorMap = new HashMap<>();
-			final Map<List<Spot>, Branch> branchMap = new HashMap<>();
-
-			for ( final List< Spot > branch : branchGraph.vertexSet() )
+			final int nBranches = decomposition.nBranches();
+			final Branch[] branches = new Branch[ nBranches ];
+			for ( int b = 0; b < nBranches; b++ )
 			{
 				final Branch br = new Branch();
-				branchMap.put( branch, br );
+				branches[ b ] = br;
 
 				// Track name from ID
-				br.trackID = model.getTrackModel().name( trackID );
+				br.trackID = trackName;
 
 				// First and last spot.
-				br.first = branch.get( 0 );
-				br.last = branch.get( branch.size() - 1 );
+				br.first = decomposition.getFirstSpot( b );
+				br.last = decomposition.getLastSpot( b );
 
 				// Distance traveled.
 				br.distanceTraveled = Math.sqrt( br.last.squareDistanceTo( br.first ) );
 
 				// Compute mean velocity "by hand".
+				final int start = decomposition.getBranchStart( b );
+				final int end = decomposition.getBranchEnd( b );
 				final double meanV;
-				if ( branch.size() < 2 )
+				if ( end - start < 2 )
 				{
 					meanV = Double.NaN;
 				}
 				else
 				{
-					final Iterator< Spot > it = branch.iterator();
-					Spot previous = it.next();
+					Spot previous = decomposition.getSpot( start );
 					double sum = 0;
-					while ( it.hasNext() )
+					for ( int i = start + 1; i < end; i++ )
 					{
-						final Spot next = it.next();
+						final Spot next = decomposition.getSpot( i );
 						final double dr = Math.sqrt( next.squareDistanceTo( previous ) );
 						sum += dr;
 						previous = next;
 					}
-					meanV = sum / ( branch.size() - 1 );
+					meanV = sum / ( end - start - 1 );
 				}
 				br.meanVelocity = meanV;
 
-				// Predecessors
-				final Set< DefaultEdge > incomingEdges = branchGraph.incomingEdgesOf( branch );
-				final Set< List< Spot >> predecessors = new HashSet<>( incomingEdges.size() );
-				for ( final DefaultEdge edge : incomingEdges )
-				{
-					final List< Spot > predecessorBranch = branchGraph.getEdgeSource( edge );
-					predecessors.add( predecessorBranch );
-				}
-
-				// Successors
-				final Set< DefaultEdge > outgoingEdges = branchGraph.outgoingEdgesOf( branch );
-				final Set< List< Spot >> successors = new HashSet<>( outgoingEdges.size() );
-				for ( final DefaultEdge edge : outgoingEdges )
-				{
-					final List< Spot > successorBranch = branchGraph.getEdgeTarget( edge );
-					successors.add( successorBranch );
-				}
-
-				successorMap.put( br, successors );
-				predecessorMap.put( br, predecessors );
+				br.predecessors = new HashSet<>();
+				br.successors = new HashSet<>();
 			}
-			
-			for ( final Branch br : successorMap.keySet() )
+
+			// Predecessors and successors, from the links between branches.
+			for ( int l = 0; l < decomposition.nLinks(); l++ )
 			{
-				final Set< List< Spot >> succs = successorMap.get( br );
-				final Set<Branch> succBrs = new HashSet<>(succs.size());
-				for ( final List<Spot> branch : succs )
-				{
-					final Branch succBr = branchMap.get( branch );
-					succBrs.add( succBr );
-				}
-				br.successors = succBrs;
-				
-				final Set< List< Spot >> preds = predecessorMap.get( br );
-				final Set<Branch> predBrs = new HashSet<>(preds.size());
-				for ( final List<Spot> branch : preds )
-				{
-					final Branch predBr = branchMap.get( branch );
-					predBrs.add( predBr );
-				}
-				br.predecessors = predBrs;
+				final Branch source = branches[ decomposition.branchOf( decomposition.getLinkSource( l ) ) ];
+				final Branch target = branches[ decomposition.branchOf( decomposition.getLinkTarget( l ) ) ];
+				source.successors.add( target );
+				target.predecessors.add( source );
 			}
 
-			brs.addAll( successorMap.keySet() );
+			brs.addAll( Arrays.asList( branches ) );
 		}
 
 		Collections.sort( brs );
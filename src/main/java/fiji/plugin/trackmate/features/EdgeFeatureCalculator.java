@@ -64,7 +64,22 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 	{
 		final long start = System.currentTimeMillis();
 
-		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		computeEdgeFeaturesAgent( model.getTrackModel().edgeSet(), settings.getEdgeAnalyzers(), true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Declares the edge features configured in the {@link Settings} in the
+	 * feature model, without computing them.
+	 */
+	public void declareFeatures()
+	{
 		for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
 		{
 			final Collection< String > features = analyzer.getFeatures();
@@ -74,13 +89,6 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 			final Map< String, Boolean > isIntFeature = analyzer.getIsIntFeature();
 			model.getFeatureModel().declareEdgeFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeEdgeFeaturesAgent( model.getTrackModel().edgeSet(), settings.getEdgeAnalyzers(), true );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/**
@@ -99,6 +107,24 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 		computeEdgeFeaturesAgent( edges, spotFeatureAnalyzers, doLogIt );
 	}
 
+	/**
+	 * Calculates the edge features of the specified analyzers for the
+	 * specified edges. The analyzers should be taken from the {@link Settings}
+	 * object.
+	 *
+	 * @param edges
+	 *            the edges to compute.
+	 * @param analyzers
+	 *            the analyzers to run.
+	 * @param doLogIt
+	 *            if <code>true</code>, the logger of the model will be notified
+	 *            of the calculation.
+	 */
+	public void computeEdgesFeatures( final Collection< DefaultWeightedEdge > edges, final List< EdgeAnalyzer > analyzers, final boolean doLogIt )
+	{
+		computeEdgeFeaturesAgent( edges, analyzers, doLogIt );
+	}
+
 	/*
 	 * PRIVATE METHODS
 	 */
@@ -123,6 +149,8 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 
 		}
+		// Edge features were stored without a model update.
+		model.getFeatureModel().invalidateTrackFeatureColumns();
 	}
 
 }
@@ -0,0 +1,204 @@
+package fiji.plugin.trackmate.features;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * The values of one feature over a set of objects (spots, edges or tracks),
+ * with summary statistics and a histogram computed once, on first request.
+ * <p>
+ * Columns are immutable. The {@link FeatureModel} caches them until the
+ * feature values or the visibility of the objects change, so that displaying
+ * the same feature again does not require iterating over the model.
+ */
+public class FeatureColumn
+{
+
+	/** The minimal number of bins of the histogram. */
+	public static final int MIN_BINS = 8;
+
+	/** The maximal number of bins of the histogram. */
+	public static final int MAX_BINS = 100;
+
+	private final double[] values;
+
+	private boolean statsComputed = false;
+
+	private double min;
+
+	private double max;
+
+	private boolean hasData;
+
+	private int[] histogram;
+
+	private double otsuThreshold = Double.NaN;
+
+	private boolean otsuComputed = false;
+
+	/**
+	 * Creates a new column over the specified values. The array is not copied
+	 * and must not be modified afterwards.
+	 *
+	 * @param values
+	 *            the feature values.
+	 */
+	public FeatureColumn( final double[] values )
+	{
+		this.values = values;
+	}
+
+	/**
+	 * Returns the values of this column. The array is shared, and must not be
+	 * modified.
+	 *
+	 * @return the values.
+	 */
+	public double[] getValues()
+	{
+		return values;
+	}
+
+	public int size()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if at least one value of this column is not
+	 * {@link Double#NaN}.
+	 *
+	 * @return whether this column holds data.
+	 */
+	public synchronized boolean hasData()
+	{
+		computeStats();
+		return hasData;
+	}
+
+	/**
+	 * Returns the smallest value of this column, ignoring {@link Double#NaN}s,
+	 * or {@link Double#POSITIVE_INFINITY} if it holds no data.
+	 *
+	 * @return the minimal value.
+	 */
+	public synchronized double getMin()
+	{
+		computeStats();
+		return min;
+	}
+
+	/**
+	 * Returns the largest value of this column, ignoring {@link Double#NaN}s,
+	 * or {@link Double#NEGATIVE_INFINITY} if it holds no data.
+	 *
+	 * @return the maximal value.
+	 */
+	public synchronized double getMax()
+	{
+		computeStats();
+		return max;
+	}
+
+	/**
+	 * Returns the number of bins of the histogram of this column, determined
+	 * with the Freedman-Diaconis rule and bounded by {@link #MIN_BINS} and
+	 * {@link #MAX_BINS}.
+	 *
+	 * @return the number of bins, or 0 if this column holds no data.
+	 * @see TMUtils#getNBins(double[], int, int)
+	 */
+	public int getNBins()
+	{
+		return getHistogram().length;
+	}
+
+	/**
+	 * Returns the width of the bins of the histogram of this column. Bin
+	 * <code>i</code> starts at <code>getMin() + i * getBinWidth()</code>.
+	 *
+	 * @return the bin width.
+	 */
+	public double getBinWidth()
+	{
+		final int nBins = getNBins();
+		return nBins == 0 ? 0. : ( getMax() - getMin() ) / nBins;
+	}
+
+	/**
+	 * Returns the histogram of this column, binned between its min and max.
+	 * Values equal to the max fall in the last bin, {@link Double#NaN}s are
+	 * not counted. The array is shared, and must not be modified.
+	 *
+	 * @return the count of values in each bin.
+	 */
+	public synchronized int[] getHistogram()
+	{
+		if ( null == histogram )
+		{
+			computeStats();
+			if ( !hasData )
+			{
+				histogram = new int[ 0 ];
+			}
+			else
+			{
+				final int nBins = TMUtils.getNBins( values, MIN_BINS, MAX_BINS );
+				final double binWidth = ( max - min ) / nBins;
+				final int[] counts = new int[ nBins ];
+				for ( final double value : values )
+				{
+					if ( Double.isNaN( value ) )
+						continue;
+					int bin = value >= max ? nBins - 1 : ( int ) ( ( value - min ) / binWidth );
+					if ( bin >= nBins )
+						bin = nBins - 1;
+					counts[ bin ]++;
+				}
+				histogram = counts;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns a threshold separating the values of this column in two
+	 * classes, using the Otsu method.
+	 *
+	 * @return the threshold.
+	 * @see TMUtils#otsuThreshold(double[])
+	 */
+	public synchronized double getOtsuThreshold()
+	{
+		if ( !otsuComputed )
+		{
+			otsuThreshold = TMUtils.otsuThreshold( values );
+			otsuComputed = true;
+		}
+		return otsuThreshold;
+	}
+
+	private void computeStats()
+	{
+		if ( statsComputed )
+			return;
+
+		double lmin = Double.POSITIVE_INFINITY;
+		double lmax = Double.NEGATIVE_INFINITY;
+		boolean lhasData = false;
+		for ( final double value : values )
+		{
+			if ( Double.isNaN( value ) )
+				continue;
+			lhasData = true;
+			if ( value < lmin )
+				lmin = value;
+			if ( value > lmax )
+				lmax = value;
+		}
+		min = lmin;
+		max = lmax;
+		hasData = lhasData;
+		statsComputed = true;
+	}
+}
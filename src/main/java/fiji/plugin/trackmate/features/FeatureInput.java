@@ -0,0 +1,19 @@
+package fiji.plugin.trackmate.features;
+
+/**
+ * The inputs of the model that feature analyzers read, used to decide which
+ * features must be recomputed after a model modification.
+ *
+ * @see FeatureInputDependent
+ */
+public enum FeatureInput
+{
+	/** The X, Y and Z position of spots. */
+	POSITION,
+	/** The radius of spots. */
+	RADIUS,
+	/** The frame and time of spots. */
+	FRAME,
+	/** The links between spots and their weights. */
+	LINKS;
+}
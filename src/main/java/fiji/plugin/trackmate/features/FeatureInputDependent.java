@@ -0,0 +1,25 @@
+package fiji.plugin.trackmate.features;
+
+import java.util.Set;
+
+/**
+ * Interface for spot analyzer factories, edge analyzers and track analyzers
+ * that declare which {@link FeatureInput}s they read.
+ * <p>
+ * The {@link ModelFeatureUpdater} only recomputes the features of an analyzer
+ * when one of these inputs was modified. Analyzers that do not implement this
+ * interface are assumed to depend on all inputs.
+ */
+public interface FeatureInputDependent
+{
+
+	/**
+	 * Returns the model inputs the features of this analyzer depend on. An
+	 * empty set means the features are never recomputed after a model
+	 * modification, as for manual features.
+	 *
+	 * @return the set of inputs.
+	 */
+	public Set< FeatureInput > getInputs();
+
+}
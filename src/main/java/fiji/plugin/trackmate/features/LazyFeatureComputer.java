@@ -0,0 +1,537 @@
+package fiji.plugin.trackmate.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.ModelChangeListener;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
+import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotFeatureDependencies;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import net.imglib2.algorithm.MultiThreaded;
+
+/**
+ * Computes the features of a model on demand.
+ * <p>
+ * Features whose computation is deferred are declared in the
+ * {@link FeatureModel} as usual, but their analyzers are only run when one of
+ * their features is first requested, for all the objects of the model at once.
+ * Requests come through the {@link FeatureModel}: edge and track features are
+ * computed when their values are accessed, and spot features, which are stored
+ * in the spots themselves, when
+ * {@link FeatureModel#ensureSpotFeatures(Collection)} is called, as it is by
+ * spot filtering, color generators and exporters.
+ * <p>
+ * Computed features are cached until the model is modified. The spots, edges
+ * and tracks of a modification are then marked as stale, and only their
+ * features are computed again on the next request of a feature of the same
+ * kind. Features of analyzers that are not local are computed again for the
+ * whole model, as are all features when the spots or tracks are replaced.
+ * <p>
+ * Analyzers must not request features of other analyzers through the
+ * {@link FeatureModel} from other threads than the one they are called on,
+ * which none of the built-in ones does.
+ */
+public class LazyFeatureComputer implements ModelChangeListener, MultiThreaded
+{
+
+	private final Model model;
+
+	private final Settings settings;
+
+	private int numThreads;
+
+	private boolean spotsDeferred;
+
+	private boolean edgesDeferred;
+
+	private boolean tracksDeferred;
+
+	/** Maps the pending spot features to the factory computing them. */
+	private final Map< String, SpotAnalyzerFactory< ? > > pendingSpotFeatures = new ConcurrentHashMap< >();
+
+	/** Maps the pending edge features to the analyzer computing them. */
+	private final Map< String, EdgeAnalyzer > pendingEdgeFeatures = new ConcurrentHashMap< >();
+
+	/** Maps the pending track features to the analyzer computing them. */
+	private final Map< String, TrackAnalyzer > pendingTrackFeatures = new ConcurrentHashMap< >();
+
+	/**
+	 * The spots modified since the spot features that are not pending were
+	 * computed.
+	 */
+	private final Set< Spot > staleSpots = Collections.newSetFromMap( new ConcurrentHashMap< Spot, Boolean >() );
+
+	/**
+	 * The edges modified since the edge features that are not pending were
+	 * computed.
+	 */
+	private final Set< DefaultWeightedEdge > staleEdges = Collections.newSetFromMap( new ConcurrentHashMap< DefaultWeightedEdge, Boolean >() );
+
+	/**
+	 * The tracks modified since the track features that are not pending were
+	 * computed.
+	 */
+	private final Set< Integer > staleTracks = Collections.newSetFromMap( new ConcurrentHashMap< Integer, Boolean >() );
+
+	/**
+	 * Creates a lazy feature computer for the specified model. No features
+	 * are deferred until one of the <code>defer*Features()</code> methods is
+	 * called.
+	 *
+	 * @param model
+	 *            the model whose features to compute.
+	 * @param settings
+	 *            the settings the analyzers are taken from.
+	 */
+	public LazyFeatureComputer( final Model model, final Settings settings )
+	{
+		this.model = model;
+		this.settings = settings;
+		setNumThreads();
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Defers the computation of the spot features of the factories configured
+	 * in the settings until they are requested.
+	 */
+	public synchronized void deferSpotFeatures()
+	{
+		spotsDeferred = true;
+		invalidateSpotFeatures();
+	}
+
+	/**
+	 * Defers the computation of the edge features of the analyzers configured
+	 * in the settings until they are requested.
+	 */
+	public synchronized void deferEdgeFeatures()
+	{
+		edgesDeferred = true;
+		invalidateEdgeFeatures();
+	}
+
+	/**
+	 * Defers the computation of the track features of the analyzers
+	 * configured in the settings until they are requested.
+	 */
+	public synchronized void deferTrackFeatures()
+	{
+		tracksDeferred = true;
+		invalidateTrackFeatures();
+	}
+
+	/**
+	 * Forgets about the deferred features computed so far. They will be
+	 * computed again when next requested.
+	 */
+	public synchronized void invalidate()
+	{
+		invalidateSpotFeatures();
+		invalidateEdgeFeatures();
+		invalidateTrackFeatures();
+	}
+
+	/**
+	 * Computes the specified spot features now, for all the spots of the
+	 * model, if their computation was deferred and they are not computed yet.
+	 * The features they depend on are computed as well.
+	 *
+	 * @param features
+	 *            the spot features to compute.
+	 */
+	public void ensureSpotFeatures( final Collection< String > features )
+	{
+		if ( pendingSpotFeatures.isEmpty() && staleSpots.isEmpty() )
+			return;
+
+		synchronized ( this )
+		{
+			refreshStaleSpots();
+
+			final List< SpotAnalyzerFactory< ? > > factories = settings.getSpotAnalyzerFactories();
+			final Set< SpotAnalyzerFactory< ? > > required = new LinkedHashSet< >();
+			for ( final String feature : features )
+			{
+				final SpotAnalyzerFactory< ? > factory = pendingSpotFeatures.get( feature );
+				if ( null != factory )
+					require( factory, factories, required );
+			}
+			if ( required.isEmpty() )
+				return;
+
+			// Keep the configured order, which dependencies rely on.
+			final List< SpotAnalyzerFactory< ? > > toCompute = new ArrayList< >( required.size() );
+			for ( final SpotAnalyzerFactory< ? > factory : factories )
+			{
+				if ( required.contains( factory ) )
+				{
+					toCompute.add( factory );
+					pendingSpotFeatures.keySet().removeAll( factory.getFeatures() );
+				}
+			}
+
+			final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
+			calculator.setNumThreads( numThreads );
+			calculator.computeSpotFeatures( model.getSpots(), toCompute, false );
+			model.getSpots().markModified();
+		}
+	}
+
+	/**
+	 * Computes the specified edge feature now, for all the edges of the
+	 * model, if its computation was deferred and it is not computed yet.
+	 *
+	 * @param feature
+	 *            the edge feature to compute.
+	 */
+	public void ensureEdgeFeature( final String feature )
+	{
+		if ( !pendingEdgeFeatures.containsKey( feature ) && staleEdges.isEmpty() )
+			return;
+
+		synchronized ( this )
+		{
+			refreshStaleEdges();
+
+			final EdgeAnalyzer analyzer = pendingEdgeFeatures.get( feature );
+			if ( null == analyzer )
+				return;
+
+			pendingEdgeFeatures.keySet().removeAll( analyzer.getFeatures() );
+			final List< EdgeAnalyzer > analyzers = new ArrayList< >( 1 );
+			analyzers.add( analyzer );
+			final EdgeFeatureCalculator calculator = new EdgeFeatureCalculator( model, settings );
+			calculator.setNumThreads( numThreads );
+			calculator.computeEdgesFeatures( model.getTrackModel().edgeSet(), analyzers, false );
+		}
+	}
+
+	/**
+	 * Computes the specified track feature now, for all the tracks of the
+	 * model, if its computation was deferred and it is not computed yet.
+	 *
+	 * @param feature
+	 *            the track feature to compute.
+	 */
+	public void ensureTrackFeature( final String feature )
+	{
+		if ( !pendingTrackFeatures.containsKey( feature ) && staleTracks.isEmpty() )
+			return;
+
+		synchronized ( this )
+		{
+			refreshStaleTracks();
+
+			final TrackAnalyzer analyzer = pendingTrackFeatures.get( feature );
+			if ( null == analyzer )
+				return;
+
+			pendingTrackFeatures.keySet().removeAll( analyzer.getFeatures() );
+			final List< TrackAnalyzer > analyzers = new ArrayList< >( 1 );
+			analyzers.add( analyzer );
+			final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings );
+			calculator.setNumThreads( numThreads );
+			calculator.computeTrackFeatures( model.getTrackModel().trackIDs( false ), analyzers, false );
+		}
+	}
+
+	/**
+	 * Computes now all the deferred features not computed yet.
+	 */
+	public synchronized void ensureAll()
+	{
+		refreshStaleSpots();
+		refreshStaleEdges();
+		refreshStaleTracks();
+		ensureSpotFeatures( new ArrayList< >( pendingSpotFeatures.keySet() ) );
+		for ( final String feature : new ArrayList< >( pendingEdgeFeatures.keySet() ) )
+			ensureEdgeFeature( feature );
+		for ( final String feature : new ArrayList< >( pendingTrackFeatures.keySet() ) )
+			ensureTrackFeature( feature );
+	}
+
+	/**
+	 * Invalidates the computed features when the model content changes.
+	 */
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_COMPUTED:
+			invalidate();
+			break;
+		case ModelChangeEvent.MODEL_MODIFIED:
+			markStale( event );
+			break;
+		case ModelChangeEvent.TRACKS_COMPUTED:
+			synchronized ( this )
+			{
+				invalidateEdgeFeatures();
+				invalidateTrackFeatures();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		setNumThreads( Runtime.getRuntime().availableProcessors() );
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Marks the spots, edges and tracks of the specified modification as
+	 * stale, as well as the tracks they belong to.
+	 */
+	private synchronized void markStale( final ModelChangeEvent event )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< Integer > tracks = new LinkedHashSet< >( event.getTrackUpdated() );
+		for ( final Spot spot : event.getSpots() )
+		{
+			if ( event.getSpotFlag( spot ) == ModelChangeEvent.FLAG_SPOT_REMOVED )
+			{
+				staleSpots.remove( spot );
+				continue;
+			}
+			if ( spotsDeferred )
+				staleSpots.add( spot );
+			final Integer trackID = trackModel.trackIDOf( spot );
+			if ( null != trackID )
+				tracks.add( trackID );
+		}
+
+		boolean edgesChanged = false;
+		for ( final DefaultWeightedEdge edge : event.getEdges() )
+		{
+			edgesChanged = true;
+			if ( event.getEdgeFlag( edge ) == ModelChangeEvent.FLAG_EDGE_REMOVED )
+			{
+				staleEdges.remove( edge );
+				continue;
+			}
+			if ( edgesDeferred )
+				staleEdges.add( edge );
+			final Integer trackID = trackModel.trackIDOf( edge );
+			if ( null != trackID )
+				tracks.add( trackID );
+		}
+
+		if ( tracksDeferred )
+			staleTracks.addAll( tracks );
+
+		// Analyzers that are not local must see the whole model again.
+		if ( edgesChanged && edgesDeferred )
+		{
+			for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
+			{
+				if ( !analyzer.isManualFeature() && !analyzer.isLocal() )
+				{
+					for ( final String feature : analyzer.getFeatures() )
+						pendingEdgeFeatures.put( feature, analyzer );
+				}
+			}
+		}
+		if ( !tracks.isEmpty() && tracksDeferred )
+		{
+			for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+			{
+				if ( !analyzer.isManualFeature() && !analyzer.isLocal() )
+				{
+					for ( final String feature : analyzer.getFeatures() )
+						pendingTrackFeatures.put( feature, analyzer );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes again the spot features that are not pending for the stale
+	 * spots.
+	 */
+	private void refreshStaleSpots()
+	{
+		if ( staleSpots.isEmpty() )
+			return;
+
+		final List< Spot > spots = new ArrayList< >( staleSpots );
+		staleSpots.clear();
+		final List< SpotAnalyzerFactory< ? > > factories = new ArrayList< >();
+		for ( final SpotAnalyzerFactory< ? > factory : settings.getSpotAnalyzerFactories() )
+		{
+			if ( !factory.isManualFeature() && !pendingSpotFeatures.containsValue( factory ) )
+				factories.add( factory );
+		}
+		if ( factories.isEmpty() )
+			return;
+
+		final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings );
+		calculator.setNumThreads( numThreads );
+		calculator.computeSpotFeatures( SpotCollection.fromCollection( spots ), factories, false );
+		model.getSpots().markModified();
+	}
+
+	/**
+	 * Computes again the edge features that are not pending for the stale
+	 * edges still in the model.
+	 */
+	private void refreshStaleEdges()
+	{
+		if ( staleEdges.isEmpty() )
+			return;
+
+		final List< DefaultWeightedEdge > edges = new ArrayList< >( staleEdges );
+		staleEdges.clear();
+		edges.retainAll( model.getTrackModel().edgeSet() );
+		final List< EdgeAnalyzer > analyzers = new ArrayList< >();
+		for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
+		{
+			if ( !analyzer.isManualFeature() && !pendingEdgeFeatures.containsValue( analyzer ) )
+				analyzers.add( analyzer );
+		}
+		if ( analyzers.isEmpty() || edges.isEmpty() )
+			return;
+
+		final EdgeFeatureCalculator calculator = new EdgeFeatureCalculator( model, settings );
+		calculator.setNumThreads( numThreads );
+		calculator.computeEdgesFeatures( edges, analyzers, false );
+	}
+
+	/**
+	 * Computes again the track features that are not pending for the stale
+	 * tracks still in the model.
+	 */
+	private void refreshStaleTracks()
+	{
+		if ( staleTracks.isEmpty() )
+			return;
+
+		final List< Integer > tracks = new ArrayList< >( staleTracks );
+		staleTracks.clear();
+		tracks.retainAll( model.getTrackModel().trackIDs( false ) );
+		final List< TrackAnalyzer > analyzers = new ArrayList< >();
+		for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+		{
+			if ( !analyzer.isManualFeature() && !pendingTrackFeatures.containsValue( analyzer ) )
+				analyzers.add( analyzer );
+		}
+		if ( analyzers.isEmpty() || tracks.isEmpty() )
+			return;
+
+		final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings );
+		calculator.setNumThreads( numThreads );
+		calculator.computeTrackFeatures( tracks, analyzers, false );
+	}
+
+	private void invalidateSpotFeatures()
+	{
+		staleSpots.clear();
+		if ( !spotsDeferred )
+			return;
+		for ( final SpotAnalyzerFactory< ? > factory : settings.getSpotAnalyzerFactories() )
+		{
+			if ( factory.isManualFeature() )
+				continue;
+			for ( final String feature : factory.getFeatures() )
+				pendingSpotFeatures.put( feature, factory );
+		}
+	}
+
+	private void invalidateEdgeFeatures()
+	{
+		staleEdges.clear();
+		if ( !edgesDeferred )
+			return;
+		for ( final EdgeAnalyzer analyzer : settings.getEdgeAnalyzers() )
+		{
+			if ( analyzer.isManualFeature() )
+				continue;
+			for ( final String feature : analyzer.getFeatures() )
+				pendingEdgeFeatures.put( feature, analyzer );
+		}
+	}
+
+	private void invalidateTrackFeatures()
+	{
+		staleTracks.clear();
+		if ( !tracksDeferred )
+			return;
+		for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+		{
+			if ( analyzer.isManualFeature() )
+				continue;
+			for ( final String feature : analyzer.getFeatures() )
+				pendingTrackFeatures.put( feature, analyzer );
+		}
+	}
+
+	/**
+	 * Adds the specified factory to the required ones, along with the pending
+	 * factories it depends on. Factories that do not declare their
+	 * dependencies depend on all the factories before them.
+	 */
+	private void require( final SpotAnalyzerFactory< ? > factory, final List< SpotAnalyzerFactory< ? > > factories, final Set< SpotAnalyzerFactory< ? > > required )
+	{
+		if ( !required.add( factory ) )
+			return;
+
+		if ( factory instanceof SpotFeatureDependencies )
+		{
+			for ( final String dependency : ( ( SpotFeatureDependencies ) factory ).getDependencies() )
+			{
+				final SpotAnalyzerFactory< ? > other = pendingSpotFeatures.get( dependency );
+				if ( null != other )
+					require( other, factories, required );
+			}
+		}
+		else
+		{
+			for ( final SpotAnalyzerFactory< ? > other : factories )
+			{
+				if ( other == factory )
+					break;
+				if ( pendingSpotFeatures.containsValue( other ) )
+					require( other, factories, required );
+			}
+		}
+	}
+}
@@ -1,6 +1,19 @@
 package fiji.plugin.trackmate.features;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -10,85 +23,306 @@ import fiji.plugin.trackmate.ModelChangeListener;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
+import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactory;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
 import net.imglib2.algorithm.MultiThreaded;
 
 /**
  * A utility class that listens to the change occurring in a model, and updates
- * its spot, edge and track features accordingly. Useful to keep the model in 
+ * its spot, edge and track features accordingly. Useful to keep the model in
  * sync with manual editing.
- *    
+ * <p>
+ * Modified spots, edges and tracks are accumulated in dirty sets, along with
+ * the {@link FeatureInput}s that changed for each of them. By default,
+ * features are recomputed synchronously, as soon as the modification is
+ * notified. With a {@link #setDelay(long) delay} larger than 0, they are
+ * recomputed on a background thread, once no modification has been notified
+ * for this delay, so that a burst of modifications, such as dragging a spot,
+ * triggers a single recomputation. Features are then not up to date when the
+ * model change is notified: listeners that depend on them must wait for the
+ * {@link #addActionListener(ActionListener) update notification}. Only the
+ * analyzers depending on the inputs that changed are run, see
+ * {@link FeatureInputDependent}.
+ * <p>
+ * Recomputation holds the lock of the model, so it does not run concurrently
+ * with a model modification.
+ *
  * @author Jean-Yves Tinevez - 2013
  */
 public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 {
 
+	/**
+	 * A delay before recomputing features suitable for interactive editing,
+	 * in ms.
+	 */
+	public static final long INTERACTIVE_DELAY = 100;
+
+	/**
+	 * Features are recomputed at least once every this number of delays, even
+	 * if modifications keep coming.
+	 */
+	private static final int MAX_DELAYS = 5;
+
+	private static final int ALL_INPUTS = ( 1 << FeatureInput.values().length ) - 1;
+
+	private static final int POSITION = 1 << FeatureInput.POSITION.ordinal();
+
+	private static final int RADIUS = 1 << FeatureInput.RADIUS.ordinal();
+
+	private static final int LINKS = 1 << FeatureInput.LINKS.ordinal();
+
 	private final SpotFeatureCalculator spotFeatureCalculator;
+
 	private final EdgeFeatureCalculator edgeFeatureCalculator;
+
 	private final TrackFeatureCalculator trackFeatureCalculator;
+
 	private final Model model;
 
+	private final Settings settings;
+
 	private int numThreads;
 
+	private long delay = 0;
+
+	/** The inputs changed for each dirty spot, as a bit mask. */
+	private final Map< Spot, Integer > dirtySpots = new HashMap< >();
+
+	/** The inputs changed for each dirty edge, as a bit mask. */
+	private final Map< DefaultWeightedEdge, Integer > dirtyEdges = new HashMap< >();
+
+	/** The inputs changed for each dirty track, as a bit mask. */
+	private final Map< Integer, Integer > dirtyTracks = new HashMap< >();
+
+	/**
+	 * The position and radius of the spots when they were last notified, or
+	 * when the updater was created, to find out what changed when they are
+	 * modified.
+	 */
+	private final Map< Spot, double[] > lastInputs = new HashMap< >();
+
+	private final List< ActionListener > listeners = new CopyOnWriteArrayList< >();
+
+	private ScheduledExecutorService executor;
+
+	private ScheduledFuture< ? > pending;
+
+	private long firstPendingTime;
+
 	/**
-	 * Constructs and activate a {@link ModelFeatureUpdater}. The new instance is 
+	 * Constructs and activate a {@link ModelFeatureUpdater}. The new instance is
 	 * registered to listen to model changes, and update its feature.
-	 * @param model  the model to listen to. 
-	 * @param settings the {@link Settings} the model is built against. Required 
+	 * @param model  the model to listen to.
+	 * @param settings the {@link Settings} the model is built against. Required
 	 * to access the raw data.
 	 */
-	public ModelFeatureUpdater(Model model, Settings settings) {
+	public ModelFeatureUpdater( final Model model, final Settings settings )
+	{
 		this.model = model;
-		this.spotFeatureCalculator = new SpotFeatureCalculator(model, settings);
-		this.edgeFeatureCalculator = new EdgeFeatureCalculator(model, settings);
-		this.trackFeatureCalculator = new TrackFeatureCalculator(model, settings);
-		model.addModelChangeListener(this);
+		this.settings = settings;
+		this.spotFeatureCalculator = new SpotFeatureCalculator( model, settings );
+		this.edgeFeatureCalculator = new EdgeFeatureCalculator( model, settings );
+		this.trackFeatureCalculator = new TrackFeatureCalculator( model, settings );
+		rememberInputs();
+		model.addModelChangeListener( this );
 		setNumThreads();
 	}
 
 	/**
-	 * Updates the model features against the change notified here.
-	 * If the event is not a {@link ModelChangeEvent#MODEL_MODIFIED},
-	 * does nothing.
+	 * Marks the objects of the change notified here for feature update. If the
+	 * event is not a {@link ModelChangeEvent#MODEL_MODIFIED}, does nothing,
+	 * except taking the new spots into account when they are all replaced.
 	 */
 	@Override
-	public void modelChanged(ModelChangeEvent event) {
-		if (event.getEventID() != ModelChangeEvent.MODEL_MODIFIED) {
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		if ( event.getEventID() == ModelChangeEvent.SPOTS_COMPUTED )
+		{
+			synchronized ( this )
+			{
+				dirtySpots.clear();
+				rememberInputs();
+			}
 			return;
 		}
+		if ( event.getEventID() != ModelChangeEvent.MODEL_MODIFIED ) { return; }
+
+		final boolean now;
+		synchronized ( this )
+		{
+			boolean linksChanged = false;
+			for ( final Spot spot : event.getSpots() )
+			{
+				switch ( event.getSpotFlag( spot ) )
+				{
+				case ModelChangeEvent.FLAG_SPOT_REMOVED:
+					dirtySpots.remove( spot );
+					lastInputs.remove( spot );
+					linksChanged = true;
+					continue;
+				case ModelChangeEvent.FLAG_SPOT_MODIFIED:
+					mark( dirtySpots, spot, changedInputs( spot ) );
+					break;
+				default:
+					mark( dirtySpots, spot, ALL_INPUTS );
+					break;
+				}
+				lastInputs.put( spot, inputsOf( spot ) );
+			}
+
+			final TrackModel trackModel = model.getTrackModel();
+			for ( final DefaultWeightedEdge edge : event.getEdges() )
+			{
+				switch ( event.getEdgeFlag( edge ) )
+				{
+				case ModelChangeEvent.FLAG_EDGE_REMOVED:
+					dirtyEdges.remove( edge );
+					linksChanged = true;
+					break;
+				case ModelChangeEvent.FLAG_EDGE_MODIFIED:
+				{
+					/*
+					 * Edges are modified when their weight changes, or when
+					 * one of their spots is modified.
+					 */
+					final Integer source = dirtySpots.get( trackModel.getEdgeSource( edge ) );
+					final Integer target = dirtySpots.get( trackModel.getEdgeTarget( edge ) );
+					int inputs = 0;
+					if ( null != source )
+						inputs |= source.intValue();
+					if ( null != target )
+						inputs |= target.intValue();
+					mark( dirtyEdges, edge, inputs == 0 ? LINKS : inputs );
+					break;
+				}
+				default:
+					mark( dirtyEdges, edge, ALL_INPUTS );
+					linksChanged = true;
+					break;
+				}
+			}
 
-		// Build spot list
-		ArrayList<Spot> spots = new ArrayList<>(event.getSpots().size());
-		for (Spot spot : event.getSpots()) {
-			if (event.getSpotFlag(spot) != ModelChangeEvent.FLAG_SPOT_REMOVED) {
-				spots.add(spot);
+			if ( linksChanged )
+			{
+				for ( final Integer trackID : event.getTrackUpdated() )
+					mark( dirtyTracks, trackID, LINKS );
 			}
+
+			now = delay <= 0;
+			if ( !now )
+				schedule();
 		}
-		SpotCollection sc = SpotCollection.fromCollection(spots);
-		
-		// Build edge list
-		ArrayList<DefaultWeightedEdge> edges = new ArrayList<>(event.getEdges().size());
-		for (DefaultWeightedEdge edge : event.getEdges()) {
-			if (event.getEdgeFlag(edge) != ModelChangeEvent.FLAG_EDGE_REMOVED) {
-				edges.add(edge);
+
+		if ( now )
+			update();
+	}
+
+	/**
+	 * Recomputes now the features of the objects modified since the last
+	 * update, and notifies the listeners. Does nothing if there are none.
+	 */
+	public void update()
+	{
+		final Map< Spot, Integer > spots;
+		final Map< DefaultWeightedEdge, Integer > edges;
+		final Map< Integer, Integer > tracks;
+		synchronized ( this )
+		{
+			if ( null != pending )
+			{
+				pending.cancel( false );
+				pending = null;
 			}
+			if ( dirtySpots.isEmpty() && dirtyEdges.isEmpty() && dirtyTracks.isEmpty() )
+				return;
+
+			spots = new HashMap< >( dirtySpots );
+			edges = new HashMap< >( dirtyEdges );
+			tracks = new HashMap< >( dirtyTracks );
+			dirtySpots.clear();
+			dirtyEdges.clear();
+			dirtyTracks.clear();
+		}
+
+		synchronized ( model )
+		{
+			recompute( spots, edges, tracks );
+			pruneLastInputs();
 		}
 
-		// Update spot features
-		spotFeatureCalculator.computeSpotFeatures(sc, false);
-		
-		// Update edge features
-		edgeFeatureCalculator.computeEdgesFeatures(edges, false);
-		
-		// Update track features
-		trackFeatureCalculator.computeTrackFeatures(event.getTrackUpdated(), false);
+		final ActionEvent event = new ActionEvent( this, 0, "Features updated" );
+		for ( final ActionListener listener : listeners )
+			listener.actionPerformed( event );
 	}
-	
+
+	/**
+	 * Sets the delay without model modification after which features are
+	 * recomputed. With a delay of 0, the default, features are recomputed
+	 * synchronously, when the modification is notified.
+	 *
+	 * @param delay
+	 *            the delay, in ms.
+	 */
+	public void setDelay( final long delay )
+	{
+		this.delay = delay;
+	}
+
+	/**
+	 * Returns the delay without model modification after which features are
+	 * recomputed, in ms.
+	 *
+	 * @return the delay.
+	 */
+	public long getDelay()
+	{
+		return delay;
+	}
+
+	/**
+	 * Registers a listener, notified after each feature update. Listeners are
+	 * notified on the thread that updated the features, which is not the
+	 * thread that modified the model unless the delay is 0.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addActionListener( final ActionListener listener )
+	{
+		listeners.add( listener );
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 * @return <code>true</code> if the listener was registered.
+	 */
+	public boolean removeActionListener( final ActionListener listener )
+	{
+		return listeners.remove( listener );
+	}
+
 	/**
 	 * Re-registers this instance from the listeners of the model, and stop
-	 * updating its features.
+	 * updating its features. Pending updates are done before returning.
 	 */
-	public void quit() {
-		model.removeModelChangeListener(this);
+	public void quit()
+	{
+		model.removeModelChangeListener( this );
+		update();
+		synchronized ( this )
+		{
+			if ( null != executor )
+			{
+				executor.shutdown();
+				executor = null;
+			}
+		}
 	}
 
 	@Override
@@ -104,7 +338,7 @@ public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 	}
 
 	@Override
-	public void setNumThreads( int numThreads )
+	public void setNumThreads( final int numThreads )
 	{
 		this.numThreads = numThreads;
 		spotFeatureCalculator.setNumThreads( numThreads );
@@ -112,4 +346,216 @@ public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 		trackFeatureCalculator.setNumThreads( numThreads );
 	}
 
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Schedules an update after the delay, pushing back the update already
+	 * scheduled unless it has been waiting for too long. Must be called while
+	 * holding the lock on this instance.
+	 */
+	private void schedule()
+	{
+		final long now = System.currentTimeMillis();
+		if ( null != pending )
+		{
+			if ( now - firstPendingTime >= MAX_DELAYS * delay )
+				return;
+			pending.cancel( false );
+		}
+		else
+		{
+			firstPendingTime = now;
+		}
+
+		if ( null == executor )
+		{
+			executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+			{
+				@Override
+				public Thread newThread( final Runnable r )
+				{
+					final Thread thread = new Thread( r, "TrackMate feature updater" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+		pending = executor.schedule( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				update();
+			}
+		}, delay, TimeUnit.MILLISECONDS );
+	}
+
+	private void recompute( final Map< Spot, Integer > spots, final Map< DefaultWeightedEdge, Integer > edges, final Map< Integer, Integer > tracks )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Tracks of the modified spots and edges.
+		for ( final Spot spot : spots.keySet() )
+		{
+			final Integer trackID = trackModel.trackIDOf( spot );
+			if ( null != trackID )
+				mark( tracks, trackID, spots.get( spot ).intValue() );
+		}
+		final Set< DefaultWeightedEdge > edgeSet = trackModel.edgeSet();
+		for ( final DefaultWeightedEdge edge : new ArrayList< >( edges.keySet() ) )
+		{
+			// Edges removed since they were marked.
+			if ( !edgeSet.contains( edge ) )
+			{
+				edges.remove( edge );
+				continue;
+			}
+			final Integer trackID = trackModel.trackIDOf( edge );
+			if ( null != trackID )
+				mark( tracks, trackID, edges.get( edge ).intValue() );
+		}
+		// Tracks merged or deleted since they were marked.
+		tracks.keySet().retainAll( trackModel.trackIDs( false ) );
+
+		// Spot features, grouped by changed inputs.
+		final List< SpotAnalyzerFactory< ? > > spotFactories = settings.getSpotAnalyzerFactories();
+		for ( final Map.Entry< Integer, List< Spot > > entry : groupByInputs( spots ).entrySet() )
+		{
+			final List< SpotAnalyzerFactory< ? > > factories = select( spotFactories, entry.getKey().intValue() );
+			if ( !factories.isEmpty() )
+				spotFeatureCalculator.computeSpotFeatures( SpotCollection.fromCollection( entry.getValue() ), factories, false );
+		}
+
+		// Edge features.
+		final List< EdgeAnalyzer > edgeAnalyzers = settings.getEdgeAnalyzers();
+		for ( final Map.Entry< Integer, List< DefaultWeightedEdge > > entry : groupByInputs( edges ).entrySet() )
+		{
+			final List< EdgeAnalyzer > analyzers = select( edgeAnalyzers, entry.getKey().intValue() );
+			if ( !analyzers.isEmpty() )
+				edgeFeatureCalculator.computeEdgesFeatures( entry.getValue(), analyzers, false );
+		}
+
+		// Track features.
+		final List< TrackAnalyzer > trackAnalyzers = settings.getTrackAnalyzers();
+		for ( final Map.Entry< Integer, List< Integer > > entry : groupByInputs( tracks ).entrySet() )
+		{
+			final List< TrackAnalyzer > analyzers = select( trackAnalyzers, entry.getKey().intValue() );
+			if ( !analyzers.isEmpty() )
+				trackFeatureCalculator.computeTrackFeatures( entry.getValue(), analyzers, false );
+		}
+	}
+
+	/**
+	 * Stores the position and radius of all the spots of the model, forgetting
+	 * any other spot.
+	 */
+	private synchronized void rememberInputs()
+	{
+		lastInputs.clear();
+		for ( final Spot spot : model.getSpots().iterable( false ) )
+			lastInputs.put( spot, inputsOf( spot ) );
+	}
+
+	/**
+	 * Forgets the spots that are not in the model anymore, once they outnumber
+	 * the spots of the model. Spots removed without notification, for instance
+	 * with a new spot collection, would otherwise be kept forever.
+	 */
+	private void pruneLastInputs()
+	{
+		final SpotCollection modelSpots = model.getSpots();
+		synchronized ( this )
+		{
+			if ( lastInputs.size() <= modelSpots.getNSpots( false ) )
+				return;
+
+			final Set< Spot > current = new HashSet< >( modelSpots.getNSpots( false ) );
+			for ( final Spot spot : modelSpots.iterable( false ) )
+				current.add( spot );
+			lastInputs.keySet().retainAll( current );
+		}
+	}
+
+	/**
+	 * Returns the inputs of the specified spot that changed since it was last
+	 * notified, as a bit mask. If we cannot tell, returns all inputs.
+	 */
+	private int changedInputs( final Spot spot )
+	{
+		final double[] last = lastInputs.get( spot );
+		if ( null == last )
+			return ALL_INPUTS;
+
+		final double[] current = inputsOf( spot );
+		int inputs = 0;
+		for ( int d = 0; d < 3; d++ )
+		{
+			if ( Double.compare( last[ d ], current[ d ] ) != 0 )
+				inputs |= POSITION;
+		}
+		if ( Double.compare( last[ 3 ], current[ 3 ] ) != 0 )
+			inputs |= RADIUS;
+
+		// Some other feature was modified, which analyzers may depend on.
+		return inputs == 0 ? ALL_INPUTS : inputs;
+	}
+
+	private static double[] inputsOf( final Spot spot )
+	{
+		return new double[] {
+				spot.getFeature( Spot.POSITION_X ).doubleValue(),
+				spot.getFeature( Spot.POSITION_Y ).doubleValue(),
+				spot.getFeature( Spot.POSITION_Z ).doubleValue(),
+				spot.getFeature( Spot.RADIUS ).doubleValue() };
+	}
+
+	private static < K > void mark( final Map< K, Integer > dirty, final K key, final int inputs )
+	{
+		final Integer previous = dirty.get( key );
+		dirty.put( key, Integer.valueOf( null == previous ? inputs : previous.intValue() | inputs ) );
+	}
+
+	private static < K > Map< Integer, List< K > > groupByInputs( final Map< K, Integer > dirty )
+	{
+		final Map< Integer, List< K > > groups = new HashMap< >();
+		for ( final Map.Entry< K, Integer > entry : dirty.entrySet() )
+		{
+			List< K > group = groups.get( entry.getValue() );
+			if ( null == group )
+			{
+				group = new ArrayList< >();
+				groups.put( entry.getValue(), group );
+			}
+			group.add( entry.getKey() );
+		}
+		return groups;
+	}
+
+	/**
+	 * Returns the analyzers that depend on at least one of the specified
+	 * inputs.
+	 */
+	private static < A > List< A > select( final List< A > analyzers, final int inputs )
+	{
+		final List< A > selected = new ArrayList< >( analyzers.size() );
+		for ( final A analyzer : analyzers )
+		{
+			if ( ( inputsOf( analyzer ) & inputs ) != 0 )
+				selected.add( analyzer );
+		}
+		return selected;
+	}
+
+	private static int inputsOf( final Object analyzer )
+	{
+		if ( !( analyzer instanceof FeatureInputDependent ) )
+			return ALL_INPUTS;
+
+		int inputs = 0;
+		for ( final FeatureInput input : ( ( FeatureInputDependent ) analyzer ).getInputs() )
+			inputs |= 1 << input.ordinal();
+		return inputs;
+	}
 }
@@ -0,0 +1,43 @@
+package fiji.plugin.trackmate.features;
+
+import fiji.plugin.trackmate.util.StreamingStatistics;
+
+/**
+ * Interface for analyzers that compute order statistics, such as medians,
+ * over sets of values that can be arbitrarily large.
+ * <p>
+ * Such analyzers compute these statistics exactly for sets of up to
+ * {@link #getMaxExactValues()} values, and estimate them in constant memory
+ * for larger sets. Means and standard deviations are always exact.
+ *
+ * @see StreamingStatistics
+ */
+public interface OrderStatisticsAnalyzer
+{
+
+	/**
+	 * The default max number of values for which order statistics are
+	 * computed exactly.
+	 */
+	public static final int DEFAULT_MAX_EXACT_VALUES = 100000;
+
+	/**
+	 * Sets the max number of values for which order statistics are computed
+	 * exactly. Beyond, they are estimated with a streaming sketch.
+	 *
+	 * @param maxExactValues
+	 *            the max number of values. Use 0 to always estimate order
+	 *            statistics, and {@link Integer#MAX_VALUE} to always compute
+	 *            them exactly.
+	 */
+	public void setMaxExactValues( final int maxExactValues );
+
+	/**
+	 * Returns the max number of values for which order statistics are
+	 * computed exactly.
+	 *
+	 * @return the max number of values.
+	 */
+	public int getMaxExactValues();
+
+}
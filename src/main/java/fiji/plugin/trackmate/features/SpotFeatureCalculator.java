@@ -6,11 +6,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.imagej.ImgPlus;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
-import net.imglib2.multithreading.SimpleMultiThreading;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
@@ -20,11 +21,19 @@ import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.features.spot.IndependentSpotFeatureAnalyzer;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzer;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotFeatureDependencies;
+import fiji.plugin.trackmate.features.spot.SpotIntensityAndContrastAnalyzerFactory;
 import fiji.plugin.trackmate.util.TMUtils;
 
 /**
  * A class dedicated to centralizing the calculation of the numerical features
  * of spots, through {@link SpotAnalyzer}s.
+ * <p>
+ * Work is split per frame and, for large frames, per chunk of spots, and run
+ * on a fork-join pool. Factories are grouped in stages according to the
+ * features they depend on (see {@link SpotFeatureDependencies}): the
+ * analyzers of a stage run concurrently, after the ones of the previous
+ * stages.
  * 
  * @author Jean-Yves Tinevez - 2013
  * 
@@ -35,6 +44,12 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 
 	private static final String BASE_ERROR_MSG = "[SpotFeatureCalculator] ";
 
+	/** Min number of spots processed by a single task. */
+	private static final int MIN_SPOTS_PER_TASK = 64;
+
+	/** Target number of tasks per thread, for load balancing. */
+	private static final int TASKS_PER_THREAD = 8;
+
 	private final Settings settings;
 
 	private final Model model;
@@ -78,7 +93,22 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 	{
 		final long start = System.currentTimeMillis();
 
-		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Declares the spot features configured in the {@link Settings} in the
+	 * feature model, without computing them.
+	 */
+	public void declareFeatures()
+	{
 		for ( final SpotAnalyzerFactory< ? > factory : settings.getSpotAnalyzerFactories() )
 		{
 			final Collection< String > features = factory.getFeatures();
@@ -88,13 +118,6 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 			final Map< String, Boolean > isIntFeature = factory.getIsIntFeature();
 			model.getFeatureModel().declareSpotFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), true );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/**
@@ -108,6 +131,16 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 		computeSpotFeaturesAgent( toCompute, spotFeatureAnalyzers, doLogIt );
 	}
 
+	/**
+	 * Calculates the spot features of the specified factories for the
+	 * specified spot collection. The factories should be taken from the
+	 * {@link Settings} object.
+	 */
+	public void computeSpotFeatures( final SpotCollection toCompute, final List< SpotAnalyzerFactory< ? > > factories, final boolean doLogIt )
+	{
+		computeSpotFeaturesAgent( toCompute, factories, doLogIt );
+	}
+
 	/**
 	 * The method in charge of computing spot features with the given
 	 * {@link SpotAnalyzer}s, for the given {@link SpotCollection}.
@@ -131,13 +164,13 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 		if ( settings.imp == null )
 			return;
 
-		// Do it.
-		final List< Integer > frameSet = new ArrayList<>( toCompute.keySet() );
-		final int numFrames = frameSet.size();
+		/*
+		 * Intensity and contrast features are computed by a single analyzer
+		 * when both are configured.
+		 */
+		final List< SpotAnalyzerFactory< ? > > factories = SpotIntensityAndContrastAnalyzerFactory.fuse( analyzerFactories );
 
-		final AtomicInteger ai = new AtomicInteger( 0 );
-		final AtomicInteger progress = new AtomicInteger( 0 );
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		final List< List< SpotAnalyzerFactory< ? > > > stages = scheduleStages( factories );
 
 		int tc = 0;
 		if ( settings != null && settings.detectorSettings != null )
@@ -155,55 +188,218 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 		@SuppressWarnings( "rawtypes" )
 		final ImgPlus img = TMUtils.rawWraps( settings.imp );
 
-		// Prepare the thread array
-		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		// Spots to compute, per frame.
+		final List< Integer > frameSet = new ArrayList<>( toCompute.keySet() );
+		final List< Spot[] > frameSpots = new ArrayList<>( frameSet.size() );
+		long nSpots = 0;
+		for ( final Integer frame : frameSet )
 		{
+			final List< Spot > list = new ArrayList<>( toCompute.getNSpots( frame, false ) );
+			for ( final Spot spot : toCompute.iterable( frame, false ) )
+				list.add( spot );
+			frameSpots.add( list.toArray( new Spot[ list.size() ] ) );
+			nSpots += list.size();
+		}
 
-			threads[ ithread ] = new Thread( "TrackMate spot feature calculating thread " + ( 1 + ithread ) + "/" + threads.length )
-			{
+		/*
+		 * Large frames are split in chunks of spots, so that a single frame
+		 * with many spots keeps all threads busy.
+		 */
+		final int grain = ( int ) Math.max( MIN_SPOTS_PER_TASK, nSpots / ( TASKS_PER_THREAD * numThreads ) );
+		final double totalWork = Math.max( 1, nSpots * factories.size() );
+		final AtomicLong progress = new AtomicLong( 0 );
 
-				@Override
-				public void run()
+		logger.setStatus( "Calculating " + toCompute.getNSpots( false ) + " spots features..." );
+		logger.setProgress( 0 );
+
+		final ForkJoinPool pool = new ForkJoinPool( numThreads );
+		try
+		{
+			// Stages are run in order, factories within a stage concurrently.
+			for ( final List< SpotAnalyzerFactory< ? > > stage : stages )
+			{
+				final List< RecursiveAction > tasks = new ArrayList<>( stage.size() * frameSet.size() );
+				for ( int i = 0; i < frameSet.size(); i++ )
 				{
+					final Spot[] spots = frameSpots.get( i );
+					for ( final SpotAnalyzerFactory< ? > factory : stage )
+						tasks.add( new AnalyzerTask( factory, img, frameSet.get( i ), targetChannel, spots, 0, spots.length, grain, progress, totalWork, logger ) );
+				}
+				pool.invoke( new RecursiveAction()
+				{
+					private static final long serialVersionUID = 1L;
 
-					for ( int index = ai.getAndIncrement(); index < numFrames; index = ai.getAndIncrement() )
+					@Override
+					protected void compute()
 					{
-
-						final int frame = frameSet.get( index );
-						for ( final SpotAnalyzerFactory< ? > factory : analyzerFactories )
-						{
-							@SuppressWarnings( "unchecked" )
-							final SpotAnalyzer< ? > analyzer = factory.getAnalyzer( model, img, frame, targetChannel );
-							if ( analyzer instanceof IndependentSpotFeatureAnalyzer )
-							{
-								// Independent: we can process only the spot to update.
-								@SuppressWarnings( "rawtypes" )
-								final IndependentSpotFeatureAnalyzer analyzer2 = ( IndependentSpotFeatureAnalyzer ) analyzer;
-								for ( final Spot spot : toCompute.iterable( frame, false ) )
-								{
-									analyzer2.process( spot );
-								}
-							}
-							else
-							{
-								// Process all spots of the frame at once.
-								analyzer.process();
-							}
-
-						}
-
-						logger.setProgress( progress.incrementAndGet() / ( float ) numFrames );
-					} // Finished looping over frames
-				}
-			};
+						invokeAll( tasks );
+					}
+				} );
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+			// Spot features were set without a model update.
+			model.getFeatureModel().invalidateSpotFeatureColumns();
 		}
-		logger.setStatus( "Calculating " + toCompute.getNSpots( false ) + " spots features..." );
-		logger.setProgress( 0 );
-
-		SimpleMultiThreading.startAndJoin( threads );
 
 		logger.setProgress( 1 );
 		logger.setStatus( "" );
 	}
 
+	/**
+	 * Groups the specified factories in stages. The analyzers of a factory
+	 * only depend on features computed by the factories of earlier stages, so
+	 * the factories of a stage can run concurrently. The factories keep their
+	 * order within each stage.
+	 *
+	 * @param factories
+	 *            the factories to schedule, in configuration order.
+	 * @return the list of stages.
+	 * @see SpotFeatureDependencies
+	 */
+	static List< List< SpotAnalyzerFactory< ? > > > scheduleStages( final List< SpotAnalyzerFactory< ? > > factories )
+	{
+		final int[] stage = new int[ factories.size() ];
+		int nStages = 0;
+		for ( int i = 0; i < factories.size(); i++ )
+		{
+			for ( int j = 0; j < i; j++ )
+			{
+				if ( stage[ j ] >= stage[ i ] && dependsOn( factories.get( i ), factories.get( j ) ) )
+					stage[ i ] = stage[ j ] + 1;
+			}
+			nStages = Math.max( nStages, stage[ i ] + 1 );
+		}
+
+		final List< List< SpotAnalyzerFactory< ? > > > stages = new ArrayList<>( nStages );
+		for ( int s = 0; s < nStages; s++ )
+			stages.add( new ArrayList< SpotAnalyzerFactory< ? > >() );
+		for ( int i = 0; i < factories.size(); i++ )
+			stages.get( stage[ i ] ).add( factories.get( i ) );
+		return stages;
+	}
+
+	private static boolean dependsOn( final SpotAnalyzerFactory< ? > factory, final SpotAnalyzerFactory< ? > other )
+	{
+		if ( !( factory instanceof SpotFeatureDependencies ) )
+			return true;
+
+		final Collection< String > features = other.getFeatures();
+		for ( final String dependency : ( ( SpotFeatureDependencies ) factory ).getDependencies() )
+		{
+			if ( features.contains( dependency ) )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the analyzer of a factory on a range of the spots of a frame,
+	 * splitting it in halves while it is larger than the grain.
+	 * <p>
+	 * The task of a whole frame creates an analyzer to learn whether it is an
+	 * {@link IndependentSpotFeatureAnalyzer}. If so, the range is split first
+	 * and each leaf task creates its own analyzer, except the first leaf that
+	 * reuses the one of the frame task.
+	 */
+	private final class AnalyzerTask extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final SpotAnalyzerFactory< ? > factory;
+
+		@SuppressWarnings( "rawtypes" )
+		private final ImgPlus img;
+
+		private final int frame;
+
+		private final int targetChannel;
+
+		private final Spot[] spots;
+
+		private final int from;
+
+		private final int to;
+
+		private final int grain;
+
+		private final AtomicLong progress;
+
+		private final double totalWork;
+
+		private final Logger logger;
+
+		private final boolean independent;
+
+		private final SpotAnalyzer< ? > analyzer;
+
+		@SuppressWarnings( "rawtypes" )
+		public AnalyzerTask( final SpotAnalyzerFactory< ? > factory, final ImgPlus img, final int frame, final int targetChannel, final Spot[] spots, final int from, final int to, final int grain, final AtomicLong progress, final double totalWork, final Logger logger )
+		{
+			this( factory, img, frame, targetChannel, spots, from, to, grain, progress, totalWork, logger, false, null );
+		}
+
+		@SuppressWarnings( "rawtypes" )
+		private AnalyzerTask( final SpotAnalyzerFactory< ? > factory, final ImgPlus img, final int frame, final int targetChannel, final Spot[] spots, final int from, final int to, final int grain, final AtomicLong progress, final double totalWork, final Logger logger, final boolean independent, final SpotAnalyzer< ? > analyzer )
+		{
+			this.factory = factory;
+			this.img = img;
+			this.frame = frame;
+			this.targetChannel = targetChannel;
+			this.spots = spots;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.progress = progress;
+			this.totalWork = totalWork;
+			this.logger = logger;
+			this.independent = independent;
+			this.analyzer = analyzer;
+		}
+
+		@Override
+		protected void compute()
+		{
+			// Split tasks only get an analyzer once they are leaves.
+			SpotAnalyzer< ? > analyzer = this.analyzer;
+			if ( null == analyzer && !independent )
+				analyzer = createAnalyzer();
+
+			if ( independent || analyzer instanceof IndependentSpotFeatureAnalyzer )
+			{
+				if ( to - from > grain )
+				{
+					final int mid = ( from + to ) >>> 1;
+					invokeAll(
+							new AnalyzerTask( factory, img, frame, targetChannel, spots, from, mid, grain, progress, totalWork, logger, true, analyzer ),
+							new AnalyzerTask( factory, img, frame, targetChannel, spots, mid, to, grain, progress, totalWork, logger, true, null ) );
+					return;
+				}
+				if ( null == analyzer )
+					analyzer = createAnalyzer();
+
+				// Independent: we can process only the spot to update.
+				@SuppressWarnings( "rawtypes" )
+				final IndependentSpotFeatureAnalyzer analyzer2 = ( IndependentSpotFeatureAnalyzer ) analyzer;
+				for ( int i = from; i < to; i++ )
+					analyzer2.process( spots[ i ] );
+			}
+			else
+			{
+				// Process all spots of the frame at once.
+				analyzer.process();
+			}
+			logger.setProgress( progress.addAndGet( to - from ) / totalWork );
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private SpotAnalyzer< ? > createAnalyzer()
+		{
+			return factory.getAnalyzer( model, img, frame, targetChannel );
+		}
+	}
+
 }
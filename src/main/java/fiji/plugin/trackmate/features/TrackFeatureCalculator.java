@@ -4,8 +4,11 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.features.track.StreamingTrackAnalyzer;
 import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackFeatureEngine;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -63,7 +66,22 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 	{
 		final long start = System.currentTimeMillis();
 
-		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		computeTrackFeaturesAgent( model.getTrackModel().trackIDs( false ), settings.getTrackAnalyzers(), true );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Declares the track features configured in the {@link Settings} in the
+	 * feature model, without computing them.
+	 */
+	public void declareFeatures()
+	{
 		for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
 		{
 			final Collection< String > features = analyzer.getFeatures();
@@ -73,13 +91,6 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 			final Map< String, Boolean > isIntFeature = analyzer.getIsIntFeature();
 			model.getFeatureModel().declareTrackFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeTrackFeaturesAgent( model.getTrackModel().trackIDs( false ), settings.getTrackAnalyzers(), true );
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
 
 	/**
@@ -92,12 +103,25 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 		computeTrackFeaturesAgent( trackIDs, trackFeatureAnalyzers, doLogIt );
 	}
 
+	/**
+	 * Calculates the track features of the specified analyzers for the tracks
+	 * with the specified IDs. The analyzers should be taken from the
+	 * {@link Settings} object.
+	 */
+	public void computeTrackFeatures( final Collection< Integer > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
+	{
+		computeTrackFeaturesAgent( trackIDs, analyzers, doLogIt );
+	}
+
 	/*
 	 * PRIVATE METHODS
 	 */
 
 	/**
 	 * Calculate all features for the tracks with the given IDs.
+	 * <p>
+	 * The local {@link StreamingTrackAnalyzer}s are run together, in a single
+	 * pass over the tracks. The other analyzers are run one after the other.
 	 */
 	private void computeTrackFeaturesAgent( final Collection< Integer > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
 	{
@@ -107,6 +131,8 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 			logger.log( "Computing track features:\n", Logger.BLUE_COLOR );
 		}
 
+		final List< StreamingTrackAnalyzer > streaming = new ArrayList< >();
+		final List< TrackAnalyzer > others = new ArrayList< >();
 		for ( final TrackAnalyzer analyzer : analyzers )
 		{
 			if ( analyzer.isManualFeature() )
@@ -114,7 +140,33 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 				// Skip manual analyzers
 				continue;
 			}
+			if ( analyzer.isLocal() && analyzer instanceof StreamingTrackAnalyzer )
+				streaming.add( ( StreamingTrackAnalyzer ) analyzer );
+			else
+				others.add( analyzer );
+		}
+
+		if ( !streaming.isEmpty() )
+		{
+			final long start = System.currentTimeMillis();
+			TrackFeatureEngine.process( streaming, trackIDs, model, numThreads );
+			final long end = System.currentTimeMillis();
+			if ( doLogIt )
+			{
+				final StringBuilder str = new StringBuilder( "  - " );
+				for ( int i = 0; i < streaming.size(); i++ )
+				{
+					if ( i > 0 )
+						str.append( ", " );
+					str.append( streaming.get( i ).getName() );
+				}
+				str.append( " in " + ( end - start ) + " ms.\n" );
+				logger.log( str.toString() );
+			}
+		}
 
+		for ( final TrackAnalyzer analyzer : others )
+		{
 			analyzer.setNumThreads( numThreads );
 			if ( analyzer.isLocal() )
 			{
@@ -129,5 +181,7 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 
 		}
+		// Track features were stored without a model update.
+		model.getFeatureModel().invalidateTrackFeatureColumns();
 	}
 }
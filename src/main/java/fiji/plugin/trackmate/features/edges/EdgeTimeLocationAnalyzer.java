@@ -2,9 +2,12 @@ package fiji.plugin.trackmate.features.edges;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
@@ -18,12 +21,16 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = EdgeAnalyzer.class )
-public class EdgeTimeLocationAnalyzer implements EdgeAnalyzer
+public class EdgeTimeLocationAnalyzer implements EdgeAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.FRAME, FeatureInput.LINKS ) );
+
 	public static final String KEY = "Edge mean location";
 
 	/*
@@ -224,4 +231,10 @@ public class EdgeTimeLocationAnalyzer implements EdgeAnalyzer
 	{
 		return false;
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
 }
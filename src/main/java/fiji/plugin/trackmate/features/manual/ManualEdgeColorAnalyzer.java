@@ -2,14 +2,19 @@ package fiji.plugin.trackmate.features.manual;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
 import fiji.plugin.trackmate.visualization.TrackMateModelView;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -17,9 +22,11 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 @Plugin( type = EdgeAnalyzer.class )
-public class ManualEdgeColorAnalyzer implements EdgeAnalyzer
+public class ManualEdgeColorAnalyzer implements EdgeAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.noneOf( FeatureInput.class ) );
+
 	public static final String FEATURE = "MANUAL_COLOR";
 
 	public static final String KEY = "MANUAL_EDGE_COLOR_ANALYZER";
@@ -138,6 +145,7 @@ public class ManualEdgeColorAnalyzer implements EdgeAnalyzer
 				model.getFeatureModel().putEdgeFeature( edge, FEATURE, DEFAULT_COLOR_VALUE );
 			}
 		}
+		model.getFeatureModel().invalidateTrackFeatureColumns();
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
@@ -153,4 +161,10 @@ public class ManualEdgeColorAnalyzer implements EdgeAnalyzer
 	{
 		return true;
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
 }
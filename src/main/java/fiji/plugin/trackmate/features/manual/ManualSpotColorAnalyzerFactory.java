@@ -1,9 +1,13 @@
 package fiji.plugin.trackmate.features.manual;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -16,14 +20,19 @@ import org.scijava.plugin.Plugin;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzer;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotFeatureDependencies;
 import fiji.plugin.trackmate.visualization.TrackMateModelView;
 
 @Plugin( type = SpotAnalyzerFactory.class )
-public class ManualSpotColorAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >
+public class ManualSpotColorAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >, SpotFeatureDependencies, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.noneOf( FeatureInput.class ) );
+
 	public static final String FEATURE = "MANUAL_COLOR";
 
 	public static final String KEY = "MANUAL_SPOT_COLOR_ANALYZER";
@@ -101,6 +110,12 @@ public class ManualSpotColorAnalyzerFactory< T extends RealType< T > & NativeTyp
 		return true;
 	}
 
+	@Override
+	public Collection< String > getDependencies()
+	{
+		return Collections.emptyList();
+	}
+
 	@Override
 	public ImageIcon getIcon()
 	{
@@ -156,4 +171,10 @@ public class ManualSpotColorAnalyzerFactory< T extends RealType< T > & NativeTyp
 			}
 				};
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
 }
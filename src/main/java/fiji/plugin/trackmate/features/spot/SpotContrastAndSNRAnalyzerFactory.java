@@ -1,10 +1,15 @@
 package fiji.plugin.trackmate.features.spot;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -18,6 +23,8 @@ import org.scijava.plugin.Plugin;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 /**
  * A factory for {@link SpotContrastAndSNRAnalyzer}s. Because the analyzers of
@@ -29,9 +36,11 @@ import fiji.plugin.trackmate.Spot;
  */
 @SuppressWarnings( "deprecation" )
 @Plugin( type = SpotAnalyzerFactory.class, priority = 1d )
-public class SpotContrastAndSNRAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >
+public class SpotContrastAndSNRAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >, SpotFeatureDependencies, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.RADIUS, FeatureInput.FRAME ) );
+
 	/*
 	 * FIELDS
 	 */
@@ -67,6 +76,9 @@ public class SpotContrastAndSNRAnalyzerFactory< T extends RealType< T > & Native
 
 	public static final String KEY = "Spot contrast and SNR";
 
+	/** The intensity features read by the analyzers of this factory. */
+	private static final List< String > DEPENDENCIES = Arrays.asList( SpotIntensityAnalyzerFactory.MEAN_INTENSITY, SpotIntensityAnalyzerFactory.STANDARD_DEVIATION );
+
 
 	/*
 	 * METHODS
@@ -140,4 +152,16 @@ public class SpotContrastAndSNRAnalyzerFactory< T extends RealType< T > & Native
 	{
 		return false;
 	}
+
+	@Override
+	public Collection< String > getDependencies()
+	{
+		return DEPENDENCIES;
+	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
 }
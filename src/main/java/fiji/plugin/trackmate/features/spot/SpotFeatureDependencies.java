@@ -0,0 +1,29 @@
+package fiji.plugin.trackmate.features.spot;
+
+import java.util.Collection;
+
+/**
+ * Interface for {@link SpotAnalyzerFactory}s that declare which features
+ * computed by other factories their analyzers read.
+ * <p>
+ * The {@link fiji.plugin.trackmate.features.SpotFeatureCalculator} runs the
+ * analyzers of a factory only after the ones of the factories computing its
+ * dependencies, and may run the analyzers of independent factories
+ * concurrently. Factories that do not implement this interface are assumed to
+ * depend on all the factories before them in the configured list, as they
+ * used to be run in that order.
+ */
+public interface SpotFeatureDependencies
+{
+
+	/**
+	 * Returns the keys of the spot features that the analyzers of this factory
+	 * read, and that are computed by other factories. Returns an empty
+	 * collection if these analyzers only read the spot position and radius
+	 * and the image.
+	 *
+	 * @return a collection of spot feature keys.
+	 */
+	public Collection< String > getDependencies();
+
+}
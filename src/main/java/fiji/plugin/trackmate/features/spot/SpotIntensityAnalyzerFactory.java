@@ -1,10 +1,14 @@
 package fiji.plugin.trackmate.features.spot;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 
@@ -18,12 +22,16 @@ import org.scijava.plugin.Plugin;
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = SpotAnalyzerFactory.class, priority = 0d )
-public class SpotIntensityAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >
+public class SpotIntensityAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >, SpotFeatureDependencies, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.RADIUS, FeatureInput.FRAME ) );
+
 	/*
 	 * CONSTANTS
 	 */
@@ -181,4 +189,15 @@ public class SpotIntensityAnalyzerFactory< T extends RealType< T > & NativeType<
 		return false;
 	}
 
+	@Override
+	public Collection< String > getDependencies()
+	{
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
 }
@@ -0,0 +1,299 @@
+package fiji.plugin.trackmate.features.spot;
+
+import static fiji.plugin.trackmate.features.spot.SpotContrastAndSNRAnalyzerFactory.CONTRAST;
+import static fiji.plugin.trackmate.features.spot.SpotContrastAndSNRAnalyzerFactory.SNR;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.MAX_INTENSITY;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.MEAN_INTENSITY;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.MEDIAN_INTENSITY;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.MIN_INTENSITY;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.STANDARD_DEVIATION;
+import static fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory.TOTAL_INTENSITY;
+
+import java.util.Iterator;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.SpotNeighborhood;
+import fiji.plugin.trackmate.util.SpotNeighborhoodCursor;
+import net.imagej.ImgPlus;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A {@link fiji.plugin.trackmate.features.FeatureAnalyzer} that computes the
+ * features of the {@link SpotIntensityAnalyzer} and of the
+ * {@link SpotContrastAndSNRAnalyzer} at once, in a single pass over the
+ * neighborhood of twice the spot radius.
+ * <p>
+ * The outer ring used for the contrast and SNR is made of the pixels of this
+ * neighborhood that are further than the spot radius from the spot center,
+ * exactly as in the {@link SpotContrastAndSNRAnalyzer}. The intensity
+ * statistics are computed over the other pixels. These are not exactly the
+ * pixels of the spot neighborhood used by the {@link SpotIntensityAnalyzer}:
+ * on the spot border, the two pixel sets can differ by a few pixels, and so
+ * can the results.
+ * <p>
+ * The median is found by selection rather than by sorting. For integer types
+ * spanning at most {@value #MAX_HISTOGRAM_SIZE} values, it is read from a
+ * histogram instead. The buffers used for this are reused across spots and
+ * frames by each calculating thread.
+ */
+public class SpotIntensityAndContrastAnalyzer< T extends RealType< T > > extends IndependentSpotFeatureAnalyzer< T >
+{
+
+	/**
+	 * Max number of distinct values of integer types for which the median is
+	 * computed with a histogram.
+	 */
+	public static final int MAX_HISTOGRAM_SIZE = 1 << 16;
+
+	private static final ThreadLocal< Buffers > BUFFERS = new ThreadLocal< Buffers >()
+	{
+		@Override
+		protected Buffers initialValue()
+		{
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * The min value of the image type, if the median is computed with a
+	 * histogram. <code>null</code> otherwise.
+	 */
+	private final Long histogramOffset;
+
+	private final int histogramSize;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public SpotIntensityAndContrastAnalyzer( final ImgPlus< T > img, final Iterator< Spot > spots )
+	{
+		super( img, spots );
+		final T type = img.firstElement();
+		final double span = type.getMaxValue() - type.getMinValue() + 1;
+		if ( type instanceof IntegerType && span <= MAX_HISTOGRAM_SIZE )
+		{
+			histogramOffset = Long.valueOf( ( long ) type.getMinValue() );
+			histogramSize = ( int ) span;
+		}
+		else
+		{
+			histogramOffset = null;
+			histogramSize = 0;
+		}
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public final void process( final Spot spot )
+	{
+		final double radius = spot.getFeature( Spot.RADIUS );
+		final Spot largeSpot = new Spot( spot );
+		largeSpot.putFeature( Spot.RADIUS, 2 * radius );
+		final SpotNeighborhood< T > neighborhood = new SpotNeighborhood< >( largeSpot, img );
+		final int size = ( int ) neighborhood.size();
+
+		if ( size <= 1 )
+		{
+			/*
+			 * Hack around a bug in spot iterator causing it to never end if the
+			 * size of the spot is lower than one pixel.
+			 */
+			final SpotNeighborhoodCursor< T > cursor = neighborhood.cursor();
+			cursor.fwd();
+			final double val = cursor.get().getRealDouble();
+
+			spot.putFeature( MEDIAN_INTENSITY, Double.valueOf( val ) );
+			spot.putFeature( MIN_INTENSITY, Double.valueOf( val ) );
+			spot.putFeature( MAX_INTENSITY, Double.valueOf( val ) );
+			spot.putFeature( MEAN_INTENSITY, Double.valueOf( val ) );
+			spot.putFeature( STANDARD_DEVIATION, Double.NaN );
+			spot.putFeature( TOTAL_INTENSITY, Double.valueOf( val ) );
+			spot.putFeature( CONTRAST, Double.NaN );
+			spot.putFeature( SNR, Double.NaN );
+			return;
+		}
+
+		final Buffers buffers = BUFFERS.get();
+		final boolean useHistogram = null != histogramOffset;
+		final int[] histogram = useHistogram ? buffers.histogram( histogramSize ) : null;
+		final long offset = useHistogram ? histogramOffset.longValue() : 0l;
+		final double[] values = useHistogram ? null : buffers.values( size );
+
+		/*
+		 * Single pass over the neighborhood of twice the radius. Pixels within
+		 * the spot radius feed the intensity statistics, with the same running
+		 * moments as in the SpotIntensityAnalyzer. The others make the outer
+		 * ring, as in the SpotContrastAndSNRAnalyzer.
+		 */
+		final double radius2 = radius * radius;
+		int nIn = 0;
+		double sum = 0;
+		double mean = 0;
+		double M2 = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		int nOut = 0;
+		double sumOut = 0;
+		final SpotNeighborhoodCursor< T > cursor = neighborhood.cursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			if ( cursor.getDistanceSquared() > radius2 )
+			{
+				nOut++;
+				sumOut += cursor.get().getRealFloat();
+				continue;
+			}
+
+			final double val = cursor.get().getRealDouble();
+			if ( useHistogram )
+				histogram[ ( int ) ( ( long ) val - offset ) ]++;
+			else
+				values[ nIn ] = val;
+
+			sum += val;
+			final int n1 = nIn;
+			nIn++;
+			final double delta = val - mean;
+			final double deltaN = delta / nIn;
+			mean = mean + deltaN;
+			M2 = M2 + delta * deltaN * n1;
+			if ( val < min )
+				min = val;
+			if ( val > max )
+				max = val;
+		}
+
+		final double median;
+		if ( useHistogram )
+		{
+			final int lo = ( int ) ( ( long ) min - offset );
+			final int hi = ( int ) ( ( long ) max - offset );
+			median = offset + histogramSelect( histogram, lo, hi, nIn / 2 );
+			// Leave the histogram clean for the next spot.
+			for ( int i = lo; i <= hi; i++ )
+				histogram[ i ] = 0;
+		}
+		else
+		{
+			median = select( values, nIn, nIn / 2 );
+		}
+
+		mean = sum / nIn;
+		final double std = ( nIn > 1 ) ? Math.sqrt( M2 / ( nIn - 1 ) ) : Double.NaN;
+		final double meanOut = sumOut / nOut;
+
+		spot.putFeature( MEDIAN_INTENSITY, median );
+		spot.putFeature( MIN_INTENSITY, min );
+		spot.putFeature( MAX_INTENSITY, max );
+		spot.putFeature( MEAN_INTENSITY, mean );
+		spot.putFeature( STANDARD_DEVIATION, std );
+		spot.putFeature( TOTAL_INTENSITY, sum );
+		spot.putFeature( CONTRAST, ( mean - meanOut ) / ( mean + meanOut ) );
+		spot.putFeature( SNR, ( mean - meanOut ) / std );
+	}
+
+	/**
+	 * Returns the index of the bin of the specified histogram holding the
+	 * <code>k</code>th smallest value (0-based), searching only the bins from
+	 * <code>lo</code> to <code>hi</code> inclusive.
+	 */
+	static final int histogramSelect( final int[] histogram, final int lo, final int hi, final int k )
+	{
+		int count = 0;
+		for ( int i = lo; i < hi; i++ )
+		{
+			count += histogram[ i ];
+			if ( count > k )
+				return i;
+		}
+		return hi;
+	}
+
+	/**
+	 * Returns the <code>k</code>th smallest value (0-based) of the first
+	 * <code>n</code> elements of the specified array, with the quickselect
+	 * algorithm. The array is partially reordered.
+	 */
+	static final double select( final double[] values, final int n, final int k )
+	{
+		int left = 0;
+		int right = n - 1;
+		while ( right > left )
+		{
+			// Median of three as pivot.
+			final int mid = ( left + right ) >>> 1;
+			if ( values[ mid ] < values[ left ] )
+				swap( values, mid, left );
+			if ( values[ right ] < values[ left ] )
+				swap( values, right, left );
+			if ( values[ right ] < values[ mid ] )
+				swap( values, right, mid );
+			final double pivot = values[ mid ];
+
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( values[ i ] < pivot )
+					i++;
+				while ( values[ j ] > pivot )
+					j--;
+				if ( i <= j )
+				{
+					swap( values, i, j );
+					i++;
+					j--;
+				}
+			}
+
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return values[ k ];
+		}
+		return values[ k ];
+	}
+
+	private static final void swap( final double[] values, final int i, final int j )
+	{
+		final double tmp = values[ i ];
+		values[ i ] = values[ j ];
+		values[ j ] = tmp;
+	}
+
+	/**
+	 * Per-thread buffers, grown on demand.
+	 */
+	private static final class Buffers
+	{
+
+		private double[] values = new double[ 0 ];
+
+		private int[] histogram = new int[ 0 ];
+
+		private double[] values( final int size )
+		{
+			if ( values.length < size )
+				values = new double[ size ];
+			return values;
+		}
+
+		/**
+		 * Returns a histogram with all its bins at 0.
+		 */
+		private int[] histogram( final int size )
+		{
+			if ( histogram.length < size )
+				histogram = new int[ size ];
+			return histogram;
+		}
+	}
+}
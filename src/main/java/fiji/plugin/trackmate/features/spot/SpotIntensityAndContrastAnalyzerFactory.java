@@ -0,0 +1,199 @@
+package fiji.plugin.trackmate.features.spot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.ImageIcon;
+
+import net.imagej.ImgPlus;
+import net.imglib2.meta.view.HyperSliceImgPlus;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
+
+/**
+ * A factory for {@link SpotIntensityAndContrastAnalyzer}s, that compute the
+ * features of the {@link SpotIntensityAnalyzerFactory} and of the
+ * {@link SpotContrastAndSNRAnalyzerFactory} at once.
+ * <p>
+ * This factory is not discovered as a plugin. It is substituted to the two
+ * aforementioned factories when they are both configured, see
+ * {@link #fuse(List)}.
+ */
+@SuppressWarnings( "deprecation" )
+public class SpotIntensityAndContrastAnalyzerFactory< T extends RealType< T > & NativeType< T >> implements SpotAnalyzerFactory< T >, SpotFeatureDependencies, FeatureInputDependent
+{
+
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.RADIUS, FeatureInput.FRAME ) );
+
+	/*
+	 * CONSTANTS
+	 */
+
+	public static final String KEY = "Spot intensity, contrast and SNR";
+
+	public static final ArrayList< String > FEATURES = new ArrayList< >( 8 );
+
+	public static final HashMap< String, String > FEATURE_NAMES = new HashMap< >( 8 );
+
+	public static final HashMap< String, String > FEATURE_SHORT_NAMES = new HashMap< >( 8 );
+
+	public static final HashMap< String, Dimension > FEATURE_DIMENSIONS = new HashMap< >( 8 );
+
+	public static final Map< String, Boolean > IS_INT = new HashMap< >( 8 );
+	static
+	{
+		FEATURES.addAll( SpotIntensityAnalyzerFactory.FEATURES );
+		FEATURES.addAll( SpotContrastAndSNRAnalyzerFactory.FEATURES );
+		FEATURE_NAMES.putAll( SpotIntensityAnalyzerFactory.FEATURE_NAMES );
+		FEATURE_NAMES.putAll( SpotContrastAndSNRAnalyzerFactory.FEATURE_NAMES );
+		FEATURE_SHORT_NAMES.putAll( SpotIntensityAnalyzerFactory.FEATURE_SHORT_NAMES );
+		FEATURE_SHORT_NAMES.putAll( SpotContrastAndSNRAnalyzerFactory.FEATURE_SHORT_NAMES );
+		FEATURE_DIMENSIONS.putAll( SpotIntensityAnalyzerFactory.FEATURE_DIMENSIONS );
+		FEATURE_DIMENSIONS.putAll( SpotContrastAndSNRAnalyzerFactory.FEATURE_DIMENSIONS );
+		IS_INT.putAll( SpotIntensityAnalyzerFactory.IS_INT );
+		IS_INT.putAll( SpotContrastAndSNRAnalyzerFactory.IS_INT );
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Returns a copy of the specified list of factories in which the
+	 * {@link SpotIntensityAnalyzerFactory} is replaced by a
+	 * {@link SpotIntensityAndContrastAnalyzerFactory}, and the
+	 * {@link SpotContrastAndSNRAnalyzerFactory} is removed, if they are both
+	 * present. Otherwise, returns a plain copy of the list.
+	 *
+	 * @param factories
+	 *            the factories to fuse.
+	 * @return a new list.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static List< SpotAnalyzerFactory< ? > > fuse( final List< SpotAnalyzerFactory< ? > > factories )
+	{
+		final List< SpotAnalyzerFactory< ? > > fused = new ArrayList< >( factories.size() );
+		int intensityIndex = -1;
+		int contrastIndex = -1;
+		for ( int i = 0; i < factories.size(); i++ )
+		{
+			final SpotAnalyzerFactory< ? > factory = factories.get( i );
+			if ( factory instanceof SpotIntensityAnalyzerFactory )
+				intensityIndex = i;
+			else if ( factory instanceof SpotContrastAndSNRAnalyzerFactory )
+				contrastIndex = i;
+		}
+
+		if ( intensityIndex < 0 || contrastIndex < 0 )
+		{
+			fused.addAll( factories );
+			return fused;
+		}
+
+		for ( int i = 0; i < factories.size(); i++ )
+		{
+			if ( i == intensityIndex )
+				fused.add( new SpotIntensityAndContrastAnalyzerFactory() );
+			else if ( i != contrastIndex )
+				fused.add( factories.get( i ) );
+		}
+		return fused;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public SpotIntensityAndContrastAnalyzer< T > getAnalyzer( final Model model, final ImgPlus< T > img, final int frame, final int channel )
+	{
+		final ImgPlus< T > imgC = HyperSliceImgPlus.fixChannelAxis( img, channel );
+		final ImgPlus< T > imgCT = HyperSliceImgPlus.fixTimeAxis( imgC, frame );
+		final Iterator< Spot > spots = model.getSpots().iterator( frame, false );
+		return new SpotIntensityAndContrastAnalyzer< >( imgCT, spots );
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	@Override
+	public List< String > getFeatures()
+	{
+		return FEATURES;
+	}
+
+	@Override
+	public Map< String, String > getFeatureShortNames()
+	{
+		return FEATURE_SHORT_NAMES;
+	}
+
+	@Override
+	public Map< String, String > getFeatureNames()
+	{
+		return FEATURE_NAMES;
+	}
+
+	@Override
+	public Map< String, Dimension > getFeatureDimensions()
+	{
+		return FEATURE_DIMENSIONS;
+	}
+
+	@Override
+	public String getInfoText()
+	{
+		return null;
+	}
+
+	@Override
+	public ImageIcon getIcon()
+	{
+		return null;
+	}
+
+	@Override
+	public String getName()
+	{
+		return KEY;
+	}
+
+	@Override
+	public Map< String, Boolean > getIsIntFeature()
+	{
+		return IS_INT;
+	}
+
+	@Override
+	public boolean isManualFeature()
+	{
+		return false;
+	}
+
+	@Override
+	public Collection< String > getDependencies()
+	{
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
+}
@@ -0,0 +1,31 @@
+package fiji.plugin.trackmate.features.track;
+
+import fiji.plugin.trackmate.Model;
+
+/**
+ * Interface for local {@link TrackAnalyzer}s that compute their features in a
+ * single visit of the spots and edges of each track, through a
+ * {@link TrackFeatureAccumulator}.
+ * <p>
+ * Such analyzers can be run together by the {@link TrackFeatureEngine}, which
+ * visits each track once for all of them, instead of once per analyzer.
+ */
+public interface StreamingTrackAnalyzer extends TrackAnalyzer
+{
+
+	/**
+	 * Returns a new accumulator for the features of the specified track.
+	 *
+	 * @param trackID
+	 *            the ID of the track.
+	 * @param nSpots
+	 *            the number of spots in the track.
+	 * @param nEdges
+	 *            the number of edges in the track.
+	 * @param model
+	 *            the model the track belongs to, where to store the features.
+	 * @return a new accumulator.
+	 */
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model );
+
+}
@@ -2,29 +2,33 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
 
-import net.imglib2.multithreading.SimpleMultiThreading;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = TrackAnalyzer.class )
-public class TrackBranchingAnalyzer implements TrackAnalyzer
+public class TrackBranchingAnalyzer implements StreamingTrackAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.LINKS ) );
+
 	/*
 	 * CONSTANTS
 	 */
@@ -108,113 +112,18 @@ public class TrackBranchingAnalyzer implements TrackAnalyzer
 	@Override
 	public void process( final Collection< Integer > trackIDs, final Model model )
 	{
-
-		if ( trackIDs.isEmpty() ) { return; }
-
-		final ArrayBlockingQueue< Integer > queue = new ArrayBlockingQueue< >( trackIDs.size(), false, trackIDs );
-
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-		for ( int i = 0; i < threads.length; i++ )
-		{
-			threads[ i ] = new Thread( "TrackBranchingAnalyzer thread " + i )
-			{
-				@Override
-				public void run()
-				{
-					Integer trackID;
-					while ( ( trackID = queue.poll() ) != null )
-					{
-
-						final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-
-						int nmerges = 0;
-						int nsplits = 0;
-						int ncomplex = 0;
-						for ( final Spot spot : track )
-						{
-							final Set< DefaultWeightedEdge > edges = model.getTrackModel().edgesOf( spot );
-
-							// get neighbors
-							final Set< Spot > neighbors = new HashSet< >();
-							for ( final DefaultWeightedEdge edge : edges )
-							{
-								neighbors.add( model.getTrackModel().getEdgeSource( edge ) );
-								neighbors.add( model.getTrackModel().getEdgeTarget( edge ) );
-							}
-							neighbors.remove( spot );
-
-							// inspect neighbors relative time position
-							int earlier = 0;
-							int later = 0;
-							for ( final Spot neighbor : neighbors )
-							{
-								if ( spot.diffTo( neighbor, Spot.FRAME ) > 0 )
-								{
-									earlier++; // neighbor is before in time
-								}
-								else
-								{
-									later++;
-								}
-							}
-
-							// Test for classical spot
-							if ( earlier == 1 && later == 1 )
-							{
-								continue;
-							}
-
-							// classify spot
-							if ( earlier <= 1 && later > 1 )
-							{
-								nsplits++;
-							}
-							else if ( later <= 1 && earlier > 1 )
-							{
-								nmerges++;
-							}
-							else if ( later > 1 && earlier > 1 )
-							{
-								ncomplex++;
-							}
-						}
-
-						int ngaps = 0, longestgap = 0;
-						for ( final DefaultWeightedEdge edge : model.getTrackModel().trackEdges( trackID ) )
-						{
-							final Spot source = model.getTrackModel().getEdgeSource( edge );
-							final Spot target = model.getTrackModel().getEdgeTarget( edge );
-							final int gaplength = (int)Math.abs( target.diffTo( source, Spot.FRAME ) ) - 1;
-							if ( gaplength > 0 )
-							{
-								ngaps++;
-								if ( longestgap < gaplength )
-								{
-									longestgap = gaplength;
-								}
-							}
-						}
-
-						// Put feature data
-						model.getFeatureModel().putTrackFeature( trackID, NUMBER_GAPS, Double.valueOf( ngaps ) );
-						model.getFeatureModel().putTrackFeature( trackID, LONGEST_GAP, Double.valueOf( longestgap ) );
-						model.getFeatureModel().putTrackFeature( trackID, NUMBER_SPLITS, Double.valueOf( nsplits ) );
-						model.getFeatureModel().putTrackFeature( trackID, NUMBER_MERGES, Double.valueOf( nmerges ) );
-						model.getFeatureModel().putTrackFeature( trackID, NUMBER_COMPLEX, Double.valueOf( ncomplex ) );
-						model.getFeatureModel().putTrackFeature( trackID, NUMBER_SPOTS, Double.valueOf( track.size() ) );
-
-					}
-
-				}
-			};
-		}
-
 		final long start = System.currentTimeMillis();
-		SimpleMultiThreading.startAndJoin( threads );
+		TrackFeatureEngine.process( Collections.singletonList( this ), trackIDs, model, numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	@Override
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+	{
+		return new BranchingAccumulator( trackID, nSpots, nEdges, model.getFeatureModel() );
+	}
+
 	@Override
 	public int getNumThreads()
 	{
@@ -300,4 +209,118 @@ public class TrackBranchingAnalyzer implements TrackAnalyzer
 		return false;
 	}
 
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
+
+	/**
+	 * Counts the links of each spot of a track to earlier and later spots, and
+	 * the gaps of the track.
+	 */
+	private static final class BranchingAccumulator implements TrackFeatureAccumulator
+	{
+
+		private final Integer trackID;
+
+		private final FeatureModel fm;
+
+		private final int nSpots;
+
+		/** Number of neighbors before and after each spot in time. */
+		private final Map< Spot, int[] > neighbors;
+
+		private int ngaps = 0;
+
+		private int longestgap = 0;
+
+		private BranchingAccumulator( final Integer trackID, final int nSpots, final int nEdges, final FeatureModel fm )
+		{
+			this.trackID = trackID;
+			this.fm = fm;
+			this.nSpots = nSpots;
+			this.neighbors = new HashMap< >( 2 * nSpots );
+		}
+
+		@Override
+		public void accept( final Spot spot )
+		{}
+
+		@Override
+		public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+		{
+			count( source, target );
+			count( target, source );
+
+			final int gaplength = ( int ) Math.abs( target.diffTo( source, Spot.FRAME ) ) - 1;
+			if ( gaplength > 0 )
+			{
+				ngaps++;
+				if ( longestgap < gaplength )
+				{
+					longestgap = gaplength;
+				}
+			}
+		}
+
+		private void count( final Spot spot, final Spot neighbor )
+		{
+			int[] counts = neighbors.get( spot );
+			if ( null == counts )
+			{
+				counts = new int[ 2 ];
+				neighbors.put( spot, counts );
+			}
+			if ( spot.diffTo( neighbor, Spot.FRAME ) > 0 )
+			{
+				counts[ 0 ]++; // neighbor is before in time
+			}
+			else
+			{
+				counts[ 1 ]++;
+			}
+		}
+
+		@Override
+		public void finish()
+		{
+			int nmerges = 0;
+			int nsplits = 0;
+			int ncomplex = 0;
+			for ( final int[] counts : neighbors.values() )
+			{
+				final int earlier = counts[ 0 ];
+				final int later = counts[ 1 ];
+
+				// Test for classical spot
+				if ( earlier == 1 && later == 1 )
+				{
+					continue;
+				}
+
+				// classify spot
+				if ( earlier <= 1 && later > 1 )
+				{
+					nsplits++;
+				}
+				else if ( later <= 1 && earlier > 1 )
+				{
+					nmerges++;
+				}
+				else if ( later > 1 && earlier > 1 )
+				{
+					ncomplex++;
+				}
+			}
+
+			// Put feature data
+			fm.putTrackFeature( trackID, NUMBER_GAPS, Double.valueOf( ngaps ) );
+			fm.putTrackFeature( trackID, LONGEST_GAP, Double.valueOf( longestgap ) );
+			fm.putTrackFeature( trackID, NUMBER_SPLITS, Double.valueOf( nsplits ) );
+			fm.putTrackFeature( trackID, NUMBER_MERGES, Double.valueOf( nmerges ) );
+			fm.putTrackFeature( trackID, NUMBER_COMPLEX, Double.valueOf( ncomplex ) );
+			fm.putTrackFeature( trackID, NUMBER_SPOTS, Double.valueOf( nSpots ) );
+		}
+	}
 }
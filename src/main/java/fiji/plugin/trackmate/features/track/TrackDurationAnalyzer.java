@@ -2,28 +2,32 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
 
-import net.imglib2.multithreading.SimpleMultiThreading;
-
+import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = TrackAnalyzer.class )
-public class TrackDurationAnalyzer implements TrackAnalyzer
+public class TrackDurationAnalyzer implements StreamingTrackAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.FRAME, FeatureInput.LINKS ) );
+
 	public static final String KEY = "Track duration";
 
 	public static final String TRACK_DURATION = "TRACK_DURATION";
@@ -90,64 +94,18 @@ public class TrackDurationAnalyzer implements TrackAnalyzer
 	@Override
 	public void process( final Collection< Integer > trackIDs, final Model model )
 	{
-
-		if ( trackIDs.isEmpty() ) { return; }
-
-		final ArrayBlockingQueue< Integer > queue = new ArrayBlockingQueue< >( trackIDs.size(), false, trackIDs );
-		final FeatureModel fm = model.getFeatureModel();
-
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-		for ( int i = 0; i < threads.length; i++ )
-		{
-			threads[ i ] = new Thread( "TrackDurationAnalyzer thread " + i )
-			{
-				@Override
-				public void run()
-				{
-					Integer trackID;
-					while ( ( trackID = queue.poll() ) != null )
-					{
-
-						// I love brute force.
-						final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-						double minT = Double.POSITIVE_INFINITY;
-						double maxT = Double.NEGATIVE_INFINITY;
-						Double t;
-						Spot startSpot = null;
-						Spot endSpot = null;
-						for ( final Spot spot : track )
-						{
-							t = spot.getFeature( Spot.POSITION_T );
-							if ( t < minT )
-							{
-								minT = t;
-								startSpot = spot;
-							}
-							if ( t > maxT )
-							{
-								maxT = t;
-								endSpot = spot;
-							}
-						}
-						if (null == startSpot || null == endSpot)
-							continue;
-						
-						fm.putTrackFeature( trackID, TRACK_DURATION, ( maxT - minT ) );
-						fm.putTrackFeature( trackID, TRACK_START, minT );
-						fm.putTrackFeature( trackID, TRACK_STOP, maxT );
-						fm.putTrackFeature( trackID, TRACK_DISPLACEMENT, Math.sqrt( startSpot.squareDistanceTo( endSpot ) ) );
-
-					}
-				}
-			};
-		}
-
 		final long start = System.currentTimeMillis();
-		SimpleMultiThreading.startAndJoin( threads );
+		TrackFeatureEngine.process( Collections.singletonList( this ), trackIDs, model, numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	@Override
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+	{
+		return new DurationAccumulator( trackID, nSpots, nEdges, model.getFeatureModel() );
+	}
+
 	@Override
 	public int getNumThreads()
 	{
@@ -232,4 +190,67 @@ public class TrackDurationAnalyzer implements TrackAnalyzer
 	{
 		return false;
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
+
+	/**
+	 * Finds the first and last spots of a track.
+	 */
+	private static final class DurationAccumulator implements TrackFeatureAccumulator
+	{
+
+		private final Integer trackID;
+
+		private final FeatureModel fm;
+
+		private double minT = Double.POSITIVE_INFINITY;
+
+		private double maxT = Double.NEGATIVE_INFINITY;
+
+		private Spot startSpot = null;
+
+		private Spot endSpot = null;
+
+		private DurationAccumulator( final Integer trackID, final int nSpots, final int nEdges, final FeatureModel fm )
+		{
+			this.trackID = trackID;
+			this.fm = fm;
+		}
+
+		@Override
+		public void accept( final Spot spot )
+		{
+			final double t = spot.getFeature( Spot.POSITION_T );
+			if ( t < minT )
+			{
+				minT = t;
+				startSpot = spot;
+			}
+			if ( t > maxT )
+			{
+				maxT = t;
+				endSpot = spot;
+			}
+		}
+
+		@Override
+		public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+		{}
+
+		@Override
+		public void finish()
+		{
+			if ( null == startSpot || null == endSpot )
+				return;
+
+			fm.putTrackFeature( trackID, TRACK_DURATION, ( maxT - minT ) );
+			fm.putTrackFeature( trackID, TRACK_START, minT );
+			fm.putTrackFeature( trackID, TRACK_STOP, maxT );
+			fm.putTrackFeature( trackID, TRACK_DISPLACEMENT, Math.sqrt( startSpot.squareDistanceTo( endSpot ) ) );
+		}
+	}
 }
@@ -0,0 +1,44 @@
+package fiji.plugin.trackmate.features.track;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Accumulates the data needed to compute the features of a single track, as
+ * its spots and edges are visited by the {@link TrackFeatureEngine}.
+ * <p>
+ * All the spots of the track are visited first, then all its edges, in no
+ * particular order. Then {@link #finish()} is called, which must store the
+ * track features. An accumulator is only used by one thread.
+ */
+public interface TrackFeatureAccumulator
+{
+
+	/**
+	 * Accumulates a spot of the track.
+	 *
+	 * @param spot
+	 *            the spot.
+	 */
+	public void accept( final Spot spot );
+
+	/**
+	 * Accumulates an edge of the track.
+	 *
+	 * @param edge
+	 *            the edge.
+	 * @param source
+	 *            the source spot of the edge.
+	 * @param target
+	 *            the target spot of the edge.
+	 */
+	public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target );
+
+	/**
+	 * Computes the track features from the accumulated data, and stores them
+	 * in the feature model.
+	 */
+	public void finish();
+
+}
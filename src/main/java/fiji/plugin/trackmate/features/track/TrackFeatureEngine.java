@@ -0,0 +1,145 @@
+package fiji.plugin.trackmate.features.track;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+/**
+ * Computes the features of several {@link StreamingTrackAnalyzer}s in a single
+ * pass over the tracks.
+ * <p>
+ * Each track is visited once: its spots and edges are fed to one
+ * {@link TrackFeatureAccumulator} per analyzer. Tracks are processed in
+ * parallel, on a fork-join pool shared by all the analyzers.
+ */
+public class TrackFeatureEngine
+{
+
+	/** Target number of tasks per thread, for load balancing. */
+	private static final int TASKS_PER_THREAD = 8;
+
+	private TrackFeatureEngine()
+	{}
+
+	/**
+	 * Computes the features of the specified analyzers for the tracks with the
+	 * specified IDs.
+	 *
+	 * @param analyzers
+	 *            the analyzers to run.
+	 * @param trackIDs
+	 *            the IDs of the tracks to compute.
+	 * @param model
+	 *            the model the tracks belong to.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	public static void process( final List< ? extends StreamingTrackAnalyzer > analyzers, final Collection< Integer > trackIDs, final Model model, final int numThreads )
+	{
+		if ( trackIDs.isEmpty() || analyzers.isEmpty() ) { return; }
+
+		final Integer[] ids = trackIDs.toArray( new Integer[ trackIDs.size() ] );
+		final StreamingTrackAnalyzer[] array = analyzers.toArray( new StreamingTrackAnalyzer[ analyzers.size() ] );
+		final int threads = Math.max( 1, numThreads );
+		final int grain = Math.max( 1, ids.length / ( TASKS_PER_THREAD * threads ) );
+
+		final ForkJoinPool pool = new ForkJoinPool( threads );
+		try
+		{
+			pool.invoke( new TrackTask( array, ids, 0, ids.length, grain, model ) );
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Visits the spots and edges of a single track, and feeds them to the
+	 * accumulators of the specified analyzers.
+	 */
+	private static void processTrack( final StreamingTrackAnalyzer[] analyzers, final Integer trackID, final Model model )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< Spot > spots = trackModel.trackSpots( trackID );
+		final Set< DefaultWeightedEdge > edges = trackModel.trackEdges( trackID );
+		if ( null == spots || null == edges ) { return; }
+
+		final TrackFeatureAccumulator[] accumulators = new TrackFeatureAccumulator[ analyzers.length ];
+		for ( int i = 0; i < analyzers.length; i++ )
+			accumulators[ i ] = analyzers[ i ].createAccumulator( trackID, spots.size(), edges.size(), model );
+
+		for ( final Spot spot : spots )
+		{
+			for ( final TrackFeatureAccumulator accumulator : accumulators )
+				accumulator.accept( spot );
+		}
+
+		for ( final DefaultWeightedEdge edge : edges )
+		{
+			final Spot source = trackModel.getEdgeSource( edge );
+			final Spot target = trackModel.getEdgeTarget( edge );
+			for ( final TrackFeatureAccumulator accumulator : accumulators )
+				accumulator.accept( edge, source, target );
+		}
+
+		for ( final TrackFeatureAccumulator accumulator : accumulators )
+			accumulator.finish();
+	}
+
+	/**
+	 * Processes a range of tracks, splitting it in halves while it is larger
+	 * than the grain.
+	 */
+	private static final class TrackTask extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final StreamingTrackAnalyzer[] analyzers;
+
+		private final Integer[] trackIDs;
+
+		private final int from;
+
+		private final int to;
+
+		private final int grain;
+
+		private final Model model;
+
+		public TrackTask( final StreamingTrackAnalyzer[] analyzers, final Integer[] trackIDs, final int from, final int to, final int grain, final Model model )
+		{
+			this.analyzers = analyzers;
+			this.trackIDs = trackIDs;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.model = model;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from > grain )
+			{
+				final int mid = ( from + to ) >>> 1;
+				invokeAll(
+						new TrackTask( analyzers, trackIDs, from, mid, grain, model ),
+						new TrackTask( analyzers, trackIDs, mid, to, grain, model ) );
+				return;
+			}
+
+			for ( int i = from; i < to; i++ )
+				processTrack( analyzers, trackIDs[ i ], model );
+		}
+	}
+}
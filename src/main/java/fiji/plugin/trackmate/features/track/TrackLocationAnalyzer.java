@@ -2,28 +2,32 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
 
-import net.imglib2.multithreading.SimpleMultiThreading;
-
+import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = TrackAnalyzer.class )
-public class TrackLocationAnalyzer implements TrackAnalyzer
+public class TrackLocationAnalyzer implements StreamingTrackAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.LINKS ) );
+
 	/*
 	 * FEATURE NAMES
 	 */
@@ -90,57 +94,18 @@ public class TrackLocationAnalyzer implements TrackAnalyzer
 	@Override
 	public void process( final Collection< Integer > trackIDs, final Model model )
 	{
-
-		if ( trackIDs.isEmpty() ) { return; }
-
-		final ArrayBlockingQueue< Integer > queue = new ArrayBlockingQueue< >( trackIDs.size(), false, trackIDs );
-		final FeatureModel fm = model.getFeatureModel();
-
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-		for ( int i = 0; i < threads.length; i++ )
-		{
-			threads[ i ] = new Thread( "TrackLocationAnalyzer thread " + i )
-			{
-				@Override
-				public void run()
-				{
-					Integer trackID;
-					while ( ( trackID = queue.poll() ) != null )
-					{
-
-						final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-
-						double x = 0;
-						double y = 0;
-						double z = 0;
-
-						for ( final Spot spot : track )
-						{
-							x += spot.getFeature( Spot.POSITION_X );
-							y += spot.getFeature( Spot.POSITION_Y );
-							z += spot.getFeature( Spot.POSITION_Z );
-						}
-						final int nspots = track.size();
-						x /= nspots;
-						y /= nspots;
-						z /= nspots;
-
-						fm.putTrackFeature( trackID, X_LOCATION, x );
-						fm.putTrackFeature( trackID, Y_LOCATION, y );
-						fm.putTrackFeature( trackID, Z_LOCATION, z );
-
-					}
-
-				}
-			};
-		}
-
 		final long start = System.currentTimeMillis();
-		SimpleMultiThreading.startAndJoin( threads );
+		TrackFeatureEngine.process( Collections.singletonList( this ), trackIDs, model, numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	@Override
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+	{
+		return new LocationAccumulator( trackID, nSpots, nEdges, model.getFeatureModel() );
+	}
+
 	@Override
 	public int getNumThreads()
 	{
@@ -225,4 +190,56 @@ public class TrackLocationAnalyzer implements TrackAnalyzer
 	{
 		return false;
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
+
+	/**
+	 * Sums the spot positions of a track.
+	 */
+	private static final class LocationAccumulator implements TrackFeatureAccumulator
+	{
+
+		private final Integer trackID;
+
+		private final FeatureModel fm;
+
+		private double x = 0;
+
+		private double y = 0;
+
+		private double z = 0;
+
+		private int nspots = 0;
+
+		private LocationAccumulator( final Integer trackID, final int nSpots, final int nEdges, final FeatureModel fm )
+		{
+			this.trackID = trackID;
+			this.fm = fm;
+		}
+
+		@Override
+		public void accept( final Spot spot )
+		{
+			x += spot.getFeature( Spot.POSITION_X );
+			y += spot.getFeature( Spot.POSITION_Y );
+			z += spot.getFeature( Spot.POSITION_Z );
+			nspots++;
+		}
+
+		@Override
+		public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+		{}
+
+		@Override
+		public void finish()
+		{
+			fm.putTrackFeature( trackID, X_LOCATION, x / nspots );
+			fm.putTrackFeature( trackID, Y_LOCATION, y / nspots );
+			fm.putTrackFeature( trackID, Z_LOCATION, z / nspots );
+		}
+	}
 }
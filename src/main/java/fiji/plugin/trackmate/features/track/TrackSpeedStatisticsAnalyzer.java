@@ -2,17 +2,15 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
 
-import net.imglib2.multithreading.SimpleMultiThreading;
-import net.imglib2.util.Util;
-
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
@@ -20,12 +18,18 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureInput;
+import fiji.plugin.trackmate.features.FeatureInputDependent;
+import fiji.plugin.trackmate.features.OrderStatisticsAnalyzer;
+import fiji.plugin.trackmate.util.StreamingStatistics;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = TrackAnalyzer.class )
-public class TrackSpeedStatisticsAnalyzer implements TrackAnalyzer
+public class TrackSpeedStatisticsAnalyzer implements StreamingTrackAnalyzer, OrderStatisticsAnalyzer, FeatureInputDependent
 {
 
+	private static final Set< FeatureInput > INPUTS = Collections.unmodifiableSet( EnumSet.of( FeatureInput.POSITION, FeatureInput.FRAME, FeatureInput.LINKS ) );
+
 	/*
 	 * CONSTANTS
 	 */
@@ -101,6 +105,8 @@ public class TrackSpeedStatisticsAnalyzer implements TrackAnalyzer
 
 	private long processingTime;
 
+	private int maxExactValues = DEFAULT_MAX_EXACT_VALUES;
+
 	public TrackSpeedStatisticsAnalyzer()
 	{
 		setNumThreads();
@@ -119,104 +125,18 @@ public class TrackSpeedStatisticsAnalyzer implements TrackAnalyzer
 	@Override
 	public void process( final Collection< Integer > trackIDs, final Model model )
 	{
-
-		if ( trackIDs.isEmpty() ) { return; }
-
-		final ArrayBlockingQueue< Integer > queue = new ArrayBlockingQueue< >( trackIDs.size(), false, trackIDs );
-		final FeatureModel fm = model.getFeatureModel();
-
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-		for ( int i = 0; i < threads.length; i++ )
-		{
-			threads[ i ] = new Thread( "TrackSpeedStatisticsAnalyzer thread " + i )
-			{
-
-				@Override
-				public void run()
-				{
-					Integer trackID;
-					while ( ( trackID = queue.poll() ) != null )
-					{
-
-						final Set< DefaultWeightedEdge > track = model.getTrackModel().trackEdges( trackID );
-
-						double sum = 0;
-						double mean = 0;
-						double M2 = 0;
-						// double M3 = 0;
-						// double M4 = 0;
-						double delta, delta_n;
-						// double delta_n2;
-						double term1;
-						int n1;
-
-						// Others
-						Double val;
-						final double[] velocities = new double[ track.size() ];
-						int n = 0;
-
-						for ( final DefaultWeightedEdge edge : track )
-						{
-							final Spot source = model.getTrackModel().getEdgeSource( edge );
-							final Spot target = model.getTrackModel().getEdgeTarget( edge );
-
-							// Edge velocity
-							final double d2 = source.squareDistanceTo( target );
-							final double dt = source.diffTo( target, Spot.POSITION_T );
-							val = Math.sqrt( d2 ) / Math.abs( dt );
-
-							// For median, min and max
-							velocities[ n ] = val;
-							// For variance and mean
-							sum += val;
-
-							// For kurtosis
-							n1 = n;
-							n++;
-							delta = val - mean;
-							delta_n = delta / n;
-							// delta_n2 = delta_n * delta_n;
-							term1 = delta * delta_n * n1;
-							mean = mean + delta_n;
-							// M4 = M4 + term1 * delta_n2 * (n*n - 3*n + 3) + 6
-							// * delta_n2 * M2 - 4 * delta_n * M3;
-							// M3 = M3 + term1 * delta_n * (n - 2) - 3 * delta_n
-							// * M2;
-							M2 = M2 + term1;
-						}
-
-						Util.quicksort( velocities, 0, track.size() - 1 );
-						final double median = velocities[ track.size() / 2 ];
-						final double min = velocities[ 0 ];
-						final double max = velocities[ track.size() - 1 ];
-						mean = sum / track.size();
-						final double variance = M2 / ( track.size() - 1 );
-						// double kurtosis = (n*M4) / (M2*M2) - 3;
-						// double skewness = Math.sqrt(n) * M3 / Math.pow(M2,
-						// 3/2.0) ;
-
-						fm.putTrackFeature( trackID, TRACK_MEDIAN_SPEED, median );
-						fm.putTrackFeature( trackID, TRACK_MIN_SPEED, min );
-						fm.putTrackFeature( trackID, TRACK_MAX_SPEED, max );
-						fm.putTrackFeature( trackID, TRACK_MEAN_SPEED, mean );
-						fm.putTrackFeature( trackID, TRACK_STD_SPEED, Math.sqrt( variance ) );
-						// fm.putTrackFeature(index, TRACK_SPEED_KURTOSIS,
-						// kurtosis);
-						// fm.putTrackFeature(index, TRACK_SPEED_SKEWNESS,
-						// skewness);
-
-					}
-
-				}
-			};
-		}
-
 		final long start = System.currentTimeMillis();
-		SimpleMultiThreading.startAndJoin( threads );
+		TrackFeatureEngine.process( Collections.singletonList( this ), trackIDs, model, numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	@Override
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+	{
+		return new SpeedAccumulator( trackID, maxExactValues, model.getFeatureModel() );
+	}
+
 	@Override
 	public int getNumThreads()
 	{
@@ -236,6 +156,18 @@ public class TrackSpeedStatisticsAnalyzer implements TrackAnalyzer
 
 	}
 
+	@Override
+	public void setMaxExactValues( final int maxExactValues )
+	{
+		this.maxExactValues = maxExactValues;
+	}
+
+	@Override
+	public int getMaxExactValues()
+	{
+		return maxExactValues;
+	}
+
 	@Override
 	public long getProcessingTime()
 	{
@@ -301,4 +233,56 @@ public class TrackSpeedStatisticsAnalyzer implements TrackAnalyzer
 	{
 		return false;
 	}
+
+	@Override
+	public Set< FeatureInput > getInputs()
+	{
+		return INPUTS;
+	}
+
+	/**
+	 * Accumulates the edge velocities of a track.
+	 */
+	private static final class SpeedAccumulator implements TrackFeatureAccumulator
+	{
+
+		private final Integer trackID;
+
+		private final FeatureModel fm;
+
+		private final StreamingStatistics stats;
+
+		private SpeedAccumulator( final Integer trackID, final int maxExactValues, final FeatureModel fm )
+		{
+			this.trackID = trackID;
+			this.fm = fm;
+			this.stats = new StreamingStatistics( maxExactValues );
+		}
+
+		@Override
+		public void accept( final Spot spot )
+		{}
+
+		@Override
+		public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+		{
+			// Edge velocity
+			final double d2 = source.squareDistanceTo( target );
+			final double dt = source.diffTo( target, Spot.POSITION_T );
+			stats.add( Math.sqrt( d2 ) / Math.abs( dt ) );
+		}
+
+		@Override
+		public void finish()
+		{
+			if ( stats.getN() == 0 )
+				return;
+
+			fm.putTrackFeature( trackID, TRACK_MEDIAN_SPEED, stats.getMedian() );
+			fm.putTrackFeature( trackID, TRACK_MIN_SPEED, stats.getMin() );
+			fm.putTrackFeature( trackID, TRACK_MAX_SPEED, stats.getMax() );
+			fm.putTrackFeature( trackID, TRACK_MEAN_SPEED, stats.getMean() );
+			fm.putTrackFeature( trackID, TRACK_STD_SPEED, Math.sqrt( stats.getVariance() ) );
+		}
+	}
 }
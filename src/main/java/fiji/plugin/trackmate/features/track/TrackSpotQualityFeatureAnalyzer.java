@@ -2,27 +2,26 @@ package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.swing.ImageIcon;
 
-import net.imglib2.multithreading.SimpleMultiThreading;
-import net.imglib2.util.Util;
-
+import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.OrderStatisticsAnalyzer;
+import fiji.plugin.trackmate.util.StreamingStatistics;
 
 @SuppressWarnings( "deprecation" )
 @Plugin( type = TrackAnalyzer.class )
-public class TrackSpotQualityFeatureAnalyzer implements TrackAnalyzer
+public class TrackSpotQualityFeatureAnalyzer implements StreamingTrackAnalyzer, OrderStatisticsAnalyzer
 {
 
 	/*
@@ -87,6 +86,8 @@ public class TrackSpotQualityFeatureAnalyzer implements TrackAnalyzer
 
 	private long processingTime;
 
+	private int maxExactValues = DEFAULT_MAX_EXACT_VALUES;
+
 	public TrackSpotQualityFeatureAnalyzer()
 	{
 		setNumThreads();
@@ -105,70 +106,18 @@ public class TrackSpotQualityFeatureAnalyzer implements TrackAnalyzer
 	@Override
 	public void process( final Collection< Integer > trackIDs, final Model model )
 	{
-
-		if ( trackIDs.isEmpty() ) { return; }
-
-		final ArrayBlockingQueue< Integer > queue = new ArrayBlockingQueue< >( trackIDs.size(), false, trackIDs );
-		final FeatureModel fm = model.getFeatureModel();
-
-		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-		for ( int i = 0; i < threads.length; i++ )
-		{
-			threads[ i ] = new Thread( "TrackSpotFeatureAnalyzer thread " + i )
-			{
-
-				@Override
-				public void run()
-				{
-					Integer trackID;
-					while ( ( trackID = queue.poll() ) != null )
-					{
-
-						final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-
-						double sum = 0, sum2 = 0;
-
-						// Others
-						final double[] qualities = new double[ track.size() ];
-						int n = 0;
-
-						for ( final Spot spot : track )
-						{
-							final double val = spot.getFeature( Spot.QUALITY );
-
-							// For median, min and max
-							qualities[ n++ ] = val;
-							// For variance and mean
-							sum += val;
-							sum2 += val * val;
-						}
-
-						Util.quicksort( qualities, 0, track.size() - 1 );
-						final double median = qualities[ track.size() / 2 ];
-						final double min = qualities[ 0 ];
-						final double max = qualities[ track.size() - 1 ];
-						final double mean = sum / track.size();
-						final double mean2 = sum2 / track.size();
-						final double variance = mean2 - mean * mean;
-
-						fm.putTrackFeature( trackID, TRACK_MEDIAN_QUALITY, median );
-						fm.putTrackFeature( trackID, TRACK_MIN_QUALITY, min );
-						fm.putTrackFeature( trackID, TRACK_MAX_QUALITY, max );
-						fm.putTrackFeature( trackID, TRACK_MEAN_QUALITY, mean );
-						fm.putTrackFeature( trackID, TRACK_STD_QUALITY, Math.sqrt( variance ) );
-
-					}
-
-				}
-			};
-		}
-
 		final long start = System.currentTimeMillis();
-		SimpleMultiThreading.startAndJoin( threads );
+		TrackFeatureEngine.process( Collections.singletonList( this ), trackIDs, model, numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	@Override
+	public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+	{
+		return new QualityAccumulator( trackID, maxExactValues, model.getFeatureModel() );
+	}
+
 	@Override
 	public int getNumThreads()
 	{
@@ -188,6 +137,18 @@ public class TrackSpotQualityFeatureAnalyzer implements TrackAnalyzer
 
 	}
 
+	@Override
+	public void setMaxExactValues( final int maxExactValues )
+	{
+		this.maxExactValues = maxExactValues;
+	}
+
+	@Override
+	public int getMaxExactValues()
+	{
+		return maxExactValues;
+	}
+
 	@Override
 	public long getProcessingTime()
 	{
@@ -253,4 +214,47 @@ public class TrackSpotQualityFeatureAnalyzer implements TrackAnalyzer
 	{
 		return false;
 	}
+
+	/**
+	 * Accumulates the spot qualities of a track.
+	 */
+	private static final class QualityAccumulator implements TrackFeatureAccumulator
+	{
+
+		private final Integer trackID;
+
+		private final FeatureModel fm;
+
+		private final StreamingStatistics stats;
+
+		private QualityAccumulator( final Integer trackID, final int maxExactValues, final FeatureModel fm )
+		{
+			this.trackID = trackID;
+			this.fm = fm;
+			this.stats = new StreamingStatistics( maxExactValues );
+		}
+
+		@Override
+		public void accept( final Spot spot )
+		{
+			stats.add( spot.getFeature( Spot.QUALITY ) );
+		}
+
+		@Override
+		public void accept( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+		{}
+
+		@Override
+		public void finish()
+		{
+			if ( stats.getN() == 0 )
+				return;
+
+			fm.putTrackFeature( trackID, TRACK_MEDIAN_QUALITY, stats.getMedian() );
+			fm.putTrackFeature( trackID, TRACK_MIN_QUALITY, stats.getMin() );
+			fm.putTrackFeature( trackID, TRACK_MAX_QUALITY, stats.getMax() );
+			fm.putTrackFeature( trackID, TRACK_MEAN_QUALITY, stats.getMean() );
+			fm.putTrackFeature( trackID, TRACK_STD_QUALITY, Math.sqrt( stats.getPopulationVariance() ) );
+		}
+	}
 }
@@ -0,0 +1,198 @@
+package fiji.plugin.trackmate.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.ModelChangeListener;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+/**
+ * Caches the convex branch decompositions of the tracks of a model, keyed by
+ * track ID.
+ * <p>
+ * One cache is maintained for each combination of the
+ * <code>forbidMiddleLinks</code> and <code>forbidGaps</code> flags of the
+ * {@link ConvexBranchesDecomposition}. Decompositions are computed on request,
+ * in parallel for several tracks, and kept until a {@link ModelChangeEvent}
+ * signals that their track was modified. Only these tracks are discarded.
+ * <p>
+ * Each model has its own instance, registered as its first
+ * {@link ModelChangeListener} so that other listeners never see stale
+ * decompositions.
+ */
+public class BranchDecompositionCache implements ModelChangeListener
+{
+
+	private final TrackModel tm;
+
+	private final List< Map< Integer, CompactBranchDecomposition > > caches;
+
+	public BranchDecompositionCache( final TrackModel tm )
+	{
+		this.tm = tm;
+		this.caches = new ArrayList< >( 4 );
+		for ( int i = 0; i < 4; i++ )
+			caches.add( new ConcurrentHashMap< Integer, CompactBranchDecomposition >() );
+	}
+
+	/**
+	 * Returns the convex branch decomposition of the specified track, computing
+	 * it if it is not in the cache.
+	 *
+	 * @param trackID
+	 *            the track ID.
+	 * @param forbidMiddleLinks
+	 *            whether to forbid links to spots within branches.
+	 * @param forbidGaps
+	 *            whether to forbid gaps within branches.
+	 * @return the decomposition, or <code>null</code> if there is no track
+	 *         with the specified ID.
+	 * @see ConvexBranchesDecomposition#decompose(Integer, TrackModel, boolean,
+	 *      boolean)
+	 */
+	public CompactBranchDecomposition get( final Integer trackID, final boolean forbidMiddleLinks, final boolean forbidGaps )
+	{
+		final Map< Integer, CompactBranchDecomposition > cache = cacheFor( forbidMiddleLinks, forbidGaps );
+		final CompactBranchDecomposition cached = cache.get( trackID );
+		if ( isValid( trackID, cached ) ) { return cached; }
+
+		final CompactBranchDecomposition decomposition = ConvexBranchesDecomposition.decompose( trackID, tm, forbidMiddleLinks, forbidGaps );
+		if ( null == decomposition )
+			cache.remove( trackID );
+		else
+			cache.put( trackID, decomposition );
+		return decomposition;
+	}
+
+	/**
+	 * Returns the convex branch decompositions of the specified tracks. Tracks
+	 * that are not in the cache are decomposed in parallel.
+	 *
+	 * @param trackIDs
+	 *            the track IDs. IDs with no track in the model are skipped.
+	 * @param forbidMiddleLinks
+	 *            whether to forbid links to spots within branches.
+	 * @param forbidGaps
+	 *            whether to forbid gaps within branches.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @return a new map from track ID to decomposition.
+	 */
+	public Map< Integer, CompactBranchDecomposition > get( final Collection< Integer > trackIDs, final boolean forbidMiddleLinks, final boolean forbidGaps, final int numThreads )
+	{
+		final Map< Integer, CompactBranchDecomposition > cache = cacheFor( forbidMiddleLinks, forbidGaps );
+		final Map< Integer, CompactBranchDecomposition > output = new HashMap< >( 2 * trackIDs.size() );
+		final List< Integer > missing = new ArrayList< >();
+		for ( final Integer trackID : trackIDs )
+		{
+			final CompactBranchDecomposition cached = cache.get( trackID );
+			if ( isValid( trackID, cached ) )
+				output.put( trackID, cached );
+			else
+				missing.add( trackID );
+		}
+
+		if ( !missing.isEmpty() )
+		{
+			final Map< Integer, CompactBranchDecomposition > computed = ConvexBranchesDecomposition.decompose( missing, tm, forbidMiddleLinks, forbidGaps, numThreads );
+			cache.putAll( computed );
+			output.putAll( computed );
+		}
+		return output;
+	}
+
+	/**
+	 * Discards all the decompositions in the cache.
+	 */
+	public void clear()
+	{
+		for ( final Map< Integer, CompactBranchDecomposition > cache : caches )
+			cache.clear();
+	}
+
+	/**
+	 * Discards the decompositions of the specified tracks.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to discard.
+	 */
+	public void invalidate( final Collection< Integer > trackIDs )
+	{
+		for ( final Map< Integer, CompactBranchDecomposition > cache : caches )
+			cache.keySet().removeAll( trackIDs );
+	}
+
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.TRACKS_COMPUTED:
+			clear();
+			break;
+
+		case ModelChangeEvent.MODEL_MODIFIED:
+		{
+			final Set< Integer > modified = new HashSet< >();
+			if ( null != event.getTrackUpdated() )
+				modified.addAll( event.getTrackUpdated() );
+			for ( final Spot spot : event.getSpots() )
+			{
+				final Integer trackID = tm.trackIDOf( spot );
+				if ( null != trackID )
+					modified.add( trackID );
+			}
+			for ( final DefaultWeightedEdge edge : event.getEdges() )
+			{
+				final Integer trackID = tm.trackIDOf( edge );
+				if ( null != trackID )
+					modified.add( trackID );
+			}
+			invalidate( modified );
+
+			// Discard tracks that do not exist anymore.
+			for ( final Map< Integer, CompactBranchDecomposition > cache : caches )
+			{
+				for ( final Iterator< Integer > it = cache.keySet().iterator(); it.hasNext(); )
+				{
+					if ( null == tm.trackSpots( it.next() ) )
+						it.remove();
+				}
+			}
+			break;
+		}
+
+		default:
+			break;
+		}
+	}
+
+	private Map< Integer, CompactBranchDecomposition > cacheFor( final boolean forbidMiddleLinks, final boolean forbidGaps )
+	{
+		return caches.get( ( forbidMiddleLinks ? 1 : 0 ) + ( forbidGaps ? 2 : 0 ) );
+	}
+
+	/**
+	 * Cheap sanity check against decompositions of tracks modified without
+	 * notification.
+	 */
+	private boolean isValid( final Integer trackID, final CompactBranchDecomposition decomposition )
+	{
+		if ( null == decomposition ) { return false; }
+		final Set< Spot > spots = tm.trackSpots( trackID );
+		final Set< DefaultWeightedEdge > edges = tm.trackEdges( trackID );
+		return null != spots && null != edges && spots.size() == decomposition.nSpots() && edges.size() == decomposition.nEdges();
+	}
+}
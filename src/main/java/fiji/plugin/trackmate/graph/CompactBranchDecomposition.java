@@ -0,0 +1,224 @@
+package fiji.plugin.trackmate.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
+
+/**
+ * The convex branch decomposition of a single track, stored in compact form.
+ * <p>
+ * The spots of the track are stored in a single array, in which the spots of
+ * each branch are contiguous and ordered by increasing frame. Branches are
+ * described by their start and end indices in this array, and the links cut
+ * to generate them by the indices of their source and target spots.
+ * <p>
+ * Instances are immutable, and are typically obtained from a
+ * {@link BranchDecompositionCache}.
+ *
+ * @see ConvexBranchesDecomposition
+ */
+public class CompactBranchDecomposition
+{
+
+	private final Spot[] spots;
+
+	private final int[] branchStarts;
+
+	private final int[] linkSources;
+
+	private final int[] linkTargets;
+
+	private final int nEdges;
+
+	/**
+	 * Creates a new decomposition.
+	 *
+	 * @param spots
+	 *            the spots of the track, grouped by branch.
+	 * @param branchStarts
+	 *            the index of the first spot of each branch in the spot array,
+	 *            plus one last element equal to the number of spots.
+	 * @param linkSources
+	 *            the index of the source spot of each cut link.
+	 * @param linkTargets
+	 *            the index of the target spot of each cut link.
+	 * @param nEdges
+	 *            the number of edges in the track decomposed.
+	 */
+	CompactBranchDecomposition( final Spot[] spots, final int[] branchStarts, final int[] linkSources, final int[] linkTargets, final int nEdges )
+	{
+		this.spots = spots;
+		this.branchStarts = branchStarts;
+		this.linkSources = linkSources;
+		this.linkTargets = linkTargets;
+		this.nEdges = nEdges;
+	}
+
+	/**
+	 * Returns the number of spots in the decomposed track.
+	 *
+	 * @return the number of spots.
+	 */
+	public int nSpots()
+	{
+		return spots.length;
+	}
+
+	/**
+	 * Returns the number of edges in the decomposed track, cut or not.
+	 *
+	 * @return the number of edges.
+	 */
+	public int nEdges()
+	{
+		return nEdges;
+	}
+
+	/**
+	 * Returns the spot at the specified index. Spots of the branch
+	 * <code>b</code> are stored from index {@link #getBranchStart(int)} to
+	 * {@link #getBranchEnd(int)}, exclusive.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @return the spot.
+	 */
+	public Spot getSpot( final int index )
+	{
+		return spots[ index ];
+	}
+
+	public int nBranches()
+	{
+		return branchStarts.length - 1;
+	}
+
+	/**
+	 * Returns the index of the first spot of the specified branch.
+	 *
+	 * @param branch
+	 *            the branch index.
+	 * @return the index of its first spot.
+	 */
+	public int getBranchStart( final int branch )
+	{
+		return branchStarts[ branch ];
+	}
+
+	/**
+	 * Returns the index after the last spot of the specified branch.
+	 *
+	 * @param branch
+	 *            the branch index.
+	 * @return the index after its last spot.
+	 */
+	public int getBranchEnd( final int branch )
+	{
+		return branchStarts[ branch + 1 ];
+	}
+
+	public int getBranchSize( final int branch )
+	{
+		return branchStarts[ branch + 1 ] - branchStarts[ branch ];
+	}
+
+	public Spot getFirstSpot( final int branch )
+	{
+		return spots[ branchStarts[ branch ] ];
+	}
+
+	public Spot getLastSpot( final int branch )
+	{
+		return spots[ branchStarts[ branch + 1 ] - 1 ];
+	}
+
+	/**
+	 * Returns the index of the branch that contains the spot at the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @return the branch index.
+	 */
+	public int branchOf( final int index )
+	{
+		// Branches are never empty, so start indices are distinct.
+		final int pos = Arrays.binarySearch( branchStarts, index );
+		return pos >= 0 ? pos : -pos - 2;
+	}
+
+	/**
+	 * Returns the specified branch as a new list of spots, ordered by
+	 * increasing frame.
+	 *
+	 * @param branch
+	 *            the branch index.
+	 * @return a new list.
+	 */
+	public List< Spot > getBranch( final int branch )
+	{
+		return new ArrayList< >( Arrays.asList( spots ).subList( branchStarts[ branch ], branchStarts[ branch + 1 ] ) );
+	}
+
+	public int nLinks()
+	{
+		return linkSources.length;
+	}
+
+	/**
+	 * Returns the index of the source spot of the specified link. It is the
+	 * earliest spot of the link.
+	 *
+	 * @param link
+	 *            the link index.
+	 * @return the index of its source spot.
+	 */
+	public int getLinkSource( final int link )
+	{
+		return linkSources[ link ];
+	}
+
+	/**
+	 * Returns the index of the target spot of the specified link. It is the
+	 * latest spot of the link.
+	 *
+	 * @param link
+	 *            the link index.
+	 * @return the index of its target spot.
+	 */
+	public int getLinkTarget( final int link )
+	{
+		return linkTargets[ link ];
+	}
+
+	/**
+	 * Converts this decomposition to the list-based representation used by
+	 * {@link ConvexBranchesDecomposition#buildBranchGraph(TrackBranchDecomposition)}.
+	 *
+	 * @return a new {@link TrackBranchDecomposition}.
+	 */
+	public TrackBranchDecomposition toTrackBranchDecomposition()
+	{
+		final Collection< List< Spot > > branches = new ArrayList< >( nBranches() );
+		for ( int b = 0; b < nBranches(); b++ )
+			branches.add( getBranch( b ) );
+
+		final Collection< List< Spot > > links = new ArrayList< >( nLinks() );
+		for ( int l = 0; l < nLinks(); l++ )
+		{
+			final List< Spot > link = new ArrayList< >( 2 );
+			link.add( spots[ linkSources[ l ] ] );
+			link.add( spots[ linkTargets[ l ] ] );
+			links.add( link );
+		}
+
+		final TrackBranchDecomposition output = new TrackBranchDecomposition();
+		output.branches = branches;
+		output.links = links;
+		return output;
+	}
+}
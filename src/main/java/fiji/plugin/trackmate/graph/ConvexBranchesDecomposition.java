@@ -1,26 +1,27 @@
 package fiji.plugin.trackmate.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import org.jgrapht.alg.ConnectivityInspector;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
-import org.jgrapht.graph.SimpleGraph;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.TrackModel;
 import net.imglib2.algorithm.Algorithm;
 import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
 
 /**
  * A class that can decompose the tracks of a {@link Model} in convex branches.
@@ -141,13 +142,20 @@ import net.imglib2.algorithm.Benchmark;
  * the decomposition. Only spots belonging to visible tracks are taken into
  * account. This class also outputs the links that were cut in the source model
  * to generate these branches.
+ * <p>
+ * Tracks are decomposed in parallel, and their decompositions are taken from
+ * and stored in the {@link BranchDecompositionCache} of the model, so that
+ * only tracks modified since the last decomposition are processed again.
  * 
  * @author Jean-Yves Tinevez - 2014
  */
-public class ConvexBranchesDecomposition implements Algorithm, Benchmark
+public class ConvexBranchesDecomposition implements Algorithm, Benchmark, MultiThreaded
 {
 	private static final String BASE_ERROR_MSG = "[ConvexBranchesDecomposition] ";
 
+	/** Target number of tasks per thread, for load balancing. */
+	private static final int TASKS_PER_THREAD = 8;
+
 	private String errorMessage;
 
 	private Collection< List< Spot >> branches;
@@ -160,14 +168,16 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 
 	private long processingTime;
 
-	private final TrackModel tm;
+	private final Model model;
 
-	private final TimeDirectedNeighborIndex neighborIndex;
+	private final TrackModel tm;
 
 	private final boolean forbidMiddleLinks;
 
 	private final boolean forbidGaps;
 
+	private int numThreads;
+
 	/**
 	 * Creates a new track splitter.
 	 *
@@ -190,8 +200,9 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 	{
 		this.forbidMiddleLinks = forbidMiddleLinks;
 		this.forbidGaps = forbidGaps;
+		this.model = model;
 		this.tm = model.getTrackModel();
-		this.neighborIndex = tm.getDirectedNeighborIndex();
+		setNumThreads();
 	}
 
 	/**
@@ -238,6 +249,7 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		final long startT = System.currentTimeMillis();
 
 		final Set< Integer > trackIDs = tm.trackIDs( true );
+		final Map< Integer, CompactBranchDecomposition > decompositions = model.getBranchDecompositionCache().get( trackIDs, forbidMiddleLinks, forbidGaps, numThreads );
 
 		branches = new ArrayList<>();
 		branchesPerTrack = new HashMap<>();
@@ -245,7 +257,7 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		linksPerTrack = new HashMap<>();
 		for ( final Integer trackID : trackIDs )
 		{
-			final TrackBranchDecomposition branchDecomposition = processTrack( trackID, tm, neighborIndex, forbidMiddleLinks, forbidGaps );
+			final TrackBranchDecomposition branchDecomposition = decompositions.get( trackID ).toTrackBranchDecomposition();
 
 			branchesPerTrack.put( trackID, branchDecomposition.branches );
 			linksPerTrack.put( trackID, branchDecomposition.links );
@@ -270,8 +282,7 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 	 * @param tm
 	 *            the {@link TrackModel} in which the track is stored.
 	 * @param neighborIndex
-	 *            a {@link TimeDirectedNeighborIndex} needed to quickly retrieve
-	 *            neighbors in the mother graph.
+	 *            ignored. Neighbors are now retrieved from the track edges.
 	 * @param forbidMiddleLinks
 	 *            if <code>true</code>, the decomposition will include branches
 	 *            where only the first and last spots may have more than one
@@ -284,122 +295,176 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 	 *            branches will include gaps.
 	 * @return a new {@link TrackBranchDecomposition}.
 	 * @see ConvexBranchesDecomposition
+	 * @deprecated the neighbor index is not used anymore. Use
+	 *             {@link #decompose(Integer, TrackModel, boolean, boolean)}
+	 *             or the {@link BranchDecompositionCache} of the model.
 	 */
+	@Deprecated
 	public static final TrackBranchDecomposition processTrack( final Integer trackID, final TrackModel tm, final TimeDirectedNeighborIndex neighborIndex, final boolean forbidMiddleLinks, final boolean forbidGaps )
 	{
-		final Set< Spot > allSpots = tm.trackSpots( trackID );
-		final Set< DefaultWeightedEdge > allEdges = tm.trackEdges( trackID );
-		final SimpleGraph< Spot, DefaultWeightedEdge > graph = new SimpleGraph< >( DefaultWeightedEdge.class );
+		return decompose( trackID, tm, forbidMiddleLinks, forbidGaps ).toTrackBranchDecomposition();
+	}
+
+	/**
+	 * A static utility that generates the convex branch decomposition of a
+	 * specific track in a model, in compact form.
+	 * <p>
+	 * This method only reads the track model, and can be called concurrently
+	 * for several tracks, as long as the model is not modified meanwhile.
+	 *
+	 * @param trackID
+	 *            the ID of the track to decompose.
+	 * @param tm
+	 *            the {@link TrackModel} in which the track is stored.
+	 * @param forbidMiddleLinks
+	 *            if <code>true</code>, the decomposition will include branches
+	 *            where only the first and last spots may have more than one
+	 *            predecessor and one successor respectively. If
+	 *            <code>false</code>, some spots inside a branch may be a fusion
+	 *            or splitting point. This leads to fewer and longer branches.
+	 * @param forbidGaps
+	 *            if <code>true</code>, two neighbor spots in a branch will be
+	 *            separated by exactly one frame. If <code>false</code>,
+	 *            branches will include gaps.
+	 * @return a new {@link CompactBranchDecomposition}, or <code>null</code>
+	 *         if the track model does not contain a track with the specified
+	 *         ID.
+	 * @see ConvexBranchesDecomposition
+	 */
+	public static final CompactBranchDecomposition decompose( final Integer trackID, final TrackModel tm, final boolean forbidMiddleLinks, final boolean forbidGaps )
+	{
+		final Set< Spot > trackSpots = tm.trackSpots( trackID );
+		final Set< DefaultWeightedEdge > trackEdges = tm.trackEdges( trackID );
+		if ( null == trackSpots || null == trackEdges ) { return null; }
+
+		/*
+		 * Index spots and edges. Edges are oriented in time, from the source
+		 * to the target.
+		 */
+
+		final int nSpots = trackSpots.size();
+		final Spot[] spots = trackSpots.toArray( new Spot[ nSpots ] );
+		final Map< Spot, Integer > indices = new HashMap< >( 2 * nSpots );
+		final int[] frames = new int[ nSpots ];
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			indices.put( spots[ i ], Integer.valueOf( i ) );
+			frames[ i ] = spots[ i ].getFeature( Spot.FRAME ).intValue();
+		}
+
+		final int nEdges = trackEdges.size();
+		final int[] sources = new int[ nEdges ];
+		final int[] targets = new int[ nEdges ];
+		final int[] nPredecessors = new int[ nSpots ];
+		final int[] nSuccessors = new int[ nSpots ];
+		final Map< DefaultWeightedEdge, Integer > edgeIndices = new HashMap< >( 2 * nEdges );
+		int e = 0;
+		for ( final DefaultWeightedEdge edge : trackEdges )
+		{
+			edgeIndices.put( edge, Integer.valueOf( e ) );
+			final int a = indices.get( tm.getEdgeSource( edge ) ).intValue();
+			final int b = indices.get( tm.getEdgeTarget( edge ) ).intValue();
+			if ( frames[ a ] <= frames[ b ] )
+			{
+				sources[ e ] = a;
+				targets[ e ] = b;
+			}
+			else
+			{
+				sources[ e ] = b;
+				targets[ e ] = a;
+			}
+			// Links within a frame are neither predecessors nor successors.
+			if ( frames[ a ] != frames[ b ] )
+			{
+				nSuccessors[ sources[ e ] ]++;
+				nPredecessors[ targets[ e ] ]++;
+			}
+			e++;
+		}
 
-		for ( final Spot spot : allSpots )
+		/*
+		 * Edges to predecessors and successors of each spot, packed, in the
+		 * order of the edges of the spot in the graph.
+		 */
+		final int[] predecessorStarts = new int[ nSpots + 1 ];
+		final int[] successorStarts = new int[ nSpots + 1 ];
+		for ( int i = 0; i < nSpots; i++ )
 		{
-			graph.addVertex( spot );
+			predecessorStarts[ i + 1 ] = predecessorStarts[ i ] + nPredecessors[ i ];
+			successorStarts[ i + 1 ] = successorStarts[ i ] + nSuccessors[ i ];
 		}
-		for ( final DefaultWeightedEdge edge : allEdges )
+		final int[] predecessorEdges = new int[ predecessorStarts[ nSpots ] ];
+		final int[] successorEdges = new int[ successorStarts[ nSpots ] ];
+		Arrays.fill( nPredecessors, 0 );
+		Arrays.fill( nSuccessors, 0 );
+		for ( int i = 0; i < nSpots; i++ )
 		{
-			graph.addEdge( tm.getEdgeSource( edge ), tm.getEdgeTarget( edge ) );
+			for ( final DefaultWeightedEdge edge : tm.edgesOf( spots[ i ] ) )
+			{
+				final int k = edgeIndices.get( edge ).intValue();
+				if ( frames[ sources[ k ] ] == frames[ targets[ k ] ] )
+					continue;
+				if ( sources[ k ] == i )
+					successorEdges[ successorStarts[ i ] + nSuccessors[ i ]++ ] = k;
+				else
+					predecessorEdges[ predecessorStarts[ i ] + nPredecessors[ i ]++ ] = k;
+			}
 		}
 
-		final Collection< List< Spot >> links = new HashSet< >();
-		for ( final Spot spot : allSpots )
+		/*
+		 * 1st pass: cut links at fusion and splitting points.
+		 */
+
+		final boolean[] cut = new boolean[ nEdges ];
+		for ( int i = 0; i < nSpots; i++ )
 		{
-			final Set< Spot > successors = neighborIndex.successorsOf( spot );
-			final Set< Spot > predecessors = neighborIndex.predecessorsOf( spot );
-			if ( predecessors.size() <= 1 && successors.size() <= 1 )
+			final int np = nPredecessors[ i ];
+			final int ns = nSuccessors[ i ];
+			if ( np <= 1 && ns <= 1 )
 			{
 				continue;
 			}
 
-			if ( predecessors.size() == 0 )
+			final int ps = predecessorStarts[ i ];
+			final int pe = predecessorStarts[ i + 1 ];
+			final int ss = successorStarts[ i ];
+			final int se = successorStarts[ i + 1 ];
+
+			if ( np == 0 )
 			{
-				boolean found = false;
-				for ( final Spot successor : successors )
-				{
-					if ( !forbidMiddleLinks && !found && successor.diffTo( spot, Spot.FRAME ) < 2 )
-					{
-						found = true;
-					}
-					else
-					{
-						graph.removeEdge( spot, successor );
-						links.add( makeLink( spot, successor ) );
-					}
-				}
+				cutAllButOne( successorEdges, ss, se, targets, frames, i, forbidMiddleLinks, cut );
 			}
-			else if ( successors.size() == 0 )
+			else if ( ns == 0 )
 			{
-				boolean found = false;
-				for ( final Spot predecessor : predecessors )
-				{
-					if ( !forbidMiddleLinks && !found && spot.diffTo( predecessor, Spot.FRAME ) < 2 )
-					{
-						found = true;
-					}
-					else
-					{
-						graph.removeEdge( predecessor, spot );
-						links.add( makeLink( predecessor, spot ) );
-					}
-				}
+				cutAllButOne( predecessorEdges, ps, pe, sources, frames, i, forbidMiddleLinks, cut );
 			}
-			else if ( predecessors.size() == 1 )
+			else if ( np == 1 )
 			{
-				final Spot previous = predecessors.iterator().next();
-				if ( previous.diffTo( spot, Spot.FRAME ) < 2 )
+				final int previous = predecessorEdges[ ps ];
+				if ( frames[ sources[ previous ] ] - frames[ i ] < 2 )
 				{
-					for ( final Spot successor : successors )
-					{
-						graph.removeEdge( spot, successor );
-						links.add( makeLink( spot, successor ) );
-					}
+					for ( int k = ss; k < se; k++ )
+						cut[ successorEdges[ k ] ] = true;
 				}
 				else
 				{
-					graph.removeEdge( previous, spot );
-					links.add( makeLink( previous, spot ) );
-					boolean found = false;
-					for ( final Spot successor : successors )
-					{
-						if ( !forbidMiddleLinks && !found && successor.diffTo( spot, Spot.FRAME ) < 2 )
-						{
-							found = true;
-						}
-						else
-						{
-							graph.removeEdge( spot, successor );
-							links.add( makeLink( spot, successor ) );
-						}
-					}
+					cut[ previous ] = true;
+					cutAllButOne( successorEdges, ss, se, targets, frames, i, forbidMiddleLinks, cut );
 				}
 			}
-			else if ( successors.size() == 1 )
+			else if ( ns == 1 )
 			{
-				final Spot next = successors.iterator().next();
-				if ( spot.diffTo( next, Spot.FRAME ) < 2 )
+				final int next = successorEdges[ ss ];
+				if ( frames[ i ] - frames[ targets[ next ] ] < 2 )
 				{
-					for ( final Spot predecessor : predecessors )
-					{
-						graph.removeEdge( predecessor, spot );
-						links.add( makeLink( predecessor, spot ) );
-					}
+					for ( int k = ps; k < pe; k++ )
+						cut[ predecessorEdges[ k ] ] = true;
 				}
 				else
 				{
-					graph.removeEdge( spot, next );
-					links.add( makeLink( spot, next ) );
-					boolean found = false;
-					for ( final Spot predecessor : predecessors )
-					{
-						if ( !forbidMiddleLinks && !found && spot.diffTo( predecessor, Spot.FRAME ) < 2 )
-						{
-							found = true;
-						}
-						else
-						{
-							graph.removeEdge( predecessor, spot );
-							links.add( makeLink( predecessor, spot ) );
-						}
-					}
+					cut[ next ] = true;
+					cutAllButOne( predecessorEdges, ps, pe, sources, frames, i, forbidMiddleLinks, cut );
 				}
 			}
 			else
@@ -408,37 +473,8 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 				 * Complex point: we have more than 2 successor and more than 2
 				 * predecessors.
 				 */
-				boolean found = false;
-				for ( final Spot predecessor : predecessors )
-				{
-					if ( !forbidMiddleLinks && !found && spot.diffTo( predecessor, Spot.FRAME ) < 2 )
-					{
-						found = true;
-					}
-					else
-					{
-						graph.removeEdge( predecessor, spot );
-						links.add( makeLink( predecessor, spot ) );
-					}
-				}
-				if ( !forbidMiddleLinks )
-				{
-					// Possibly extend the branch requires resetting this to
-					// false, so that we do not destroy on outgoing link.
-					found = false;
-				}
-				for ( final Spot successor : successors )
-				{
-					if ( !forbidMiddleLinks && !found && successor.diffTo( spot, Spot.FRAME ) < 2 )
-					{
-						found = true;
-					}
-					else
-					{
-						graph.removeEdge( spot, successor );
-						links.add( makeLink( spot, successor ) );
-					}
-				}
+				cutAllButOne( predecessorEdges, ps, pe, sources, frames, i, forbidMiddleLinks, cut );
+				cutAllButOne( successorEdges, ss, se, targets, frames, i, forbidMiddleLinks, cut );
 			}
 		}
 
@@ -448,22 +484,68 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 
 		if ( forbidGaps )
 		{
-			final Set< DefaultWeightedEdge > newEdges = graph.edgeSet();
-			final Set< DefaultWeightedEdge > toRemove = new HashSet< >();
-			for ( final DefaultWeightedEdge edge : newEdges )
+			for ( e = 0; e < nEdges; e++ )
 			{
-				final Spot source = graph.getEdgeSource( edge );
-				final Spot target = graph.getEdgeTarget( edge );
-				if ( Math.abs( source.diffTo( target, Spot.FRAME ) ) > 1 )
-				{
-					toRemove.add( edge );
-					links.add( makeLink( source, target ) );
-				}
+				if ( frames[ targets[ e ] ] - frames[ sources[ e ] ] > 1 )
+					cut[ e ] = true;
 			}
+		}
+
+		/*
+		 * Branches are the connected components of the uncut links.
+		 */
 
-			for ( final DefaultWeightedEdge edge : toRemove )
+		final int[] parents = new int[ nSpots ];
+		for ( int i = 0; i < nSpots; i++ )
+			parents[ i ] = i;
+		int nLinks = 0;
+		for ( e = 0; e < nEdges; e++ )
+		{
+			if ( cut[ e ] )
 			{
-				graph.removeEdge( edge );
+				nLinks++;
+				continue;
+			}
+			final int ra = root( parents, sources[ e ] );
+			final int rb = root( parents, targets[ e ] );
+			if ( ra != rb )
+				parents[ ra ] = rb;
+		}
+
+		final int[] branchOfRoot = new int[ nSpots ];
+		Arrays.fill( branchOfRoot, -1 );
+		final int[] branchSizes = new int[ nSpots ];
+		int nBranches = 0;
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final int r = root( parents, i );
+			if ( branchOfRoot[ r ] < 0 )
+				branchOfRoot[ r ] = nBranches++;
+			branchSizes[ branchOfRoot[ r ] ]++;
+		}
+
+		final int[] branchStarts = new int[ nBranches + 1 ];
+		for ( int b = 0; b < nBranches; b++ )
+			branchStarts[ b + 1 ] = branchStarts[ b ] + branchSizes[ b ];
+
+		final Spot[] sorted = new Spot[ nSpots ];
+		final int[] positions = new int[ nSpots ];
+		Arrays.fill( branchSizes, 0 );
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final int b = branchOfRoot[ root( parents, i ) ];
+			positions[ i ] = branchStarts[ b ] + branchSizes[ b ]++;
+			sorted[ positions[ i ] ] = spots[ i ];
+		}
+
+		final Comparator< Spot > comparator = Spot.frameComparator;
+		for ( int b = 0; b < nBranches; b++ )
+		{
+			if ( branchStarts[ b + 1 ] - branchStarts[ b ] > 1 )
+			{
+				Arrays.sort( sorted, branchStarts[ b ], branchStarts[ b + 1 ], comparator );
+				for ( int k = branchStarts[ b ]; k < branchStarts[ b + 1 ]; k++ )
+					positions[ indices.get( sorted[ k ] ).intValue() ] = k;
 			}
 		}
 
@@ -471,23 +553,91 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		 * Output
 		 */
 
-		final ConnectivityInspector< Spot, DefaultWeightedEdge > connectivity = new ConnectivityInspector< >( graph );
-		final List< Set< Spot >> connectedSets = connectivity.connectedSets();
-		final Collection< List< Spot >> branches = new HashSet< >( connectedSets.size() );
-		final Comparator< Spot > comparator = Spot.frameComparator;
-		for ( final Set< Spot > set : connectedSets )
+		final int[] linkSources = new int[ nLinks ];
+		final int[] linkTargets = new int[ nLinks ];
+		int l = 0;
+		for ( e = 0; e < nEdges; e++ )
 		{
-			final List< Spot > branch = new ArrayList< >( set.size() );
-			branch.addAll( set );
-			Collections.sort( branch, comparator );
-			branches.add( branch );
+			if ( !cut[ e ] )
+				continue;
+			linkSources[ l ] = positions[ sources[ e ] ];
+			linkTargets[ l ] = positions[ targets[ e ] ];
+			l++;
 		}
 
-		final TrackBranchDecomposition output = new TrackBranchDecomposition();
-		output.branches = branches;
-		output.links = links;
+		return new CompactBranchDecomposition( sorted, branchStarts, linkSources, linkTargets, nEdges );
+	}
+
+	/**
+	 * Decomposes several tracks in parallel.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to decompose. IDs not found in the
+	 *            track model are skipped.
+	 * @param tm
+	 *            the {@link TrackModel} in which the tracks are stored.
+	 * @param forbidMiddleLinks
+	 *            whether to forbid links to spots within branches.
+	 * @param forbidGaps
+	 *            whether to forbid gaps within branches.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @return a new map from track ID to decomposition.
+	 * @see #decompose(Integer, TrackModel, boolean, boolean)
+	 */
+	public static final Map< Integer, CompactBranchDecomposition > decompose( final Collection< Integer > trackIDs, final TrackModel tm, final boolean forbidMiddleLinks, final boolean forbidGaps, final int numThreads )
+	{
+		final Map< Integer, CompactBranchDecomposition > output = new ConcurrentHashMap< >( 2 * trackIDs.size() );
+		if ( trackIDs.isEmpty() ) { return output; }
+
+		final Integer[] ids = trackIDs.toArray( new Integer[ trackIDs.size() ] );
+		final int threads = Math.max( 1, numThreads );
+		final int grain = Math.max( 1, ids.length / ( TASKS_PER_THREAD * threads ) );
+
+		final ForkJoinPool pool = new ForkJoinPool( threads );
+		try
+		{
+			pool.invoke( new DecompositionTask( ids, 0, ids.length, grain, tm, forbidMiddleLinks, forbidGaps, output ) );
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 		return output;
+	}
 
+	/**
+	 * Cuts all the links of a spot to its predecessors or its successors, but
+	 * possibly the first one that spans less than 2 frames.
+	 */
+	private static final void cutAllButOne( final int[] edges, final int from, final int to, final int[] neighbors, final int[] frames, final int spot, final boolean forbidMiddleLinks, final boolean[] cut )
+	{
+		boolean found = false;
+		for ( int k = from; k < to; k++ )
+		{
+			final int edge = edges[ k ];
+			if ( !forbidMiddleLinks && !found && Math.abs( frames[ neighbors[ edge ] ] - frames[ spot ] ) < 2 )
+			{
+				found = true;
+			}
+			else
+			{
+				cut[ edge ] = true;
+			}
+		}
+	}
+
+	/**
+	 * Union-find root lookup, with path halving.
+	 */
+	private static final int root( final int[] parents, int i )
+	{
+		while ( parents[ i ] != i )
+		{
+			parents[ i ] = parents[ parents[ i ] ];
+			i = parents[ i ];
+		}
+		return i;
 	}
 
 	/**
@@ -520,6 +670,9 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 			branchGraph.addVertex( branch );
 		}
 
+		// Map of all the spots of each branch, built only if needed.
+		Map< Spot, List< Spot > > allSpots = null;
+
 		for ( final List< Spot > link : links )
 		{
 			final Spot source = link.get( 0 );
@@ -534,27 +687,17 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 				 * spot, because the branch decomposition authorized it. So we
 				 * have to find it...
 				 */
-				for ( final List< Spot > branch : branches )
-				{
-					if ( branch.contains( target ) )
-					{
-						targetBranch = branch;
-						break;
-					}
-				}
+				if ( null == allSpots )
+					allSpots = mapSpotsToBranches( branches );
+				targetBranch = allSpots.get( target );
 			}
 
 			List< Spot > sourceBranch = lastSpots.get( source );
 			if ( sourceBranch == null )
 			{
-				for ( final List< Spot > branch : branches )
-				{
-					if ( branch.contains( source ) )
-					{
-						sourceBranch = branch;
-						break;
-					}
-				}
+				if ( null == allSpots )
+					allSpots = mapSpotsToBranches( branches );
+				sourceBranch = allSpots.get( source );
 			}
 
 			branchGraph.addEdge( sourceBranch, targetBranch );
@@ -563,12 +706,13 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		return branchGraph;
 	}
 
-	private static final List< Spot > makeLink( final Spot spotA, final Spot spotB )
+	private static final Map< Spot, List< Spot > > mapSpotsToBranches( final Collection< List< Spot > > branches )
 	{
-		final List< Spot > link = new ArrayList< >( 2 );
-		link.add( spotA );
-		link.add( spotB );
-		return link;
+		final Map< Spot, List< Spot > > map = new HashMap< >();
+		for ( final List< Spot > branch : branches )
+			for ( final Spot spot : branch )
+				map.put( spot, branch );
+		return map;
 	}
 
 	@Override
@@ -577,6 +721,24 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 		return errorMessage;
 	}
 
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	/**
 	 * Returns the collection of branches built by this algorithm.
 	 * <p>
@@ -646,6 +808,64 @@ public class ConvexBranchesDecomposition implements Algorithm, Benchmark
 	 * STATIC CLASSES
 	 */
 
+	/**
+	 * Decomposes a range of tracks, splitting it in halves while it is larger
+	 * than the grain.
+	 */
+	private static final class DecompositionTask extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final Integer[] trackIDs;
+
+		private final int from;
+
+		private final int to;
+
+		private final int grain;
+
+		private final TrackModel tm;
+
+		private final boolean forbidMiddleLinks;
+
+		private final boolean forbidGaps;
+
+		private final Map< Integer, CompactBranchDecomposition > output;
+
+		public DecompositionTask( final Integer[] trackIDs, final int from, final int to, final int grain, final TrackModel tm, final boolean forbidMiddleLinks, final boolean forbidGaps, final Map< Integer, CompactBranchDecomposition > output )
+		{
+			this.trackIDs = trackIDs;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.tm = tm;
+			this.forbidMiddleLinks = forbidMiddleLinks;
+			this.forbidGaps = forbidGaps;
+			this.output = output;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from > grain )
+			{
+				final int mid = ( from + to ) >>> 1;
+				invokeAll(
+						new DecompositionTask( trackIDs, from, mid, grain, tm, forbidMiddleLinks, forbidGaps, output ),
+						new DecompositionTask( trackIDs, mid, to, grain, tm, forbidMiddleLinks, forbidGaps, output ) );
+				return;
+			}
+
+			for ( int i = from; i < to; i++ )
+			{
+				final CompactBranchDecomposition decomposition = decompose( trackIDs[ i ], tm, forbidMiddleLinks, forbidGaps );
+				if ( null != decomposition )
+					output.put( trackIDs[ i ], decomposition );
+			}
+		}
+	}
+
 	/**
 	 * A two public fields class used to return the convex branch decomposition
 	 * of a track.
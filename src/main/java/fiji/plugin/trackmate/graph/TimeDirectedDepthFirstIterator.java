@@ -11,12 +11,42 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 
 public class TimeDirectedDepthFirstIterator extends SortedDepthFirstIterator<Spot, DefaultWeightedEdge> {
 
+	/**
+	 * If not <code>null</code>, successors are taken from this index instead
+	 * of being searched for in the graph.
+	 */
+	private final TimeDirectedNeighborIndex neighborIndex;
+
 	public TimeDirectedDepthFirstIterator(Graph<Spot, DefaultWeightedEdge> g, Spot startVertex) {
+		this(g, startVertex, null);
+	}
+
+	public TimeDirectedDepthFirstIterator(Graph<Spot, DefaultWeightedEdge> g, Spot startVertex, TimeDirectedNeighborIndex neighborIndex) {
 		super(g, startVertex, null);
+		this.neighborIndex = neighborIndex;
 	}
 	
     @Override
 	protected void addUnseenChildrenOf(Spot vertex) {
+
+		if (null != neighborIndex) {
+			final int index = neighborIndex.indexOf(vertex);
+			final int n = index < 0 ? 0 : neighborIndex.nSuccessors(index);
+			for (int k = 0; k < n; k++) {
+				final DefaultWeightedEdge edge = neighborIndex.getSuccessorEdge(index, k);
+				if (nListeners != 0) {
+					fireEdgeTraversed(createEdgeTraversalEvent(edge));
+				}
+
+				final Spot oppositeV = neighborIndex.getSpot(neighborIndex.getSuccessor(index, k));
+				if ( seen.containsKey(oppositeV)) {
+					encounterVertexAgain(oppositeV, edge);
+				} else {
+					encounterVertex(oppositeV, edge);
+				}
+			}
+			return;
+		}
     	
     	int ts = vertex.getFeature(Spot.FRAME).intValue();
         for (DefaultWeightedEdge edge : specifics.edgesOf(vertex)) {
@@ -1,53 +1,212 @@
 package fiji.plugin.trackmate.graph;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jgrapht.Graph;
-import org.jgrapht.Graphs;
 import org.jgrapht.alg.NeighborIndex;
 import org.jgrapht.event.GraphEdgeChangeEvent;
 import org.jgrapht.event.GraphVertexChangeEvent;
 import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.util.ModifiableInteger;
 
 import fiji.plugin.trackmate.Spot;
 
+/**
+ * A neighbor index that separates the neighbors of a spot in predecessors and
+ * successors, depending on whether they are in an earlier or later frame.
+ * <p>
+ * The index is built in one pass over the edges of the graph, and stored in
+ * arrays: spots are given an integer index, and the predecessors and
+ * successors of each spot are stored as contiguous ranges of spot indices,
+ * along with the matching edges. Neighbors can be queried either with
+ * {@link #predecessorsOf(Spot)} and {@link #successorsOf(Spot)}, or without
+ * creating any object with {@link #indexOf(Spot)},
+ * {@link #nSuccessors(int)}, {@link #getSuccessor(int, int)} and
+ * {@link #getSuccessorEdge(int, int)}.
+ * <p>
+ * When the index is registered as a listener of the graph, edits are patched
+ * in incrementally: the spots whose neighbors changed get their own neighbor
+ * arrays, until there are enough of them to justify rebuilding the whole
+ * index. Queries can run concurrently with one thread editing the graph, but
+ * see a consistent state only once the edit is done. A rebuild is prepared
+ * aside and published at once, so that each query sees either the old or the
+ * new index. Spot indices are only valid until the next rebuild.
+ * <p>
+ * The graph is expected to be simple: two spots are linked by at most one
+ * edge, and links between spots in the same frame are ignored.
+ */
 public class TimeDirectedNeighborIndex extends NeighborIndex< Spot, DefaultWeightedEdge >
 {
 
-	// ~ Instance fields
-	// --------------------------------------------------------
+	/**
+	 * Rebuild the index when the number of patched or removed spots exceeds
+	 * this fraction of the number of spots.
+	 */
+	private static final double REBUILD_RATIO = 0.25;
+
+	/** Never rebuild the index for fewer patched spots than this. */
+	private static final int MIN_PATCHES_BEFORE_REBUILD = 64;
+
+	private static final int[] NO_NEIGHBORS = new int[ 0 ];
 
-	Map< Spot, Neighbors< Spot, DefaultWeightedEdge > > predecessorMap = new HashMap< >();
+	private static final DefaultWeightedEdge[] NO_EDGES = new DefaultWeightedEdge[ 0 ];
 
-	Map< Spot, Neighbors< Spot, DefaultWeightedEdge > > successorMap = new HashMap< >();
+	private static final Neighbors EMPTY = new Neighbors( NO_NEIGHBORS, NO_EDGES );
 
 	private final Graph< Spot, DefaultWeightedEdge > graph;
 
-	// ~ Constructors
-	// -----------------------------------------------------------
+	/** The index built in the last rebuild, with the edits patched since. */
+	private volatile State state;
 
 	public TimeDirectedNeighborIndex( final Graph< Spot, DefaultWeightedEdge > g )
 	{
 		super( g );
 		this.graph = g;
+		rebuild();
 	}
 
-	// ~ Methods
-	// ----------------------------------------------------------------
+	/*
+	 * INDEX-BASED QUERIES
+	 */
+
+	/**
+	 * Returns the index of the specified spot.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return its index, or -1 if the spot is not in the graph.
+	 */
+	public int indexOf( final Spot spot )
+	{
+		return state.indexOf( spot );
+	}
+
+	/**
+	 * Returns the spot with the specified index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @return the spot, or <code>null</code> if it was removed from the graph.
+	 */
+	public Spot getSpot( final int index )
+	{
+		return state.spots[ index ];
+	}
+
+	public int nPredecessors( final int index )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.predecessorPatches, index );
+		if ( null != patched )
+			return patched.size();
+		final Ranges b = st.base;
+		return index < b.nSpots ? b.predecessorStarts[ index + 1 ] - b.predecessorStarts[ index ] : 0;
+	}
+
+	/**
+	 * Returns the index of the k-th predecessor of the spot with the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @param k
+	 *            the predecessor rank, from 0 to {@link #nPredecessors(int)},
+	 *            exclusive.
+	 * @return the index of the predecessor.
+	 */
+	public int getPredecessor( final int index, final int k )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.predecessorPatches, index );
+		if ( null != patched )
+			return patched.neighbor( k );
+		return st.base.predecessorIndices[ st.base.predecessorStarts[ index ] + k ];
+	}
+
+	/**
+	 * Returns the edge to the k-th predecessor of the spot with the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @param k
+	 *            the predecessor rank, from 0 to {@link #nPredecessors(int)},
+	 *            exclusive.
+	 * @return the edge.
+	 */
+	public DefaultWeightedEdge getPredecessorEdge( final int index, final int k )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.predecessorPatches, index );
+		if ( null != patched )
+			return patched.edge( k );
+		return st.base.predecessorEdges[ st.base.predecessorStarts[ index ] + k ];
+	}
+
+	public int nSuccessors( final int index )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.successorPatches, index );
+		if ( null != patched )
+			return patched.size();
+		final Ranges b = st.base;
+		return index < b.nSpots ? b.successorStarts[ index + 1 ] - b.successorStarts[ index ] : 0;
+	}
+
+	/**
+	 * Returns the index of the k-th successor of the spot with the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @param k
+	 *            the successor rank, from 0 to {@link #nSuccessors(int)},
+	 *            exclusive.
+	 * @return the index of the successor.
+	 */
+	public int getSuccessor( final int index, final int k )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.successorPatches, index );
+		if ( null != patched )
+			return patched.neighbor( k );
+		return st.base.successorIndices[ st.base.successorStarts[ index ] + k ];
+	}
+
+	/**
+	 * Returns the edge to the k-th successor of the spot with the specified
+	 * index.
+	 *
+	 * @param index
+	 *            the spot index.
+	 * @param k
+	 *            the successor rank, from 0 to {@link #nSuccessors(int)},
+	 *            exclusive.
+	 * @return the edge.
+	 */
+	public DefaultWeightedEdge getSuccessorEdge( final int index, final int k )
+	{
+		final State st = state;
+		final Neighbors patched = patch( st.successorPatches, index );
+		if ( null != patched )
+			return patched.edge( k );
+		return st.base.successorEdges[ st.base.successorStarts[ index ] + k ];
+	}
+
+	/*
+	 * SPOT-BASED QUERIES
+	 */
 
 	/**
 	 * Returns the set of vertices which are the predecessors of a specified
-	 * vertex. The returned set is backed by the index, and will be updated when
-	 * the graph changes as long as the index has been added as a listener to
-	 * the graph.
+	 * vertex. The returned set is a view of the neighbors at the time of the
+	 * call.
 	 *
 	 * @param v
 	 *            the vertex whose predecessors are desired
@@ -56,16 +215,14 @@ public class TimeDirectedNeighborIndex extends NeighborIndex< Spot, DefaultWeigh
 	 */
 	public Set< Spot > predecessorsOf( final Spot v )
 	{
-		return getPredecessors( v ).getNeighbors();
+		final State st = state;
+		return new NeighborSet( st.predecessors( st.indexOf( v ) ), st.spots );
 	}
 
 	/**
-	 * Returns the set of vertices which are the predecessors of a specified
-	 * vertex. If the graph is a multigraph, vertices may appear more than once
-	 * in the returned list. Because a list of predecessors can not be
-	 * efficiently maintained, it is reconstructed on every invocation by
-	 * duplicating entries in the neighbor set. It is thus more efficient to use
-	 * {@link #predecessorsOf(Spot)} unless duplicate neighbors are required.
+	 * Returns the list of vertices which are the predecessors of a specified
+	 * vertex. The graph being simple, it has the same content as
+	 * {@link #predecessorsOf(Spot)}.
 	 *
 	 * @param v
 	 *            the vertex whose predecessors are desired
@@ -74,14 +231,14 @@ public class TimeDirectedNeighborIndex extends NeighborIndex< Spot, DefaultWeigh
 	 */
 	public List< Spot > predecessorListOf( final Spot v )
 	{
-		return getPredecessors( v ).getNeighborList();
+		final State st = state;
+		return new NeighborList( st.predecessors( st.indexOf( v ) ), st.spots );
 	}
 
 	/**
 	 * Returns the set of vertices which are the successors of a specified
-	 * vertex. The returned set is backed by the index, and will be updated when
-	 * the graph changes as long as the index has been added as a listener to
-	 * the graph.
+	 * vertex. The returned set is a view of the neighbors at the time of the
+	 * call.
 	 *
 	 * @param v
 	 *            the vertex whose successors are desired
@@ -90,16 +247,14 @@ public class TimeDirectedNeighborIndex extends NeighborIndex< Spot, DefaultWeigh
 	 */
 	public Set< Spot > successorsOf( final Spot v )
 	{
-		return getSuccessors( v ).getNeighbors();
+		final State st = state;
+		return new NeighborSet( st.successors( st.indexOf( v ) ), st.spots );
 	}
 
 	/**
-	 * Returns the set of vertices which are the successors of a specified
-	 * vertex. If the graph is a multigraph, vertices may appear more than once
-	 * in the returned list. Because a list of successors can not be efficiently
-	 * maintained, it is reconstructed on every invocation by duplicating
-	 * entries in the neighbor set. It is thus more efficient to use
-	 * {@link #successorsOf(Spot)} unless duplicate neighbors are required.
+	 * Returns the list of vertices which are the successors of a specified
+	 * vertex. The graph being simple, it has the same content as
+	 * {@link #successorsOf(Spot)}.
 	 *
 	 * @param v
 	 *            the vertex whose successors are desired
@@ -108,198 +263,479 @@ public class TimeDirectedNeighborIndex extends NeighborIndex< Spot, DefaultWeigh
 	 */
 	public List< Spot > successorListOf( final Spot v )
 	{
-		return getSuccessors( v ).getNeighborList();
+		final State st = state;
+		return new NeighborList( st.successors( st.indexOf( v ) ), st.spots );
 	}
 
+	/*
+	 * UPDATES
+	 */
+
 	/**
-	 * @see org.jgrapht.event.GraphListener#edgeAdded(GraphEdgeChangeEvent)
+	 * Updates the neighbors of a spot whose frame changed, and of its
+	 * neighbors. Frame changes do not go through the graph, so they must be
+	 * notified explicitly.
+	 *
+	 * @param spot
+	 *            the spot whose frame changed.
 	 */
+	public synchronized void frameChanged( final Spot spot )
+	{
+		if ( indexOf( spot ) < 0 || !graph.containsVertex( spot ) )
+			return;
+
+		final Set< DefaultWeightedEdge > edges = graph.edgesOf( spot );
+		for ( final DefaultWeightedEdge edge : edges )
+			unlink( edge );
+		for ( final DefaultWeightedEdge edge : edges )
+			link( edge );
+		rebuildIfNeeded();
+	}
+
+	@Override
+	public synchronized void edgeAdded( final GraphEdgeChangeEvent< Spot, DefaultWeightedEdge > e )
+	{
+		link( e.getEdge() );
+		rebuildIfNeeded();
+	}
+
 	@Override
-	public void edgeAdded( final GraphEdgeChangeEvent< Spot, DefaultWeightedEdge > e )
+	public synchronized void edgeRemoved( final GraphEdgeChangeEvent< Spot, DefaultWeightedEdge > e )
+	{
+		unlink( e.getEdge() );
+		rebuildIfNeeded();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final GraphVertexChangeEvent< Spot > e )
+	{
+		state.indexOrAdd( e.getVertex() );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final GraphVertexChangeEvent< Spot > e )
+	{
+		final State st = state;
+		final Integer index = st.indices.remove( e.getVertex() );
+		if ( null == index )
+			return;
+
+		// Its edges were removed before, but clear its neighbors anyway.
+		st.predecessorPatches.put( index, EMPTY );
+		st.successorPatches.put( index, EMPTY );
+		st.spots[ index.intValue() ] = null;
+		st.nRemoved++;
+		rebuildIfNeeded();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void link( final DefaultWeightedEdge edge )
 	{
-		final DefaultWeightedEdge edge = e.getEdge();
 		final Spot source = graph.getEdgeSource( edge );
 		final Spot target = graph.getEdgeTarget( edge );
+		final int ts = source.getFeature( Spot.FRAME ).intValue();
+		final int tt = target.getFeature( Spot.FRAME ).intValue();
+		if ( ts == tt )
+			return;
+
+		final State st = state;
+		final int is = st.indexOrAdd( source );
+		final int it = st.indexOrAdd( target );
+		final int earlier = ts < tt ? is : it;
+		final int later = ts < tt ? it : is;
+		st.successorPatches.put( Integer.valueOf( earlier ), st.successors( earlier ).plus( later, edge ) );
+		st.predecessorPatches.put( Integer.valueOf( later ), st.predecessors( later ).plus( earlier, edge ) );
+	}
+
+	private void unlink( final DefaultWeightedEdge edge )
+	{
+		final State st = state;
+		final int is = st.indexOf( graph.getEdgeSource( edge ) );
+		final int it = st.indexOf( graph.getEdgeTarget( edge ) );
+		if ( is >= 0 )
+			st.patchWithout( is, edge );
+		if ( it >= 0 )
+			st.patchWithout( it, edge );
+	}
+
+	private static Neighbors patch( final Map< Integer, Neighbors > patches, final int index )
+	{
+		if ( patches.isEmpty() )
+			return null;
+		return patches.get( Integer.valueOf( index ) );
+	}
 
-		// if a map does not already contain an entry,
-		// then skip addNeighbor, since instantiating the map
-		// will take care of processing the edge (which has already
-		// been added)
+	private void rebuildIfNeeded()
+	{
+		final State st = state;
+		final int nPatched = Math.max( st.predecessorPatches.size(), st.successorPatches.size() ) + st.nRemoved;
+		if ( nPatched > MIN_PATCHES_BEFORE_REBUILD && nPatched > REBUILD_RATIO * st.nSpots )
+			rebuild();
+	}
 
-		if ( successorMap.containsKey( source ) )
+	/**
+	 * Builds the whole index in one pass over the edges of the graph, then
+	 * publishes it.
+	 */
+	private synchronized void rebuild()
+	{
+		final Set< Spot > vertices = graph.vertexSet();
+		final int n = vertices.size();
+		final Spot[] lSpots = new Spot[ n ];
+		final int[] frames = new int[ n ];
+		final Map< Spot, Integer > indices = new ConcurrentHashMap< >( 2 * n );
+		int i = 0;
+		for ( final Spot spot : vertices )
 		{
-			getSuccessors( source ).addNeighbor( target );
+			lSpots[ i ] = spot;
+			frames[ i ] = spot.getFeature( Spot.FRAME ).intValue();
+			indices.put( spot, Integer.valueOf( i ) );
+			i++;
 		}
-		else
+
+		final Set< DefaultWeightedEdge > edges = graph.edgeSet();
+		final int nEdges = edges.size();
+		final int[] earlier = new int[ nEdges ];
+		final int[] later = new int[ nEdges ];
+		final DefaultWeightedEdge[] edgeArray = new DefaultWeightedEdge[ nEdges ];
+		final int[] predecessorStarts = new int[ n + 1 ];
+		final int[] successorStarts = new int[ n + 1 ];
+		int e = 0;
+		for ( final DefaultWeightedEdge edge : edges )
 		{
-			getSuccessors( source );
+			final int a = indices.get( graph.getEdgeSource( edge ) ).intValue();
+			final int b = indices.get( graph.getEdgeTarget( edge ) ).intValue();
+			if ( frames[ a ] == frames[ b ] )
+				continue;
+			earlier[ e ] = frames[ a ] < frames[ b ] ? a : b;
+			later[ e ] = frames[ a ] < frames[ b ] ? b : a;
+			edgeArray[ e ] = edge;
+			successorStarts[ earlier[ e ] + 1 ]++;
+			predecessorStarts[ later[ e ] + 1 ]++;
+			e++;
 		}
-		if ( predecessorMap.containsKey( target ) )
+		final int nLinks = e;
+
+		for ( i = 0; i < n; i++ )
 		{
-			getPredecessors( target ).addNeighbor( source );
+			predecessorStarts[ i + 1 ] += predecessorStarts[ i ];
+			successorStarts[ i + 1 ] += successorStarts[ i ];
 		}
-		else
+
+		// Contiguous ranges in shared arrays.
+		final int[] predecessorIndices = new int[ nLinks ];
+		final DefaultWeightedEdge[] predecessorEdges = new DefaultWeightedEdge[ nLinks ];
+		final int[] successorIndices = new int[ nLinks ];
+		final DefaultWeightedEdge[] successorEdges = new DefaultWeightedEdge[ nLinks ];
+		final int[] predecessorFill = new int[ n ];
+		final int[] successorFill = new int[ n ];
+		for ( e = 0; e < nLinks; e++ )
 		{
-			getPredecessors( target );
+			final int ps = predecessorStarts[ later[ e ] ] + predecessorFill[ later[ e ] ]++;
+			predecessorIndices[ ps ] = earlier[ e ];
+			predecessorEdges[ ps ] = edgeArray[ e ];
+			final int ss = successorStarts[ earlier[ e ] ] + successorFill[ earlier[ e ] ]++;
+			successorIndices[ ss ] = later[ e ];
+			successorEdges[ ss ] = edgeArray[ e ];
 		}
+
+		final Ranges base = new Ranges( n, predecessorStarts, predecessorIndices, predecessorEdges, successorStarts, successorIndices, successorEdges );
+		this.state = new State( indices, lSpots, base );
 	}
 
+	/*
+	 * INNER CLASSES
+	 */
+
 	/**
-	 * @see org.jgrapht.event.GraphListener#edgeRemoved(GraphEdgeChangeEvent)
+	 * A rebuilt index and the edits patched in since. Only the thread editing
+	 * the graph modifies it.
 	 */
-	@Override
-	public void edgeRemoved( final GraphEdgeChangeEvent< Spot, DefaultWeightedEdge > e )
+	private static final class State
 	{
-		final DefaultWeightedEdge edge = e.getEdge();
-		final Spot source = graph.getEdgeSource( edge );
-		final Spot target = graph.getEdgeTarget( edge );
-		if ( successorMap.containsKey( source ) )
+
+		private final Map< Spot, Integer > indices;
+
+		private final Map< Integer, Neighbors > predecessorPatches = new ConcurrentHashMap< >();
+
+		private final Map< Integer, Neighbors > successorPatches = new ConcurrentHashMap< >();
+
+		/** The spot of each index. <code>null</code> for removed spots. */
+		private volatile Spot[] spots;
+
+		private volatile int nSpots;
+
+		/** Number of spots removed since the rebuild. */
+		private int nRemoved;
+
+		/** Neighbors built in the rebuild, stored as contiguous ranges. */
+		private final Ranges base;
+
+		private State( final Map< Spot, Integer > indices, final Spot[] spots, final Ranges base )
 		{
-			successorMap.get( source ).removeNeighbor( target );
+			this.indices = indices;
+			this.spots = spots;
+			this.nSpots = spots.length;
+			this.base = base;
 		}
-		if ( predecessorMap.containsKey( target ) )
+
+		private int indexOf( final Spot spot )
 		{
-			predecessorMap.get( target ).removeNeighbor( source );
+			final Integer index = indices.get( spot );
+			return null == index ? -1 : index.intValue();
+		}
+
+		private Neighbors predecessors( final int index )
+		{
+			return neighbors( index, predecessorPatches, true );
+		}
+
+		private Neighbors successors( final int index )
+		{
+			return neighbors( index, successorPatches, false );
+		}
+
+		private Neighbors neighbors( final int index, final Map< Integer, Neighbors > patches, final boolean predecessors )
+		{
+			if ( index < 0 )
+				return EMPTY;
+			final Neighbors patched = patch( patches, index );
+			if ( null != patched )
+				return patched;
+			if ( index >= base.nSpots )
+				return EMPTY;
+			return predecessors
+					? new Neighbors( base.predecessorIndices, base.predecessorEdges, base.predecessorStarts[ index ], base.predecessorStarts[ index + 1 ] )
+					: new Neighbors( base.successorIndices, base.successorEdges, base.successorStarts[ index ], base.successorStarts[ index + 1 ] );
+		}
+
+		private int indexOrAdd( final Spot spot )
+		{
+			final Integer index = indices.get( spot );
+			if ( null != index )
+				return index.intValue();
+
+			if ( nSpots == spots.length )
+			{
+				final Spot[] grown = new Spot[ Math.max( 16, 2 * spots.length ) ];
+				System.arraycopy( spots, 0, grown, 0, nSpots );
+				spots = grown;
+			}
+			final int newIndex = nSpots;
+			spots[ newIndex ] = spot;
+			nSpots = newIndex + 1;
+			indices.put( spot, Integer.valueOf( newIndex ) );
+			return newIndex;
+		}
+
+		private void patchWithout( final int index, final DefaultWeightedEdge edge )
+		{
+			final Integer key = Integer.valueOf( index );
+			final Neighbors p = predecessors( index );
+			if ( p.contains( edge ) )
+				predecessorPatches.put( key, p.minus( edge ) );
+			final Neighbors s = successors( index );
+			if ( s.contains( edge ) )
+				successorPatches.put( key, s.minus( edge ) );
 		}
 	}
 
 	/**
-	 * @see org.jgrapht.event.VertexSetListener#vertexAdded(GraphVertexChangeEvent)
+	 * The predecessors and successors of all spots, packed in contiguous
+	 * ranges of shared arrays.
 	 */
-	@Override
-	public void vertexAdded( final GraphVertexChangeEvent< Spot > e )
+	private static final class Ranges
 	{
-		// nothing to cache until there are edges
+
+		private final int nSpots;
+
+		private final int[] predecessorStarts;
+
+		private final int[] predecessorIndices;
+
+		private final DefaultWeightedEdge[] predecessorEdges;
+
+		private final int[] successorStarts;
+
+		private final int[] successorIndices;
+
+		private final DefaultWeightedEdge[] successorEdges;
+
+		public Ranges( final int nSpots, final int[] predecessorStarts, final int[] predecessorIndices, final DefaultWeightedEdge[] predecessorEdges, final int[] successorStarts, final int[] successorIndices, final DefaultWeightedEdge[] successorEdges )
+		{
+			this.nSpots = nSpots;
+			this.predecessorStarts = predecessorStarts;
+			this.predecessorIndices = predecessorIndices;
+			this.predecessorEdges = predecessorEdges;
+			this.successorStarts = successorStarts;
+			this.successorIndices = successorIndices;
+			this.successorEdges = successorEdges;
+		}
 	}
 
 	/**
-	 * @see org.jgrapht.event.VertexSetListener#vertexRemoved(GraphVertexChangeEvent)
+	 * An immutable range of neighbor indices and edges, in possibly shared
+	 * arrays.
 	 */
-	@Override
-	public void vertexRemoved( final GraphVertexChangeEvent< Spot > e )
+	private static final class Neighbors
 	{
-		predecessorMap.remove( e.getVertex() );
-		successorMap.remove( e.getVertex() );
-	}
 
-	private Neighbors< Spot, DefaultWeightedEdge > getPredecessors( final Spot v )
-	{
-		Neighbors< Spot, DefaultWeightedEdge > neighbors = predecessorMap.get( v );
-		if ( neighbors == null )
+		private final int[] neighbors;
+
+		private final DefaultWeightedEdge[] edges;
+
+		private final int from;
+
+		private final int to;
+
+		public Neighbors( final int[] neighbors, final DefaultWeightedEdge[] edges )
 		{
-			final List< Spot > nl = Graphs.neighborListOf( graph, v );
-			final List< Spot > bnl = new ArrayList< >();
-			final int ts = v.getFeature( Spot.FRAME ).intValue();
-			for ( final Spot spot : nl )
-			{
-				final int tt = spot.getFeature( Spot.FRAME ).intValue();
-				if ( tt < ts )
-				{
-					bnl.add( spot );
-				}
-			}
-			neighbors = new Neighbors< >( v, bnl );
-			predecessorMap.put( v, neighbors );
+			this( neighbors, edges, 0, neighbors.length );
 		}
-		return neighbors;
-	}
 
-	private Neighbors< Spot, DefaultWeightedEdge > getSuccessors( final Spot v )
-	{
-		Neighbors< Spot, DefaultWeightedEdge > neighbors = successorMap.get( v );
-		if ( neighbors == null )
+		public Neighbors( final int[] neighbors, final DefaultWeightedEdge[] edges, final int from, final int to )
+		{
+			this.neighbors = neighbors;
+			this.edges = edges;
+			this.from = from;
+			this.to = to;
+		}
+
+		public int size()
 		{
-			final List< Spot > nl = Graphs.neighborListOf( graph, v );
-			final List< Spot > bnl = new ArrayList< >();
-			final int ts = v.getFeature( Spot.FRAME ).intValue();
-			for ( final Spot spot : nl )
+			return to - from;
+		}
+
+		public int neighbor( final int k )
+		{
+			if ( k < 0 || k >= size() ) { throw new IndexOutOfBoundsException( "Neighbor " + k + " out of " + size() + "." ); }
+			return neighbors[ from + k ];
+		}
+
+		public DefaultWeightedEdge edge( final int k )
+		{
+			if ( k < 0 || k >= size() ) { throw new IndexOutOfBoundsException( "Neighbor " + k + " out of " + size() + "." ); }
+			return edges[ from + k ];
+		}
+
+		public boolean contains( final DefaultWeightedEdge edge )
+		{
+			for ( int k = from; k < to; k++ )
+				if ( edges[ k ] == edge )
+					return true;
+			return false;
+		}
+
+		public Neighbors plus( final int neighbor, final DefaultWeightedEdge edge )
+		{
+			final int n = size();
+			final int[] lNeighbors = new int[ n + 1 ];
+			final DefaultWeightedEdge[] lEdges = new DefaultWeightedEdge[ n + 1 ];
+			System.arraycopy( neighbors, from, lNeighbors, 0, n );
+			System.arraycopy( edges, from, lEdges, 0, n );
+			lNeighbors[ n ] = neighbor;
+			lEdges[ n ] = edge;
+			return new Neighbors( lNeighbors, lEdges );
+		}
+
+		public Neighbors minus( final DefaultWeightedEdge edge )
+		{
+			final int n = size();
+			final int[] lNeighbors = new int[ n - 1 ];
+			final DefaultWeightedEdge[] lEdges = new DefaultWeightedEdge[ n - 1 ];
+			int j = 0;
+			for ( int k = from; k < to; k++ )
 			{
-				final int tt = spot.getFeature( Spot.FRAME ).intValue();
-				if ( tt > ts )
-				{
-					bnl.add( spot );
-				}
+				if ( edges[ k ] == edge )
+					continue;
+				lNeighbors[ j ] = neighbors[ k ];
+				lEdges[ j ] = edges[ k ];
+				j++;
 			}
-			neighbors = new Neighbors< >( v, bnl );
-			successorMap.put( v, neighbors );
+			return new Neighbors( lNeighbors, lEdges );
 		}
-		return neighbors;
 	}
 
-	// ~ Inner Classes
-	// ----------------------------------------------------------
-
 	/**
-	 * Stores cached neighbors for a single vertex. Includes support for live
-	 * neighbor sets and duplicate neighbors.
+	 * A read-only list view of a neighbor range.
 	 */
-	static class Neighbors< V, E >
+	private final class NeighborList extends AbstractList< Spot >
 	{
-		private final Map< V, ModifiableInteger > neighborCounts =
-				new LinkedHashMap< >();
 
-		private final Set< V > neighborSet =
-				Collections.unmodifiableSet(
-						neighborCounts.keySet() );
+		private final Neighbors neighbors;
+
+		private final Spot[] lSpots;
 
-		/**
-		 * @param v  
-		 */
-		public Neighbors( final V v, final Collection< V > neighbors )
+		public NeighborList( final Neighbors neighbors, final Spot[] spots )
 		{
-			// add all current neighbors
-			for ( final V neighbor : neighbors )
-			{
-				addNeighbor( neighbor );
-			}
+			this.neighbors = neighbors;
+			this.lSpots = spots;
 		}
 
-		public void addNeighbor( final V v )
+		@Override
+		public Spot get( final int index )
 		{
-			ModifiableInteger count = neighborCounts.get( v );
-			if ( count == null )
-			{
-				count = new ModifiableInteger( 1 );
-				neighborCounts.put( v, count );
-			}
-			else
-			{
-				count.increment();
-			}
+			return lSpots[ neighbors.neighbor( index ) ];
 		}
 
-		public void removeNeighbor( final V v )
+		@Override
+		public int size()
 		{
-			final ModifiableInteger count = neighborCounts.get( v );
-			if ( count == null ) { throw new IllegalArgumentException(
-					"Attempting to remove a neighbor that wasn't present" ); }
-
-			count.decrement();
-			if ( count.getValue() == 0 )
-			{
-				neighborCounts.remove( v );
-			}
+			return neighbors.size();
 		}
+	}
+
+	/**
+	 * A read-only set view of a neighbor range.
+	 */
+	private final class NeighborSet extends AbstractSet< Spot >
+	{
+
+		private final Neighbors neighbors;
+
+		private final Spot[] lSpots;
 
-		public Set< V > getNeighbors()
+		public NeighborSet( final Neighbors neighbors, final Spot[] spots )
 		{
-			return neighborSet;
+			this.neighbors = neighbors;
+			this.lSpots = spots;
 		}
 
-		public List< V > getNeighborList()
+		@Override
+		public Iterator< Spot > iterator()
 		{
-			final List< V > neighbors = new ArrayList< >();
-			for ( final Map.Entry< V, ModifiableInteger > entry : neighborCounts.entrySet() )
+			return new Iterator< Spot >()
 			{
-				final V v = entry.getKey();
-				final int count = entry.getValue().intValue();
-				for ( int i = 0; i < count; i++ )
+				private int k = 0;
+
+				@Override
+				public boolean hasNext()
 				{
-					neighbors.add( v );
+					return k < neighbors.size();
 				}
-			}
-			return neighbors;
+
+				@Override
+				public Spot next()
+				{
+					if ( !hasNext() ) { throw new NoSuchElementException(); }
+					return lSpots[ neighbors.neighbor( k++ ) ];
+				}
+
+				@Override
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
 		}
-	}
 
+		@Override
+		public int size()
+		{
+			return neighbors.size();
+		}
+	}
 }
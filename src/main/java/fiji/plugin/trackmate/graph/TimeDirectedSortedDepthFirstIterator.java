@@ -19,8 +19,19 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 
 public class TimeDirectedSortedDepthFirstIterator extends SortedDepthFirstIterator<Spot, DefaultWeightedEdge> {
 
+	/**
+	 * If not <code>null</code>, successors are taken from this index instead
+	 * of being searched for in the graph.
+	 */
+	private final TimeDirectedNeighborIndex neighborIndex;
+
 	public TimeDirectedSortedDepthFirstIterator(final Graph<Spot, DefaultWeightedEdge> g, final Spot startVertex, final Comparator<Spot> comparator) {
+		this(g, startVertex, comparator, null);
+	}
+
+	public TimeDirectedSortedDepthFirstIterator(final Graph<Spot, DefaultWeightedEdge> g, final Spot startVertex, final Comparator<Spot> comparator, final TimeDirectedNeighborIndex neighborIndex) {
 		super(g, startVertex, comparator);
+		this.neighborIndex = neighborIndex;
 	}
 
     @Override
@@ -31,20 +42,32 @@ public class TimeDirectedSortedDepthFirstIterator extends SortedDepthFirstIterat
     	// Keep a map of matching edges so that we can retrieve them in the same order
     	final Map<Spot, DefaultWeightedEdge> localEdges = new HashMap<>();
 
-    	final int ts = vertex.getFeature(Spot.FRAME).intValue();
-        for (final DefaultWeightedEdge edge : specifics.edgesOf(vertex)) {
-
-        	final Spot oppositeV = Graphs.getOppositeVertex(graph, edge, vertex);
-        	final int tt = oppositeV.getFeature(Spot.FRAME).intValue();
-        	if (tt <= ts) {
-        		continue;
-        	}
-
-        	if (!seen.containsKey(oppositeV)) {
-        		sortedChildren.add(oppositeV);
-        	}
-        	localEdges.put(oppositeV, edge);
-        }
+		if (null != neighborIndex) {
+			final int index = neighborIndex.indexOf(vertex);
+			final int n = index < 0 ? 0 : neighborIndex.nSuccessors(index);
+			for (int k = 0; k < n; k++) {
+				final Spot oppositeV = neighborIndex.getSpot(neighborIndex.getSuccessor(index, k));
+				if (!seen.containsKey(oppositeV)) {
+					sortedChildren.add(oppositeV);
+				}
+				localEdges.put(oppositeV, neighborIndex.getSuccessorEdge(index, k));
+			}
+		} else {
+			final int ts = vertex.getFeature(Spot.FRAME).intValue();
+			for (final DefaultWeightedEdge edge : specifics.edgesOf(vertex)) {
+
+				final Spot oppositeV = Graphs.getOppositeVertex(graph, edge, vertex);
+				final int tt = oppositeV.getFeature(Spot.FRAME).intValue();
+				if (tt <= ts) {
+					continue;
+				}
+
+				if (!seen.containsKey(oppositeV)) {
+					sortedChildren.add(oppositeV);
+				}
+				localEdges.put(oppositeV, edge);
+			}
+		}
 
 		Collections.sort( sortedChildren, Collections.reverseOrder( comparator ) );
 		final Iterator< Spot > it = sortedChildren.iterator();
@@ -222,6 +222,7 @@ public class TrackMateGUIController implements ActionListener
 		// Feature updater
 		final ModelFeatureUpdater modelFeatureUpdater = new ModelFeatureUpdater( trackmate.getModel(), trackmate.getSettings() );
 		modelFeatureUpdater.setNumThreads( trackmate.getNumThreads() );
+		modelFeatureUpdater.setDelay( ModelFeatureUpdater.INTERACTIVE_DELAY );
 
 		// Feature colorers
 		this.spotColorGenerator = createSpotColorGenerator();
@@ -247,6 +248,27 @@ public class TrackMateGUIController implements ActionListener
 				}
 			}
 		};
+		/*
+		 * Features are updated in the background, after the model change
+		 * events: rescale the colors and refresh views when done.
+		 */
+		modelFeatureUpdater.addActionListener( new ActionListener()
+		{
+			@Override
+			public void actionPerformed( final ActionEvent event )
+			{
+				SwingUtilities.invokeLater( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						refreshColorGenerators();
+						for ( final TrackMateModelView view : guimodel.views )
+							view.refresh();
+					}
+				} );
+			}
+		} );
 
 		// 1.
 		createSelectionModel();
@@ -454,6 +476,21 @@ public class TrackMateGUIController implements ActionListener
 		selectionModel = new SelectionModel( trackmate.getModel() );
 	}
 
+	/**
+	 * Rescales the feature color generators in automatic mode, and recomputes
+	 * the track colors, after the features have been updated.
+	 */
+	protected void refreshColorGenerators()
+	{
+		if ( spotColorGenerator.isAutoMinMaxMode() )
+			spotColorGenerator.autoMinMax();
+		if ( edgeColorGenerator.isAutoMinMaxMode() )
+			edgeColorGenerator.autoMinMax();
+		trackColorGenerator.refreshColorMap();
+		if ( spotColorGeneratorPerTrackFeature instanceof SpotColorGeneratorPerTrackFeature )
+			( ( SpotColorGeneratorPerTrackFeature ) spotColorGeneratorPerTrackFeature ).refreshColorMap();
+	}
+
 	protected FeatureColorGenerator< Spot > createSpotColorGenerator()
 	{
 		return new SpotColorGenerator( trackmate.getModel() );
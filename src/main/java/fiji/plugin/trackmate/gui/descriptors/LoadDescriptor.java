@@ -7,6 +7,8 @@ import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.gui.GuiUtils;
 import fiji.plugin.trackmate.gui.TrackMateGUIController;
 import fiji.plugin.trackmate.io.IOUtils;
+import fiji.plugin.trackmate.io.TmBinaryFile;
+import fiji.plugin.trackmate.io.TmBinaryReader;
 import fiji.plugin.trackmate.io.TmXmlReader;
 import fiji.plugin.trackmate.io.TmXmlReader_v12;
 import fiji.plugin.trackmate.io.TmXmlReader_v20;
@@ -67,7 +69,7 @@ public class LoadDescriptor extends SomeDialogDescriptor
 		file = tmpFile;
 
 		// Read the file content
-		TmXmlReader reader = new TmXmlReader( file );
+		TmXmlReader reader = TmBinaryFile.isBinaryFile( file ) ? new TmBinaryReader( file ) : new TmXmlReader( file );
 		final Version version = new Version( reader.getVersion() );
 		if ( version.compareTo( new Version( "2.0.0" ) ) < 0 )
 		{
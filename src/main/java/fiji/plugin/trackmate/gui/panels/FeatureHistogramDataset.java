@@ -0,0 +1,110 @@
+package fiji.plugin.trackmate.gui.panels;
+
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+
+import fiji.plugin.trackmate.features.FeatureColumn;
+
+/**
+ * A histogram dataset made of a single series, read from the histogram
+ * precomputed by a {@link FeatureColumn}. Like the
+ * {@link org.jfree.data.statistics.LogHistogramDataset}, it returns the log of
+ * the count in each bin (plus one), so as to have a logarithmic plot.
+ */
+public class FeatureHistogramDataset extends AbstractIntervalXYDataset
+{
+
+	private static final long serialVersionUID = 1L;
+
+	@SuppressWarnings( "rawtypes" )
+	private final Comparable key;
+
+	private final int[] counts;
+
+	private final double min;
+
+	private final double binWidth;
+
+	/**
+	 * Creates an empty dataset.
+	 */
+	public FeatureHistogramDataset()
+	{
+		this.key = null;
+		this.counts = new int[ 0 ];
+		this.min = 0.;
+		this.binWidth = 0.;
+	}
+
+	/**
+	 * Creates a dataset with one series, the histogram of the specified
+	 * column.
+	 *
+	 * @param key
+	 *            the series key.
+	 * @param column
+	 *            the feature column.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public FeatureHistogramDataset( final Comparable key, final FeatureColumn column )
+	{
+		this.key = key;
+		this.counts = column.getHistogram();
+		this.min = column.getMin();
+		this.binWidth = column.getBinWidth();
+	}
+
+	@Override
+	public int getSeriesCount()
+	{
+		return null == key ? 0 : 1;
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	@Override
+	public Comparable getSeriesKey( final int series )
+	{
+		return key;
+	}
+
+	@Override
+	public int getItemCount( final int series )
+	{
+		return counts.length;
+	}
+
+	@Override
+	public Number getX( final int series, final int item )
+	{
+		return Double.valueOf( min + ( item + 0.5 ) * binWidth );
+	}
+
+	@Override
+	public Number getY( final int series, final int item )
+	{
+		return Double.valueOf( Math.log( 1 + counts[ item ] ) );
+	}
+
+	@Override
+	public Number getStartX( final int series, final int item )
+	{
+		return Double.valueOf( min + item * binWidth );
+	}
+
+	@Override
+	public Number getEndX( final int series, final int item )
+	{
+		return Double.valueOf( min + ( item + 1 ) * binWidth );
+	}
+
+	@Override
+	public Number getStartY( final int series, final int item )
+	{
+		return getY( series, item );
+	}
+
+	@Override
+	public Number getEndY( final int series, final int item )
+	{
+		return getY( series, item );
+	}
+}
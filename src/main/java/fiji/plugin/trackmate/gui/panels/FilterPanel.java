@@ -50,8 +50,8 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.StandardXYBarPainter;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
-import org.jfree.data.statistics.LogHistogramDataset;
 
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.spot.SpotContrastAndSNRAnalyzerFactory;
 import fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory;
 import fiji.plugin.trackmate.features.spot.SpotMorphologyAnalyzerFactory;
@@ -83,7 +83,7 @@ public class FilterPanel extends javax.swing.JPanel
 
 	JRadioButton jRadioButtonAbove;
 
-	private LogHistogramDataset dataset;
+	private FeatureHistogramDataset dataset;
 
 	private JFreeChart chart;
 
@@ -93,7 +93,7 @@ public class FilterPanel extends javax.swing.JPanel
 
 	private double threshold;
 
-	private final Map< String, double[] > valuesMap;
+	private final Map< String, FeatureColumn > columns;
 
 	private XYTextSimpleAnnotation annotation;
 
@@ -109,19 +109,31 @@ public class FilterPanel extends javax.swing.JPanel
 	 * CONSTRUCTOR
 	 */
 
-	public FilterPanel( final List< String > allKeys, final Map< String, String > keyNames, final Map< String, double[] > valuesMap, final int selectedKey )
+	public FilterPanel( final Map< String, FeatureColumn > columns, final List< String > allKeys, final Map< String, String > keyNames, final int selectedKey )
 	{
 		super();
-		this.valuesMap = valuesMap;
+		this.columns = columns;
 		this.allKeys = allKeys;
 		this.keyNames = keyNames;
 		initGUI();
 		jComboBoxFeature.setSelectedIndex( selectedKey );
 	}
 
+	/**
+	 * @deprecated use
+	 *             {@link #FilterPanel(Map, List, Map, int)} with
+	 *             {@link FeatureColumn}s, which do not copy the feature
+	 *             values.
+	 */
+	@Deprecated
+	public FilterPanel( final List< String > allKeys, final Map< String, String > keyNames, final Map< String, double[] > valuesMap, final int selectedKey )
+	{
+		this( toColumns( valuesMap ), allKeys, keyNames, selectedKey );
+	}
+
 	public FilterPanel( final Map< String, double[] > valuesMap, final List< String > allKeys, final Map< String, String > keyNames )
 	{
-		this( allKeys, keyNames, valuesMap, 0 );
+		this( toColumns( valuesMap ), allKeys, keyNames, 0 );
 	}
 
 	/*
@@ -217,22 +229,17 @@ public class FilterPanel extends javax.swing.JPanel
 	{
 		final double old = getThreshold();
 		key = allKeys.get( jComboBoxFeature.getSelectedIndex() );
-		final double[] values = valuesMap.get( key );
+		final FeatureColumn column = columns.get( key );
 
-		if ( null == values || 0 == values.length )
+		if ( null == column || !column.hasData() )
 		{
-			dataset = new LogHistogramDataset();
+			dataset = new FeatureHistogramDataset();
 			annotation.setLocation( 0.5f, 0.5f );
 			annotation.setText( "No data" );
 		}
 		else
 		{
-			final int nBins = TMUtils.getNBins( values, 8, 100 );
-			dataset = new LogHistogramDataset();
-			if ( nBins > 1 )
-			{
-				dataset.addSeries( DATA_SERIES_NAME, values, nBins );
-			}
+			dataset = createDataset( column );
 		}
 		plot.setDataset( dataset );
 		threshold = old;
@@ -253,20 +260,11 @@ public class FilterPanel extends javax.swing.JPanel
 	{
 		final int index = jComboBoxFeature.getSelectedIndex();
 		key = allKeys.get( index );
-		final double[] values = valuesMap.get( key );
-		// Check if all the values are NaNs.
-		boolean isAllNaNs = true;
-		for ( final double v : values )
+		final FeatureColumn column = columns.get( key );
+		// Empty or all NaNs.
+		if ( null == column || !column.hasData() )
 		{
-			if ( !Double.isNaN( v ) )
-			{
-				isAllNaNs = false;
-				break;
-			}
-		}
-		if ( 0 == values.length || isAllNaNs )
-		{
-			dataset = new LogHistogramDataset();
+			dataset = new FeatureHistogramDataset();
 			threshold = Double.NaN;
 			annotation.setLocation( 0.5f, 0.5f );
 			annotation.setText( "No data" );
@@ -274,12 +272,7 @@ public class FilterPanel extends javax.swing.JPanel
 		}
 		else
 		{
-			final int nBins = TMUtils.getNBins( values, 8, 100 );
-			dataset = new LogHistogramDataset();
-			if ( nBins > 1 )
-			{
-				dataset.addSeries( DATA_SERIES_NAME, values, nBins );
-			}
+			dataset = createDataset( column );
 		}
 		plot.setDataset( dataset );
 		resetAxes();
@@ -289,10 +282,10 @@ public class FilterPanel extends javax.swing.JPanel
 	private void autoThreshold()
 	{
 		final String selectedFeature = allKeys.get( jComboBoxFeature.getSelectedIndex() );
-		final double[] values = valuesMap.get( selectedFeature );
-		if ( null != values )
+		final FeatureColumn column = columns.get( selectedFeature );
+		if ( null != column )
 		{
-			threshold = TMUtils.otsuThreshold( valuesMap.get( selectedFeature ) );
+			threshold = column.getOtsuThreshold();
 			redrawThresholdMarker();
 		}
 	}
@@ -394,7 +387,7 @@ public class FilterPanel extends javax.swing.JPanel
 	 */
 	private void createHistogramPlot()
 	{
-		dataset = new LogHistogramDataset();
+		dataset = new FeatureHistogramDataset();
 		chart = ChartFactory.createHistogram( null, null, null, dataset, PlotOrientation.VERTICAL, false, false, false );
 
 		plot = chart.getXYPlot();
@@ -499,8 +492,7 @@ public class FilterPanel extends javax.swing.JPanel
 	private void redrawThresholdMarker()
 	{
 		final String selectedFeature = allKeys.get( jComboBoxFeature.getSelectedIndex() );
-		final double[] values = valuesMap.get( selectedFeature );
-		if ( null == values )
+		if ( null == columns.get( selectedFeature ) )
 			return;
 
 		if ( jRadioButtonAbove.isSelected() )
@@ -529,6 +521,25 @@ public class FilterPanel extends javax.swing.JPanel
 		fireThresholdChanged();
 	}
 
+	/**
+	 * Returns a dataset made of the histogram precomputed by the specified
+	 * column.
+	 */
+	private static FeatureHistogramDataset createDataset( final FeatureColumn column )
+	{
+		if ( column.getNBins() > 1 )
+			return new FeatureHistogramDataset( DATA_SERIES_NAME, column );
+		return new FeatureHistogramDataset();
+	}
+
+	private static Map< String, FeatureColumn > toColumns( final Map< String, double[] > valuesMap )
+	{
+		final Map< String, FeatureColumn > columns = new HashMap< >( valuesMap.size() );
+		for ( final String key : valuesMap.keySet() )
+			columns.put( key, new FeatureColumn( valuesMap.get( key ) ) );
+		return columns;
+	}
+
 	private void resetAxes()
 	{
 		plot.getRangeAxis().setLowerMargin( 0 );
@@ -27,7 +27,7 @@ import javax.swing.JPanel;
 import org.jfree.chart.renderer.InterpolatePaintScale;
 
 import fiji.plugin.trackmate.Model;
-import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.manual.ManualEdgeColorAnalyzer;
 import fiji.plugin.trackmate.features.manual.ManualSpotColorAnalyzerFactory;
 import fiji.plugin.trackmate.gui.panels.ActionListenablePanel;
@@ -190,28 +190,15 @@ public class ColorByFeatureGUIPanel extends ActionListenablePanel implements Min
 		 * Compute min & max
 		 */
 
-		final double[] values = getValues( jComboBoxSetColorBy );
+		final FeatureColumn column = getColumn( jComboBoxSetColorBy );
 
-		if ( null == values )
+		if ( null == column )
 		{
 			g.clearRect( 0, 0, canvasColor.getWidth(), canvasColor.getHeight() );
 			return;
 		}
-		double dataMax = Float.NEGATIVE_INFINITY;
-		double dataMin = Float.POSITIVE_INFINITY;
-		double val;
-		for ( int i = 0; i < values.length; i++ )
-		{
-			val = values[ i ];
-			if ( val > dataMax )
-			{
-				dataMax = val;
-			}
-			if ( val < dataMin )
-			{
-				dataMin = val;
-			}
-		}
+		final double dataMax = column.getMax();
+		final double dataMin = column.getMin();
 
 		if ( autoMode )
 		{
@@ -345,21 +332,11 @@ public class ColorByFeatureGUIPanel extends ActionListenablePanel implements Min
 									// we change feature.
 									max = Float.NEGATIVE_INFINITY;
 									min = Float.POSITIVE_INFINITY;
-									final double[] values = getValues( jComboBoxSetColorBy );
-									if ( null != values )
+									final FeatureColumn column = getColumn( jComboBoxSetColorBy );
+									if ( null != column )
 									{
-										for ( int i = 0; i < values.length; i++ )
-										{
-											final double val = values[ i ];
-											if ( val > max )
-											{
-												max = val;
-											}
-											if ( val < min )
-											{
-												min = val;
-											}
-										}
+										max = column.getMax();
+										min = column.getMin();
 									}
 								}
 								colorByFeatureChanged();
@@ -478,25 +455,24 @@ public class ColorByFeatureGUIPanel extends ActionListenablePanel implements Min
 	 *
 	 * @param cb
 	 *            the {@link CategoryJComboBox} to interrogate.
-	 * @return a new double array containing the feature values.
+	 * @return the cached {@link FeatureColumn} of the feature values.
 	 */
-	protected double[] getValues( final CategoryJComboBox< Category, String > cb )
+	protected FeatureColumn getColumn( final CategoryJComboBox< Category, String > cb )
 	{
 
-		double[] values;
+		FeatureColumn values;
 		final Category category = cb.getSelectedCategory();
 		final String feature = cb.getSelectedItem();
 		switch ( category )
 		{
 		case TRACKS:
-			values = model.getFeatureModel().getTrackFeatureValues( feature, true );
+			values = model.getFeatureModel().getTrackFeatureColumn( feature, true );
 			break;
 		case EDGES:
-			values = model.getFeatureModel().getEdgeFeatureValues( feature, true );
+			values = model.getFeatureModel().getEdgeFeatureColumn( feature, true );
 			break;
 		case SPOTS:
-			final SpotCollection spots = model.getSpots();
-			values = spots.collectValues( feature, false );
+			values = model.getFeatureModel().getSpotFeatureColumn( feature, false );
 			break;
 		case DEFAULT:
 			throw new IllegalArgumentException( "Cannot return values for " + category );
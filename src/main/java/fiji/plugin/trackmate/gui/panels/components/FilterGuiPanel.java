@@ -2,7 +2,9 @@ package fiji.plugin.trackmate.gui.panels.components;
 
 import static fiji.plugin.trackmate.gui.TrackMateWizard.BIG_FONT;
 import static fiji.plugin.trackmate.gui.TrackMateWizard.SMALL_FONT;
+import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.features.FeatureColumn;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.gui.TrackMateWizard;
 import fiji.plugin.trackmate.gui.panels.ActionListenablePanel;
@@ -92,7 +94,7 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 	 * Holds the map of feature values. Is made final so that the instance can
 	 * be shared with the components of this panel.
 	 */
-	private final Map< String, double[] > featureValues;
+	private final Map< String, FeatureColumn > featureValues;
 
 	/*
 	 * CONSTRUCTOR
@@ -157,15 +159,17 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 	public void refreshDisplayedFeatureValues()
 	{
 		featureValues.clear();
+		final FeatureModel fm = model.getFeatureModel();
 		for ( final Category category : categories )
 		{
 			switch ( category )
 			{
 			case SPOTS:
-				featureValues.putAll( model.getSpots().collectValues( model.getFeatureModel().getSpotFeatures(), false ) );
+				featureValues.putAll( fm.getSpotFeatureColumns( fm.getSpotFeatures(), false ) );
 				break;
 			case TRACKS:
-				featureValues.putAll( model.getFeatureModel().getTrackFeatureValues() );
+				for ( final String feature : fm.getTrackFeatures() )
+					featureValues.put( feature, fm.getTrackFeatureColumn( feature, false ) );
 				break;
 			case DEFAULT:
 				break;
@@ -293,7 +297,7 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 			return;
 
 		final int filterIndex = features.indexOf( filter.feature );
-		final FilterPanel tp = new FilterPanel( features, featureNames, featureValues, filterIndex );
+		final FilterPanel tp = new FilterPanel( featureValues, features, featureNames, filterIndex );
 		tp.setThreshold( filter.value );
 		tp.setAboveThreshold( filter.isAbove );
 		tp.addChangeListener( this );
@@ -313,7 +317,7 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 	{
 		if ( null == featureValues )
 			return;
-		final FilterPanel tp = new FilterPanel( features, featureNames, featureValues, features.indexOf( feature ) );
+		final FilterPanel tp = new FilterPanel( featureValues, features, featureNames, features.indexOf( feature ) );
 		tp.addChangeListener( this );
 		newFeatureIndex++;
 		if ( newFeatureIndex >= features.size() )
@@ -363,12 +367,12 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 		String info = "";
 		int nobjects = 0;
 
-		for ( final double[] values : featureValues.values() )
+		for ( final FeatureColumn column : featureValues.values() )
 		{ // bulletproof against unspecified features, which are signaled by
 			// empty arrays
-			if ( values.length > 0 )
+			if ( column.size() > 0 )
 			{
-				nobjects = values.length;
+				nobjects = column.size();
 				break;
 			}
 		}
@@ -390,7 +394,7 @@ public class FilterGuiPanel extends ActionListenablePanel implements ChangeListe
 				boolean ok = true;
 				for ( final FeatureFilter filter : featureFilters )
 				{
-					final double[] values = featureValues.get( filter.feature );
+					final double[] values = featureValues.get( filter.feature ).getValues();
 					if ( i >= values.length || values.length == 0 )
 					{ // bulletproof
 						continue;
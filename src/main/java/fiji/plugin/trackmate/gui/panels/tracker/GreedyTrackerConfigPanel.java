@@ -0,0 +1,158 @@
+package fiji.plugin.trackmate.gui.panels.tracker;
+
+import static fiji.plugin.trackmate.gui.TrackMateWizard.BIG_FONT;
+import static fiji.plugin.trackmate.gui.TrackMateWizard.FONT;
+import static fiji.plugin.trackmate.gui.TrackMateWizard.TEXTFIELD_DIMENSION;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.SwingConstants;
+
+import fiji.plugin.trackmate.gui.ConfigurationPanel;
+import fiji.plugin.trackmate.gui.panels.components.JNumericTextField;
+
+public class GreedyTrackerConfigPanel extends ConfigurationPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	private final JNumericTextField tfLinkingDistance;
+
+	private final JCheckBox chkboxAllowGapClosing;
+
+	private final JNumericTextField tfGapClosingDistance;
+
+	private final JNumericTextField tfMaxFrameGap;
+
+	public GreedyTrackerConfigPanel( final String trackerName, final String infoText, final String spaceUnits )
+	{
+		setLayout( null );
+
+		final JLabel lbl1 = new JLabel( "Settings for tracker:" );
+		lbl1.setBounds( 6, 6, 288, 16 );
+		lbl1.setFont( FONT );
+		add( lbl1 );
+
+		final JLabel lblTrackerName = new JLabel( trackerName );
+		lblTrackerName.setFont( BIG_FONT );
+		lblTrackerName.setHorizontalAlignment( SwingConstants.CENTER );
+		lblTrackerName.setBounds( 6, 34, 288, 32 );
+		add( lblTrackerName );
+
+		final JLabel lblTrackerDescription = new JLabel( "<tracker description>" );
+		lblTrackerDescription.setFont( FONT.deriveFont( Font.ITALIC ) );
+		lblTrackerDescription.setVerticalAlignment( SwingConstants.TOP );
+		lblTrackerDescription.setBounds( 6, 81, 288, 240 );
+		lblTrackerDescription.setText( infoText
+				.replace( "<br>", "" )
+				.replace( "<p>", "<p align=\"justify\">" )
+				.replace( "<html>", "<html><p align=\"justify\">" ) );
+		add( lblTrackerDescription );
+
+		final JLabel lblLinkingDistance = new JLabel( "Max linking distance:" );
+		lblLinkingDistance.setFont( FONT );
+		lblLinkingDistance.setBounds( 6, 334, 173, 16 );
+		add( lblLinkingDistance );
+
+		chkboxAllowGapClosing = new JCheckBox( "Allow gap closing" );
+		chkboxAllowGapClosing.setFont( FONT );
+		chkboxAllowGapClosing.setBounds( 6, 362, 220, 20 );
+		add( chkboxAllowGapClosing );
+
+		final JLabel lblGapClosingDistance = new JLabel( "Gap closing max distance:" );
+		lblGapClosingDistance.setFont( FONT );
+		lblGapClosingDistance.setBounds( 6, 390, 173, 16 );
+		add( lblGapClosingDistance );
+
+		final JLabel lblMaxFrameGap = new JLabel( "Max frame gap:" );
+		lblMaxFrameGap.setFont( FONT );
+		lblMaxFrameGap.setBounds( 6, 418, 173, 16 );
+		add( lblMaxFrameGap );
+
+		tfLinkingDistance = new JNumericTextField();
+		tfLinkingDistance.setHorizontalAlignment( SwingConstants.CENTER );
+		tfLinkingDistance.setFont( FONT );
+		tfLinkingDistance.setBounds( 167, 334, 60, 28 );
+		add( tfLinkingDistance );
+		tfLinkingDistance.setSize( TEXTFIELD_DIMENSION );
+
+		tfGapClosingDistance = new JNumericTextField();
+		tfGapClosingDistance.setHorizontalAlignment( SwingConstants.CENTER );
+		tfGapClosingDistance.setFont( FONT );
+		tfGapClosingDistance.setBounds( 167, 390, 60, 28 );
+		add( tfGapClosingDistance );
+		tfGapClosingDistance.setSize( TEXTFIELD_DIMENSION );
+
+		tfMaxFrameGap = new JNumericTextField();
+		tfMaxFrameGap.setHorizontalAlignment( SwingConstants.CENTER );
+		tfMaxFrameGap.setFont( FONT );
+		tfMaxFrameGap.setBounds( 167, 418, 60, 28 );
+		add( tfMaxFrameGap );
+		tfMaxFrameGap.setSize( TEXTFIELD_DIMENSION );
+
+		final JLabel lblSpaceUnits1 = new JLabel( spaceUnits );
+		lblSpaceUnits1.setFont( FONT );
+		lblSpaceUnits1.setBounds( 219, 334, 51, 16 );
+		add( lblSpaceUnits1 );
+
+		final JLabel lblSpaceUnits2 = new JLabel( spaceUnits );
+		lblSpaceUnits2.setFont( FONT );
+		lblSpaceUnits2.setBounds( 219, 390, 51, 16 );
+		add( lblSpaceUnits2 );
+
+		final JLabel lblFrameUnits = new JLabel( "frames" );
+		lblFrameUnits.setFont( FONT );
+		lblFrameUnits.setBounds( 219, 418, 51, 16 );
+		add( lblFrameUnits );
+
+		chkboxAllowGapClosing.addActionListener( new ActionListener()
+		{
+			@Override
+			public void actionPerformed( final ActionEvent e )
+			{
+				setGapClosingEnabled( chkboxAllowGapClosing.isSelected() );
+			}
+		} );
+	}
+
+	private void setGapClosingEnabled( final boolean enabled )
+	{
+		tfGapClosingDistance.setEnabled( enabled );
+		tfMaxFrameGap.setEnabled( enabled );
+	}
+
+	@Override
+	public void setSettings( final Map< String, Object > settings )
+	{
+		tfLinkingDistance.setText( "" + settings.get( KEY_LINKING_MAX_DISTANCE ) );
+		final boolean allowGapClosing = ( Boolean ) settings.get( KEY_ALLOW_GAP_CLOSING );
+		chkboxAllowGapClosing.setSelected( allowGapClosing );
+		tfGapClosingDistance.setText( "" + settings.get( KEY_GAP_CLOSING_MAX_DISTANCE ) );
+		tfMaxFrameGap.setText( "" + settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP ) );
+		setGapClosingEnabled( allowGapClosing );
+	}
+
+	@Override
+	public Map< String, Object > getSettings()
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, tfLinkingDistance.getValue() );
+		settings.put( KEY_ALLOW_GAP_CLOSING, chkboxAllowGapClosing.isSelected() );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, tfGapClosingDistance.getValue() );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, ( int ) tfMaxFrameGap.getValue() );
+		return settings;
+	}
+
+	@Override
+	public void clean()
+	{}
+}
@@ -122,7 +122,7 @@ public class IOUtils {
 			final FilenameFilter filter = new FilenameFilter() {
 				@Override
 				public boolean accept(final File dir, final String name) {
-					return name.endsWith(".xml");
+					return name.endsWith(".xml") || name.endsWith("." + TmBinaryFile.EXTENSION);
 				}
 			};
 			dialog.setFilenameFilter(filter);
@@ -132,7 +132,7 @@ public class IOUtils {
 				logger.log("Load data aborted.\n");
 				return null;
 			}
-			if (!selectedFile.endsWith(".xml"))
+			if (!selectedFile.endsWith(".xml") && !selectedFile.endsWith("." + TmBinaryFile.EXTENSION))
 				selectedFile += ".xml";
 			file = new File(dialog.getDirectory(), selectedFile);
 		} else {
@@ -147,7 +147,7 @@ public class IOUtils {
 			};
 			fileChooser.setName(title);
 			fileChooser.setSelectedFile(file);
-			final FileNameExtensionFilter filter = new FileNameExtensionFilter("XML files", "xml");
+			final FileNameExtensionFilter filter = new FileNameExtensionFilter("XML and TrackMate binary files", "xml", TmBinaryFile.EXTENSION);
 			fileChooser.setFileFilter(filter);
 
 			final int returnVal = fileChooser.showOpenDialog(parent);
@@ -0,0 +1,137 @@
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmXmlKeys.MODEL_ELEMENT_KEY;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jdom2.Element;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.util.Version;
+
+/**
+ * Converts TrackMate XML files to binary model files, and back.
+ * <p>
+ * The model is read and written again. The log, settings, GUI state and views
+ * are copied as they are, without being interpreted, so that no provider nor
+ * image is needed.
+ *
+ * @see TmBinaryFile
+ */
+public class TmBinaryConverter
+{
+
+	private TmBinaryConverter()
+	{}
+
+	/**
+	 * Converts a TrackMate XML file to a binary model file.
+	 *
+	 * @param xmlFile
+	 *            the XML file to read.
+	 * @param binaryFile
+	 *            the binary file to write, will be overwritten.
+	 * @param logger
+	 *            a logger to report progress and errors.
+	 * @return <code>true</code> if the conversion was successful.
+	 */
+	public static boolean toBinary( final File xmlFile, final File binaryFile, final Logger logger )
+	{
+		logger.log( "Converting " + xmlFile.getName() + " to a binary file.\n" );
+		return convert( new TmXmlReader( xmlFile ), new TmBinaryWriter( binaryFile, logger ), logger );
+	}
+
+	/**
+	 * Converts a TrackMate binary model file to an XML file.
+	 *
+	 * @param binaryFile
+	 *            the binary file to read.
+	 * @param xmlFile
+	 *            the XML file to write, will be overwritten.
+	 * @param logger
+	 *            a logger to report progress and errors.
+	 * @return <code>true</code> if the conversion was successful.
+	 */
+	public static boolean toXml( final File binaryFile, final File xmlFile, final Logger logger )
+	{
+		logger.log( "Converting " + binaryFile.getName() + " to an XML file.\n" );
+		return convert( new TmBinaryReader( binaryFile ), new TmXmlWriter( xmlFile, logger ), logger );
+	}
+
+	private static boolean convert( final TmXmlReader reader, final TmXmlWriter writer, final Logger logger )
+	{
+		if ( !reader.isReadingOk() )
+		{
+			logger.error( reader.getErrorMessage() );
+			return false;
+		}
+
+		final Version version = new Version( reader.getVersion() );
+		if ( version.compareTo( new Version( "2.1.0" ) ) < 0 )
+		{
+			logger.error( "Files written by TrackMate versions older than 2.1.0 must be loaded and saved again before they can be converted.\n" );
+			return false;
+		}
+
+		final Model model = reader.getModel();
+		if ( !reader.isReadingOk() )
+		{
+			logger.error( "Problem reading the model:\n" + reader.getErrorMessage() );
+			return false;
+		}
+
+		// Copy the rest of the file as it is, in the same order.
+		boolean modelAppended = false;
+		for ( final Element child : reader.root.getChildren() )
+		{
+			if ( child.getName().equals( MODEL_ELEMENT_KEY ) )
+			{
+				if ( null != model && !modelAppended )
+				{
+					writer.appendModel( model );
+					modelAppended = true;
+				}
+			}
+			else
+			{
+				writer.root.addContent( child.clone() );
+			}
+		}
+
+		try
+		{
+			writer.writeToFile();
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Problem writing the file:\n" + e.getLocalizedMessage() + '\n' );
+			return false;
+		}
+		logger.log( "Done.\n" );
+		return true;
+	}
+
+	/**
+	 * Converts the file given as first argument to the file given as second
+	 * argument. Binary files are converted to XML, and XML files to binary.
+	 */
+	public static void main( final String[] args )
+	{
+		if ( args.length != 2 )
+		{
+			System.err.println( "Usage: TmBinaryConverter <source file> <target file>" );
+			return;
+		}
+		final File source = new File( args[ 0 ] );
+		final File target = new File( args[ 1 ] );
+		final boolean ok;
+		if ( TmBinaryFile.isBinaryFile( source ) )
+			ok = toXml( source, target, Logger.DEFAULT_LOGGER );
+		else
+			ok = toBinary( source, target, Logger.DEFAULT_LOGGER );
+		if ( !ok )
+			System.exit( 1 );
+	}
+}
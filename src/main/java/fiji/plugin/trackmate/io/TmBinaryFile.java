@@ -0,0 +1,770 @@
+package fiji.plugin.trackmate.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A TrackMate binary model file, opened for reading.
+ * <p>
+ * In this format, the content of the model (spots, edges and tracks) is stored
+ * as compressed columns of primitive values, one column per feature. Rows are
+ * grouped in chunks of at most {@link #CHUNK_SIZE} rows; spot chunks never
+ * span several frames. Everything else (log, settings, GUI state, feature
+ * declarations...) is stored as in a TrackMate XML file, with an empty model
+ * element.
+ * <p>
+ * The file is structured as follows. All numbers are big-endian.
+ * <ol>
+ * <li>A header: the {@link #MAGIC} number and the format {@link #VERSION}.
+ * <li>The XML document, as a compressed block.
+ * <li>The spot chunks, then the edge chunks, then the track chunks. Each chunk
+ * is a sequence of compressed blocks, one per column.
+ * <li>The table of contents, as a compressed block: the names of the feature
+ * columns and the position of each chunk.
+ * <li>A trailer: the position of the table of contents and the
+ * {@link #MAGIC} number again.
+ * </ol>
+ * A compressed block is made of its decompressed length and its compressed
+ * length, as ints, followed by its {@link Deflater deflated} bytes. The bytes
+ * of numerical columns are shuffled before compression: the first byte of all
+ * the values comes first, then the second byte and so on, which compresses
+ * much better than the values themselves.
+ * <p>
+ * Opening a file only reads its table of contents. Columns are read from the
+ * file and decompressed each time they are requested, so that features can be
+ * read without building the model.
+ * Instances are thread-safe.
+ *
+ * @see TmBinaryWriter
+ * @see TmBinaryReader
+ */
+public class TmBinaryFile implements Closeable
+{
+
+	/**
+	 * The extension of TrackMate binary files.
+	 */
+	public static final String EXTENSION = "tmb";
+
+	/**
+	 * "TMBINARY" in ASCII.
+	 */
+	static final long MAGIC = 0x544d42494e415259l;
+
+	static final int VERSION = 1;
+
+	/**
+	 * The maximal number of rows in a chunk.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	/*
+	 * Columns stored before the feature columns in each kind of chunk.
+	 */
+
+	static final int SPOT_ID_COLUMN = 0;
+
+	static final int SPOT_NAME_COLUMN = 1;
+
+	static final int SPOT_FEATURE_COLUMNS = 2;
+
+	static final int EDGE_SOURCE_COLUMN = 0;
+
+	static final int EDGE_TARGET_COLUMN = 1;
+
+	static final int EDGE_WEIGHT_COLUMN = 2;
+
+	static final int EDGE_TRACK_COLUMN = 3;
+
+	static final int EDGE_FEATURE_COLUMNS = 4;
+
+	static final int TRACK_ID_COLUMN = 0;
+
+	static final int TRACK_NAME_COLUMN = 1;
+
+	static final int TRACK_VISIBILITY_COLUMN = 2;
+
+	static final int TRACK_FEATURE_COLUMNS = 3;
+
+	private static final int HEADER_SIZE = 12;
+
+	private static final int TRAILER_SIZE = 16;
+
+	private final File file;
+
+	private final FileChannel channel;
+
+	private final RandomAccessFile raf;
+
+	private final long xmlOffset;
+
+	private final List< String > spotFeatures;
+
+	private final List< String > edgeFeatures;
+
+	private final List< String > trackFeatures;
+
+	private final Chunk[] spotChunks;
+
+	private final Chunk[] edgeChunks;
+
+	private final Chunk[] trackChunks;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Opens the specified file and reads its table of contents.
+	 *
+	 * @param file
+	 *            the file to open.
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a TrackMate binary
+	 *             file.
+	 */
+	public TmBinaryFile( final File file ) throws IOException
+	{
+		this.file = file;
+		this.raf = new RandomAccessFile( file, "r" );
+		this.channel = raf.getChannel();
+		try
+		{
+			final long size = channel.size();
+			if ( size < HEADER_SIZE + TRAILER_SIZE )
+				throw new IOException( file.getName() + " is not a TrackMate binary file." );
+
+			final ByteBuffer header = read( 0, HEADER_SIZE );
+			if ( header.getLong() != MAGIC )
+				throw new IOException( file.getName() + " is not a TrackMate binary file." );
+			final int version = header.getInt();
+			if ( version > VERSION )
+				throw new IOException( file.getName() + " was written in a newer version of the format (" + version + ")." );
+
+			final ByteBuffer trailer = read( size - TRAILER_SIZE, TRAILER_SIZE );
+			final long tocOffset = trailer.getLong();
+			if ( trailer.getLong() != MAGIC || tocOffset < HEADER_SIZE || tocOffset >= size - TRAILER_SIZE )
+				throw new IOException( file.getName() + " is truncated." );
+
+			final ByteBuffer toc = read( tocOffset, ( int ) ( size - TRAILER_SIZE - tocOffset ) );
+			final DataInputStream in = new DataInputStream( new ByteArrayInputStream( inflate( toc ) ) );
+			xmlOffset = in.readLong();
+			spotFeatures = readStrings( in );
+			edgeFeatures = readStrings( in );
+			trackFeatures = readStrings( in );
+			spotChunks = readChunks( in, size );
+			edgeChunks = readChunks( in, size );
+			trackChunks = readChunks( in, size );
+		}
+		catch ( final IOException e )
+		{
+			raf.close();
+			throw e;
+		}
+		catch ( final RuntimeException e )
+		{
+			raf.close();
+			throw new IOException( "Problem reading " + file.getName() + ": " + e.getMessage(), e );
+		}
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Returns <code>true</code> if the specified file starts like a TrackMate
+	 * binary file.
+	 *
+	 * @param file
+	 *            the file to inspect.
+	 * @return <code>true</code> if it is a TrackMate binary file.
+	 */
+	public static boolean isBinaryFile( final File file )
+	{
+		if ( !file.isFile() || file.length() < HEADER_SIZE + TRAILER_SIZE )
+			return false;
+
+		try ( final DataInputStream in = new DataInputStream( new FileInputStream( file ) ) )
+		{
+			return in.readLong() == MAGIC;
+		}
+		catch ( final IOException e )
+		{
+			return false;
+		}
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * Returns the XML document stored in this file. It holds everything but
+	 * the content of the model.
+	 */
+	public String getXml() throws IOException
+	{
+		final ByteBuffer header = read( xmlOffset, 8 );
+		header.getInt();
+		final int length = header.getInt();
+		return new String( inflate( read( xmlOffset, 8 + length ) ), UTF8 );
+	}
+
+	/**
+	 * Returns the spot features stored in this file, in the order of their
+	 * columns.
+	 */
+	public List< String > getSpotFeatures()
+	{
+		return spotFeatures;
+	}
+
+	/**
+	 * Returns the edge features stored in this file, in the order of their
+	 * columns.
+	 */
+	public List< String > getEdgeFeatures()
+	{
+		return edgeFeatures;
+	}
+
+	/**
+	 * Returns the track features stored in this file, in the order of their
+	 * columns.
+	 */
+	public List< String > getTrackFeatures()
+	{
+		return trackFeatures;
+	}
+
+	/**
+	 * Returns the total number of spots in this file.
+	 */
+	public long getNSpots()
+	{
+		return count( spotChunks );
+	}
+
+	/**
+	 * Returns the total number of edges in this file.
+	 */
+	public long getNEdges()
+	{
+		return count( edgeChunks );
+	}
+
+	/**
+	 * Returns the total number of tracks in this file.
+	 */
+	public long getNTracks()
+	{
+		return count( trackChunks );
+	}
+
+	/*
+	 * SPOTS
+	 */
+
+	public int getNSpotChunks()
+	{
+		return spotChunks.length;
+	}
+
+	/**
+	 * Returns the frame of the spots in the specified chunk.
+	 */
+	public int getSpotChunkFrame( final int chunk )
+	{
+		return spotChunks[ chunk ].frame;
+	}
+
+	public int getSpotChunkSize( final int chunk )
+	{
+		return spotChunks[ chunk ].size;
+	}
+
+	public int[] getSpotIDs( final int chunk ) throws IOException
+	{
+		return readInts( spotChunks[ chunk ], SPOT_ID_COLUMN );
+	}
+
+	public String[] getSpotNames( final int chunk ) throws IOException
+	{
+		return readStrings( spotChunks[ chunk ], SPOT_NAME_COLUMN );
+	}
+
+	/**
+	 * Returns the values of a spot feature in the specified chunk. Missing
+	 * values are returned as {@link Double#NaN}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the feature is not stored in this file.
+	 */
+	public double[] getSpotFeature( final int chunk, final String feature ) throws IOException
+	{
+		return readDoubles( spotChunks[ chunk ], SPOT_FEATURE_COLUMNS + column( spotFeatures, feature ), null );
+	}
+
+	/*
+	 * EDGES
+	 */
+
+	public int getNEdgeChunks()
+	{
+		return edgeChunks.length;
+	}
+
+	public int getEdgeChunkSize( final int chunk )
+	{
+		return edgeChunks[ chunk ].size;
+	}
+
+	/**
+	 * Returns the IDs of the source spots of the edges in the specified chunk.
+	 * Edges are oriented forward in time.
+	 */
+	public int[] getEdgeSources( final int chunk ) throws IOException
+	{
+		return readInts( edgeChunks[ chunk ], EDGE_SOURCE_COLUMN );
+	}
+
+	/**
+	 * Returns the IDs of the target spots of the edges in the specified chunk.
+	 */
+	public int[] getEdgeTargets( final int chunk ) throws IOException
+	{
+		return readInts( edgeChunks[ chunk ], EDGE_TARGET_COLUMN );
+	}
+
+	public double[] getEdgeWeights( final int chunk ) throws IOException
+	{
+		return readDoubles( edgeChunks[ chunk ], EDGE_WEIGHT_COLUMN, null );
+	}
+
+	/**
+	 * Returns the IDs of the tracks the edges in the specified chunk belong
+	 * to.
+	 */
+	public int[] getEdgeTrackIDs( final int chunk ) throws IOException
+	{
+		return readInts( edgeChunks[ chunk ], EDGE_TRACK_COLUMN );
+	}
+
+	/**
+	 * Returns the values of an edge feature in the specified chunk. Missing
+	 * values are returned as {@link Double#NaN}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the feature is not stored in this file.
+	 */
+	public double[] getEdgeFeature( final int chunk, final String feature ) throws IOException
+	{
+		return readDoubles( edgeChunks[ chunk ], EDGE_FEATURE_COLUMNS + column( edgeFeatures, feature ), null );
+	}
+
+	/*
+	 * TRACKS
+	 */
+
+	public int getNTrackChunks()
+	{
+		return trackChunks.length;
+	}
+
+	public int getTrackChunkSize( final int chunk )
+	{
+		return trackChunks[ chunk ].size;
+	}
+
+	public int[] getTrackIDs( final int chunk ) throws IOException
+	{
+		return readInts( trackChunks[ chunk ], TRACK_ID_COLUMN );
+	}
+
+	public String[] getTrackNames( final int chunk ) throws IOException
+	{
+		return readStrings( trackChunks[ chunk ], TRACK_NAME_COLUMN );
+	}
+
+	public boolean[] getTrackVisibility( final int chunk ) throws IOException
+	{
+		final int[] values = readInts( trackChunks[ chunk ], TRACK_VISIBILITY_COLUMN );
+		final boolean[] visibility = new boolean[ values.length ];
+		for ( int i = 0; i < values.length; i++ )
+			visibility[ i ] = values[ i ] != 0;
+		return visibility;
+	}
+
+	/**
+	 * Returns the values of a track feature in the specified chunk. Missing
+	 * values are returned as {@link Double#NaN}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the feature is not stored in this file.
+	 */
+	public double[] getTrackFeature( final int chunk, final String feature ) throws IOException
+	{
+		return readDoubles( trackChunks[ chunk ], TRACK_FEATURE_COLUMNS + column( trackFeatures, feature ), null );
+	}
+
+	/**
+	 * Closes the file. Columns cannot be read anymore afterwards.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		raf.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TrackMate binary file " + file.getName() + " with " + getNSpots() + " spots, " + getNEdges() + " edges and " + getNTracks() + " tracks";
+	}
+
+	/*
+	 * PACKAGE-PRIVATE METHODS
+	 */
+
+	/**
+	 * Reads a column of doubles of a chunk.
+	 *
+	 * @param missing
+	 *            if not <code>null</code>, the bits of the rows with a missing
+	 *            value are set in this bit set. Otherwise, missing values are
+	 *            returned as {@link Double#NaN}.
+	 */
+	double[] readSpotColumn( final int chunk, final int column, final BitSet missing ) throws IOException
+	{
+		return readDoubles( spotChunks[ chunk ], column, missing );
+	}
+
+	double[] readEdgeColumn( final int chunk, final int column, final BitSet missing ) throws IOException
+	{
+		return readDoubles( edgeChunks[ chunk ], column, missing );
+	}
+
+	double[] readTrackColumn( final int chunk, final int column, final BitSet missing ) throws IOException
+	{
+		return readDoubles( trackChunks[ chunk ], column, missing );
+	}
+
+	/*
+	 * ENCODING. Used by the writer, kept here next to the decoding.
+	 */
+
+	/**
+	 * Compresses the specified bytes and writes them as a block.
+	 *
+	 * @return the number of bytes written.
+	 */
+	static int writeBlock( final OutputStream out, final byte[] bytes, final int length, final Deflater deflater, final byte[] buffer ) throws IOException
+	{
+		deflater.reset();
+		deflater.setInput( bytes, 0, length );
+		deflater.finish();
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream( Math.max( 64, length / 2 ) );
+		while ( !deflater.finished() )
+		{
+			final int n = deflater.deflate( buffer );
+			compressed.write( buffer, 0, n );
+		}
+		final DataOutputStream data = new DataOutputStream( out );
+		data.writeInt( length );
+		data.writeInt( compressed.size() );
+		compressed.writeTo( out );
+		return 8 + compressed.size();
+	}
+
+	/**
+	 * Returns the bytes of a column of ints, shuffled.
+	 */
+	static byte[] encodeInts( final int[] values, final int n )
+	{
+		final byte[] bytes = new byte[ 4 * n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int v = values[ i ];
+			bytes[ i ] = ( byte ) ( v >>> 24 );
+			bytes[ n + i ] = ( byte ) ( v >>> 16 );
+			bytes[ 2 * n + i ] = ( byte ) ( v >>> 8 );
+			bytes[ 3 * n + i ] = ( byte ) v;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the bytes of a column of doubles, shuffled. Missing values are
+	 * marked by the bits set in the specified bit set, which may be
+	 * <code>null</code> if there are none.
+	 */
+	static byte[] encodeDoubles( final double[] values, final int n, final BitSet missing )
+	{
+		final boolean hasMissing = null != missing && !missing.isEmpty();
+		final int bitmapLength = hasMissing ? ( n + 7 ) / 8 : 0;
+		final int start = 1 + bitmapLength;
+		final byte[] bytes = new byte[ start + 8 * n ];
+		if ( hasMissing )
+		{
+			bytes[ 0 ] = 1;
+			for ( int i = missing.nextSetBit( 0 ); i >= 0 && i < n; i = missing.nextSetBit( i + 1 ) )
+				bytes[ 1 + i / 8 ] |= 1 << ( i % 8 );
+		}
+		for ( int i = 0; i < n; i++ )
+		{
+			final long v = Double.doubleToRawLongBits( values[ i ] );
+			for ( int b = 0; b < 8; b++ )
+				bytes[ start + b * n + i ] = ( byte ) ( v >>> ( 56 - 8 * b ) );
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the bytes of a column of strings, which may be
+	 * <code>null</code>.
+	 */
+	static byte[] encodeStrings( final String[] values, final int n )
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 16 * n );
+		final DataOutputStream data = new DataOutputStream( bytes );
+		try
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( null == values[ i ] )
+				{
+					data.writeInt( -1 );
+					continue;
+				}
+				final byte[] str = values[ i ].getBytes( UTF8 );
+				data.writeInt( str.length );
+				data.write( str );
+			}
+		}
+		catch ( final IOException e )
+		{
+			// Cannot happen with a byte array.
+			throw new RuntimeException( e );
+		}
+		return bytes.toByteArray();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private ByteBuffer read( final long position, final int length ) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( length );
+		while ( buffer.hasRemaining() )
+		{
+			if ( channel.read( buffer, position + buffer.position() ) < 0 )
+				throw new IOException( file.getName() + " is truncated." );
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns the decompressed bytes of a column of a chunk. Blocks are
+	 * skipped through their header, without reading them. Positional reads
+	 * are used, so that several threads can read columns at once.
+	 */
+	private byte[] column( final Chunk chunk, final int column ) throws IOException
+	{
+		final long end = chunk.offset + chunk.length;
+		long position = chunk.offset;
+		for ( int i = 0; i <= column; i++ )
+		{
+			if ( position + 8 > end )
+				throw new IOException( "Corrupted chunk in " + file.getName() + "." );
+			final int compressedLength = read( position, 8 ).getInt( 4 );
+			if ( compressedLength < 0 || position + 8 + compressedLength > end )
+				throw new IOException( "Corrupted chunk in " + file.getName() + "." );
+			if ( i == column )
+				return inflate( read( position, 8 + compressedLength ) );
+			position += 8 + compressedLength;
+		}
+		throw new IOException( "Corrupted chunk in " + file.getName() + "." );
+	}
+
+	private int[] readInts( final Chunk chunk, final int column ) throws IOException
+	{
+		final byte[] bytes = column( chunk, column );
+		final int n = chunk.size;
+		final int[] values = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			values[ i ] = ( bytes[ i ] & 0xff ) << 24
+					| ( bytes[ n + i ] & 0xff ) << 16
+					| ( bytes[ 2 * n + i ] & 0xff ) << 8
+					| ( bytes[ 3 * n + i ] & 0xff );
+		}
+		return values;
+	}
+
+	private double[] readDoubles( final Chunk chunk, final int column, final BitSet missing ) throws IOException
+	{
+		final byte[] bytes = column( chunk, column );
+		final int n = chunk.size;
+		final boolean hasMissing = bytes[ 0 ] != 0;
+		final int start = hasMissing ? 1 + ( n + 7 ) / 8 : 1;
+		final double[] values = new double[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			long v = 0;
+			for ( int b = 0; b < 8; b++ )
+				v = ( v << 8 ) | ( bytes[ start + b * n + i ] & 0xff );
+			values[ i ] = Double.longBitsToDouble( v );
+		}
+		if ( hasMissing )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( ( bytes[ 1 + i / 8 ] & ( 1 << ( i % 8 ) ) ) == 0 )
+					continue;
+				if ( null == missing )
+					values[ i ] = Double.NaN;
+				else
+					missing.set( i );
+			}
+		}
+		return values;
+	}
+
+	private String[] readStrings( final Chunk chunk, final int column ) throws IOException
+	{
+		final ByteBuffer bytes = ByteBuffer.wrap( column( chunk, column ) );
+		final String[] values = new String[ chunk.size ];
+		for ( int i = 0; i < values.length; i++ )
+		{
+			final int length = bytes.getInt();
+			if ( length < 0 )
+				continue;
+			values[ i ] = new String( bytes.array(), bytes.position(), length, UTF8 );
+			bytes.position( bytes.position() + length );
+		}
+		return values;
+	}
+
+	/**
+	 * Decompresses the block starting at the position of the specified
+	 * buffer.
+	 */
+	private byte[] inflate( final ByteBuffer buffer ) throws IOException
+	{
+		final int length = buffer.getInt();
+		final int compressedLength = buffer.getInt();
+		final byte[] compressed = new byte[ compressedLength ];
+		buffer.get( compressed );
+
+		final byte[] bytes = new byte[ length ];
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput( compressed );
+			int n = 0;
+			while ( n < length )
+			{
+				final int read = inflater.inflate( bytes, n, length - n );
+				if ( read == 0 && ( inflater.finished() || inflater.needsInput() || inflater.needsDictionary() ) )
+					throw new IOException( "Corrupted block in " + file.getName() + "." );
+				n += read;
+			}
+		}
+		catch ( final DataFormatException e )
+		{
+			throw new IOException( "Corrupted block in " + file.getName() + ": " + e.getMessage(), e );
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return bytes;
+	}
+
+	private static List< String > readStrings( final DataInputStream in ) throws IOException
+	{
+		final int n = in.readInt();
+		final List< String > strings = new ArrayList< >( n );
+		for ( int i = 0; i < n; i++ )
+			strings.add( in.readUTF() );
+		return Collections.unmodifiableList( strings );
+	}
+
+	private Chunk[] readChunks( final DataInputStream in, final long size ) throws IOException
+	{
+		final Chunk[] chunks = new Chunk[ in.readInt() ];
+		for ( int i = 0; i < chunks.length; i++ )
+		{
+			final Chunk chunk = new Chunk( in.readInt(), in.readInt(), in.readLong(), in.readInt() );
+			if ( chunk.offset < HEADER_SIZE || chunk.offset + chunk.length > size )
+				throw new IOException( file.getName() + " is truncated." );
+			chunks[ i ] = chunk;
+		}
+		return chunks;
+	}
+
+	private static int column( final List< String > features, final String feature )
+	{
+		final int column = features.indexOf( feature );
+		if ( column < 0 )
+			throw new IllegalArgumentException( "Unknown feature: " + feature );
+		return column;
+	}
+
+	private static long count( final Chunk[] chunks )
+	{
+		long count = 0;
+		for ( final Chunk chunk : chunks )
+			count += chunk.size;
+		return count;
+	}
+
+	/**
+	 * The position of a chunk in the file.
+	 */
+	private static final class Chunk
+	{
+
+		/**
+		 * The frame of the spots of this chunk. Unused for other chunks.
+		 */
+		private final int frame;
+
+		private final int size;
+
+		private final long offset;
+
+		private final int length;
+
+		private Chunk( final int frame, final int size, final long offset, final int length )
+		{
+			this.frame = frame;
+			this.size = size;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
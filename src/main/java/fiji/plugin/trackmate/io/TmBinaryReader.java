@@ -0,0 +1,393 @@
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmBinaryFile.EDGE_FEATURE_COLUMNS;
+import static fiji.plugin.trackmate.io.TmBinaryFile.SPOT_FEATURE_COLUMNS;
+import static fiji.plugin.trackmate.io.TmBinaryFile.TRACK_FEATURE_COLUMNS;
+import static fiji.plugin.trackmate.io.TmXmlKeys.MODEL_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPATIAL_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TIME_UNITS_ATTRIBUTE_NAME;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+/**
+ * Reads the TrackMate binary model files written by {@link TmBinaryWriter}.
+ * <p>
+ * The log, settings, GUI state and views are read from the XML document
+ * stored in the file, as by {@link TmXmlReader}. The model is built from the
+ * columns of the file: spot chunks are decoded in parallel, then edges and
+ * tracks are created from their columns.
+ * <p>
+ * To read some features without building the model, use a
+ * {@link TmBinaryFile}.
+ */
+public class TmBinaryReader extends TmXmlReader
+{
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Initialize this reader to read the file given in argument. Only the XML
+	 * document stored in the file is read upon construction.
+	 */
+	public TmBinaryReader( final File file )
+	{
+		this( file, new XmlSection( file ) );
+	}
+
+	private TmBinaryReader( final File file, final XmlSection xml )
+	{
+		super( file, xml.document );
+		if ( null != xml.error )
+		{
+			logger.error( xml.error );
+			ok = false;
+		}
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * Returns the model stored in the file. The file is read again for each
+	 * call, and each call returns a new model.
+	 *
+	 * @return a new {@link Model}, or <code>null</code> if the file does not
+	 *         contain a model, or could not be read.
+	 */
+	@Override
+	public Model getModel()
+	{
+		if ( null == root )
+			return null;
+		final Element modelElement = root.getChild( MODEL_ELEMENT_KEY );
+		if ( null == modelElement )
+			return null;
+		final Model model = createModel();
+
+		// Physical units
+		final String spaceUnits = modelElement.getAttributeValue( SPATIAL_UNITS_ATTRIBUTE_NAME );
+		final String timeUnits = modelElement.getAttributeValue( TIME_UNITS_ATTRIBUTE_NAME );
+		model.setPhysicalUnits( spaceUnits, timeUnits );
+
+		// Feature declarations
+		readFeatureDeclarations( modelElement, model );
+
+		try ( final TmBinaryFile binary = new TmBinaryFile( file ) )
+		{
+			model.setSpots( buildSpots( binary ), false );
+			if ( !buildTracks( binary, model ) )
+				ok = false;
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Problem reading " + file.getName()
+					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
+			ok = false;
+		}
+		return model;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Creates the spots of all the chunks, on several threads, and adds them
+	 * to the {@link #cache}.
+	 */
+	private SpotCollection buildSpots( final TmBinaryFile binary ) throws IOException
+	{
+		final int nChunks = binary.getNSpotChunks();
+		cache = new ConcurrentHashMap< >( ( int ) Math.min( Integer.MAX_VALUE, binary.getNSpots() ) );
+		final Map< Integer, Set< Spot > > content = new HashMap< >();
+
+		final ForkJoinPool pool = new ForkJoinPool( Math.max( 1, getNumThreads() ) );
+		try
+		{
+			final SpotChunkReader[] readers = new SpotChunkReader[ nChunks ];
+			for ( int i = 0; i < nChunks; i++ )
+			{
+				readers[ i ] = new SpotChunkReader( binary, i );
+				pool.execute( readers[ i ] );
+			}
+
+			// Merge in the order of the file.
+			for ( int i = 0; i < nChunks; i++ )
+			{
+				final SpotChunkReader reader = readers[ i ];
+				reader.join();
+				if ( null != reader.error )
+					throw reader.error;
+
+				final Integer frame = Integer.valueOf( binary.getSpotChunkFrame( i ) );
+				Set< Spot > spotSet = content.get( frame );
+				if ( null == spotSet )
+				{
+					spotSet = new HashSet< >( reader.spots.length );
+					content.put( frame, spotSet );
+				}
+				for ( final Spot spot : reader.spots )
+				{
+					spotSet.add( spot );
+					cache.put( spot.ID(), spot );
+				}
+				// Release the spots, now owned by the collection.
+				readers[ i ] = null;
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		return SpotCollection.fromMap( content );
+	}
+
+	/**
+	 * Creates the edges and the tracks, and passes them to the model with
+	 * their features.
+	 *
+	 * @return <code>true</code> if reading tracks was successful.
+	 */
+	private boolean buildTracks( final TmBinaryFile binary, final Model model ) throws IOException
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		final Map< Integer, Set< Spot > > connectedVertexSet = new HashMap< >();
+		final Map< Integer, Set< DefaultWeightedEdge > > connectedEdgeSet = new HashMap< >();
+
+		final List< String > edgeFeatures = binary.getEdgeFeatures();
+		for ( int chunk = 0; chunk < binary.getNEdgeChunks(); chunk++ )
+		{
+			final int[] sources = binary.getEdgeSources( chunk );
+			final int[] targets = binary.getEdgeTargets( chunk );
+			final double[] weights = binary.getEdgeWeights( chunk );
+			final int[] trackIDs = binary.getEdgeTrackIDs( chunk );
+			final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ sources.length ];
+
+			for ( int i = 0; i < edges.length; i++ )
+			{
+				final int trackID = trackIDs[ i ];
+				final Spot sourceSpot = cache.get( sources[ i ] );
+				final Spot targetSpot = cache.get( targets[ i ] );
+				if ( null == sourceSpot )
+				{
+					logger.error( "Unknown spot ID: " + sources[ i ] + "\n" );
+					return false;
+				}
+				if ( null == targetSpot )
+				{
+					logger.error( "Unknown spot ID: " + targets[ i ] + "\n" );
+					return false;
+				}
+				if ( sourceSpot.equals( targetSpot ) )
+				{
+					logger.error( "Bad link for track " + trackID + ". Source = Target with ID: " + sources[ i ] + "\n" );
+					return false;
+				}
+
+				graph.addVertex( sourceSpot );
+				graph.addVertex( targetSpot );
+				final DefaultWeightedEdge edge = graph.addEdge( sourceSpot, targetSpot );
+				if ( null == edge )
+				{
+					logger.error( "Bad edge found for track " + trackID + "\n" );
+					return false;
+				}
+				graph.setEdgeWeight( edge, weights[ i ] );
+				edges[ i ] = edge;
+
+				Set< Spot > spots = connectedVertexSet.get( trackID );
+				Set< DefaultWeightedEdge > trackEdges = connectedEdgeSet.get( trackID );
+				if ( null == spots )
+				{
+					spots = new HashSet< >();
+					connectedVertexSet.put( trackID, spots );
+					trackEdges = new HashSet< >();
+					connectedEdgeSet.put( trackID, trackEdges );
+				}
+				spots.add( sourceSpot );
+				spots.add( targetSpot );
+				trackEdges.add( edge );
+			}
+
+			for ( int f = 0; f < edgeFeatures.size(); f++ )
+			{
+				final String feature = edgeFeatures.get( f );
+				final BitSet missing = new BitSet( edges.length );
+				final double[] values = binary.readEdgeColumn( chunk, EDGE_FEATURE_COLUMNS + f, missing );
+				for ( int i = 0; i < edges.length; i++ )
+				{
+					if ( !missing.get( i ) )
+						fm.putEdgeFeature( edges[ i ], feature, Double.valueOf( values[ i ] ) );
+				}
+			}
+		}
+
+		/*
+		 * Track names and visibility. Tracks missing from the track table are
+		 * made visible.
+		 */
+		final Map< Integer, String > trackNames = new HashMap< >( connectedEdgeSet.size() );
+		final Map< Integer, Boolean > visibility = new HashMap< >( connectedEdgeSet.size() );
+		for ( int chunk = 0; chunk < binary.getNTrackChunks(); chunk++ )
+		{
+			final int[] ids = binary.getTrackIDs( chunk );
+			final String[] names = binary.getTrackNames( chunk );
+			final boolean[] visible = binary.getTrackVisibility( chunk );
+			for ( int i = 0; i < ids.length; i++ )
+			{
+				final Integer trackID = Integer.valueOf( ids[ i ] );
+				if ( !connectedEdgeSet.containsKey( trackID ) )
+					continue;
+				trackNames.put( trackID, null == names[ i ] ? "Unnamed" : names[ i ] );
+				visibility.put( trackID, Boolean.valueOf( visible[ i ] ) );
+			}
+		}
+		for ( final Integer trackID : connectedEdgeSet.keySet() )
+		{
+			if ( !trackNames.containsKey( trackID ) )
+			{
+				logger.error( "Track " + trackID + " is missing from the track table.\n" );
+				ok = false;
+				trackNames.put( trackID, "Unnamed" );
+				visibility.put( trackID, Boolean.TRUE );
+			}
+		}
+
+		model.getTrackModel().from( graph, connectedVertexSet, connectedEdgeSet, visibility, trackNames );
+
+		// Track features
+		final List< String > trackFeatures = binary.getTrackFeatures();
+		for ( int chunk = 0; chunk < binary.getNTrackChunks(); chunk++ )
+		{
+			final int[] ids = binary.getTrackIDs( chunk );
+			for ( int f = 0; f < trackFeatures.size(); f++ )
+			{
+				final String feature = trackFeatures.get( f );
+				final BitSet missing = new BitSet( ids.length );
+				final double[] values = binary.readTrackColumn( chunk, TRACK_FEATURE_COLUMNS + f, missing );
+				for ( int i = 0; i < ids.length; i++ )
+				{
+					if ( !missing.get( i ) )
+						fm.putTrackFeature( Integer.valueOf( ids[ i ] ), feature, Double.valueOf( values[ i ] ) );
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the spots of a chunk from its columns.
+	 */
+	private static final class SpotChunkReader extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final TmBinaryFile binary;
+
+		private final int chunk;
+
+		private Spot[] spots;
+
+		private IOException error;
+
+		private SpotChunkReader( final TmBinaryFile binary, final int chunk )
+		{
+			this.binary = binary;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute()
+		{
+			try
+			{
+				final int[] ids = binary.getSpotIDs( chunk );
+				final String[] names = binary.getSpotNames( chunk );
+				final Spot[] created = new Spot[ ids.length ];
+				for ( int i = 0; i < ids.length; i++ )
+				{
+					final Spot spot = new Spot( ids[ i ] );
+					final String name = names[ i ];
+					spot.setName( null == name || name.isEmpty() ? "ID" + ids[ i ] : name );
+					created[ i ] = spot;
+				}
+
+				final List< String > features = binary.getSpotFeatures();
+				for ( int f = 0; f < features.size(); f++ )
+				{
+					final String feature = features.get( f );
+					final BitSet missing = new BitSet( ids.length );
+					final double[] values = binary.readSpotColumn( chunk, SPOT_FEATURE_COLUMNS + f, missing );
+					for ( int i = 0; i < ids.length; i++ )
+					{
+						if ( !missing.get( i ) )
+							created[ i ].putFeature( feature, Double.valueOf( values[ i ] ) );
+					}
+				}
+				spots = created;
+			}
+			catch ( final IOException e )
+			{
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * The XML document stored in a binary file, read before the reader is
+	 * initialized.
+	 */
+	private static final class XmlSection
+	{
+
+		private Document document;
+
+		private String error;
+
+		private XmlSection( final File file )
+		{
+			try ( final TmBinaryFile binary = new TmBinaryFile( file ) )
+			{
+				document = new SAXBuilder().build( new StringReader( binary.getXml() ) );
+			}
+			catch ( final JDOMException e )
+			{
+				error = "Problem parsing " + file.getName() + ", it is not a valid TrackMate binary file.\nError message is:\n"
+						+ e.getLocalizedMessage() + '\n';
+			}
+			catch ( final IOException e )
+			{
+				error = "Problem reading " + file.getName()
+						+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n';
+			}
+		}
+	}
+}
@@ -0,0 +1,483 @@
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmBinaryFile.CHUNK_SIZE;
+import static fiji.plugin.trackmate.io.TmBinaryFile.MAGIC;
+import static fiji.plugin.trackmate.io.TmBinaryFile.UTF8;
+import static fiji.plugin.trackmate.io.TmBinaryFile.VERSION;
+import static fiji.plugin.trackmate.io.TmBinaryFile.encodeDoubles;
+import static fiji.plugin.trackmate.io.TmBinaryFile.encodeInts;
+import static fiji.plugin.trackmate.io.TmBinaryFile.encodeStrings;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * Writes TrackMate data to a binary model file, described in
+ * {@link TmBinaryFile}. Content is appended as with {@link TmXmlWriter}: the
+ * log, settings and GUI state are stored as XML, the content of the model as
+ * compressed columns.
+ * <p>
+ * Only the last model appended is written.
+ */
+public class TmBinaryWriter extends TmXmlWriter
+{
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File file;
+
+	private Model model;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Creates a new binary file writer for TrackMate.
+	 *
+	 * @param file
+	 *            the file to write to, will be overwritten.
+	 */
+	public TmBinaryWriter( final File file )
+	{
+		this( file, new Logger.StringBuilderLogger() );
+	}
+
+	/**
+	 * Creates a new binary file writer for TrackMate.
+	 *
+	 * @param file
+	 *            the file to write to, will be overwritten.
+	 */
+	public TmBinaryWriter( final File file, final Logger logger )
+	{
+		super( file, logger );
+		this.file = file;
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * Appends a {@link Model} to the file generated by this writer. As with
+	 * {@link TmXmlWriter}, the model content is read when the file is written,
+	 * and the model must not be modified until then.
+	 *
+	 * @param model
+	 *            the {@link Model} to write.
+	 */
+	@Override
+	public void appendModel( final Model model )
+	{
+		super.appendModel( model );
+		this.model = model;
+	}
+
+	/**
+	 * Writes the file. The content is first written to a temporary file in the
+	 * same folder, which then replaces the target file. An existing file is
+	 * therefore left untouched if writing fails, and readers that still have
+	 * it open are not affected.
+	 */
+	@Override
+	public void writeToFile() throws FileNotFoundException, IOException
+	{
+		final File tmp = File.createTempFile( file.getName(), ".tmp", file.getAbsoluteFile().getParentFile() );
+		boolean written = false;
+		try
+		{
+			try ( final OutputStream os = new BufferedOutputStream( new FileOutputStream( tmp ), BUFFER_SIZE ) )
+			{
+				logger.log( "  Writing to file.\n" );
+				new ChunkOutput( os ).write();
+			}
+			try
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( final AtomicMoveNotSupportedException e )
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+			written = true;
+		}
+		finally
+		{
+			if ( !written )
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes the blocks of the file and keeps track of their position.
+	 */
+	private final class ChunkOutput
+	{
+
+		private final DataOutputStream out;
+
+		private final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+
+		private final byte[] buffer = new byte[ BUFFER_SIZE ];
+
+		private long position = 0;
+
+		private final ByteArrayOutputStream chunkIndex = new ByteArrayOutputStream();
+
+		private final DataOutputStream index = new DataOutputStream( chunkIndex );
+
+		private ChunkOutput( final OutputStream os )
+		{
+			this.out = new DataOutputStream( os );
+		}
+
+		private void write() throws IOException
+		{
+			try
+			{
+				out.writeLong( MAGIC );
+				out.writeInt( VERSION );
+				position = 12;
+
+				// XML document, with an empty model element.
+				final long xmlOffset = position;
+				final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+				final Writer writer = new OutputStreamWriter( xml, UTF8 );
+				final XmlOutput xmlOutput = new XmlOutput( writer );
+				xmlOutput.startDocument();
+				xmlOutput.element( root );
+				xmlOutput.flush();
+				block( xml.toByteArray() );
+
+				final List< String > spotFeatures = new ArrayList< >();
+				final List< String > edgeFeatures = new ArrayList< >();
+				final List< String > trackFeatures = new ArrayList< >();
+				if ( null != model )
+				{
+					final FeatureModel fm = model.getFeatureModel();
+					spotFeatures.addAll( fm.getSpotFeatures() );
+					edgeFeatures.addAll( fm.getEdgeFeatures() );
+					// Edge source and target are stored separately.
+					edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+					edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
+					trackFeatures.addAll( fm.getTrackFeatures() );
+					// So is the track ID.
+					trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
+
+					writeSpots( spotFeatures );
+					writeEdges( edgeFeatures );
+					writeTracks( trackFeatures );
+				}
+				else
+				{
+					index.writeInt( 0 );
+					index.writeInt( 0 );
+					index.writeInt( 0 );
+				}
+
+				// Table of contents.
+				final ByteArrayOutputStream toc = new ByteArrayOutputStream();
+				final DataOutputStream data = new DataOutputStream( toc );
+				data.writeLong( xmlOffset );
+				writeStrings( data, spotFeatures );
+				writeStrings( data, edgeFeatures );
+				writeStrings( data, trackFeatures );
+				chunkIndex.writeTo( data );
+				data.flush();
+				final long tocOffset = position;
+				block( toc.toByteArray() );
+
+				out.writeLong( tocOffset );
+				out.writeLong( MAGIC );
+				out.flush();
+			}
+			finally
+			{
+				deflater.end();
+			}
+		}
+
+		private void writeSpots( final List< String > features ) throws IOException
+		{
+			final SpotCollection spots = model.getSpots();
+			final List< Chunk > chunks = new ArrayList< >();
+			final int[] ids = new int[ CHUNK_SIZE ];
+			final String[] names = new String[ CHUNK_SIZE ];
+			final double[][] values = new double[ features.size() ][ CHUNK_SIZE ];
+			final BitSet[] missing = newBitSets( features.size() );
+
+			for ( final int frame : spots.keySet() )
+			{
+				int n = 0;
+				boolean written = false;
+				for ( final Iterator< Spot > it = spots.iterator( frame, false ); it.hasNext(); )
+				{
+					final Spot spot = it.next();
+					ids[ n ] = spot.ID();
+					names[ n ] = spot.getName();
+					for ( int f = 0; f < values.length; f++ )
+					{
+						final Double val = spot.getFeature( features.get( f ) );
+						if ( null == val )
+						{
+							missing[ f ].set( n );
+							values[ f ][ n ] = Double.NaN;
+						}
+						else
+						{
+							values[ f ][ n ] = val.doubleValue();
+						}
+					}
+					n++;
+
+					if ( n == CHUNK_SIZE )
+					{
+						chunks.add( spotChunk( frame, n, ids, names, values, missing ) );
+						written = true;
+						n = 0;
+					}
+				}
+				// Empty frames get an empty chunk, to be restored as well.
+				if ( n > 0 || !written )
+					chunks.add( spotChunk( frame, n, ids, names, values, missing ) );
+			}
+			writeChunks( chunks );
+			logger.log( "  Added " + spots.getNSpots( false ) + " spots.\n" );
+		}
+
+		private Chunk spotChunk( final int frame, final int n, final int[] ids, final String[] names, final double[][] values, final BitSet[] missing ) throws IOException
+		{
+			final long offset = position;
+			block( encodeInts( ids, n ) );
+			block( encodeStrings( names, n ) );
+			for ( int f = 0; f < values.length; f++ )
+			{
+				block( encodeDoubles( values[ f ], n, missing[ f ] ) );
+				missing[ f ].clear();
+			}
+			return new Chunk( frame, n, offset, position );
+		}
+
+		private void writeEdges( final List< String > features ) throws IOException
+		{
+			final FeatureModel fm = model.getFeatureModel();
+			final TrackModel trackModel = model.getTrackModel();
+			final List< Chunk > chunks = new ArrayList< >();
+			final int[] sources = new int[ CHUNK_SIZE ];
+			final int[] targets = new int[ CHUNK_SIZE ];
+			final double[] weights = new double[ CHUNK_SIZE ];
+			final int[] trackIDs = new int[ CHUNK_SIZE ];
+			final double[][] values = new double[ features.size() ][ CHUNK_SIZE ];
+			final BitSet[] missing = newBitSets( features.size() );
+
+			int n = 0;
+			for ( final Integer trackID : trackModel.trackIDs( false ) )
+			{
+				for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+				{
+					// Edges are stored forward in time.
+					final Spot source = trackModel.getEdgeSource( edge );
+					final Spot target = trackModel.getEdgeTarget( edge );
+					if ( target.getFeature( Spot.FRAME ).intValue() >= source.getFeature( Spot.FRAME ).intValue() )
+					{
+						sources[ n ] = source.ID();
+						targets[ n ] = target.ID();
+					}
+					else
+					{
+						sources[ n ] = target.ID();
+						targets[ n ] = source.ID();
+					}
+					weights[ n ] = trackModel.getEdgeWeight( edge );
+					trackIDs[ n ] = trackID.intValue();
+					for ( int f = 0; f < values.length; f++ )
+					{
+						final Double val = fm.getEdgeFeature( edge, features.get( f ) );
+						if ( null == val )
+						{
+							missing[ f ].set( n );
+							values[ f ][ n ] = Double.NaN;
+						}
+						else
+						{
+							values[ f ][ n ] = val.doubleValue();
+						}
+					}
+					n++;
+
+					if ( n == CHUNK_SIZE )
+					{
+						chunks.add( edgeChunk( n, sources, targets, weights, trackIDs, values, missing ) );
+						n = 0;
+					}
+				}
+			}
+			if ( n > 0 )
+				chunks.add( edgeChunk( n, sources, targets, weights, trackIDs, values, missing ) );
+			writeChunks( chunks );
+		}
+
+		private Chunk edgeChunk( final int n, final int[] sources, final int[] targets, final double[] weights, final int[] trackIDs, final double[][] values, final BitSet[] missing ) throws IOException
+		{
+			final long offset = position;
+			block( encodeInts( sources, n ) );
+			block( encodeInts( targets, n ) );
+			block( encodeDoubles( weights, n, null ) );
+			block( encodeInts( trackIDs, n ) );
+			for ( int f = 0; f < values.length; f++ )
+			{
+				block( encodeDoubles( values[ f ], n, missing[ f ] ) );
+				missing[ f ].clear();
+			}
+			return new Chunk( -1, n, offset, position );
+		}
+
+		private void writeTracks( final List< String > features ) throws IOException
+		{
+			final FeatureModel fm = model.getFeatureModel();
+			final TrackModel trackModel = model.getTrackModel();
+			final List< Chunk > chunks = new ArrayList< >();
+			final int[] ids = new int[ CHUNK_SIZE ];
+			final String[] names = new String[ CHUNK_SIZE ];
+			final int[] visibility = new int[ CHUNK_SIZE ];
+			final double[][] values = new double[ features.size() ][ CHUNK_SIZE ];
+			final BitSet[] missing = newBitSets( features.size() );
+
+			int n = 0;
+			for ( final Integer trackID : trackModel.trackIDs( false ) )
+			{
+				// Tracks without edges are skipped, as in XML files.
+				if ( trackModel.trackEdges( trackID ).isEmpty() )
+					continue;
+
+				ids[ n ] = trackID.intValue();
+				names[ n ] = trackModel.name( trackID );
+				visibility[ n ] = trackModel.isVisible( trackID ) ? 1 : 0;
+				for ( int f = 0; f < values.length; f++ )
+				{
+					final Double val = fm.getTrackFeature( trackID, features.get( f ) );
+					if ( null == val )
+					{
+						missing[ f ].set( n );
+						values[ f ][ n ] = Double.NaN;
+					}
+					else
+					{
+						values[ f ][ n ] = val.doubleValue();
+					}
+				}
+				n++;
+
+				if ( n == CHUNK_SIZE )
+				{
+					chunks.add( trackChunk( n, ids, names, visibility, values, missing ) );
+					n = 0;
+				}
+			}
+			if ( n > 0 )
+				chunks.add( trackChunk( n, ids, names, visibility, values, missing ) );
+			writeChunks( chunks );
+			logger.log( "  Added tracks.\n" );
+		}
+
+		private Chunk trackChunk( final int n, final int[] ids, final String[] names, final int[] visibility, final double[][] values, final BitSet[] missing ) throws IOException
+		{
+			final long offset = position;
+			block( encodeInts( ids, n ) );
+			block( encodeStrings( names, n ) );
+			block( encodeInts( visibility, n ) );
+			for ( int f = 0; f < values.length; f++ )
+			{
+				block( encodeDoubles( values[ f ], n, missing[ f ] ) );
+				missing[ f ].clear();
+			}
+			return new Chunk( -1, n, offset, position );
+		}
+
+		private void block( final byte[] bytes ) throws IOException
+		{
+			position += TmBinaryFile.writeBlock( out, bytes, bytes.length, deflater, buffer );
+		}
+
+		/**
+		 * Adds the position of the specified chunks to the table of contents.
+		 */
+		private void writeChunks( final List< Chunk > chunks ) throws IOException
+		{
+			index.writeInt( chunks.size() );
+			for ( final Chunk chunk : chunks )
+			{
+				index.writeInt( chunk.frame );
+				index.writeInt( chunk.size );
+				index.writeLong( chunk.offset );
+				index.writeInt( ( int ) ( chunk.end - chunk.offset ) );
+			}
+		}
+	}
+
+	private static void writeStrings( final DataOutputStream data, final List< String > strings ) throws IOException
+	{
+		data.writeInt( strings.size() );
+		for ( final String str : strings )
+			data.writeUTF( str );
+	}
+
+	private static BitSet[] newBitSets( final int n )
+	{
+		final BitSet[] bitSets = new BitSet[ n ];
+		for ( int i = 0; i < n; i++ )
+			bitSets[ i ] = new BitSet( CHUNK_SIZE );
+		return bitSets;
+	}
+
+	/**
+	 * The position of a chunk written to the file.
+	 */
+	private static final class Chunk
+	{
+
+		private final int frame;
+
+		private final int size;
+
+		private final long offset;
+
+		private final long end;
+
+		private Chunk( final int frame, final int size, final long offset, final long end )
+		{
+			this.frame = frame;
+			this.size = size;
+			this.offset = offset;
+			this.end = end;
+		}
+	}
+}
@@ -74,23 +74,37 @@ import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
 import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.XML_ATTRIBUTE_TRACKER_NAME;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.jdom2.Attribute;
 import org.jdom2.DataConversionException;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.UncheckedJDOMFactory;
 import org.jdom2.input.SAXBuilder;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -125,12 +139,26 @@ import fiji.plugin.trackmate.visualization.ViewFactory;
 import fiji.plugin.trackmate.visualization.trackscheme.TrackScheme;
 import ij.IJ;
 import ij.ImagePlus;
+import net.imglib2.algorithm.MultiThreaded;
 
-public class TmXmlReader
+public class TmXmlReader implements MultiThreaded
 {
 
 	protected static final boolean DEBUG = true;
 
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The maximal number of spots parsed together by a thread.
+	 */
+	private static final int SPOT_CHUNK_SIZE = 1000;
+
+	/**
+	 * Elements are built from names and values read in a well-formed file, so
+	 * we skip checking them.
+	 */
+	private static final JDOMFactory FACTORY = new UncheckedJDOMFactory();
+
 	protected Document document = null;
 
 	protected final File file;
@@ -148,7 +176,7 @@ public class TmXmlReader
 
 	protected StringBuilderLogger logger = new StringBuilderLogger();
 
-	protected final Element root;
+	protected Element root;
 
 	/**
 	 * If <code>false</code>, an error occurred during reading.
@@ -157,36 +185,77 @@ public class TmXmlReader
 	 */
 	protected boolean ok = true;
 
+	/**
+	 * If <code>true</code>, the file is read with a streaming parser rather
+	 * than loaded in a JDOM {@link Document}.
+	 */
+	private boolean streaming;
+
+	/**
+	 * Whether the file has been streamed once, building the {@link #root}
+	 * element of everything but the model content.
+	 */
+	private boolean parsed = false;
+
+	private int numThreads;
+
 	/*
 	 * CONSTRUCTORS
 	 */
 
 	/**
 	 * Initialize this reader to read the file given in argument.
+	 * <p>
+	 * The file is read with a streaming parser: spots, edges and features are
+	 * created as their elements are read, without holding the whole document
+	 * in memory. Only the root element is read upon construction, the rest of
+	 * the file is read on the first call to a reading method.
 	 */
 	public TmXmlReader( final File file )
+	{
+		this( file, true );
+	}
+
+	/**
+	 * Initialize this reader to read the file given in argument.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param streaming
+	 *            if <code>false</code>, the whole file is loaded in a JDOM
+	 *            {@link Document} upon construction, and the {@link #root}
+	 *            element gives access to all its content. Readers for older
+	 *            versions of the file format rely on this.
+	 */
+	protected TmXmlReader( final File file, final boolean streaming )
 	{
 		this.file = file;
-		final SAXBuilder sb = new SAXBuilder();
-		Element r = null;
-		try
-		{
-			document = sb.build( file );
-			r = document.getRootElement();
-		}
-		catch ( final JDOMException e )
-		{
-			ok = false;
-			logger.error( "Problem parsing " + file.getName() + ", it is not a valid TrackMate XML file.\nError message is:\n"
-					+ e.getLocalizedMessage() + '\n' );
-		}
-		catch ( final IOException e )
-		{
-			logger.error( "Problem reading " + file.getName()
-					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
-			ok = false;
-		}
-		this.root = r;
+		this.streaming = streaming;
+		setNumThreads();
+		if ( streaming )
+			readRootElement();
+		else
+			readDocument();
+	}
+
+	/**
+	 * Initialize this reader with a document obtained by a subclass, for files
+	 * that are not plain XML files. The file is not read by this class.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param document
+	 *            the document holding the content of the file, or
+	 *            <code>null</code> if it could not be read. Subclasses must
+	 *            then report the error.
+	 */
+	protected TmXmlReader( final File file, final Document document )
+	{
+		this.file = file;
+		this.streaming = false;
+		setNumThreads();
+		this.document = document;
+		this.root = null == document ? null : document.getRootElement();
 	}
 
 	/*
@@ -199,6 +268,7 @@ public class TmXmlReader
 	 */
 	public String getLog()
 	{
+		ensureParsed();
 		final Element logElement = root.getChild( LOG_ELEMENT_KEY );
 		if ( null != logElement )
 			return logElement.getTextTrim();
@@ -213,6 +283,7 @@ public class TmXmlReader
 	 */
 	public String getGUIState()
 	{
+		ensureParsed();
 		final Element guiel = root.getChild( GUI_STATE_ELEMENT_KEY );
 		if ( null != guiel )
 		{
@@ -250,6 +321,7 @@ public class TmXmlReader
 	 */
 	public Collection< TrackMateModelView > getViews( final ViewProvider provider, final Model model, final Settings settings, final SelectionModel selectionModel )
 	{
+		ensureParsed();
 		final Element guiel = root.getChild( GUI_STATE_ELEMENT_KEY );
 		if ( null != guiel )
 		{
@@ -302,11 +374,18 @@ public class TmXmlReader
 	/**
 	 * Returns the model saved in the file, or <code>null</code> if a saved
 	 * model cannot be found in the xml file.
+	 * <p>
+	 * Every call returns a new model. The streaming reader reads the file
+	 * again for each; the other reading methods skip the spots and tracks, so
+	 * the model is only built by this method.
 	 * 
 	 * @return a new {@link Model}.
 	 */
 	public Model getModel()
 	{
+		if ( streaming )
+			return streamFile( true );
+
 		final Element modelElement = root.getChild( MODEL_ELEMENT_KEY );
 		if ( null == modelElement ) { return null; }
 		final Model model = createModel();
@@ -401,6 +480,7 @@ public class TmXmlReader
 			final SpotAnalyzerProvider spotAnalyzerProvider, final EdgeAnalyzerProvider edgeAnalyzerProvider,
 			final TrackAnalyzerProvider trackAnalyzerProvider )
 	{
+		ensureParsed();
 		final Element settingsElement = root.getChild( SETTINGS_ELEMENT_KEY );
 		if ( null == settingsElement ) { return; }
 
@@ -470,6 +550,29 @@ public class TmXmlReader
 		return ok;
 	}
 
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the number of threads used to create the spots. With more than
+	 * one, the spots are parsed in chunks of one frame, or part of a frame,
+	 * concurrently with the reading of the file.
+	 */
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	/*
 	 * PRIVATE METHODS
 	 */
@@ -526,48 +629,7 @@ public class TmXmlReader
 		final List< Element > trackElements = allTracksElement.getChildren( TRACK_ELEMENT_KEY );
 		for ( final Element trackElement : trackElements )
 		{
-
-			int trackID = -1;
-			try
-			{
-				trackID = trackElement.getAttribute( TrackIndexAnalyzer.TRACK_ID ).getIntValue();
-			}
-			catch ( final DataConversionException e1 )
-			{
-				logger.error( "Found a track with invalid trackID for " + trackElement + ". Skipping.\n" );
-				ok = false;
-				continue;
-			}
-
-			final HashMap< String, Double > trackMap = new HashMap< >();
-
-			final List< Attribute > attributes = trackElement.getAttributes();
-			for ( final Attribute attribute : attributes )
-			{
-
-				final String attName = attribute.getName();
-				if ( attName.equals( TRACK_NAME_ATTRIBUTE_NAME ) )
-				{ // Skip trackID attribute
-					continue;
-				}
-
-				Double attVal = Double.NaN;
-				try
-				{
-					attVal = attribute.getDoubleValue();
-				}
-				catch ( final DataConversionException e )
-				{
-					logger.error( "Track " + trackID + ": Cannot read the feature " + attName + " value. Skipping.\n" );
-					ok = false;
-					continue;
-				}
-
-				trackMap.put( attName, attVal );
-
-			}
-
-			featureMap.put( trackID, trackMap );
+			readSingleTrackFeatures( trackElement, featureMap );
 		}
 
 		return featureMap;
@@ -840,19 +902,27 @@ public class TmXmlReader
 		// Load collection and build cache
 		int currentFrame = 0;
 		final Map< Integer, Set< Spot > > content = new HashMap< >( frameContent.size() );
-		for ( final Element currentFrameContent : frameContent )
+		final SpotParser parser = new SpotParser();
+		try
 		{
-
-			currentFrame = readIntAttribute( currentFrameContent, FRAME_ATTRIBUTE_NAME, logger );
-			final List< Element > spotContent = currentFrameContent.getChildren( SPOT_ELEMENT_KEY );
-			final Set< Spot > spotSet = new HashSet< >( spotContent.size() );
-			for ( final Element spotElement : spotContent )
+			for ( final Element currentFrameContent : frameContent )
 			{
-				final Spot spot = createSpotFrom( spotElement );
-				spotSet.add( spot );
-				cache.put( spot.ID(), spot );
+
+				currentFrame = readIntAttribute( currentFrameContent, FRAME_ATTRIBUTE_NAME, logger );
+				final List< Element > spotContent = currentFrameContent.getChildren( SPOT_ELEMENT_KEY );
+				final Set< Spot > spotSet = new HashSet< >( spotContent.size() );
+				parser.startFrame( spotSet );
+				for ( final Element spotElement : spotContent )
+				{
+					parser.add( spotElement );
+				}
+				content.put( currentFrame, spotSet );
 			}
-			content.put( currentFrame, spotSet );
+			parser.finish();
+		}
+		finally
+		{
+			parser.shutdown();
 		}
 		final SpotCollection allSpots = SpotCollection.fromMap( content );
 		return allSpots;
@@ -900,79 +970,15 @@ public class TmXmlReader
 
 			for ( final Element edgeElement : edgeElements )
 			{
-
-				// Get source and target ID for this edge
-				final int sourceID = readIntAttribute( edgeElement, EdgeTargetAnalyzer.SPOT_SOURCE_ID, logger );
-				final int targetID = readIntAttribute( edgeElement, EdgeTargetAnalyzer.SPOT_TARGET_ID, logger );
-
-				// Get matching spots from the cache
-				final Spot sourceSpot = cache.get( sourceID );
-				final Spot targetSpot = cache.get( targetID );
-
-				// Get weight
-				double weight = 0;
-				if ( null != edgeElement.getAttribute( EdgeTargetAnalyzer.EDGE_COST ) )
-				{
-					weight = readDoubleAttribute( edgeElement, EdgeTargetAnalyzer.EDGE_COST, logger );
-				}
-
-				// Error check
-				if ( null == sourceSpot )
-				{
-					logger.error( "Unknown spot ID: " + sourceID + "\n" );
-					return false;
-				}
-				if ( null == targetSpot )
-				{
-					logger.error( "Unknown spot ID: " + targetID + "\n" );
-					return false;
-				}
-
-				if ( sourceSpot.equals( targetSpot ) )
-				{
-					logger.error( "Bad link for track " + trackID + ". Source = Target with ID: " + sourceID + "\n" );
+				final DefaultWeightedEdge edge = createEdgeFrom( edgeElement, trackID, graph, fm, edgeFeatures, edgeFeatureIsInt );
+				if ( null == edge )
 					return false;
-				}
 
 				// Add spots to connected set. We might add the same spot twice
 				// (because we iterate over edges)
 				// but this is fine for we use a set.
-				spots.add( sourceSpot );
-				spots.add( targetSpot );
-
-				// Add spots to graph and build edge
-				graph.addVertex( sourceSpot );
-				graph.addVertex( targetSpot );
-				final DefaultWeightedEdge edge = graph.addEdge( sourceSpot, targetSpot );
-
-				if ( edge == null )
-				{
-					logger.error( "Bad edge found for track " + trackID + "\n" );
-					return false;
-				}
-				
-				graph.setEdgeWeight( edge, weight );
-
-				// Put edge features
-				for ( final String feature : edgeFeatures )
-				{
-					if ( null == edgeElement.getAttribute( feature ) )
-					{
-						// Skip missing values.
-						continue;
-					}
-
-					final double val;
-					if ( edgeFeatureIsInt.get( feature ).booleanValue() )
-					{
-						val = readIntAttribute( edgeElement, feature, logger );
-					}
-					else
-					{
-						val = readDoubleAttribute( edgeElement, feature, logger );
-					}
-					fm.putEdgeFeature( edge, feature, val );
-				}
+				spots.add( graph.getEdgeSource( edge ) );
+				spots.add( graph.getEdgeTarget( edge ) );
 
 				// Adds the edge to the set
 				edges.add( edge );
@@ -989,17 +995,7 @@ public class TmXmlReader
 		 * Now on to the visibility.
 		 */
 		final Set< Integer > savedFilteredTrackIDs = readFilteredTrackIDs( modelElement );
-		final Map< Integer, Boolean > visibility = new HashMap< >( connectedEdgeSet.size() );
-		final Set< Integer > ids = new HashSet< >( connectedEdgeSet.keySet() );
-		for ( final Integer id : savedFilteredTrackIDs )
-		{
-			visibility.put( id, Boolean.TRUE );
-		}
-		ids.removeAll( savedFilteredTrackIDs );
-		for ( final Integer id : ids )
-		{
-			visibility.put( id, Boolean.FALSE );
-		}
+		final Map< Integer, Boolean > visibility = trackVisibility( connectedEdgeSet.keySet(), savedFilteredTrackIDs );
 
 		/*
 		 * Pass read results to model.
@@ -1066,7 +1062,156 @@ public class TmXmlReader
 		return filteredTrackIndices;
 	}
 
-	private Spot createSpotFrom( final Element spotEl )
+	/**
+	 * Returns the visibility of the specified tracks: tracks are visible if
+	 * they belong to the filtered tracks.
+	 */
+	private static Map< Integer, Boolean > trackVisibility( final Set< Integer > trackIDs, final Set< Integer > filteredTrackIDs )
+	{
+		final Map< Integer, Boolean > visibility = new HashMap< >( trackIDs.size() );
+		final Set< Integer > ids = new HashSet< >( trackIDs );
+		for ( final Integer id : filteredTrackIDs )
+		{
+			visibility.put( id, Boolean.TRUE );
+		}
+		ids.removeAll( filteredTrackIDs );
+		for ( final Integer id : ids )
+		{
+			visibility.put( id, Boolean.FALSE );
+		}
+		return visibility;
+	}
+
+	/**
+	 * Reads the features of the track specified by its element, and adds them
+	 * to the specified map, under the track ID.
+	 */
+	private void readSingleTrackFeatures( final Element trackElement, final Map< Integer, Map< String, Double > > featureMap )
+	{
+		int trackID = -1;
+		try
+		{
+			trackID = trackElement.getAttribute( TrackIndexAnalyzer.TRACK_ID ).getIntValue();
+		}
+		catch ( final DataConversionException e1 )
+		{
+			logger.error( "Found a track with invalid trackID for " + trackElement + ". Skipping.\n" );
+			ok = false;
+			return;
+		}
+
+		final HashMap< String, Double > trackMap = new HashMap< >();
+
+		final List< Attribute > attributes = trackElement.getAttributes();
+		for ( final Attribute attribute : attributes )
+		{
+
+			final String attName = attribute.getName();
+			if ( attName.equals( TRACK_NAME_ATTRIBUTE_NAME ) )
+			{ // Skip trackID attribute
+				continue;
+			}
+
+			Double attVal = Double.NaN;
+			try
+			{
+				attVal = attribute.getDoubleValue();
+			}
+			catch ( final DataConversionException e )
+			{
+				logger.error( "Track " + trackID + ": Cannot read the feature " + attName + " value. Skipping.\n" );
+				ok = false;
+				continue;
+			}
+
+			trackMap.put( attName, attVal );
+
+		}
+
+		featureMap.put( trackID, trackMap );
+	}
+
+	/**
+	 * Creates the edge specified by its element in the specified graph, and
+	 * sets its features. The source and target spots are taken from the
+	 * {@link #cache}.
+	 * 
+	 * @return the new edge, or <code>null</code> if the edge could not be
+	 *         created.
+	 */
+	private DefaultWeightedEdge createEdgeFrom( final Element edgeElement, final int trackID, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph,
+			final FeatureModel fm, final Collection< String > edgeFeatures, final Map< String, Boolean > edgeFeatureIsInt )
+	{
+		// Get source and target ID for this edge
+		final int sourceID = readIntAttribute( edgeElement, EdgeTargetAnalyzer.SPOT_SOURCE_ID, logger );
+		final int targetID = readIntAttribute( edgeElement, EdgeTargetAnalyzer.SPOT_TARGET_ID, logger );
+
+		// Get matching spots from the cache
+		final Spot sourceSpot = cache.get( sourceID );
+		final Spot targetSpot = cache.get( targetID );
+
+		// Get weight
+		double weight = 0;
+		if ( null != edgeElement.getAttribute( EdgeTargetAnalyzer.EDGE_COST ) )
+		{
+			weight = readDoubleAttribute( edgeElement, EdgeTargetAnalyzer.EDGE_COST, logger );
+		}
+
+		// Error check
+		if ( null == sourceSpot )
+		{
+			logger.error( "Unknown spot ID: " + sourceID + "\n" );
+			return null;
+		}
+		if ( null == targetSpot )
+		{
+			logger.error( "Unknown spot ID: " + targetID + "\n" );
+			return null;
+		}
+
+		if ( sourceSpot.equals( targetSpot ) )
+		{
+			logger.error( "Bad link for track " + trackID + ". Source = Target with ID: " + sourceID + "\n" );
+			return null;
+		}
+
+		// Add spots to graph and build edge
+		graph.addVertex( sourceSpot );
+		graph.addVertex( targetSpot );
+		final DefaultWeightedEdge edge = graph.addEdge( sourceSpot, targetSpot );
+
+		if ( edge == null )
+		{
+			logger.error( "Bad edge found for track " + trackID + "\n" );
+			return null;
+		}
+
+		graph.setEdgeWeight( edge, weight );
+
+		// Put edge features
+		for ( final String feature : edgeFeatures )
+		{
+			if ( null == edgeElement.getAttribute( feature ) )
+			{
+				// Skip missing values.
+				continue;
+			}
+
+			final double val;
+			if ( edgeFeatureIsInt.get( feature ).booleanValue() )
+			{
+				val = readIntAttribute( edgeElement, feature, logger );
+			}
+			else
+			{
+				val = readDoubleAttribute( edgeElement, feature, logger );
+			}
+			fm.putEdgeFeature( edge, feature, val );
+		}
+		return edge;
+	}
+
+	private static Spot createSpotFrom( final Element spotEl, final Logger logger )
 	{
 		final int ID = readIntAttribute( spotEl, SPOT_ID_ATTRIBUTE_NAME, logger );
 		final Spot spot = new Spot( ID );
@@ -1093,7 +1238,7 @@ public class TmXmlReader
 		return spot;
 	}
 
-	private void readFeatureDeclarations( final Element modelElement, final Model model )
+	protected void readFeatureDeclarations( final Element modelElement, final Model model )
 	{
 
 		final FeatureModel fm = model.getFeatureModel();
@@ -1372,4 +1517,695 @@ public class TmXmlReader
 		featureDimensions.put( feature, featureDimension );
 		isIntFeature.put( feature, Boolean.valueOf( isInt ) );
 	}
+
+	/*
+	 * FILE PARSING
+	 */
+
+	/**
+	 * Loads the whole file in a JDOM {@link Document}.
+	 */
+	private void readDocument()
+	{
+		final SAXBuilder sb = new SAXBuilder();
+		try
+		{
+			document = sb.build( file );
+			root = document.getRootElement();
+		}
+		catch ( final JDOMException e )
+		{
+			ok = false;
+			logger.error( "Problem parsing " + file.getName() + ", it is not a valid TrackMate XML file.\nError message is:\n"
+					+ e.getLocalizedMessage() + '\n' );
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Problem reading " + file.getName()
+					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
+			ok = false;
+		}
+	}
+
+	/**
+	 * Reads the root element of the file with its attributes, and stops there.
+	 */
+	private void readRootElement()
+	{
+		try ( final InputStream is = new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE ) )
+		{
+			final XMLStreamReader reader = createStreamReader( is );
+			try
+			{
+				moveToRootElement( reader );
+				root = elementFrom( reader );
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final XMLStreamException e )
+		{
+			ok = false;
+			logger.error( "Problem parsing " + file.getName() + ", it is not a valid TrackMate XML file.\nError message is:\n"
+					+ e.getLocalizedMessage() + '\n' );
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Problem reading " + file.getName()
+					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
+			ok = false;
+		}
+	}
+
+	/**
+	 * Makes sure the {@link #root} element holds the content of the file,
+	 * streaming it without building the model if this was not done yet.
+	 */
+	private void ensureParsed()
+	{
+		if ( streaming && !parsed )
+			streamFile( false );
+	}
+
+	/**
+	 * Reads the file in a single pass. Spots, edges and features are created
+	 * as their elements arrive and are not kept as elements. The rest of the
+	 * content (settings, log, GUI state, feature declarations...) is small
+	 * and is gathered under a new {@link #root} element, for the other
+	 * reading methods to use.
+	 * <p>
+	 * The model content is expected in the order {@link TmXmlWriter} writes
+	 * it. If it is not, the file is loaded in a JDOM {@link Document} instead.
+	 * 
+	 * @param readModel
+	 *            if <code>false</code>, the spots and the tracks are skipped
+	 *            and the model is not built.
+	 * @return the model read from the file, or <code>null</code> if the file
+	 *         does not contain a model, could not be read, or if the model was
+	 *         not requested.
+	 */
+	private Model streamFile( final boolean readModel )
+	{
+		parsed = true;
+		try ( final InputStream is = new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE ) )
+		{
+			final XMLStreamReader reader = createStreamReader( is );
+			try
+			{
+				moveToRootElement( reader );
+				final Element newRoot = elementFrom( reader );
+				Model model = null;
+				boolean modelRead = false;
+				while ( nextChild( reader ) )
+				{
+					if ( !modelRead && reader.getLocalName().equals( MODEL_ELEMENT_KEY ) )
+					{
+						final Element modelElement = elementFrom( reader );
+						newRoot.addContent( modelElement );
+						if ( readModel )
+							model = streamModel( reader, modelElement );
+						else
+							skipModelContent( reader, modelElement );
+						modelRead = true;
+					}
+					else
+					{
+						newRoot.addContent( readElement( reader ) );
+					}
+				}
+				root = newRoot;
+				return model;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final UnexpectedOrderException e )
+		{
+			// Not written by TmXmlWriter: fall back on the JDOM document.
+			streaming = false;
+			readDocument();
+			if ( null == document || !readModel )
+				return null;
+			return getModel();
+		}
+		catch ( final XMLStreamException e )
+		{
+			ok = false;
+			logger.error( "Problem parsing " + file.getName() + ", it is not a valid TrackMate XML file.\nError message is:\n"
+					+ e.getLocalizedMessage() + '\n' );
+		}
+		catch ( final IOException e )
+		{
+			logger.error( "Problem reading " + file.getName()
+					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
+			ok = false;
+		}
+		return null;
+	}
+
+	/**
+	 * Builds the model from the content of the model element, on which the
+	 * reader is positioned. Upon return, the reader is positioned on the end
+	 * of the model element.
+	 */
+	private Model streamModel( final XMLStreamReader reader, final Element modelElement ) throws XMLStreamException, UnexpectedOrderException
+	{
+		final Model model = createModel();
+
+		// Physical units
+		final String spaceUnits = modelElement.getAttributeValue( SPATIAL_UNITS_ATTRIBUTE_NAME );
+		final String timeUnits = modelElement.getAttributeValue( TIME_UNITS_ATTRIBUTE_NAME );
+		model.setPhysicalUnits( spaceUnits, timeUnits );
+
+		boolean declarationsRead = false;
+		boolean spotsRead = false;
+		TrackContent tracks = null;
+		Set< Integer > filteredTrackIDs = null;
+		while ( nextChild( reader ) )
+		{
+			final String name = reader.getLocalName();
+			if ( name.equals( FEATURE_DECLARATIONS_ELEMENT_KEY ) && !declarationsRead )
+			{
+				// Edge feature declarations are needed to read the edges.
+				if ( spotsRead || null != tracks )
+					throw new UnexpectedOrderException();
+
+				modelElement.addContent( readElement( reader ) );
+				readFeatureDeclarations( modelElement, model );
+				declarationsRead = true;
+			}
+			else if ( name.equals( SPOT_COLLECTION_ELEMENT_KEY ) && !spotsRead )
+			{
+				if ( !declarationsRead )
+					throw new UnexpectedOrderException();
+
+				model.setSpots( streamSpots( reader ), false );
+				spotsRead = true;
+			}
+			else if ( name.equals( TRACK_COLLECTION_ELEMENT_KEY ) && null == tracks )
+			{
+				// Edges refer to spots by their ID.
+				if ( !spotsRead )
+					throw new UnexpectedOrderException();
+
+				tracks = streamTracks( reader, model );
+			}
+			else if ( name.equals( FILTERED_TRACK_ELEMENT_KEY ) && null == filteredTrackIDs )
+			{
+				// Filtered track IDs are checked against the saved tracks.
+				if ( null == tracks )
+					throw new UnexpectedOrderException();
+
+				filteredTrackIDs = streamFilteredTrackIDs( reader, tracks.trackIDs );
+			}
+			else
+			{
+				modelElement.addContent( readElement( reader ) );
+			}
+		}
+
+		if ( !declarationsRead )
+		{
+			readFeatureDeclarations( modelElement, model );
+		}
+		if ( null == tracks )
+		{
+			logger.error( "Cannot find the track collection in file.\n" );
+			ok = false;
+			return model;
+		}
+		if ( null == filteredTrackIDs )
+		{
+			logger.error( "Could not find the filtered track IDs in file.\n" );
+			ok = false;
+			filteredTrackIDs = new HashSet< >();
+		}
+
+		// Tracks
+		if ( tracks.ok )
+		{
+			final Map< Integer, Boolean > visibility = trackVisibility( tracks.connectedEdgeSet.keySet(), filteredTrackIDs );
+			model.getTrackModel().from( tracks.graph, tracks.connectedVertexSet, tracks.connectedEdgeSet, visibility, tracks.trackNames );
+		}
+		else
+		{
+			ok = false;
+		}
+
+		// Track features
+		try
+		{
+			for ( final Integer savedKey : tracks.trackFeatures.keySet() )
+			{
+				final Map< String, Double > savedFeatures = tracks.trackFeatures.get( savedKey );
+				for ( final String feature : savedFeatures.keySet() )
+				{
+					model.getFeatureModel().putTrackFeature( savedKey, feature, savedFeatures.get( feature ) );
+				}
+			}
+		}
+		catch ( final RuntimeException re )
+		{
+			logger.error( "Problem populating track features:\n" );
+			logger.error( re.getMessage() );
+			ok = false;
+		}
+
+		return model;
+	}
+
+	/**
+	 * Skips the spots and the tracks of the model element on which the reader
+	 * is positioned, and adds its other children to the specified element.
+	 * Upon return, the reader is positioned on the end of the model element.
+	 */
+	private void skipModelContent( final XMLStreamReader reader, final Element modelElement ) throws XMLStreamException
+	{
+		while ( nextChild( reader ) )
+		{
+			final String name = reader.getLocalName();
+			if ( name.equals( SPOT_COLLECTION_ELEMENT_KEY ) || name.equals( TRACK_COLLECTION_ELEMENT_KEY ) || name.equals( FILTERED_TRACK_ELEMENT_KEY ) )
+				skipElement( reader );
+			else
+				modelElement.addContent( readElement( reader ) );
+		}
+	}
+
+	/**
+	 * Reads the spot collection element on which the reader is positioned,
+	 * and builds the spot {@link #cache}.
+	 */
+	private SpotCollection streamSpots( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		final Element spotCollection = elementFrom( reader );
+		final int nspots = readIntAttribute( spotCollection, SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, Logger.VOID_LOGGER );
+		cache = new ConcurrentHashMap< >( nspots );
+
+		final Map< Integer, Set< Spot > > content = new HashMap< >();
+		final SpotParser parser = new SpotParser();
+		try
+		{
+			while ( nextChild( reader ) )
+			{
+				if ( !reader.getLocalName().equals( SPOT_FRAME_COLLECTION_ELEMENT_KEY ) )
+				{
+					skipElement( reader );
+					continue;
+				}
+
+				final int frame = readIntAttribute( elementFrom( reader ), FRAME_ATTRIBUTE_NAME, logger );
+				final Set< Spot > spotSet = new HashSet< >();
+				parser.startFrame( spotSet );
+				while ( nextChild( reader ) )
+				{
+					if ( reader.getLocalName().equals( SPOT_ELEMENT_KEY ) )
+					{
+						parser.add( elementFrom( reader ) );
+					}
+					skipElement( reader );
+				}
+				content.put( frame, spotSet );
+			}
+			parser.finish();
+		}
+		finally
+		{
+			parser.shutdown();
+		}
+		return SpotCollection.fromMap( content );
+	}
+
+	/**
+	 * Reads the track collection element on which the reader is positioned.
+	 * Edges are created and their features set in the specified model as
+	 * they are read.
+	 */
+	private TrackContent streamTracks( final XMLStreamReader reader, final Model model ) throws XMLStreamException
+	{
+		final TrackContent tracks = new TrackContent();
+		final FeatureModel fm = model.getFeatureModel();
+		final Collection< String > edgeFeatures = fm.getEdgeFeatures();
+		final Map< String, Boolean > edgeFeatureIsInt = fm.getEdgeFeatureIsInt();
+
+		while ( nextChild( reader ) )
+		{
+			if ( !reader.getLocalName().equals( TRACK_ELEMENT_KEY ) )
+			{
+				skipElement( reader );
+				continue;
+			}
+
+			final Element trackElement = elementFrom( reader );
+			final int trackID = readIntAttribute( trackElement, TrackIndexAnalyzer.TRACK_ID, logger );
+			tracks.trackIDs.add( trackID );
+			readSingleTrackFeatures( trackElement, tracks.trackFeatures );
+			String trackName = trackElement.getAttributeValue( TRACK_NAME_ATTRIBUTE_NAME );
+			if ( null == trackName )
+			{
+				trackName = "Unnamed";
+			}
+
+			final Set< DefaultWeightedEdge > edges = new HashSet< >();
+			final Set< Spot > spots = new HashSet< >();
+			while ( nextChild( reader ) )
+			{
+				// After an error, edges are skipped but track features are
+				// still read.
+				if ( tracks.ok && reader.getLocalName().equals( TRACK_EDGE_ELEMENT_KEY ) )
+				{
+					final DefaultWeightedEdge edge = createEdgeFrom( elementFrom( reader ), trackID, tracks.graph, fm, edgeFeatures, edgeFeatureIsInt );
+					if ( null == edge )
+					{
+						tracks.ok = false;
+					}
+					else
+					{
+						spots.add( tracks.graph.getEdgeSource( edge ) );
+						spots.add( tracks.graph.getEdgeTarget( edge ) );
+						edges.add( edge );
+					}
+				}
+				skipElement( reader );
+			}
+
+			if ( tracks.ok )
+			{
+				tracks.connectedVertexSet.put( trackID, spots );
+				tracks.connectedEdgeSet.put( trackID, edges );
+				tracks.trackNames.put( trackID, trackName );
+			}
+		}
+		return tracks;
+	}
+
+	/**
+	 * Reads the filtered track element on which the reader is positioned, and
+	 * returns the IDs it contains that belong to the specified track IDs.
+	 */
+	private Set< Integer > streamFilteredTrackIDs( final XMLStreamReader reader, final Set< Integer > trackIDs ) throws XMLStreamException
+	{
+		final Set< Integer > filteredTrackIndices = new HashSet< >();
+		while ( nextChild( reader ) )
+		{
+			if ( reader.getLocalName().equals( TRACK_ID_ELEMENT_KEY ) )
+			{
+				final int trackID = readIntAttribute( elementFrom( reader ), TrackIndexAnalyzer.TRACK_ID, logger );
+				if ( trackIDs.contains( trackID ) )
+				{
+					filteredTrackIndices.add( trackID );
+				}
+				else
+				{
+					logger.error( "Invalid filtered track index: " + trackID + ". Track ID does not exist.\n" );
+					ok = false;
+				}
+			}
+			skipElement( reader );
+		}
+		return filteredTrackIndices;
+	}
+
+	private static XMLStreamReader createStreamReader( final InputStream is ) throws XMLStreamException
+	{
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+		return factory.createXMLStreamReader( is );
+	}
+
+	private static void moveToRootElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		while ( reader.hasNext() )
+		{
+			if ( reader.next() == XMLStreamConstants.START_ELEMENT )
+				return;
+		}
+		throw new XMLStreamException( "Could not find a root element." );
+	}
+
+	/**
+	 * Moves the reader to the start of the next child of the current element.
+	 * The reader must be positioned on the start of the current element, or on
+	 * the end of one of its children.
+	 * 
+	 * @return <code>false</code> if there are no more children, in which case
+	 *         the reader is positioned on the end of the current element.
+	 */
+	private static boolean nextChild( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		while ( reader.hasNext() )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				return true;
+			if ( event == XMLStreamConstants.END_ELEMENT )
+				return false;
+		}
+		throw new XMLStreamException( "Unexpected end of file." );
+	}
+
+	/**
+	 * Moves the reader from the start of an element to its end.
+	 */
+	private static void skipElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		int depth = 1;
+		while ( depth > 0 )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				depth++;
+			else if ( event == XMLStreamConstants.END_ELEMENT )
+				depth--;
+		}
+	}
+
+	/**
+	 * Returns a new element with the name and the attributes of the element
+	 * the reader is positioned on, without its content. The reader does not
+	 * move.
+	 */
+	private static Element elementFrom( final XMLStreamReader reader )
+	{
+		final Element element = FACTORY.element( reader.getLocalName() );
+		final int nAttributes = reader.getAttributeCount();
+		for ( int i = 0; i < nAttributes; i++ )
+		{
+			FACTORY.setAttribute( element, FACTORY.attribute( reader.getAttributeLocalName( i ), reader.getAttributeValue( i ) ) );
+		}
+		return element;
+	}
+
+	/**
+	 * Reads the element the reader is positioned on with all its content.
+	 * Upon return, the reader is positioned on the end of the element.
+	 */
+	private static Element readElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		final Element element = elementFrom( reader );
+		while ( true )
+		{
+			switch ( reader.next() )
+			{
+			case XMLStreamConstants.START_ELEMENT:
+				FACTORY.addContent( element, readElement( reader ) );
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				FACTORY.addContent( element, FACTORY.text( reader.getText() ) );
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return element;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Creates spots from their elements and adds them to the set of their
+	 * frame and to the {@link #cache}.
+	 * <p>
+	 * Elements are grouped in chunks of at most {@link #SPOT_CHUNK_SIZE} spots
+	 * of the same frame. With more than one thread, chunks are parsed on a
+	 * thread pool while the next ones are read, and a bounded number of them
+	 * is pending at any time. Parsed chunks are always merged in the order of
+	 * the file, so the content of the cache and the error messages are the
+	 * same as when parsing sequentially.
+	 */
+	private final class SpotParser
+	{
+
+		private final ForkJoinPool pool;
+
+		private final int maxPending;
+
+		private final Deque< SpotChunk > pending = new ArrayDeque< >();
+
+		private SpotChunk current;
+
+		private SpotParser()
+		{
+			if ( numThreads > 1 )
+			{
+				this.pool = new ForkJoinPool( numThreads );
+				this.maxPending = 2 * numThreads;
+			}
+			else
+			{
+				this.pool = null;
+				this.maxPending = 0;
+			}
+		}
+
+		/**
+		 * Starts a new frame. The following spots will be added to the
+		 * specified set.
+		 */
+		private void startFrame( final Set< Spot > spotSet )
+		{
+			submit();
+			current = new SpotChunk( spotSet );
+		}
+
+		private void add( final Element spotElement )
+		{
+			current.elements.add( spotElement );
+			if ( current.elements.size() >= SPOT_CHUNK_SIZE )
+			{
+				final Set< Spot > spotSet = current.spotSet;
+				submit();
+				current = new SpotChunk( spotSet );
+			}
+		}
+
+		/**
+		 * Waits for all the spots to be created and merged.
+		 */
+		private void finish()
+		{
+			submit();
+			while ( !pending.isEmpty() )
+			{
+				merge( pending.poll() );
+			}
+		}
+
+		private void shutdown()
+		{
+			if ( null != pool )
+			{
+				pool.shutdownNow();
+			}
+		}
+
+		private void submit()
+		{
+			if ( null == current || current.elements.isEmpty() )
+				return;
+
+			if ( null == pool )
+			{
+				current.invoke();
+				merge( current );
+			}
+			else
+			{
+				pool.execute( current );
+				pending.add( current );
+				while ( pending.size() > maxPending || ( !pending.isEmpty() && pending.peek().isDone() ) )
+				{
+					merge( pending.poll() );
+				}
+			}
+			current = null;
+		}
+
+		private void merge( final SpotChunk chunk )
+		{
+			chunk.join();
+			for ( final Spot spot : chunk.spots )
+			{
+				chunk.spotSet.add( spot );
+				cache.put( spot.ID(), spot );
+			}
+			final String errors = chunk.logger.toString();
+			if ( !errors.isEmpty() )
+			{
+				logger.error( errors );
+			}
+		}
+	}
+
+	/**
+	 * Creates the spots of a chunk of spot elements.
+	 */
+	private static final class SpotChunk extends RecursiveAction
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		private final Set< Spot > spotSet;
+
+		private final List< Element > elements = new ArrayList< >( SPOT_CHUNK_SIZE );
+
+		private final StringBuilderLogger logger = new StringBuilderLogger();
+
+		private Spot[] spots;
+
+		private SpotChunk( final Set< Spot > spotSet )
+		{
+			this.spotSet = spotSet;
+		}
+
+		@Override
+		protected void compute()
+		{
+			final Spot[] created = new Spot[ elements.size() ];
+			for ( int i = 0; i < created.length; i++ )
+			{
+				created[ i ] = createSpotFrom( elements.get( i ), logger );
+			}
+			spots = created;
+		}
+	}
+
+	/**
+	 * The tracks read from the file, before they are passed to the model.
+	 */
+	private static final class TrackContent
+	{
+
+		private final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+
+		private final Map< Integer, Set< Spot > > connectedVertexSet = new HashMap< >();
+
+		private final Map< Integer, Set< DefaultWeightedEdge > > connectedEdgeSet = new HashMap< >();
+
+		private final Map< Integer, String > trackNames = new HashMap< >();
+
+		private final Set< Integer > trackIDs = new HashSet< >();
+
+		private final Map< Integer, Map< String, Double > > trackFeatures = new HashMap< >();
+
+		/**
+		 * If <code>false</code>, an edge could not be read and the tracks
+		 * must not be passed to the model.
+		 */
+		private boolean ok = true;
+	}
+
+	/**
+	 * Thrown when the model content is not in the order the streaming reader
+	 * expects.
+	 */
+	private static final class UnexpectedOrderException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
 }
@@ -229,7 +229,7 @@ public class TmXmlReader_v12 extends TmXmlReader
 
 	public TmXmlReader_v12( final File file )
 	{
-		super( file );
+		super( file, false );
 	}
 
 	/*
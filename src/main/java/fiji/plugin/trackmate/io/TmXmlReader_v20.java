@@ -112,7 +112,7 @@ public class TmXmlReader_v20 extends TmXmlReader
 	 */
 	public TmXmlReader_v20( final File file )
 	{
-		super( file );
+		super( file, false );
 	}
 
 	/*
@@ -72,23 +72,24 @@ import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
 import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.XML_ATTRIBUTE_TRACKER_NAME;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.jdom2.Attribute;
-import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
 import fiji.plugin.trackmate.Dimension;
@@ -98,6 +99,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
 import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
@@ -114,12 +116,20 @@ public class TmXmlWriter
 	 * FIELD
 	 */
 
+	private static final int BUFFER_SIZE = 1 << 16;
+
 	protected final Element root;
 
 	protected final Logger logger;
 
 	private final File file;
 
+	/**
+	 * The models appended to this writer, indexed by the element that stands
+	 * for them in the document.
+	 */
+	private final Map< Element, Model > models = new IdentityHashMap< >();
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -162,24 +172,20 @@ public class TmXmlWriter
 	 */
 	public void writeToFile() throws FileNotFoundException, IOException
 	{
-		try (FileOutputStream fos = new FileOutputStream( file ))
+		try ( final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ), BUFFER_SIZE ) )
 		{
 			logger.log( "  Writing to file.\n" );
-			final Document document = new Document( root );
-			final XMLOutputter outputter = new XMLOutputter( Format.getPrettyFormat() );
-			outputter.output( document, fos );
+			write( writer );
 		}
 	}
 
 	@Override
 	public String toString()
 	{
-		final Document document = new Document( root );
-		final XMLOutputter outputter = new XMLOutputter( Format.getPrettyFormat() );
 		final StringWriter writer = new StringWriter();
 		try
 		{
-			outputter.output( document, writer );
+			write( writer );
 		}
 		catch ( final IOException e )
 		{
@@ -191,6 +197,10 @@ public class TmXmlWriter
 	/**
 	 * Appends the content of a {@link Model} to the file generated by this
 	 * writer.
+	 * <p>
+	 * Spots and tracks are not added to the document, but serialized straight
+	 * from the model when the file is written. The model must therefore not
+	 * be modified until then.
 	 *
 	 * @param model
 	 *            the {@link Model} to write.
@@ -201,19 +211,14 @@ public class TmXmlWriter
 		modelElement.setAttribute( SPATIAL_UNITS_ATTRIBUTE_NAME, model.getSpaceUnits() );
 		modelElement.setAttribute( TIME_UNITS_ATTRIBUTE_NAME, model.getTimeUnits() );
 
+		// Features computed lazily must be written too.
+		model.getFeatureModel().ensureAllFeatures();
+
 		final Element featureDeclarationElement = echoFeaturesDeclaration( model );
 		modelElement.addContent( featureDeclarationElement );
 
-		final Element spotElement = echoSpots( model );
-		modelElement.addContent( spotElement );
-
-		final Element trackElement = echoTracks( model );
-		modelElement.addContent( trackElement );
-
-		final Element filteredTrackElement = echoFilteredTracks( model );
-		modelElement.addContent( filteredTrackElement );
-
 		root.addContent( modelElement );
+		models.put( modelElement, model );
 	}
 
 	/**
@@ -357,131 +362,6 @@ public class TmXmlWriter
 		return el;
 	}
 
-	private Element echoTracks( final Model model )
-	{
-
-		/*
-		 * Some numerical features are REQUIRED to be able to save to XML.
-		 * Namely: the track ID feature for track and the edge spot source and
-		 * spot target for edges. Whether the model provides them as features or
-		 * not, we get them from the model and put them in the XML.
-		 */
-
-		final Element allTracksElement = new Element( TRACK_COLLECTION_ELEMENT_KEY );
-
-		// Prepare track features for writing: we separate ints from doubles
-		final List< String > trackFeatures = new ArrayList<>( model.getFeatureModel().getTrackFeatures() );
-		// TrackID is treated separately.
-		trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
-
-		// Same thing for edge features
-		final List< String > edgeFeatures = new ArrayList<>( model.getFeatureModel().getEdgeFeatures() );
-		// We will treat edge source and target separately.
-		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
-		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
-
-		final Set< Integer > trackIDs = model.getTrackModel().trackIDs( false );
-		for ( final int trackID : trackIDs )
-		{
-
-			final Element trackElement = new Element( TRACK_ELEMENT_KEY );
-
-			// Track name.
-			trackElement.setAttribute( TRACK_NAME_ATTRIBUTE_NAME, model.getTrackModel().name( trackID ) );
-			// Track ID.
-			trackElement.setAttribute( TrackIndexAnalyzer.TRACK_ID, Integer.toString( trackID ) );
-
-			for ( final String feature : trackFeatures )
-			{
-				final Double val = model.getFeatureModel().getTrackFeature( trackID, feature );
-				if ( null == val )
-				{
-					// Skip missing features.
-					continue;
-				}
-				final String str;
-				if ( model.getFeatureModel().getTrackFeatureIsInt().get( feature ).booleanValue() )
-					str = "" + val.intValue();
-				else
-					str = val.toString();
-				trackElement.setAttribute( feature, str );
-			}
-
-			// Echo edges
-			final Set< DefaultWeightedEdge > track = model.getTrackModel().trackEdges( trackID );
-			if ( track.isEmpty() )
-			{
-				/*
-				 * Special case: the track has only one spot in it, therefore no
-				 * edge. It just should not be, since the model never returns a
-				 * track with less than one edge. So we skip writing it.
-				 */
-				continue;
-			}
-
-			for ( final DefaultWeightedEdge edge : track )
-			{
-				final Element edgeElement = new Element( TRACK_EDGE_ELEMENT_KEY );
-
-				/*
-				 * Make sure the edge has the right orientation: forward in
-				 * time.
-				 */
-				final int sourceFrame = model.getTrackModel().getEdgeSource( edge ).getFeature( Spot.FRAME ).intValue();
-				final int targetFrame = model.getTrackModel().getEdgeTarget( edge ).getFeature( Spot.FRAME ).intValue();
-				final int sourceID;
-				final int targetID;
-				if ( targetFrame >= sourceFrame )
-				{
-					sourceID = model.getTrackModel().getEdgeSource( edge ).ID();
-					targetID = model.getTrackModel().getEdgeTarget( edge ).ID();
-				}
-				else
-				{
-					sourceID = model.getTrackModel().getEdgeTarget( edge ).ID();
-					targetID = model.getTrackModel().getEdgeSource( edge ).ID();
-				}
-				edgeElement.setAttribute( EdgeTargetAnalyzer.SPOT_SOURCE_ID, Integer.toString( sourceID ) );
-				edgeElement.setAttribute( EdgeTargetAnalyzer.SPOT_TARGET_ID, Integer.toString( targetID ) );
-
-				for ( final String feature : edgeFeatures )
-				{
-					final Double val = model.getFeatureModel().getEdgeFeature( edge, feature );
-					if ( null == val )
-					{
-						// Skip missing features.
-						continue;
-					}
-					final String str;
-					if ( model.getFeatureModel().getEdgeFeatureIsInt().get( feature ).booleanValue() )
-						str = "" + val.intValue();
-					else
-						str = val.toString();
-					edgeElement.setAttribute( feature, str );
-				}
-
-				trackElement.addContent( edgeElement );
-			}
-			allTracksElement.addContent( trackElement );
-		}
-		logger.log( "  Added tracks.\n" );
-		return allTracksElement;
-	}
-
-	private Element echoFilteredTracks( final Model model )
-	{
-		final Element filteredTracksElement = new Element( FILTERED_TRACK_ELEMENT_KEY );
-		final Set< Integer > filteredTrackKeys = model.getTrackModel().trackIDs( true );
-		for ( final int trackID : filteredTrackKeys )
-		{
-			final Element trackIDElement = new Element( TRACK_ID_ELEMENT_KEY );
-			trackIDElement.setAttribute( TrackIndexAnalyzer.TRACK_ID, "" + trackID );
-			filteredTracksElement.addContent( trackIDElement );
-		}
-		logger.log( "  Added filtered tracks.\n" );
-		return filteredTracksElement;
-	}
-
 	protected Element echoImageInfo( final Settings settings )
 	{
 		final Element imEl = new Element( IMAGE_ELEMENT_KEY );
@@ -499,31 +379,6 @@ public class TmXmlWriter
 		return imEl;
 	}
 
-	private Element echoSpots( final Model model )
-	{
-		final SpotCollection spots = model.getSpots();
-
-		final Element spotCollectionElement = new Element( SPOT_COLLECTION_ELEMENT_KEY );
-		// Store total number of spots
-		spotCollectionElement.setAttribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, "" + spots.getNSpots( false ) );
-
-		for ( final int frame : spots.keySet() )
-		{
-
-			final Element frameSpotsElement = new Element( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
-			frameSpotsElement.setAttribute( FRAME_ATTRIBUTE_NAME, "" + frame );
-
-			for ( final Iterator< Spot > it = spots.iterator( frame, false ); it.hasNext(); )
-			{
-				final Element spotElement = marshalSpot( it.next(), model.getFeatureModel() );
-				frameSpotsElement.addContent( spotElement );
-			}
-			spotCollectionElement.addContent( frameSpotsElement );
-		}
-		logger.log( "  Added " + spots.getNSpots( false ) + " spots.\n" );
-		return spotCollectionElement;
-	}
-
 	private Element echoFeaturesDeclaration( final Model model )
 	{
 
@@ -674,44 +529,219 @@ public class TmXmlWriter
 	}
 
 	/*
-	 * STATIC METHODS
+	 * SERIALIZATION
 	 */
 
-	private static final Element marshalSpot( final Spot spot, final FeatureModel fm )
+	/**
+	 * Writes the document to the specified writer. The content of the models
+	 * is serialized from the models themselves.
+	 */
+	private void write( final Writer writer ) throws IOException
 	{
-		final Collection< Attribute > attributes = new ArrayList<>();
-		final Attribute IDattribute = new Attribute( SPOT_ID_ATTRIBUTE_NAME, "" + spot.ID() );
-		attributes.add( IDattribute );
-		final Attribute nameAttribute = new Attribute( SPOT_NAME_ATTRIBUTE_NAME, spot.getName() );
-		attributes.add( nameAttribute );
-		Double val;
-		Attribute featureAttribute;
-
-		for ( final String feature : spot.getFeatures().keySet() )
+		final XmlOutput out = new XmlOutput( writer );
+		out.startDocument();
+		out.startElement( root.getName() );
+		for ( final Attribute attribute : root.getAttributes() )
 		{
-			val = spot.getFeature( feature );
-			if ( null == val )
+			out.attribute( attribute.getName(), attribute.getValue() );
+		}
+		for ( final Element child : root.getChildren() )
+		{
+			final Model model = models.get( child );
+			if ( null == model )
 			{
-				// Skip missing features.
+				out.element( child );
+			}
+			else
+			{
+				writeModel( out, child, model );
+			}
+		}
+		out.endElement( root.getName() );
+		out.flush();
+	}
+
+	private void writeModel( final XmlOutput out, final Element modelElement, final Model model ) throws IOException
+	{
+		out.startElement( modelElement.getName() );
+		for ( final Attribute attribute : modelElement.getAttributes() )
+		{
+			out.attribute( attribute.getName(), attribute.getValue() );
+		}
+		for ( final Element child : modelElement.getChildren() )
+		{
+			out.element( child );
+		}
+
+		writeSpots( out, model );
+		writeTracks( out, model );
+		writeFilteredTracks( out, model );
+
+		out.endElement( modelElement.getName() );
+	}
+
+	private void writeSpots( final XmlOutput out, final Model model ) throws IOException
+	{
+		final SpotCollection spots = model.getSpots();
+		final Map< String, Boolean > featureIsInt = model.getFeatureModel().getSpotFeatureIsInt();
+
+		out.startElement( SPOT_COLLECTION_ELEMENT_KEY );
+		// Store total number of spots
+		out.attribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, spots.getNSpots( false ) );
+
+		for ( final int frame : spots.keySet() )
+		{
+			out.startElement( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
+			out.attribute( FRAME_ATTRIBUTE_NAME, frame );
+
+			for ( final Iterator< Spot > it = spots.iterator( frame, false ); it.hasNext(); )
+			{
+				final Spot spot = it.next();
+				out.startElement( SPOT_ELEMENT_KEY );
+				out.attribute( SPOT_ID_ATTRIBUTE_NAME, spot.ID() );
+				out.attribute( SPOT_NAME_ATTRIBUTE_NAME, spot.getName() );
+				for ( final Map.Entry< String, Double > entry : spot.getFeatures().entrySet() )
+				{
+					final Double val = entry.getValue();
+					if ( null == val )
+					{
+						// Skip missing features.
+						continue;
+					}
+
+					final String feature = entry.getKey();
+					if ( featureIsInt.get( feature ).booleanValue() )
+						out.attribute( feature, val.intValue() );
+					else
+						out.attribute( feature, val.doubleValue() );
+				}
+				out.endElement( SPOT_ELEMENT_KEY );
+			}
+			out.endElement( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
+		}
+		out.endElement( SPOT_COLLECTION_ELEMENT_KEY );
+		logger.log( "  Added " + spots.getNSpots( false ) + " spots.\n" );
+	}
+
+	private void writeTracks( final XmlOutput out, final Model model ) throws IOException
+	{
+
+		/*
+		 * Some numerical features are REQUIRED to be able to save to XML.
+		 * Namely: the track ID feature for track and the edge spot source and
+		 * spot target for edges. Whether the model provides them as features or
+		 * not, we get them from the model and put them in the XML.
+		 */
+
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Prepare track features for writing: we separate ints from doubles
+		final List< String > trackFeatures = new ArrayList<>( fm.getTrackFeatures() );
+		// TrackID is treated separately.
+		trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
+		final Map< String, Boolean > trackFeatureIsInt = fm.getTrackFeatureIsInt();
+
+		// Same thing for edge features
+		final List< String > edgeFeatures = new ArrayList<>( fm.getEdgeFeatures() );
+		// We will treat edge source and target separately.
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
+		final Map< String, Boolean > edgeFeatureIsInt = fm.getEdgeFeatureIsInt();
+
+		out.startElement( TRACK_COLLECTION_ELEMENT_KEY );
+		final Set< Integer > trackIDs = trackModel.trackIDs( false );
+		for ( final int trackID : trackIDs )
+		{
+			final Set< DefaultWeightedEdge > track = trackModel.trackEdges( trackID );
+			if ( track.isEmpty() )
+			{
+				/*
+				 * Special case: the track has only one spot in it, therefore no
+				 * edge. It just should not be, since the model never returns a
+				 * track with less than one edge. So we skip writing it.
+				 */
 				continue;
 			}
 
-			final String str;
+			out.startElement( TRACK_ELEMENT_KEY );
+
+			// Track name.
+			out.attribute( TRACK_NAME_ATTRIBUTE_NAME, trackModel.name( trackID ) );
+			// Track ID.
+			out.attribute( TrackIndexAnalyzer.TRACK_ID, trackID );
 
-			if ( fm.getSpotFeatureIsInt().get( feature ).booleanValue() )
+			for ( final String feature : trackFeatures )
 			{
-				str = "" + val.intValue();
+				final Double val = fm.getTrackFeature( trackID, feature );
+				if ( null == val )
+				{
+					// Skip missing features.
+					continue;
+				}
+				if ( trackFeatureIsInt.get( feature ).booleanValue() )
+					out.attribute( feature, val.intValue() );
+				else
+					out.attribute( feature, val.doubleValue() );
 			}
-			else
+
+			// Echo edges
+			for ( final DefaultWeightedEdge edge : track )
 			{
-				str = val.toString();
+				out.startElement( TRACK_EDGE_ELEMENT_KEY );
+
+				/*
+				 * Make sure the edge has the right orientation: forward in
+				 * time.
+				 */
+				final Spot source = trackModel.getEdgeSource( edge );
+				final Spot target = trackModel.getEdgeTarget( edge );
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
+				if ( targetFrame >= sourceFrame )
+				{
+					out.attribute( EdgeTargetAnalyzer.SPOT_SOURCE_ID, source.ID() );
+					out.attribute( EdgeTargetAnalyzer.SPOT_TARGET_ID, target.ID() );
+				}
+				else
+				{
+					out.attribute( EdgeTargetAnalyzer.SPOT_SOURCE_ID, target.ID() );
+					out.attribute( EdgeTargetAnalyzer.SPOT_TARGET_ID, source.ID() );
+				}
+
+				for ( final String feature : edgeFeatures )
+				{
+					final Double val = fm.getEdgeFeature( edge, feature );
+					if ( null == val )
+					{
+						// Skip missing features.
+						continue;
+					}
+					if ( edgeFeatureIsInt.get( feature ).booleanValue() )
+						out.attribute( feature, val.intValue() );
+					else
+						out.attribute( feature, val.doubleValue() );
+				}
+
+				out.endElement( TRACK_EDGE_ELEMENT_KEY );
 			}
-			featureAttribute = new Attribute( feature, str );
-			attributes.add( featureAttribute );
+			out.endElement( TRACK_ELEMENT_KEY );
 		}
+		out.endElement( TRACK_COLLECTION_ELEMENT_KEY );
+		logger.log( "  Added tracks.\n" );
+	}
 
-		final Element spotElement = new Element( SPOT_ELEMENT_KEY );
-		spotElement.setAttributes( attributes );
-		return spotElement;
+	private void writeFilteredTracks( final XmlOutput out, final Model model ) throws IOException
+	{
+		out.startElement( FILTERED_TRACK_ELEMENT_KEY );
+		final Set< Integer > filteredTrackKeys = model.getTrackModel().trackIDs( true );
+		for ( final int trackID : filteredTrackKeys )
+		{
+			out.startElement( TRACK_ID_ELEMENT_KEY );
+			out.attribute( TrackIndexAnalyzer.TRACK_ID, trackID );
+			out.endElement( TRACK_ID_ELEMENT_KEY );
+		}
+		out.endElement( FILTERED_TRACK_ELEMENT_KEY );
+		logger.log( "  Added filtered tracks.\n" );
 	}
 }
@@ -0,0 +1,286 @@
+package fiji.plugin.trackmate.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+
+/**
+ * Writes XML to a character stream as it is produced, without building a
+ * document first. The layout is the one of the JDOM pretty format used so far
+ * by TrackMate: two-space indentation, one element per line and trimmed text.
+ * <p>
+ * Elements are opened with {@link #startElement(String)}, followed by their
+ * attributes, and closed with {@link #endElement(String)}. Elements with no
+ * content are written as empty elements.
+ * <p>
+ * Integer values and integral double values below 10<sup>7</sup> in magnitude
+ * are written digit by digit, without creating a string. Other double values
+ * are still formatted with {@link Double#toString(double)}: their output must
+ * stay identical to what TrackMate wrote so far, and the digits that method
+ * produces are not always the shortest ones that round-trip, so a shortest
+ * formatter would change them.
+ */
+class XmlOutput
+{
+
+	private static final String LINE_SEPARATOR = "\r\n";
+
+	private static final String INDENT = "  ";
+
+	private final Writer out;
+
+	private final char[] digits = new char[ 20 ];
+
+	private int depth = 0;
+
+	/**
+	 * If <code>true</code>, the start tag of the current element is not closed
+	 * yet, and attributes may still be added.
+	 */
+	private boolean inStartTag = false;
+
+	XmlOutput( final Writer out )
+	{
+		this.out = out;
+	}
+
+	void startDocument() throws IOException
+	{
+		out.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+		out.write( LINE_SEPARATOR );
+	}
+
+	void startElement( final String name ) throws IOException
+	{
+		closeStartTag();
+		indent();
+		out.write( '<' );
+		out.write( name );
+		inStartTag = true;
+		depth++;
+	}
+
+	void endElement( final String name ) throws IOException
+	{
+		depth--;
+		if ( inStartTag )
+		{
+			out.write( " />" );
+			inStartTag = false;
+		}
+		else
+		{
+			indent();
+			out.write( "</" );
+			out.write( name );
+			out.write( '>' );
+		}
+		out.write( LINE_SEPARATOR );
+	}
+
+	/**
+	 * Adds an attribute to the current element. <code>null</code> values are
+	 * skipped.
+	 */
+	void attribute( final String name, final String value ) throws IOException
+	{
+		if ( null == value )
+			return;
+
+		startAttribute( name );
+		escape( value, true );
+		out.write( '"' );
+	}
+
+	void attribute( final String name, final int value ) throws IOException
+	{
+		startAttribute( name );
+		writeInt( value );
+		out.write( '"' );
+	}
+
+	/**
+	 * Adds a numerical attribute to the current element. The value is written
+	 * as {@link Double#toString(double)} does, so that it is read back
+	 * exactly.
+	 */
+	void attribute( final String name, final double value ) throws IOException
+	{
+		startAttribute( name );
+		writeDouble( value );
+		out.write( '"' );
+	}
+
+	/**
+	 * Writes the specified JDOM element and its content.
+	 */
+	void element( final Element element ) throws IOException
+	{
+		final String name = element.getName();
+		startElement( name );
+		for ( final Attribute attribute : element.getAttributes() )
+		{
+			attribute( attribute.getName(), attribute.getValue() );
+		}
+
+		if ( element.getChildren().isEmpty() )
+		{
+			// Text only.
+			final String text = element.getTextTrim();
+			if ( !text.isEmpty() )
+			{
+				out.write( '>' );
+				inStartTag = false;
+				escape( text, false );
+				out.write( "</" );
+				out.write( name );
+				out.write( '>' );
+				out.write( LINE_SEPARATOR );
+				depth--;
+				return;
+			}
+		}
+		else
+		{
+			for ( final Content content : element.getContent() )
+			{
+				if ( content instanceof Element )
+				{
+					element( ( Element ) content );
+				}
+				else if ( content instanceof Text )
+				{
+					final String text = ( ( Text ) content ).getText().trim();
+					if ( text.isEmpty() )
+						continue;
+
+					closeStartTag();
+					indent();
+					escape( text, false );
+					out.write( LINE_SEPARATOR );
+				}
+			}
+		}
+		endElement( name );
+	}
+
+	void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void startAttribute( final String name ) throws IOException
+	{
+		out.write( ' ' );
+		out.write( name );
+		out.write( "=\"" );
+	}
+
+	private void closeStartTag() throws IOException
+	{
+		if ( inStartTag )
+		{
+			out.write( '>' );
+			out.write( LINE_SEPARATOR );
+			inStartTag = false;
+		}
+	}
+
+	private void indent() throws IOException
+	{
+		for ( int i = 0; i < depth; i++ )
+			out.write( INDENT );
+	}
+
+	private void writeDouble( final double value ) throws IOException
+	{
+		/*
+		 * Double.toString() writes integral values smaller than 10^7 as their
+		 * digits followed by ".0". We do the same without going through a
+		 * string. Negative zero is left to Double.toString().
+		 */
+		if ( value > -1e7 && value < 1e7 && value == ( int ) value && ( value != 0d || 1d / value > 0d ) )
+		{
+			writeInt( ( int ) value );
+			out.write( ".0" );
+		}
+		else
+		{
+			out.write( Double.toString( value ) );
+		}
+	}
+
+	private void writeInt( final int value ) throws IOException
+	{
+		if ( value == Integer.MIN_VALUE )
+		{
+			out.write( Integer.toString( value ) );
+			return;
+		}
+
+		int v = Math.abs( value );
+		int pos = digits.length;
+		do
+		{
+			digits[ --pos ] = ( char ) ( '0' + v % 10 );
+			v /= 10;
+		}
+		while ( v > 0 );
+		if ( value < 0 )
+			digits[ --pos ] = '-';
+		out.write( digits, pos, digits.length - pos );
+	}
+
+	private void escape( final String str, final boolean inAttribute ) throws IOException
+	{
+		final int length = str.length();
+		int start = 0;
+		for ( int i = 0; i < length; i++ )
+		{
+			final String replacement;
+			switch ( str.charAt( i ) )
+			{
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			case '\r':
+				replacement = "&#xD;";
+				break;
+			case '"':
+				replacement = inAttribute ? "&quot;" : null;
+				break;
+			case '\t':
+				replacement = inAttribute ? "&#x9;" : null;
+				break;
+			case '\n':
+				replacement = inAttribute ? "&#xA;" : null;
+				break;
+			default:
+				replacement = null;
+				break;
+			}
+
+			if ( null != replacement )
+			{
+				out.write( str, start, i - start );
+				out.write( replacement );
+				start = i + 1;
+			}
+		}
+		out.write( str, start, length - start );
+	}
+}
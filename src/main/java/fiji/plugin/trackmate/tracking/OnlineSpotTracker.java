@@ -0,0 +1,116 @@
+package fiji.plugin.trackmate.tracking;
+
+import java.util.Collection;
+import java.util.EventListener;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Interface for trackers that link spots incrementally, as they are detected
+ * during an acquisition, instead of operating on a complete
+ * {@link fiji.plugin.trackmate.SpotCollection} like {@link SpotTracker}s do.
+ * <p>
+ * Spots are fed one frame at a time, in increasing frame order, through
+ * {@link #processFrame(int, Collection)}. Links are reported to the registered
+ * {@link LinkListener}s as soon as they are <b>final</b>, that is: as soon as
+ * no frame to come can modify them anymore. For a tracker that can bridge gaps
+ * of at most <code>maxFrameGap</code> frames, a link is therefore reported at
+ * the latest <code>maxFrameGap</code> frames after its target frame has been
+ * processed. Calling {@link #finish()} signals the end of the acquisition and
+ * flushes all the pending links.
+ * <p>
+ * Implementations must only retain the spots of the frames that can still be
+ * linked, so that the memory they use is bounded and does not grow with the
+ * number of frames processed.
+ */
+public interface OnlineSpotTracker
+{
+
+	/**
+	 * Processes the spots of a new frame. Frames must be passed in strictly
+	 * increasing order. They do not have to be contiguous; implementations
+	 * handle missing frames the same way their {@link SpotTracker} counterpart
+	 * handles frames absent from the spot collection.
+	 *
+	 * @param frame
+	 *            the frame the spots belong to.
+	 * @param spots
+	 *            the spots found in this frame.
+	 * @return <code>true</code> if processing was successful. If not, check
+	 *         {@link #getErrorMessage()}.
+	 */
+	public boolean processFrame( final int frame, final Collection< Spot > spots );
+
+	/**
+	 * Signals that no more frames will be passed to this tracker. All the links
+	 * still pending are reported to the listeners, and the tracker state is
+	 * released.
+	 *
+	 * @return <code>true</code> if finishing was successful. If not, check
+	 *         {@link #getErrorMessage()}.
+	 */
+	public boolean finish();
+
+	/**
+	 * Returns the last frame processed by this tracker, or
+	 * {@link Integer#MIN_VALUE} if no frame has been processed yet.
+	 *
+	 * @return the last frame processed.
+	 */
+	public int getLastFrame();
+
+	/**
+	 * Registers a listener that will be notified of the finalized links.
+	 *
+	 * @param listener
+	 *            the listener to register.
+	 * @return <code>true</code> if the listener was not already registered.
+	 */
+	public boolean addLinkListener( final LinkListener listener );
+
+	/**
+	 * Removes a listener from this tracker.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 * @return <code>true</code> if the listener was registered.
+	 */
+	public boolean removeLinkListener( final LinkListener listener );
+
+	/**
+	 * Sets the {@link Logger} instance that will receive messages from this
+	 * {@link OnlineSpotTracker}.
+	 *
+	 * @param logger
+	 *            the logger to echo messages to.
+	 */
+	public void setLogger( final Logger logger );
+
+	/**
+	 * Returns a meaningful error message after {@link #processFrame(int, Collection)}
+	 * or {@link #finish()} failed.
+	 *
+	 * @return an error message.
+	 */
+	public String getErrorMessage();
+
+	/**
+	 * Interface for listeners that are notified of the links created by an
+	 * {@link OnlineSpotTracker} once they are final.
+	 */
+	public static interface LinkListener extends EventListener
+	{
+		/**
+		 * Notified when a link is final.
+		 *
+		 * @param source
+		 *            the source spot of the link, in the earliest frame.
+		 * @param target
+		 *            the target spot of the link, in the latest frame.
+		 * @param cost
+		 *            the cost of the link.
+		 */
+		public void linkFinalized( final Spot source, final Spot target, final double cost );
+	}
+}
@@ -0,0 +1,511 @@
+package fiji.plugin.trackmate.tracking;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import ij.measure.ResultsTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import net.imglib2.algorithm.OutputAlgorithm;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.tracking.sparselap.CandidatePairCache;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPFrameToFrameTracker;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTracker;
+
+/**
+ * Runs a {@link SpotTrackerFactory} on the same spots for a grid of settings
+ * maps, and scores each configuration against reference tracks.
+ * <p>
+ * The spots are loaded once and shared by all the configurations, which are
+ * run concurrently. The number of configurations run at the same time is set
+ * by the number of threads and by a memory budget, from a rough estimate of
+ * the memory needed to track the spots. The threads are split between the
+ * configurations running at the same time. For the sparse LAP trackers, the
+ * frame-to-frame linking candidates are computed once per set of linking
+ * feature penalties, at the largest linking distance of the configurations
+ * using it, and filtered for each of these configurations.
+ * <p>
+ * Configurations are scored on links: a link found by the tracker is a true
+ * positive if the reference has a link between the same two spots. The
+ * reference must therefore be built on the spots that are tracked, for
+ * instance the ground-truth tracks of a model whose spots are re-tracked.
+ * Only the scores are kept, not the tracks.
+ */
+public class TrackerParameterSweep extends MultiThreadedBenchmarkAlgorithm implements OutputAlgorithm< List< TrackerParameterSweep.SweepResult > >
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[TrackerParameterSweep] ";
+
+	/**
+	 * Rough estimate of the memory needed per spot to track it, in bytes. It
+	 * accounts for the track graph and the tracker data structures.
+	 */
+	private static final long BYTES_PER_SPOT = 512;
+
+	private final SpotTrackerFactory factory;
+
+	private final SpotCollection spots;
+
+	private final List< Map< String, Object > > grid;
+
+	private final TrackModel reference;
+
+	private long memoryBudget;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private List< SweepResult > results;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Creates a parameter sweep.
+	 *
+	 * @param factory
+	 *            the factory of the tracker to run.
+	 * @param spots
+	 *            the spots to track. Only visible spots are tracked.
+	 * @param grid
+	 *            the settings maps to run the tracker with.
+	 * @param reference
+	 *            the reference tracks to score configurations against. Can be
+	 *            <code>null</code>, in which case configurations are not
+	 *            scored.
+	 */
+	public TrackerParameterSweep( final SpotTrackerFactory factory, final SpotCollection spots, final List< Map< String, Object > > grid, final TrackModel reference )
+	{
+		this.factory = factory;
+		this.spots = spots;
+		this.grid = grid;
+		this.reference = reference;
+		this.memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Sets the memory that configurations running at the same time may use.
+	 * By default, half of the maximal JVM memory.
+	 *
+	 * @param memoryBudget
+	 *            the memory budget, in bytes.
+	 */
+	public void setMemoryBudget( final long memoryBudget )
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	@Override
+	public List< SweepResult > getResult()
+	{
+		return results;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == factory )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The tracker factory is null.";
+			return false;
+		}
+		if ( null == spots )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The spot collection is null.";
+			return false;
+		}
+		if ( null == grid || grid.isEmpty() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The settings grid is null or empty.";
+			return false;
+		}
+		for ( int i = 0; i < grid.size(); i++ )
+		{
+			if ( !factory.checkSettingsValidity( grid.get( i ) ) )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "Incorrect settings map #" + i + ":\n" + factory.getErrorMessage();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final int nConfigs = grid.size();
+		final long memoryPerConfig = Math.max( 1l, BYTES_PER_SPOT * spots.getNSpots( true ) );
+		final int nConcurrent = ( int ) Math.max( 1l, Math.min( Math.min( numThreads, nConfigs ), memoryBudget / memoryPerConfig ) );
+		final int threadsPerConfig = Math.max( 1, numThreads / nConcurrent );
+		logger.log( "Running " + nConfigs + " configurations, " + nConcurrent + " at a time with " + threadsPerConfig + " thread(s) each.\n" );
+
+		final Set< Long > referenceLinks = ( null == reference ) ? null : referenceLinks( reference );
+
+		/*
+		 * One candidate cache per set of linking feature penalties, so that
+		 * configurations running at the same time with different penalties do
+		 * not evict each other's candidates. A cache is cleared once all the
+		 * configurations using it are done.
+		 */
+
+		final Map< String, Double > maxDistances = new HashMap< >();
+		final Map< String, AtomicInteger > remaining = new HashMap< >();
+		for ( final Map< String, Object > settings : grid )
+		{
+			final String key = penaltyKey( settings );
+			final Double maxDistance = maxDistances.get( key );
+			maxDistances.put( key, Math.max( maxLinkingDistance( settings ), null == maxDistance ? 0d : maxDistance.doubleValue() ) );
+			if ( !remaining.containsKey( key ) )
+				remaining.put( key, new AtomicInteger( 0 ) );
+			remaining.get( key ).incrementAndGet();
+		}
+		final Map< String, CandidatePairCache > candidateCaches = new HashMap< >( maxDistances.size() );
+		for ( final String key : maxDistances.keySet() )
+			candidateCaches.put( key, new CandidatePairCache( maxDistances.get( key ).doubleValue() ) );
+
+		/*
+		 * Run configurations sharing the same linking feature penalties one
+		 * after the other, so that they share cached candidates.
+		 */
+
+		final List< Integer > order = new ArrayList< >( nConfigs );
+		for ( int i = 0; i < nConfigs; i++ )
+			order.add( Integer.valueOf( i ) );
+		Collections.sort( order, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer o1, final Integer o2 )
+			{
+				return penaltyKey( grid.get( o1 ) ).compareTo( penaltyKey( grid.get( o2 ) ) );
+			}
+		} );
+
+		final SweepResult[] sweepResults = new SweepResult[ nConfigs ];
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final ExecutorService executor = Executors.newFixedThreadPool( nConcurrent );
+		for ( final Integer index : order )
+		{
+			final int i = index.intValue();
+			final Runnable command = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					final String key = penaltyKey( grid.get( i ) );
+					final CandidatePairCache candidateCache = candidateCaches.get( key );
+					sweepResults[ i ] = runConfiguration( i, threadsPerConfig, candidateCache, referenceLinks );
+					if ( remaining.get( key ).decrementAndGet() == 0 )
+						candidateCache.clear();
+					logger.setProgress( ( double ) progress.incrementAndGet() / nConfigs );
+				}
+			};
+			executor.execute( command );
+		}
+
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		}
+		catch ( final InterruptedException e )
+		{
+			executor.shutdownNow();
+			errorMessage = BASE_ERROR_MESSAGE + "Interrupted: " + e.getMessage();
+			return false;
+		}
+
+		results = new ArrayList< >( nConfigs );
+		for ( final SweepResult result : sweepResults )
+			results.add( result );
+
+		logger.setProgress( 1d );
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Returns the results of the sweep as a table, with one row per
+	 * configuration. Only the settings that vary across the grid are listed.
+	 * Failed configurations only get their settings and error message.
+	 *
+	 * @return a new results table.
+	 */
+	public ResultsTable toResultsTable()
+	{
+		final ResultsTable table = new ResultsTable();
+		if ( null == results )
+			return table;
+
+		final Set< String > varyingKeys = varyingKeys( grid );
+		for ( final SweepResult result : results )
+		{
+			table.incrementCounter();
+			table.addValue( "Configuration", result.index );
+			for ( final String key : varyingKeys )
+				table.addValue( key, String.valueOf( result.settings.get( key ) ) );
+			table.addValue( "Success", result.ok ? 1 : 0 );
+			if ( !result.ok )
+			{
+				table.addValue( "Error", String.valueOf( result.errorMessage ) );
+				continue;
+			}
+			table.addValue( "Time (ms)", result.processingTime );
+			table.addValue( "N links", result.nLinks );
+			if ( null != reference )
+			{
+				table.addValue( "True positives", result.nTruePositives );
+				table.addValue( "False positives", result.nFalsePositives );
+				table.addValue( "False negatives", result.nFalseNegatives );
+				table.addValue( "Precision", result.getPrecision() );
+				table.addValue( "Recall", result.getRecall() );
+				table.addValue( "F1", result.getF1() );
+				table.addValue( "Jaccard", result.getJaccard() );
+			}
+		}
+		return table;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Runs a configuration. A tracker that throws an exception or an error,
+	 * including an {@link OutOfMemoryError}, gives a failed result, like a
+	 * tracker that reports an error.
+	 */
+	private SweepResult runConfiguration( final int index, final int nThreads, final CandidatePairCache candidateCache, final Set< Long > referenceLinks )
+	{
+		try
+		{
+			return tryConfiguration( index, nThreads, candidateCache, referenceLinks );
+		}
+		catch ( final Throwable e )
+		{
+			final SweepResult result = new SweepResult( index, grid.get( index ) );
+			result.errorMessage = e.toString();
+			logger.error( "Configuration #" + index + " failed: " + result.errorMessage + '\n' );
+			return result;
+		}
+	}
+
+	private SweepResult tryConfiguration( final int index, final int nThreads, final CandidatePairCache candidateCache, final Set< Long > referenceLinks )
+	{
+		final Map< String, Object > settings = grid.get( index );
+		final SweepResult result = new SweepResult( index, settings );
+
+		final SpotTracker tracker = factory.create( spots, settings );
+		tracker.setNumThreads( nThreads );
+		if ( tracker instanceof SparseLAPTracker )
+			( ( SparseLAPTracker ) tracker ).setCandidatePairCache( candidateCache );
+		else if ( tracker instanceof SparseLAPFrameToFrameTracker )
+			( ( SparseLAPFrameToFrameTracker ) tracker ).setCandidatePairCache( candidateCache );
+
+		final long start = System.currentTimeMillis();
+		if ( !tracker.checkInput() || !tracker.process() )
+		{
+			result.errorMessage = tracker.getErrorMessage();
+			logger.error( "Configuration #" + index + " failed: " + result.errorMessage + '\n' );
+			return result;
+		}
+		result.processingTime = System.currentTimeMillis() - start;
+		result.ok = true;
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = tracker.getResult();
+		result.nLinks = graph.edgeSet().size();
+		if ( null != referenceLinks )
+		{
+			int nTruePositives = 0;
+			for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+			{
+				if ( referenceLinks.contains( linkKey( graph.getEdgeSource( edge ), graph.getEdgeTarget( edge ) ) ) )
+					nTruePositives++;
+			}
+			result.nTruePositives = nTruePositives;
+			result.nFalsePositives = result.nLinks - nTruePositives;
+			result.nFalseNegatives = referenceLinks.size() - nTruePositives;
+		}
+		return result;
+	}
+
+	private static final Set< Long > referenceLinks( final TrackModel reference )
+	{
+		final Set< DefaultWeightedEdge > edges = reference.edgeSet();
+		final Set< Long > links = new HashSet< >( 2 * edges.size() );
+		for ( final DefaultWeightedEdge edge : edges )
+			links.add( linkKey( reference.getEdgeSource( edge ), reference.getEdgeTarget( edge ) ) );
+		return links;
+	}
+
+	/**
+	 * Returns a key identifying an undirected link from the IDs of its spots.
+	 */
+	private static final Long linkKey( final Spot s1, final Spot s2 )
+	{
+		final long id1 = s1.ID();
+		final long id2 = s2.ID();
+		return Long.valueOf( id1 < id2 ? ( id1 << 32 ) | id2 : ( id2 << 32 ) | id1 );
+	}
+
+	private static final double maxLinkingDistance( final Map< String, Object > settings )
+	{
+		final Object val = settings.get( KEY_LINKING_MAX_DISTANCE );
+		return ( val instanceof Double ) ? ( ( Double ) val ).doubleValue() : 0d;
+	}
+
+	private static final String penaltyKey( final Map< String, Object > settings )
+	{
+		final Object penalties = settings.get( KEY_LINKING_FEATURE_PENALTIES );
+		return ( null == penalties ) ? "" : penalties.toString();
+	}
+
+	private static final Set< String > varyingKeys( final List< Map< String, Object > > grid )
+	{
+		final Set< String > keys = new LinkedHashSet< >();
+		final Map< String, Object > first = grid.get( 0 );
+		for ( final Map< String, Object > settings : grid )
+		{
+			for ( final String key : settings.keySet() )
+			{
+				final Object val = settings.get( key );
+				final Object firstVal = first.get( key );
+				if ( null == val ? null != firstVal : !val.equals( firstVal ) )
+					keys.add( key );
+			}
+		}
+		return keys;
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Creates the grid of all the combinations of the specified parameter
+	 * values. Each settings map of the grid is a copy of the base settings
+	 * map, in which the swept parameters are set to one of their values.
+	 *
+	 * @param base
+	 *            the base settings map.
+	 * @param values
+	 *            the values of the swept parameters, by key.
+	 * @return a new list of settings maps.
+	 */
+	public static final List< Map< String, Object > > createGrid( final Map< String, Object > base, final Map< String, List< ? > > values )
+	{
+		List< Map< String, Object > > grid = new ArrayList< >();
+		grid.add( new HashMap< >( base ) );
+		for ( final String key : values.keySet() )
+		{
+			final List< Map< String, Object > > newGrid = new ArrayList< >( grid.size() * values.get( key ).size() );
+			for ( final Map< String, Object > settings : grid )
+			{
+				for ( final Object val : values.get( key ) )
+				{
+					final Map< String, Object > newSettings = new HashMap< >( settings );
+					newSettings.put( key, val );
+					newGrid.add( newSettings );
+				}
+			}
+			grid = newGrid;
+		}
+		return grid;
+	}
+
+	/*
+	 * INNER CLASS
+	 */
+
+	/**
+	 * The outcome of one configuration of the sweep.
+	 */
+	public static class SweepResult
+	{
+
+		/** Index of the configuration in the grid. */
+		public final int index;
+
+		/** Settings map of the configuration. */
+		public final Map< String, Object > settings;
+
+		/** Whether the tracker ran successfully. */
+		public boolean ok = false;
+
+		/** Error message of the tracker, if it failed. */
+		public String errorMessage;
+
+		public long processingTime;
+
+		public int nLinks;
+
+		public int nTruePositives;
+
+		public int nFalsePositives;
+
+		public int nFalseNegatives;
+
+		private SweepResult( final int index, final Map< String, Object > settings )
+		{
+			this.index = index;
+			this.settings = settings;
+		}
+
+		public double getPrecision()
+		{
+			return ( double ) nTruePositives / ( nTruePositives + nFalsePositives );
+		}
+
+		public double getRecall()
+		{
+			return ( double ) nTruePositives / ( nTruePositives + nFalseNegatives );
+		}
+
+		public double getF1()
+		{
+			return 2d * nTruePositives / ( 2 * nTruePositives + nFalsePositives + nFalseNegatives );
+		}
+
+		public double getJaccard()
+		{
+			return ( double ) nTruePositives / ( nTruePositives + nFalsePositives + nFalseNegatives );
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Configuration #" + index + ": " + ( ok ? nLinks + " links, F1 = " + getF1() + ", " + processingTime + " ms." : "failed: " + errorMessage );
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+/**
+ * Reads and writes the files exchanged between the {@link ChunkedSpotTracker}
+ * and its {@link ChunkTrackerWorker}s.
+ * <p>
+ * A chunk file holds the class of the tracker factory, the tracker settings,
+ * and the visible spots of the chunk, frame by frame, with all their features
+ * and their ID. Each feature value is preceded by a flag telling whether the
+ * spot has this feature, so that <code>NaN</code> values are kept. A links
+ * file holds the links found by the worker, as pairs of spot IDs with the link
+ * weight, the source being in the earliest frame. The settings map is stored
+ * with Java serialization, so the main process and the workers must run the
+ * same TrackMate version.
+ */
+final class ChunkIO
+{
+
+	private static final int CHUNK_MAGIC = 0x544d4348; // TMCH
+
+	private static final int LINKS_MAGIC = 0x544d4c4b; // TMLK
+
+	private static final int VERSION = 2;
+
+	private ChunkIO()
+	{}
+
+	/**
+	 * The content of a chunk file.
+	 */
+	static final class Chunk
+	{
+
+		final String factoryClass;
+
+		final Map< String, Object > settings;
+
+		final int numThreads;
+
+		final SpotCollection spots;
+
+		private Chunk( final String factoryClass, final Map< String, Object > settings, final int numThreads, final SpotCollection spots )
+		{
+			this.factoryClass = factoryClass;
+			this.settings = settings;
+			this.numThreads = numThreads;
+			this.spots = spots;
+		}
+	}
+
+	/**
+	 * The content of a links file.
+	 */
+	static final class Links
+	{
+
+		final int[] sources;
+
+		final int[] targets;
+
+		final double[] weights;
+
+		private Links( final int[] sources, final int[] targets, final double[] weights )
+		{
+			this.sources = sources;
+			this.targets = targets;
+			this.weights = weights;
+		}
+	}
+
+	static void writeChunk( final File file, final String factoryClass, final Map< String, Object > settings, final int numThreads, final SpotCollection spots, final int[] frames ) throws IOException
+	{
+		// Feature names, in a fixed order.
+		final Set< String > featureSet = new LinkedHashSet< >();
+		for ( final int frame : frames )
+			for ( final Spot spot : spots.iterable( frame, true ) )
+				featureSet.addAll( spot.getFeatures().keySet() );
+		final String[] features = featureSet.toArray( new String[ featureSet.size() ] );
+
+		final ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+		try
+		{
+			out.writeInt( CHUNK_MAGIC );
+			out.writeInt( VERSION );
+			out.writeUTF( factoryClass );
+			out.writeObject( new HashMap< >( settings ) );
+			out.writeInt( numThreads );
+
+			out.writeInt( features.length );
+			for ( final String feature : features )
+				out.writeUTF( feature );
+
+			out.writeInt( frames.length );
+			for ( final int frame : frames )
+			{
+				out.writeInt( frame );
+				out.writeInt( spots.getNSpots( frame, true ) );
+				for ( final Spot spot : spots.iterable( frame, true ) )
+				{
+					out.writeInt( spot.ID() );
+					for ( final String feature : features )
+					{
+						final Double val = spot.getFeature( feature );
+						out.writeBoolean( null != val );
+						if ( null != val )
+							out.writeDouble( val.doubleValue() );
+					}
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	static Chunk readChunk( final File file ) throws IOException
+	{
+		final ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+		try
+		{
+			if ( in.readInt() != CHUNK_MAGIC )
+				throw new IOException( "Not a TrackMate chunk file: " + file );
+			final int version = in.readInt();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported chunk file version: " + version + "." );
+
+			final String factoryClass = in.readUTF();
+			final Map< String, Object > settings;
+			try
+			{
+				settings = ( Map< String, Object > ) in.readObject();
+			}
+			catch ( final ClassNotFoundException e )
+			{
+				throw new IOException( "Could not read the tracker settings: " + e.getMessage() );
+			}
+			final int numThreads = in.readInt();
+
+			final String[] features = new String[ in.readInt() ];
+			for ( int f = 0; f < features.length; f++ )
+				features[ f ] = in.readUTF();
+
+			final SpotCollection spots = new SpotCollection();
+			final int nFrames = in.readInt();
+			for ( int i = 0; i < nFrames; i++ )
+			{
+				final int frame = in.readInt();
+				final int nSpots = in.readInt();
+				final List< Spot > list = new ArrayList< >( nSpots );
+				for ( int j = 0; j < nSpots; j++ )
+				{
+					final Spot spot = new Spot( in.readInt() );
+					for ( final String feature : features )
+					{
+						if ( in.readBoolean() )
+							spot.putFeature( feature, Double.valueOf( in.readDouble() ) );
+					}
+					list.add( spot );
+				}
+				spots.put( frame, list );
+			}
+			spots.setVisible( true );
+			return new Chunk( factoryClass, settings, numThreads, spots );
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	static void writeLinks( final File file, final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph ) throws IOException
+	{
+		final ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+		try
+		{
+			out.writeInt( LINKS_MAGIC );
+			out.writeInt( VERSION );
+			out.writeInt( graph.edgeSet().size() );
+			for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+			{
+				Spot source = graph.getEdgeSource( edge );
+				Spot target = graph.getEdgeTarget( edge );
+				if ( source.getFeature( Spot.FRAME ).doubleValue() > target.getFeature( Spot.FRAME ).doubleValue() )
+				{
+					final Spot tmp = source;
+					source = target;
+					target = tmp;
+				}
+				out.writeInt( source.ID() );
+				out.writeInt( target.ID() );
+				out.writeDouble( graph.getEdgeWeight( edge ) );
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	static Links readLinks( final File file ) throws IOException
+	{
+		final ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+		try
+		{
+			if ( in.readInt() != LINKS_MAGIC )
+				throw new IOException( "Not a TrackMate links file: " + file );
+			final int version = in.readInt();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported links file version: " + version + "." );
+
+			final int nLinks = in.readInt();
+			final int[] sources = new int[ nLinks ];
+			final int[] targets = new int[ nLinks ];
+			final double[] weights = new double[ nLinks ];
+			for ( int k = 0; k < nLinks; k++ )
+			{
+				sources[ k ] = in.readInt();
+				targets[ k ] = in.readInt();
+				weights[ k ] = in.readDouble();
+			}
+			return new Links( sources, targets, weights );
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
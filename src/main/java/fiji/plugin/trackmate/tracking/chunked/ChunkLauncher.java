@@ -0,0 +1,36 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Interface for the classes that run the worker tracking a chunk of the
+ * {@link ChunkedSpotTracker}.
+ * <p>
+ * Implementations are called concurrently, once per chunk, and must block
+ * until the worker is done.
+ */
+public interface ChunkLauncher
+{
+
+	/**
+	 * Tracks the chunk stored in the specified file, and writes the links
+	 * found to the specified links file, as
+	 * {@link ChunkTrackerWorker#track(File, File, fiji.plugin.trackmate.Logger)}
+	 * does.
+	 *
+	 * @param chunk
+	 *            the index of the chunk.
+	 * @param input
+	 *            the chunk file.
+	 * @param output
+	 *            the links file to write.
+	 * @throws IOException
+	 *             if the worker could not be run or failed.
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted while waiting for the
+	 *             worker.
+	 */
+	public void track( int chunk, File input, File output ) throws IOException, InterruptedException;
+
+}
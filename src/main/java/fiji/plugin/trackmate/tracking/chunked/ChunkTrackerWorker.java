@@ -0,0 +1,76 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import java.io.File;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
+
+/**
+ * Entry point of the worker processes of the {@link ChunkedSpotTracker}.
+ * <p>
+ * Reads a chunk file, tracks its spots with the tracker it specifies, and
+ * writes the links found to a links file. Usage:
+ *
+ * <pre>
+ * java -cp &lt;TrackMate classpath&gt; fiji.plugin.trackmate.tracking.chunked.ChunkTrackerWorker &lt;chunk file&gt; &lt;links file&gt;
+ * </pre>
+ *
+ * The process exits with a non-zero status if tracking fails, after printing
+ * the error message to the standard error stream.
+ */
+public class ChunkTrackerWorker
+{
+
+	private ChunkTrackerWorker()
+	{}
+
+	/**
+	 * Tracks the chunk stored in the specified file and writes the links found
+	 * to the specified links file.
+	 *
+	 * @param input
+	 *            the chunk file.
+	 * @param output
+	 *            the links file.
+	 * @param logger
+	 *            a logger to report progress.
+	 * @return <code>null</code> if tracking succeeded, an error message
+	 *         otherwise.
+	 */
+	public static String track( final File input, final File output, final Logger logger )
+	{
+		try
+		{
+			final ChunkIO.Chunk chunk = ChunkIO.readChunk( input );
+			final SpotTrackerFactory factory = ( SpotTrackerFactory ) Class.forName( chunk.factoryClass ).newInstance();
+			final SpotTracker tracker = factory.create( chunk.spots, chunk.settings );
+			tracker.setNumThreads( chunk.numThreads );
+			tracker.setLogger( logger );
+			if ( !tracker.checkInput() || !tracker.process() )
+				return tracker.getErrorMessage();
+			ChunkIO.writeLinks( output, tracker.getResult() );
+			return null;
+		}
+		catch ( final Exception e )
+		{
+			return e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+	}
+
+	public static void main( final String[] args )
+	{
+		if ( args.length != 2 )
+		{
+			System.err.println( "Usage: " + ChunkTrackerWorker.class.getName() + " <chunk file> <links file>" );
+			System.exit( 2 );
+		}
+		final String error = track( new File( args[ 0 ] ), new File( args[ 1 ] ), Logger.DEFAULT_LOGGER );
+		if ( null != error )
+		{
+			System.err.println( error );
+			System.exit( 1 );
+		}
+		System.exit( 0 );
+	}
+}
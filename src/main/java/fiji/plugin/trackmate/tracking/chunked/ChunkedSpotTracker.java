@@ -0,0 +1,480 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.DefaultCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+
+/**
+ * A {@link SpotTracker} that splits the time axis in overlapping chunks, tracks
+ * each chunk in a separate worker process, and stitches the results.
+ * <p>
+ * The frames are divided in consecutive chunks of {@link #setChunkSize(int)}
+ * frames, each chunk owning its frames. The worker of a chunk tracks its frames
+ * plus {@link #setOverlap(int)} frames on each side, with the tracker created
+ * by the specified {@link SpotTrackerFactory} and settings. Workers are run by
+ * a {@link ChunkLauncher}, by default in new JVMs on this machine, and
+ * communicate with this tracker through files in a working directory. Up to
+ * {@link #setNumThreads(int)} workers run at the same time.
+ * <p>
+ * Links found by a chunk between two spots it owns are kept as they are. Links
+ * crossing the border between two chunks are proposed by the two chunks, which
+ * both see the frames around the border. They can conflict, and are resolved
+ * with a sparse LAP over all the crossing links proposed, using the link
+ * weights as costs, so that each spot gets at most one crossing link in each
+ * direction. Crossing links that would connect a spot already linked within
+ * its chunk in the same direction are discarded. Track merging and splitting
+ * events are therefore only preserved within chunks. The result graph only
+ * contains the spots that are linked: spots left unlinked are not vertices of
+ * it.
+ * <p>
+ * The overlap should be larger than the max frame gap of the tracker, so that
+ * gaps closed across chunk borders are seen by both chunks.
+ */
+public class ChunkedSpotTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker
+{
+
+	private final static String BASE_ERROR_MESSAGE = "[ChunkedSpotTracker] ";
+
+	public static final int DEFAULT_CHUNK_SIZE = 200;
+
+	public static final int DEFAULT_OVERLAP = 10;
+
+	private final SpotCollection spots;
+
+	private final SpotTrackerFactory factory;
+
+	private final Map< String, Object > settings;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private int overlap = DEFAULT_OVERLAP;
+
+	private int workerThreads = 1;
+
+	private ChunkLauncher launcher;
+
+	private File workingDirectory;
+
+	private boolean keepFiles = false;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Creates a chunked tracker.
+	 *
+	 * @param spots
+	 *            the spots to track.
+	 * @param factory
+	 *            the factory of the tracker to run on each chunk. It must have
+	 *            a public no-argument constructor, so that workers can
+	 *            instantiate it.
+	 * @param settings
+	 *            the settings of the tracker to run on each chunk. Their values
+	 *            must be serializable.
+	 */
+	public ChunkedSpotTracker( final SpotCollection spots, final SpotTrackerFactory factory, final Map< String, Object > settings )
+	{
+		this.spots = spots;
+		this.factory = factory;
+		this.settings = settings;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Sets the number of frames owned by each chunk.
+	 *
+	 * @param chunkSize
+	 *            the number of frames, at least 1.
+	 */
+	public void setChunkSize( final int chunkSize )
+	{
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the number of frames each worker tracks on each side of the frames
+	 * its chunk owns.
+	 *
+	 * @param overlap
+	 *            the number of frames, positive or zero.
+	 */
+	public void setOverlap( final int overlap )
+	{
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Sets the number of threads each worker uses.
+	 *
+	 * @param workerThreads
+	 *            the number of threads.
+	 */
+	public void setWorkerThreads( final int workerThreads )
+	{
+		this.workerThreads = workerThreads;
+	}
+
+	/**
+	 * Sets the launcher that runs the workers. By default, workers are run in
+	 * new JVMs on this machine, with {@link CommandChunkLauncher#local(int)}.
+	 *
+	 * @param launcher
+	 *            the launcher.
+	 */
+	public void setLauncher( final ChunkLauncher launcher )
+	{
+		this.launcher = launcher;
+	}
+
+	/**
+	 * Sets the directory in which chunk and link files are written. By
+	 * default, a new temporary directory is used.
+	 *
+	 * @param workingDirectory
+	 *            the directory, which must be visible by all the workers.
+	 */
+	public void setWorkingDirectory( final File workingDirectory )
+	{
+		this.workingDirectory = workingDirectory;
+	}
+
+	/**
+	 * Sets whether chunk, link and log files are kept after tracking. They are
+	 * deleted by default.
+	 *
+	 * @param keepFiles
+	 *            whether to keep the files.
+	 */
+	public void setKeepFiles( final boolean keepFiles )
+	{
+		this.keepFiles = keepFiles;
+	}
+
+	@Override
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > getResult()
+	{
+		return graph;
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == spots )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The spot collection is null.";
+			return false;
+		}
+		if ( chunkSize < 1 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The chunk size must be at least 1, was " + chunkSize + ".";
+			return false;
+		}
+		if ( overlap < 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The overlap must be positive or zero, was " + overlap + ".";
+			return false;
+		}
+		if ( !factory.checkSettingsValidity( settings ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + factory.getErrorMessage();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		final Map< Integer, Spot > spotsById = new HashMap< >();
+		final Iterator< Spot > it = spots.iterator( true );
+		while ( it.hasNext() )
+		{
+			final Spot spot = it.next();
+			spotsById.put( Integer.valueOf( spot.ID() ), spot );
+		}
+
+		final int[] frames = new int[ spots.keySet().size() ];
+		int index = 0;
+		for ( final Integer frame : spots.keySet() )
+			frames[ index++ ] = frame.intValue();
+		final int nFrames = frames.length;
+		if ( nFrames == 0 )
+		{
+			processingTime = System.currentTimeMillis() - start;
+			return true;
+		}
+		final int nChunks = ( nFrames + chunkSize - 1 ) / chunkSize;
+
+		/*
+		 * 1. Track chunks.
+		 */
+
+		final File directory;
+		try
+		{
+			directory = ( null == workingDirectory ) ? Files.createTempDirectory( "TrackMate-chunks" ).toFile() : workingDirectory;
+		}
+		catch ( final IOException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Could not create a working directory: " + e.getMessage();
+			return false;
+		}
+		final ChunkLauncher chunkLauncher = ( null == launcher ) ? CommandChunkLauncher.local( 0 ) : launcher;
+		final List< File > files = new ArrayList< >();
+
+		logger.setStatus( "Tracking " + nChunks + " chunks..." );
+		logger.setProgress( 0 );
+		final ChunkIO.Links[] chunkLinks = new ChunkIO.Links[ nChunks ];
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, numThreads ) );
+		try
+		{
+			final List< Future< Void > > futures = new ArrayList< >( nChunks );
+			for ( int k = 0; k < nChunks; k++ )
+			{
+				final int chunk = k;
+				final int from = Math.max( 0, chunk * chunkSize - overlap );
+				final int to = Math.min( nFrames, ( chunk + 1 ) * chunkSize + overlap );
+				final File input = new File( directory, "chunk-" + chunk + ".bin" );
+				final File output = new File( directory, "chunk-" + chunk + "-links.bin" );
+				files.add( input );
+				files.add( output );
+				files.add( new File( directory, input.getName() + ".log" ) );
+
+				futures.add( executor.submit( new Callable< Void >()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						final int[] chunkFrames = Arrays.copyOfRange( frames, from, to );
+						int nSpots = 0;
+						for ( final int frame : chunkFrames )
+							nSpots += spots.getNSpots( frame, true );
+
+						if ( nSpots > 0 )
+						{
+							ChunkIO.writeChunk( input, factory.getClass().getName(), settings, workerThreads, spots, chunkFrames );
+							chunkLauncher.track( chunk, input, output );
+							chunkLinks[ chunk ] = ChunkIO.readLinks( output );
+						}
+						logger.setProgress( 0.9 * progress.incrementAndGet() / nChunks );
+						return null;
+					}
+				} ) );
+			}
+
+			for ( int k = 0; k < nChunks; k++ )
+			{
+				try
+				{
+					futures.get( k ).get();
+				}
+				catch ( final ExecutionException e )
+				{
+					final Throwable cause = e.getCause();
+					errorMessage = BASE_ERROR_MESSAGE + "Tracking chunk " + k + " failed: " + cause.getMessage();
+					return false;
+				}
+				catch ( final InterruptedException e )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Interrupted while tracking chunk " + k + ".";
+					return false;
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			if ( !keepFiles )
+			{
+				for ( final File file : files )
+					file.delete();
+				if ( null == workingDirectory )
+					directory.delete();
+			}
+		}
+
+		/*
+		 * 2. Stitch chunks.
+		 */
+
+		logger.setStatus( "Stitching chunks..." );
+		final Set< Spot > linkedForward = new HashSet< >();
+		final Set< Spot > linkedBackward = new HashSet< >();
+		final Map< Spot, Map< Spot, Double > > crossing = new HashMap< >();
+		for ( int k = 0; k < nChunks; k++ )
+		{
+			final ChunkIO.Links links = chunkLinks[ k ];
+			if ( null == links )
+				continue;
+
+			for ( int l = 0; l < links.weights.length; l++ )
+			{
+				final Spot source = spotsById.get( Integer.valueOf( links.sources[ l ] ) );
+				final Spot target = spotsById.get( Integer.valueOf( links.targets[ l ] ) );
+				if ( null == source || null == target )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Chunk " + k + " returned a link between unknown spots.";
+					return false;
+				}
+				final int sourceOwner = owner( source, frames );
+				final int targetOwner = owner( target, frames );
+
+				if ( sourceOwner == k && targetOwner == k )
+				{
+					graph.addVertex( source );
+					graph.addVertex( target );
+					final DefaultWeightedEdge edge = graph.addEdge( source, target );
+					graph.setEdgeWeight( edge, links.weights[ l ] );
+					linkedForward.add( source );
+					linkedBackward.add( target );
+				}
+				else if ( sourceOwner < targetOwner && ( sourceOwner == k || targetOwner == k ) )
+				{
+					Map< Spot, Double > targets = crossing.get( source );
+					if ( null == targets )
+					{
+						targets = new HashMap< >();
+						crossing.put( source, targets );
+					}
+					final Double previous = targets.get( target );
+					if ( null == previous || previous.doubleValue() > links.weights[ l ] )
+						targets.put( target, Double.valueOf( links.weights[ l ] ) );
+				}
+			}
+		}
+
+		final List< Spot > sources = new ArrayList< >();
+		final List< Spot > targets = new ArrayList< >();
+		final List< Double > costList = new ArrayList< >();
+		for ( final Spot source : crossing.keySet() )
+		{
+			if ( linkedForward.contains( source ) )
+				continue;
+			final Map< Spot, Double > candidates = crossing.get( source );
+			for ( final Spot target : candidates.keySet() )
+			{
+				if ( linkedBackward.contains( target ) )
+					continue;
+				sources.add( source );
+				targets.add( target );
+				costList.add( candidates.get( target ) );
+			}
+		}
+
+		if ( !costList.isEmpty() && !stitch( sources, targets, costList ) )
+			return false;
+
+		logger.setProgress( 1 );
+		logger.setStatus( "" );
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Resolves the crossing links with a sparse LAP, and adds the links
+	 * retained to the graph.
+	 */
+	private boolean stitch( final List< Spot > sources, final List< Spot > targets, final List< Double > costList )
+	{
+		final double[] costs = new double[ costList.size() ];
+		double max = 0d;
+		for ( int i = 0; i < costs.length; i++ )
+		{
+			costs[ i ] = costList.get( i ).doubleValue();
+			max = Math.max( max, costs[ i ] );
+		}
+
+		/*
+		 * Every crossing link was accepted by a chunk, so only conflicts must
+		 * prevent a link: the alternative cost is larger than all the costs.
+		 */
+		final Object factor = settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		final double alternativeCostFactor = ( factor instanceof Double ) ? ( ( Double ) factor ).doubleValue() : DEFAULT_ALTERNATIVE_LINKING_COST_FACTOR;
+		final double alternativeCost = max > 0d ? alternativeCostFactor * max : 1d;
+		final DefaultCostMatrixCreator< Spot, Spot > creator = new DefaultCostMatrixCreator< Spot, Spot >( sources, targets, costs, alternativeCostFactor, 1d )
+		{
+			@Override
+			protected double computeAlternativeCosts()
+			{
+				return alternativeCost;
+			}
+		};
+		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker< >( creator );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Stitching chunks failed: " + linker.getErrorMessage();
+			return false;
+		}
+
+		final Map< Spot, Spot > assignment = linker.getResult();
+		final Map< Spot, Double > assignmentCosts = linker.getAssignmentCosts();
+		for ( final Spot source : assignment.keySet() )
+		{
+			final Spot target = assignment.get( source );
+			graph.addVertex( source );
+			graph.addVertex( target );
+			final DefaultWeightedEdge edge = graph.addEdge( source, target );
+			graph.setEdgeWeight( edge, assignmentCosts.get( source ).doubleValue() );
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the chunk that owns the frame of the specified
+	 * spot.
+	 */
+	private int owner( final Spot spot, final int[] frames )
+	{
+		final int frame = spot.getFeature( Spot.FRAME ).intValue();
+		return Arrays.binarySearch( frames, frame ) / chunkSize;
+	}
+}
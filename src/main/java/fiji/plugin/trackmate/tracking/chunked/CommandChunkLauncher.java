@@ -0,0 +1,149 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A {@link ChunkLauncher} that runs each chunk in a separate process, started
+ * from a command line.
+ * <p>
+ * Command lines are templates in which the <code>{input}</code>,
+ * <code>{output}</code> and <code>{chunk}</code> tokens are replaced by the
+ * path of the chunk file, the path of the links file and the chunk index. When
+ * several templates are given, chunks are dispatched to them in turn, for
+ * instance to spread chunks over several machines with one
+ * <code>ssh host java ...</code> template per machine. The working directory
+ * of the {@link ChunkedSpotTracker} must then be on a file system shared by
+ * all the machines.
+ * <p>
+ * The standard and error outputs of each process are redirected to a log file
+ * next to the chunk file.
+ */
+public class CommandChunkLauncher implements ChunkLauncher
+{
+
+	private static final int LOG_LINES_IN_ERRORS = 10;
+
+	private final List< List< String > > templates;
+
+	/**
+	 * Creates a launcher that dispatches chunks to the specified command line
+	 * templates in turn.
+	 *
+	 * @param templates
+	 *            the command line templates.
+	 */
+	public CommandChunkLauncher( final List< List< String > > templates )
+	{
+		if ( templates.isEmpty() )
+			throw new IllegalArgumentException( "At least one command line template is required." );
+		this.templates = new ArrayList< >( templates );
+	}
+
+	/**
+	 * Creates a launcher that runs the workers with the specified command line
+	 * template.
+	 *
+	 * @param template
+	 *            the command line template.
+	 */
+	public CommandChunkLauncher( final String... template )
+	{
+		this( Arrays.< List< String > > asList( Arrays.asList( template ) ) );
+	}
+
+	/**
+	 * Returns a launcher that runs each worker in a new JVM on this machine,
+	 * with the classpath of the current JVM.
+	 *
+	 * @param maxHeapMB
+	 *            the max heap size of each worker, in MB, or 0 to use the JVM
+	 *            default.
+	 * @return a new launcher.
+	 */
+	public static CommandChunkLauncher local( final int maxHeapMB )
+	{
+		final String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+		final List< String > template = new ArrayList< >();
+		template.add( java );
+		if ( maxHeapMB > 0 )
+			template.add( "-Xmx" + maxHeapMB + "m" );
+		template.add( "-Djava.awt.headless=true" );
+		template.add( "-cp" );
+		template.add( System.getProperty( "java.class.path" ) );
+		template.add( ChunkTrackerWorker.class.getName() );
+		template.add( "{input}" );
+		template.add( "{output}" );
+		return new CommandChunkLauncher( template.toArray( new String[ template.size() ] ) );
+	}
+
+	@Override
+	public void track( final int chunk, final File input, final File output ) throws IOException, InterruptedException
+	{
+		final List< String > template = templates.get( chunk % templates.size() );
+		final List< String > command = new ArrayList< >( template.size() );
+		for ( final String token : template )
+		{
+			command.add( token
+					.replace( "{input}", input.getAbsolutePath() )
+					.replace( "{output}", output.getAbsolutePath() )
+					.replace( "{chunk}", Integer.toString( chunk ) ) );
+		}
+
+		final File log = new File( input.getParentFile(), input.getName() + ".log" );
+		final ProcessBuilder pb = new ProcessBuilder( command );
+		pb.redirectErrorStream( true );
+		pb.redirectOutput( log );
+		final Process process = pb.start();
+		try
+		{
+			final int status = process.waitFor();
+			if ( status != 0 )
+				throw new IOException( "Worker for chunk " + chunk + " exited with status " + status + ":\n" + tail( log ) );
+		}
+		finally
+		{
+			process.destroy();
+		}
+	}
+
+	/**
+	 * Returns the last lines of the specified log file.
+	 */
+	private static String tail( final File log )
+	{
+		final LinkedList< String > lines = new LinkedList< >();
+		try
+		{
+			final BufferedReader reader = new BufferedReader( new FileReader( log ) );
+			try
+			{
+				String line;
+				while ( null != ( line = reader.readLine() ) )
+				{
+					lines.add( line );
+					if ( lines.size() > LOG_LINES_IN_ERRORS )
+						lines.removeFirst();
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final IOException e )
+		{
+			return "Could not read the worker log " + log + ".";
+		}
+		final StringBuilder str = new StringBuilder();
+		for ( final String line : lines )
+			str.append( line ).append( '\n' );
+		return str.toString();
+	}
+}
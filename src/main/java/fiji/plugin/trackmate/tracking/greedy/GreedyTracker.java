@@ -0,0 +1,599 @@
+package fiji.plugin.trackmate.tracking.greedy;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.util.TMUtils.checkMapKeys;
+import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import net.imglib2.multithreading.SimpleMultiThreading;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * A tracker that links spots greedily, by increasing cost, over whole frame
+ * pairs.
+ * <p>
+ * For each pair of consecutive frames, all the candidate links shorter than
+ * the max linking distance are collected, using a uniform grid of cells as
+ * large as this distance. They are sorted by squared distance with a radix
+ * sort, then accepted in this order, as long as their source and target have
+ * not been linked already. Links with the same cost are accepted by
+ * increasing source then target spot ID. Compared to the
+ * {@link fiji.plugin.trackmate.tracking.kdtree.NearestNeighborTracker}, the
+ * result does not depend on the order of the spots, and the shortest links
+ * always win conflicts. Compared to the LAP trackers, the global cost is not
+ * optimal, but close to it when spots are well separated, for a fraction of
+ * the time and memory.
+ * <p>
+ * Optionally, gaps are closed the same way: the ends of the track segments are
+ * linked to the starts of track segments found at most
+ * <code>maxFrameGap + 1</code> frames later and closer than the gap closing
+ * max distance, by increasing squared distance over all the frames at once.
+ * <p>
+ * Spots, candidate links and assignments are stored in primitive arrays and
+ * bitsets. The graph is only built at the end.
+ */
+@SuppressWarnings( "deprecation" )
+public class GreedyTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker
+{
+
+	private final static String BASE_ERROR_MESSAGE = "[GreedyTracker] ";
+
+	/**
+	 * Orders the spots of a frame, so that their indices follow their ID.
+	 */
+	private static final Comparator< Spot > ID_COMPARATOR = new Comparator< Spot >()
+	{
+		@Override
+		public int compare( final Spot o1, final Spot o2 )
+		{
+			return o1.ID() < o2.ID() ? -1 : ( o1.ID() == o2.ID() ? 0 : 1 );
+		}
+	};
+
+	/*
+	 * FIELDS
+	 */
+
+	protected final SpotCollection spots;
+
+	protected final Map< String, Object > settings;
+
+	protected Logger logger = Logger.VOID_LOGGER;
+
+	protected SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public GreedyTracker( final SpotCollection spots, final Map< String, Object > settings )
+	{
+		this.spots = spots;
+		this.settings = settings;
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( null == spots )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "The spot collection is null.";
+			return false;
+		}
+		final StringBuilder errorHolder = new StringBuilder();
+		final boolean ok = checkInput( settings, errorHolder );
+		if ( !ok )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + errorHolder.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		reset();
+
+		final double maxLinkingDistance = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		final boolean allowGapClosing = ( Boolean ) settings.get( KEY_ALLOW_GAP_CLOSING );
+		final double gapClosingMaxDistance = ( Double ) settings.get( KEY_GAP_CLOSING_MAX_DISTANCE );
+		final int maxFrameGap = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+
+		final Integer[] frames = spots.keySet().toArray( new Integer[ 0 ] );
+		final int nFrames = frames.length;
+		if ( nFrames < 2 )
+		{
+			processingTime = System.currentTimeMillis() - start;
+			return true;
+		}
+
+		logger.setStatus( "Tracking..." );
+		logger.setProgress( 0 );
+
+		/*
+		 * 1. Read the spot coordinates of each frame once, in packed arrays,
+		 * sorted by spot ID.
+		 */
+
+		final List< List< Spot > > frameSpots = new ArrayList< >( nFrames );
+		for ( int i = 0; i < nFrames; i++ )
+			frameSpots.add( null );
+		final double[][] frameCoords = new double[ nFrames ][];
+
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( "Greedy tracker thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					final double[] coords = new double[ 3 ];
+					for ( int i = ai.getAndIncrement(); i < nFrames; i = ai.getAndIncrement() )
+					{
+						final int nSpots = spots.getNSpots( frames[ i ], true );
+						final List< Spot > list = new ArrayList< >( nSpots );
+						for ( final Spot spot : spots.iterable( frames[ i ], true ) )
+							list.add( spot );
+						Collections.sort( list, ID_COMPARATOR );
+
+						final double[] packed = new double[ 3 * nSpots ];
+						int index = 0;
+						for ( final Spot spot : list )
+						{
+							TMUtils.localize( spot, coords );
+							System.arraycopy( coords, 0, packed, index, 3 );
+							index += 3;
+						}
+						frameSpots.set( i, list );
+						frameCoords[ i ] = packed;
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		// Global spot indices: spots of frame i start at offsets[i].
+		final int[] offsets = new int[ nFrames + 1 ];
+		for ( int i = 0; i < nFrames; i++ )
+			offsets[ i + 1 ] = offsets[ i ] + frameSpots.get( i ).size();
+		final int nSpots = offsets[ nFrames ];
+
+		final int[] successors = new int[ nSpots ];
+		Arrays.fill( successors, -1 );
+		final boolean[] hasPredecessor = new boolean[ nSpots ];
+		final double[] successorCosts = new double[ nSpots ];
+
+		/*
+		 * 2. Frame to frame linking. Each frame pair writes to its own range
+		 * of the successor and predecessor arrays.
+		 */
+
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		ai.set( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( "Greedy tracker thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = ai.getAndIncrement(); i < nFrames - 1; i = ai.getAndIncrement() )
+					{
+						final double[] sourceCoords = frameCoords[ i ];
+						final double[] targetCoords = frameCoords[ i + 1 ];
+						final int nSources = sourceCoords.length / 3;
+						final int nTargets = targetCoords.length / 3;
+						if ( nSources > 0 && nTargets > 0 )
+						{
+							final CandidateLinks candidates = new CandidateLinks();
+							final CellGrid grid = new CellGrid( targetCoords, null, maxLinkingDistance );
+							for ( int j = 0; j < nSources; j++ )
+								grid.collect( sourceCoords, 3 * j, j, candidates );
+							final CandidateLinks links = candidates.acceptGreedily( nSources, nTargets );
+							for ( int k = 0; k < links.size; k++ )
+							{
+								final int source = offsets[ i ] + links.sources[ k ];
+								final int target = offsets[ i + 1 ] + links.targets[ k ];
+								successors[ source ] = target;
+								successorCosts[ source ] = links.costs[ k ];
+								hasPredecessor[ target ] = true;
+							}
+						}
+						logger.setProgress( 0.8 * progress.incrementAndGet() / ( nFrames - 1 ) );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		/*
+		 * 3. Gap closing, over all the frames at once.
+		 */
+
+		if ( allowGapClosing )
+		{
+			logger.setStatus( "Closing gaps..." );
+
+			// Segment starts per frame.
+			final int[][] startIndices = new int[ nFrames ][];
+			final double[][] startCoords = new double[ nFrames ][];
+			for ( int i = 0; i < nFrames; i++ )
+			{
+				int nStarts = 0;
+				for ( int g = offsets[ i ]; g < offsets[ i + 1 ]; g++ )
+					if ( !hasPredecessor[ g ] )
+						nStarts++;
+				final int[] indices = new int[ nStarts ];
+				final double[] coords = new double[ 3 * nStarts ];
+				int k = 0;
+				for ( int g = offsets[ i ]; g < offsets[ i + 1 ]; g++ )
+				{
+					if ( hasPredecessor[ g ] )
+						continue;
+					indices[ k ] = g;
+					System.arraycopy( frameCoords[ i ], 3 * ( g - offsets[ i ] ), coords, 3 * k, 3 );
+					k++;
+				}
+				startIndices[ i ] = indices;
+				startCoords[ i ] = coords;
+			}
+
+			// Candidates per end frame.
+			final CandidateLinks[] frameCandidates = new CandidateLinks[ nFrames ];
+			ai.set( 0 );
+			for ( int ithread = 0; ithread < threads.length; ithread++ )
+			{
+				threads[ ithread ] = new Thread( "Greedy tracker thread " + ( 1 + ithread ) + "/" + threads.length )
+				{
+					@Override
+					public void run()
+					{
+						for ( int i = ai.getAndIncrement(); i < nFrames - 1; i = ai.getAndIncrement() )
+						{
+							final CandidateLinks candidates = new CandidateLinks();
+							for ( int i1 = i + 1; i1 < nFrames && frames[ i1 ] - frames[ i ] <= maxFrameGap + 1; i1++ )
+							{
+								if ( startIndices[ i1 ].length == 0 )
+									continue;
+								final CellGrid grid = new CellGrid( startCoords[ i1 ], startIndices[ i1 ], gapClosingMaxDistance );
+								for ( int g = offsets[ i ]; g < offsets[ i + 1 ]; g++ )
+								{
+									if ( successors[ g ] < 0 )
+										grid.collect( frameCoords[ i ], 3 * ( g - offsets[ i ] ), g, candidates );
+								}
+							}
+							frameCandidates[ i ] = candidates;
+						}
+					}
+				};
+			}
+			SimpleMultiThreading.startAndJoin( threads );
+
+			final CandidateLinks candidates = CandidateLinks.concatenate( frameCandidates );
+			final CandidateLinks links = candidates.acceptGreedily( nSpots, nSpots );
+			for ( int k = 0; k < links.size; k++ )
+			{
+				successors[ links.sources[ k ] ] = links.targets[ k ];
+				successorCosts[ links.sources[ k ] ] = links.costs[ k ];
+			}
+		}
+
+		/*
+		 * 4. Build the graph.
+		 */
+
+		final Spot[] allSpots = new Spot[ nSpots ];
+		for ( int i = 0; i < nFrames; i++ )
+		{
+			int g = offsets[ i ];
+			for ( final Spot spot : frameSpots.get( i ) )
+				allSpots[ g++ ] = spot;
+		}
+		for ( int g = 0; g < nSpots; g++ )
+		{
+			if ( successors[ g ] < 0 )
+				continue;
+			final DefaultWeightedEdge edge = graph.addEdge( allSpots[ g ], allSpots[ successors[ g ] ] );
+			graph.setEdgeWeight( edge, successorCosts[ g ] );
+		}
+
+		logger.setProgress( 1 );
+		logger.setStatus( "" );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	@Override
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > getResult()
+	{
+		return graph;
+	}
+
+	public void reset()
+	{
+		graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		final Iterator< Spot > it = spots.iterator( true );
+		while ( it.hasNext() )
+		{
+			graph.addVertex( it.next() );
+		}
+	}
+
+	public static boolean checkInput( final Map< String, Object > settings, final StringBuilder errorHolder )
+	{
+		if ( null == settings )
+		{
+			errorHolder.append( "Settings map is null.\n" );
+			return false;
+		}
+		boolean ok = checkParameter( settings, KEY_LINKING_MAX_DISTANCE, Double.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_ALLOW_GAP_CLOSING, Boolean.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_GAP_CLOSING_MAX_DISTANCE, Double.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_GAP_CLOSING_MAX_FRAME_GAP, Integer.class, errorHolder );
+		final List< String > mandatoryKeys = new ArrayList< >();
+		mandatoryKeys.add( KEY_LINKING_MAX_DISTANCE );
+		mandatoryKeys.add( KEY_ALLOW_GAP_CLOSING );
+		mandatoryKeys.add( KEY_GAP_CLOSING_MAX_DISTANCE );
+		mandatoryKeys.add( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+		ok = ok & checkMapKeys( settings, mandatoryKeys, null, errorHolder );
+		return ok;
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Candidate links stored in primitive arrays.
+	 */
+	private static final class CandidateLinks
+	{
+
+		private int[] sources = new int[ 16 ];
+
+		private int[] targets = new int[ 16 ];
+
+		private double[] costs = new double[ 16 ];
+
+		private int size = 0;
+
+		private void add( final int source, final int target, final double cost )
+		{
+			if ( size == costs.length )
+			{
+				final int capacity = 2 * size;
+				sources = Arrays.copyOf( sources, capacity );
+				targets = Arrays.copyOf( targets, capacity );
+				costs = Arrays.copyOf( costs, capacity );
+			}
+			sources[ size ] = source;
+			targets[ size ] = target;
+			costs[ size ] = cost;
+			size++;
+		}
+
+		/**
+		 * Accepts the candidate links by increasing cost, skipping the ones
+		 * whose source or target is already linked. Ties are resolved by
+		 * increasing source then target index, whatever the order of the
+		 * candidates.
+		 */
+		private CandidateLinks acceptGreedily( final int nSources, final int nTargets )
+		{
+			final long[] keys = new long[ size ];
+			for ( int k = 0; k < size; k++ )
+				keys[ k ] = ( ( long ) sources[ k ] << 32 ) | targets[ k ];
+			final int[] pairOrder = RadixSort.sort( keys, size );
+			for ( int k = 0; k < size; k++ )
+				keys[ k ] = RadixSort.costKey( costs[ k ] );
+			final int[] order = RadixSort.sort( keys, size, pairOrder );
+
+			final CandidateLinks accepted = new CandidateLinks();
+			final BitSet linkedSources = new BitSet( nSources );
+			final BitSet linkedTargets = new BitSet( nTargets );
+			final int maxLinks = Math.min( nSources, nTargets );
+			for ( int o = 0; o < size && accepted.size < maxLinks; o++ )
+			{
+				final int k = order[ o ];
+				final int source = sources[ k ];
+				final int target = targets[ k ];
+				if ( linkedSources.get( source ) || linkedTargets.get( target ) )
+					continue;
+				linkedSources.set( source );
+				linkedTargets.set( target );
+				accepted.add( source, target, costs[ k ] );
+			}
+			return accepted;
+		}
+
+		private static CandidateLinks concatenate( final CandidateLinks[] parts )
+		{
+			int size = 0;
+			for ( final CandidateLinks part : parts )
+				if ( null != part )
+					size += part.size;
+
+			final CandidateLinks all = new CandidateLinks();
+			all.sources = new int[ Math.max( 16, size ) ];
+			all.targets = new int[ all.sources.length ];
+			all.costs = new double[ all.sources.length ];
+			for ( final CandidateLinks part : parts )
+			{
+				if ( null == part )
+					continue;
+				System.arraycopy( part.sources, 0, all.sources, all.size, part.size );
+				System.arraycopy( part.targets, 0, all.targets, all.size, part.size );
+				System.arraycopy( part.costs, 0, all.costs, all.size, part.size );
+				all.size += part.size;
+			}
+			return all;
+		}
+	}
+
+	/**
+	 * Uniform grid of cells as large as the search distance, that indexes
+	 * packed coordinates. Points are sorted by cell, so that the points of
+	 * neighbor cells along Z are contiguous.
+	 */
+	private static final class CellGrid
+	{
+
+		private final double[] coords;
+
+		private final int[] ids;
+
+		private final double cellSize;
+
+		private final double maxSquareDistance;
+
+		private final double minX, minY, minZ;
+
+		private final long nx, ny, nz;
+
+		private final long[] sortedKeys;
+
+		private final int[] sortedPoints;
+
+		/**
+		 * @param coords
+		 *            the packed X, Y, Z coordinates of the points.
+		 * @param ids
+		 *            the ids reported for the points, or <code>null</code> to
+		 *            report their index.
+		 * @param maxDistance
+		 *            the search distance.
+		 */
+		private CellGrid( final double[] coords, final int[] ids, final double maxDistance )
+		{
+			this.coords = coords;
+			this.ids = ids;
+			this.cellSize = maxDistance > 0 ? maxDistance : 1d;
+			this.maxSquareDistance = maxDistance * maxDistance;
+
+			final int n = coords.length / 3;
+			double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY, z0 = Double.POSITIVE_INFINITY;
+			double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY, z1 = Double.NEGATIVE_INFINITY;
+			for ( int i = 0; i < n; i++ )
+			{
+				x0 = Math.min( x0, coords[ 3 * i ] );
+				x1 = Math.max( x1, coords[ 3 * i ] );
+				y0 = Math.min( y0, coords[ 3 * i + 1 ] );
+				y1 = Math.max( y1, coords[ 3 * i + 1 ] );
+				z0 = Math.min( z0, coords[ 3 * i + 2 ] );
+				z1 = Math.max( z1, coords[ 3 * i + 2 ] );
+			}
+			this.minX = x0;
+			this.minY = y0;
+			this.minZ = z0;
+			this.nx = cell( x1, x0 ) + 1;
+			this.ny = cell( y1, y0 ) + 1;
+			this.nz = cell( z1, z0 ) + 1;
+
+			final long[] keys = new long[ n ];
+			for ( int i = 0; i < n; i++ )
+				keys[ i ] = key( cell( coords[ 3 * i ], minX ), cell( coords[ 3 * i + 1 ], minY ), cell( coords[ 3 * i + 2 ], minZ ) );
+			this.sortedPoints = RadixSort.sort( keys, n );
+			this.sortedKeys = new long[ n ];
+			for ( int i = 0; i < n; i++ )
+				sortedKeys[ i ] = keys[ sortedPoints[ i ] ];
+		}
+
+		private long cell( final double x, final double min )
+		{
+			return ( long ) Math.floor( ( x - min ) / cellSize );
+		}
+
+		private long key( final long cx, final long cy, final long cz )
+		{
+			return ( cx * ny + cy ) * nz + cz;
+		}
+
+		/**
+		 * Adds to the candidates the points closer than the search distance
+		 * to the specified source.
+		 */
+		private void collect( final double[] sourceCoords, final int offset, final int source, final CandidateLinks candidates )
+		{
+			final double x = sourceCoords[ offset ];
+			final double y = sourceCoords[ offset + 1 ];
+			final double z = sourceCoords[ offset + 2 ];
+			final long cx = cell( x, minX );
+			final long cy = cell( y, minY );
+			final long cz = cell( z, minZ );
+			final long czLo = Math.max( 0l, cz - 1 );
+			final long czHi = Math.min( nz - 1, cz + 1 );
+			if ( czLo > czHi )
+				return;
+
+			for ( long ix = Math.max( 0l, cx - 1 ); ix <= Math.min( nx - 1, cx + 1 ); ix++ )
+			{
+				for ( long iy = Math.max( 0l, cy - 1 ); iy <= Math.min( ny - 1, cy + 1 ); iy++ )
+				{
+					final int hi = lowerBound( key( ix, iy, czHi ) + 1 );
+					for ( int p = lowerBound( key( ix, iy, czLo ) ); p < hi; p++ )
+					{
+						final int i = sortedPoints[ p ];
+						final double dx = coords[ 3 * i ] - x;
+						final double dy = coords[ 3 * i + 1 ] - y;
+						final double dz = coords[ 3 * i + 2 ] - z;
+						final double d2 = dx * dx + dy * dy + dz * dz;
+						if ( d2 <= maxSquareDistance )
+							candidates.add( source, null == ids ? i : ids[ i ], d2 );
+					}
+				}
+			}
+		}
+
+		private int lowerBound( final long key )
+		{
+			int lo = 0;
+			int hi = sortedKeys.length;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				if ( sortedKeys[ mid ] < key )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package fiji.plugin.trackmate.tracking.greedy;
+
+import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.readIntegerAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.writeAttribute;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.DEFAULT_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+import org.jdom2.Element;
+import org.scijava.plugin.Plugin;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.gui.ConfigurationPanel;
+import fiji.plugin.trackmate.gui.panels.tracker.GreedyTrackerConfigPanel;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
+
+@Plugin( type = SpotTrackerFactory.class, priority = 0.5d )
+public class GreedyTrackerFactory implements SpotTrackerFactory
+{
+	public static final String TRACKER_KEY = "GREEDY_TRACKER";
+
+	public static final String NAME = "Greedy global linker";
+
+	public static final String INFO_TEXT = "<html>" + "This tracker is meant for very large data sets made of well separated <br>" + "particles, for which the LAP trackers are too slow. " + "<p>" + "For each pair of frames, all the possible links shorter than the max <br>" + "linking distance are sorted by length, and the shortest links are accepted <br>" + "first, as long as their spots are not already linked. Links of equal <br>" + "length are accepted by increasing spot ID, so unlike the nearest neighbor <br>" + "tracker, the results do not depend on the order of the spots. <br>" + "Unlike the LAP trackers, the total cost of the links is not optimal, but <br>" + "it is close to the optimum when particles are well separated, and tracking <br>" + "is much faster. " + "<p>" + "Gaps can be closed the same way, by linking track ends to track starts <br>" + "found in the next frames, shortest gaps first. There cannot be any track <br>" + "merging or splitting." + " </html>";
+
+	private String errorMessage;
+
+	@Override
+	public String getInfoText()
+	{
+		return INFO_TEXT;
+	}
+
+	@Override
+	public ImageIcon getIcon()
+	{
+		return null;
+	}
+
+	@Override
+	public String getKey()
+	{
+		return TRACKER_KEY;
+	}
+
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+
+	@Override
+	public SpotTracker create( final SpotCollection spots, final Map< String, Object > settings )
+	{
+		return new GreedyTracker( spots, settings );
+	}
+
+	@Override
+	public ConfigurationPanel getTrackerConfigurationPanel( final Model model )
+	{
+		final String spaceUnits = model.getSpaceUnits();
+		return new GreedyTrackerConfigPanel( NAME, INFO_TEXT, spaceUnits );
+	}
+
+	@Override
+	public boolean marshall( final Map< String, Object > settings, final Element element )
+	{
+		boolean ok = true;
+		final StringBuilder str = new StringBuilder();
+
+		ok = ok & writeAttribute( settings, element, KEY_LINKING_MAX_DISTANCE, Double.class, str );
+		ok = ok & writeAttribute( settings, element, KEY_ALLOW_GAP_CLOSING, Boolean.class, str );
+		ok = ok & writeAttribute( settings, element, KEY_GAP_CLOSING_MAX_DISTANCE, Double.class, str );
+		ok = ok & writeAttribute( settings, element, KEY_GAP_CLOSING_MAX_FRAME_GAP, Integer.class, str );
+		if ( !ok )
+		{
+			errorMessage = str.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public boolean unmarshall( final Element element, final Map< String, Object > settings )
+	{
+		settings.clear();
+		final StringBuilder errorHolder = new StringBuilder();
+		boolean ok = true;
+
+		ok = ok & readDoubleAttribute( element, settings, KEY_LINKING_MAX_DISTANCE, errorHolder );
+		ok = ok & readBooleanAttribute( element, settings, KEY_ALLOW_GAP_CLOSING, errorHolder );
+		ok = ok & readDoubleAttribute( element, settings, KEY_GAP_CLOSING_MAX_DISTANCE, errorHolder );
+		ok = ok & readIntegerAttribute( element, settings, KEY_GAP_CLOSING_MAX_FRAME_GAP, errorHolder );
+		if ( !ok )
+		{
+			errorMessage = errorHolder.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public String toString( final Map< String, Object > sm )
+	{
+		if ( !checkSettingsValidity( sm ) ) { return errorMessage; }
+
+		final StringBuilder str = new StringBuilder();
+		str.append( String.format( "  Max distance: %.1f\n", ( Double ) sm.get( KEY_LINKING_MAX_DISTANCE ) ) );
+		if ( ( Boolean ) sm.get( KEY_ALLOW_GAP_CLOSING ) )
+		{
+			str.append( "  Gap closing.\n" );
+			str.append( String.format( "    - max distance: %.1f\n", ( Double ) sm.get( KEY_GAP_CLOSING_MAX_DISTANCE ) ) );
+			str.append( String.format( "    - max frame gap: %d\n", ( Integer ) sm.get( KEY_GAP_CLOSING_MAX_FRAME_GAP ) ) );
+		}
+		else
+		{
+			str.append( "  No gap closing.\n" );
+		}
+		return str.toString();
+	}
+
+	@Override
+	public Map< String, Object > getDefaultSettings()
+	{
+		final Map< String, Object > settings = new HashMap< >();
+		settings.put( KEY_LINKING_MAX_DISTANCE, DEFAULT_LINKING_MAX_DISTANCE );
+		settings.put( KEY_ALLOW_GAP_CLOSING, DEFAULT_ALLOW_GAP_CLOSING );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, DEFAULT_GAP_CLOSING_MAX_DISTANCE );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, DEFAULT_GAP_CLOSING_MAX_FRAME_GAP );
+		return settings;
+	}
+
+	@Override
+	public boolean checkSettingsValidity( final Map< String, Object > settings )
+	{
+		final StringBuilder str = new StringBuilder();
+		final boolean ok = GreedyTracker.checkInput( settings, str );
+		if ( !ok )
+		{
+			errorMessage = str.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+}
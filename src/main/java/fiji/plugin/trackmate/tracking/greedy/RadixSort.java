@@ -0,0 +1,121 @@
+package fiji.plugin.trackmate.tracking.greedy;
+
+import java.util.Arrays;
+
+/**
+ * Least-significant-digit radix sort of non-negative <code>long</code> keys,
+ * returning the sorting permutation instead of sorting the keys in place.
+ * <p>
+ * The sort is stable, so that equal keys are returned in the order they were
+ * given. Non-negative <code>double</code> values can be sorted with it thanks
+ * to {@link #costKey(double)}.
+ */
+final class RadixSort
+{
+
+	private static final int BITS = 16;
+
+	private static final int RADIX = 1 << BITS;
+
+	private static final int MASK = RADIX - 1;
+
+	private RadixSort()
+	{}
+
+	/**
+	 * Returns a sorting key for a non-negative cost. Sorting these keys sorts
+	 * the costs.
+	 *
+	 * @param cost
+	 *            the cost, must be positive or zero.
+	 * @return a non-negative <code>long</code> key.
+	 */
+	static final long costKey( final double cost )
+	{
+		// The IEEE-754 bit pattern of positive doubles is ordered like them.
+		return Double.doubleToLongBits( cost + 0d );
+	}
+
+	/**
+	 * Returns the permutation that sorts the first <code>n</code> elements of
+	 * the specified key array in ascending order.
+	 *
+	 * @param keys
+	 *            the keys to sort, must be non-negative. They are not
+	 *            modified.
+	 * @param n
+	 *            the number of keys to sort.
+	 * @return a new <code>int</code> array, such that
+	 *         <code>keys[ order[ i ] ]</code> is ascending.
+	 */
+	static final int[] sort( final long[] keys, final int n )
+	{
+		final int[] order = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+			order[ i ] = i;
+		return sort( keys, n, order );
+	}
+
+	/**
+	 * Sorts a permutation by the keys of its elements. Elements with equal
+	 * keys stay in the order of the permutation, so that several sorts can be
+	 * chained to sort by several keys, the least significant one first.
+	 *
+	 * @param keys
+	 *            the keys to sort, must be non-negative. They are not
+	 *            modified.
+	 * @param n
+	 *            the number of keys to sort.
+	 * @param permutation
+	 *            the initial order of the first <code>n</code> keys. It may be
+	 *            modified.
+	 * @return an <code>int</code> array, such that
+	 *         <code>keys[ order[ i ] ]</code> is ascending.
+	 */
+	static final int[] sort( final long[] keys, final int n, final int[] permutation )
+	{
+		int[] order = permutation;
+		if ( n < 2 )
+			return order;
+
+		long max = 0l;
+		for ( int i = 0; i < n; i++ )
+			max |= keys[ i ];
+
+		int[] buffer = new int[ n ];
+		final int[] counts = new int[ RADIX + 1 ];
+		for ( int shift = 0; shift < 64 && ( max >>> shift ) != 0l; shift += BITS )
+		{
+			Arrays.fill( counts, 0 );
+			for ( int i = 0; i < n; i++ )
+				counts[ ( int ) ( ( keys[ i ] >>> shift ) & MASK ) + 1 ]++;
+
+			// Skip the pass if all keys share the same digit.
+			boolean trivial = false;
+			for ( int d = 1; d <= RADIX; d++ )
+			{
+				if ( counts[ d ] == n )
+				{
+					trivial = true;
+					break;
+				}
+				if ( counts[ d ] != 0 )
+					break;
+			}
+			if ( trivial )
+				continue;
+
+			for ( int d = 0; d < RADIX; d++ )
+				counts[ d + 1 ] += counts[ d ];
+			for ( int i = 0; i < n; i++ )
+			{
+				final int index = order[ i ];
+				buffer[ counts[ ( int ) ( ( keys[ index ] >>> shift ) & MASK ) ]++ ] = index;
+			}
+			final int[] tmp = order;
+			order = buffer;
+			buffer = tmp;
+		}
+		return order;
+	}
+}
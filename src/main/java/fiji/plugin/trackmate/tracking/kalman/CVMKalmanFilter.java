@@ -1,51 +1,69 @@
 package fiji.plugin.trackmate.tracking.kalman;
 
-import Jama.Matrix;
-
 /**
  * A Kalman filter that deals with a single particle motion in 3D with a
  * constant velocity vector.
- * 
+ * <p>
+ * The state is <code>x, y, z, vx, vy, vz</code>, and the evolution matrix
+ * links position evolution and velocity through
+ * <code><b>x</b>(k+1) = <b>x</b>(k) + <b>v</b> × dt</code>. We assume
+ * <code><b>v</b></code> is constant and measured in unit of frames, so
+ * <code>dt = 1</code>. Only the position is measured.
+ * <p>
+ * Because the evolution, measurement and noise matrices all act identically
+ * and independently on each of the X, Y and Z axes, and because the initial
+ * state covariance is isotropic, the 6×6 state covariance matrix stays
+ * block-diagonal with three identical 2×2 (position, velocity) blocks. This
+ * implementation exploits this and stores a single 2×2 symmetric block. The
+ * prediction and update steps are then unrolled on primitive
+ * <code>double</code>s, and do not allocate anything except for the array
+ * returned by {@link #predict()}. This yields the same estimates as the
+ * generic matrix formulation, up to round-off errors.
+ *
  * @author Jean-Yves Tinevez - 2014
- * 
+ *
  */
 public class CVMKalmanFilter
 {
 
-	/**
-	 * The evolution matrix, or state transition matrix. In our case, it is the
-	 * matrix that links position evolution and velocity through
-	 * <code><b>x</b>(k+1) = <b>x</b>(k) + <b>v</b> × dt</code>. We assume
-	 * <code><b>v</b></code> is constant and measured in unit of frames, so
-	 * <code>dt = 1</code>.
+	/** Current state: <code>x, y, z, vx, vy, vz</code>. */
+	private final double[] X = new double[ 6 ];
+
+	/** Prediction: <code>x, y, z, vx, vy, vz</code>. */
+	private final double[] Xp = new double[ 6 ];
+
+	/*
+	 * The a posteriori error covariance matrix, measure the accuracy of the
+	 * state estimate. We store the 2×2 (position, velocity) block shared by
+	 * all axes.
 	 */
-	private final Matrix A;
+
+	/** Position variance. */
+	private double pxx;
+
+	/** Position - velocity covariance. */
+	private double pxv;
+
+	/** Velocity variance. */
+	private double pvv;
 
 	/**
-	 * The <i>a posteriori</i> error covariance matrix, measure the accuracy of
-	 * the state estimate.
+	 * Variance of the process noise on position. Determine how noisy the
+	 * process is.
 	 */
-	private Matrix P;
+	private final double qx;
 
 	/**
-	 * Covariance matrix of the process noise. Determine how noisy the process
-	 * is.
+	 * Variance of the process noise on velocity. Determine how noisy the
+	 * process is.
 	 */
-	private final Matrix Q;
+	private final double qv;
 
 	/**
-	 * Covariance matrix of the observation noise. Determine how noisy our
-	 * measurements are.
+	 * Variance of the observation noise. Determine how noisy our measurements
+	 * are.
 	 */
-	private final Matrix R;
-
-	/** Current state. */
-	private Matrix X;
-
-	private final Matrix H;
-
-	/** Prediction. */
-	private Matrix Xp;
+	private final double r;
 
 	/**
 	 * Number of occlusions (no measurements) that happened so far.
@@ -54,8 +72,8 @@ public class CVMKalmanFilter
 
 	/**
 	 * Initialize a new Kalman filter with the specified initial state.
-	 * 
-	 * 
+	 *
+	 *
 	 * @param X0
 	 *            initial state estimate. Must a 6 elements
 	 *            <code>double[]</code> array with
@@ -82,52 +100,72 @@ public class CVMKalmanFilter
 	public CVMKalmanFilter( final double[] X0, final double initStateCovariance, final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd )
 	{
 		// Initial state
-		X = new Matrix( X0, 6 );
-
-		// Evolution matrix
-		A = Matrix.identity( 6, 6 );
-		for ( int i = 0; i < 3; i++ )
-		{
-			A.set( i, 3 + i, 1 );
-		}
-
-		// Measurement matrix
-		H = Matrix.identity( 3, 6 );
+		System.arraycopy( X0, 0, X, 0, 6 );
 
 		// State covariance
-		P = Matrix.identity( 6, 6 ).times( initStateCovariance );
+		pxx = initStateCovariance;
+		pxv = 0d;
+		pvv = initStateCovariance;
 
 		// Process covariance
-		Q = Matrix.identity( 6, 6 );
-		for ( int i = 0; i < 3; i++ )
-		{
-			Q.set( i, i, positionProcessStd * positionProcessStd );
-			Q.set( 3 + i, 3 + i, velocityProcessStd * velocityProcessStd );
-		}
+		qx = positionProcessStd * positionProcessStd;
+		qv = velocityProcessStd * velocityProcessStd;
 
-		R = Matrix.identity( 3, 3 ).times( positionMeasurementStd * positionMeasurementStd );
+		// Measurement covariance
+		r = positionMeasurementStd * positionMeasurementStd;
 	}
 
 	/**
 	 * Runs the prediction step of the Kalman filter and returns the state
 	 * predicted by the evolution process.
-	 * 
+	 *
 	 * @return a new <code>double[]</code> of 6 elements containing the
 	 *         predicted state: <code>x, y, z, vx, vy, vz</code> with velocity
 	 *         in <code>length/frame</code> units.
-	 * 
+	 *
 	 */
 	public double[] predict()
 	{
-		Xp = A.times( X );
-		P = A.times( P.times( A.transpose() ) ).plus( Q );
-		return Xp.getColumnPackedCopy();
+		final double[] out = new double[ 6 ];
+		predict( out );
+		return out;
+	}
+
+	/**
+	 * Runs the prediction step of the Kalman filter and writes the state
+	 * predicted by the evolution process in the specified array.
+	 *
+	 * @param out
+	 *            a <code>double[]</code> array of at least 6 elements, that
+	 *            will receive the predicted state:
+	 *            <code>x, y, z, vx, vy, vz</code> with velocity in
+	 *            <code>length/frame</code> units.
+	 */
+	public void predict( final double[] out )
+	{
+		// Xp = A × X
+		Xp[ 0 ] = X[ 0 ] + X[ 3 ];
+		Xp[ 1 ] = X[ 1 ] + X[ 4 ];
+		Xp[ 2 ] = X[ 2 ] + X[ 5 ];
+		Xp[ 3 ] = X[ 3 ];
+		Xp[ 4 ] = X[ 4 ];
+		Xp[ 5 ] = X[ 5 ];
+
+		// P = A × P × A' + Q
+		final double nxx = pxx + 2d * pxv + pvv + qx;
+		final double nxv = pxv + pvv;
+		final double nvv = pvv + qv;
+		pxx = nxx;
+		pxv = nxv;
+		pvv = nvv;
+
+		System.arraycopy( Xp, 0, out, 0, 6 );
 	}
 
 	/**
 	 * Runs the update step of the Kalman filter based on the specified
 	 * measurement.
-	 * 
+	 *
 	 * @param Xm
 	 *            the measured position, must be specified as a 3 elements
 	 *            <code>double[]</code>array, containing the measured
@@ -141,48 +179,62 @@ public class CVMKalmanFilter
 		{
 			// Occlusion.
 			nOcclusion++;
-			X = Xp;
+			System.arraycopy( Xp, 0, X, 0, 6 );
 		}
 		else
 		{
-			final Matrix XM = new Matrix( Xm, 3 );
-			final Matrix TEMP = H.times( P.times( H.transpose() ) ).plus( R );
-			final Matrix K = P.times( H.transpose() ).times( TEMP.inverse() );
+			// Innovation covariance S = H × P × H' + R, same on all axes.
+			final double s = pxx + r;
+			// Kalman gain K = P × H' × S^-1.
+			final double kx = pxx / s;
+			final double kv = pxv / s;
+
 			// State
-			X = Xp.plus( K.times( XM.minus( H.times( Xp ) ) ) );
-			// Covariance
-			P = ( Matrix.identity( 6, 6 ).minus( K.times( H ) ) ).times( P );
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double innovation = Xm[ d ] - Xp[ d ];
+				X[ d ] = Xp[ d ] + kx * innovation;
+				X[ 3 + d ] = Xp[ 3 + d ] + kv * innovation;
+			}
+
+			// Covariance P = ( I - K × H ) × P
+			final double nxx = ( 1d - kx ) * pxx;
+			final double nxv = ( 1d - kx ) * pxv;
+			final double nvv = pvv - kv * pxv;
+			pxx = nxx;
+			pxv = nxv;
+			pvv = nvv;
 		}
 	}
 
 	/**
 	 * Return the root mean square error on position estimated through the state
 	 * covariance matrix.
-	 * 
+	 *
 	 * @return the estimated error on position.
 	 */
 	public double getPositionError()
 	{
-		return Math.sqrt( ( P.get( 0, 0 ) + P.get( 1, 1 ) + P.get( 2, 2 ) ) / 3d );
+		return Math.sqrt( pxx );
 	}
 
 	/**
 	 * Return the root mean square error on velocity estimated through the state
 	 * covariance matrix.
-	 * 
+	 *
 	 * @return the estimated error on velocity, in <code>length/frame</code>
 	 *         units.
 	 */
 	public double getVelocityError()
 	{
-		return Math.sqrt( ( P.get( 3, 3 ) + P.get( 4, 4 ) + P.get( 5, 5 ) ) / 3d );
+		return Math.sqrt( pvv );
 	}
 
 
 	/**
 	 * Returns the number of occlusion events that occurred since the
 	 * instantiation of this filter.
-	 * 
+	 *
 	 * @return the number of occlusions.
 	 */
 	public int getNOcclusion()
@@ -0,0 +1,551 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.multithreading.SimpleMultiThreading;
+
+/**
+ * The frame-by-frame engine of the {@link KalmanTracker}, usable on its own to
+ * track spots as they are acquired.
+ * <p>
+ * The Kalman tracker never revisits a link once it has been created: Links are
+ * reported to the listeners as soon as the frame of their target spot is
+ * processed. The tracker only retains the Kalman filters that are still
+ * active, each with the last spot it was associated to, and the orphan spots
+ * of the last frame. A filter is retired after <code>maxFrameGap</code>
+ * successive occlusions, so the memory used does not depend on the number of
+ * frames processed.
+ * <p>
+ * Frames are processed in increasing order. Frames skipped between two calls
+ * to {@link #processFrame(int, Collection)} are considered empty, and count as
+ * occlusions for all the active Kalman filters. The frame being processed is
+ * reported as status to the logger, and errors are logged as well.
+ */
+public class OnlineKalmanTracker implements OnlineSpotTracker, MultiThreaded
+{
+
+	private static final double ALTERNATIVE_COST_FACTOR = 1.05d;
+
+	private static final double PERCENTILE = 1d;
+
+	private static final String BASE_ERROR_MSG = "[KalmanTracker] ";
+
+	/**
+	 * Minimal number of Kalman filters each thread must predict for the
+	 * prediction step to be split across several threads. Below this, the
+	 * cost of starting threads dominates.
+	 */
+	private static final int MIN_KF_PER_THREAD = 10000;
+
+	private final List< LinkListener > linkListeners = new ArrayList<>();
+
+	private String errorMessage;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private final int maxFrameGap;
+
+	/** Max KF search cost. */
+	private final double maxCost;
+
+	/** Max cost to nucleate KFs. */
+	private final double maxInitialCost;
+
+	/** Cost function to nucleate KFs. */
+	private final CostFunction< Spot, Spot > nucleatingCostFunction = new SquareDistCostFunction();
+
+	private final double positionProcessStd;
+
+	private final double velocityProcessStd;
+
+	/**
+	 * Estimated from the spots of the first non-empty frame. Is
+	 * <code>NaN</code> until then.
+	 */
+	private double positionMeasurementStd = Double.NaN;
+
+	private boolean savePredictions = false;
+
+	private final SpotCollection predictionsCollection = new SpotCollection();
+
+	private int numThreads;
+
+	/** The master map that contains the currently active KFs. */
+	private final Map< CVMKalmanFilter, Spot > kalmanFiltersMap = new HashMap<>();
+
+	/** Spots in the PREVIOUS frame that were not part of a link. */
+	private Collection< Spot > previousOrphanSpots = Collections.emptyList();
+
+	private int lastFrame = Integer.MIN_VALUE;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * @param maxSearchRadius
+	 *            how far from a predicted position the tracker looks for
+	 *            candidate spots.
+	 * @param maxFrameGap
+	 *            the max number of successive occlusions a Kalman filter can
+	 *            bridge.
+	 * @param initialSearchRadius
+	 *            how far two spots can be apart when initiating a new track.
+	 */
+	public OnlineKalmanTracker( final double maxSearchRadius, final int maxFrameGap, final double initialSearchRadius )
+	{
+		this.maxFrameGap = maxFrameGap;
+		this.maxCost = maxSearchRadius * maxSearchRadius;
+		this.maxInitialCost = initialSearchRadius * initialSearchRadius;
+
+		/*
+		 * Estimate Kalman filter variances.
+		 *
+		 * The search radius is used to derive an estimate of the noise that
+		 * affects position and velocity. The two are linked: if we need a large
+		 * search radius, then the fluoctuations over predicted states are
+		 * large.
+		 */
+		this.positionProcessStd = maxSearchRadius / 3d;
+		this.velocityProcessStd = maxSearchRadius / 3d;
+
+		setNumThreads();
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	@Override
+	public boolean processFrame( final int frame, final Collection< Spot > spots )
+	{
+		if ( frame <= lastFrame )
+		{
+			errorMessage = BASE_ERROR_MSG + "Frames must be processed in increasing order. Got frame " + frame + " after frame " + lastFrame + ".";
+			logger.error( errorMessage + "\n" );
+			return false;
+		}
+
+		// Skipped frames are empty frames.
+		if ( lastFrame != Integer.MIN_VALUE )
+		{
+			final List< Spot > empty = Collections.emptyList();
+			for ( int f = lastFrame + 1; f < frame; f++ )
+			{
+				if ( kalmanFiltersMap.isEmpty() )
+				{
+					previousOrphanSpots = empty;
+					break;
+				}
+				if ( !step( f, empty ) )
+					return false;
+			}
+		}
+
+		lastFrame = frame;
+		logger.setStatus( "Tracking frame " + frame + "..." );
+		return step( frame, new ArrayList<>( spots ) );
+	}
+
+	@Override
+	public boolean finish()
+	{
+		// Links are final as soon as they are created. Nothing is pending.
+		kalmanFiltersMap.clear();
+		previousOrphanSpots = Collections.emptyList();
+		if ( savePredictions )
+		{
+			predictionsCollection.setVisible( true );
+		}
+		return true;
+	}
+
+	@Override
+	public int getLastFrame()
+	{
+		return lastFrame;
+	}
+
+	@Override
+	public boolean addLinkListener( final LinkListener listener )
+	{
+		if ( linkListeners.contains( listener ) )
+			return false;
+		return linkListeners.add( listener );
+	}
+
+	@Override
+	public boolean removeLinkListener( final LinkListener listener )
+	{
+		return linkListeners.remove( listener );
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	/**
+	 * Returns the number of Kalman filters currently active.
+	 *
+	 * @return the number of active Kalman filters.
+	 */
+	public int getNActiveFilters()
+	{
+		return kalmanFiltersMap.size();
+	}
+
+	/**
+	 * Returns the saved predicted state as a {@link SpotCollection}.
+	 * <p>
+	 * Saving predictions makes the memory used by this tracker grow with the
+	 * number of frames processed. It is meant for debugging and display.
+	 *
+	 * @return the predicted states.
+	 * @see #setSavePredictions(boolean)
+	 */
+	public SpotCollection getPredictions()
+	{
+		return predictionsCollection;
+	}
+
+	/**
+	 * Sets whether the tracker saves the predicted states.
+	 *
+	 * @param doSave
+	 *            if <code>true</code>, the predicted states will be saved.
+	 * @see #getPredictions()
+	 */
+	public void setSavePredictions( final boolean doSave )
+	{
+		this.savePredictions = doSave;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Processes one frame.
+	 *
+	 * @param frame
+	 *            the frame to process.
+	 * @param measurements
+	 *            the spots of this frame.
+	 * @return <code>true</code> if processing was successful.
+	 */
+	private boolean step( final int frame, final List< Spot > measurements )
+	{
+		if ( Double.isNaN( positionMeasurementStd ) )
+		{
+			/*
+			 * Initialize. We wait for the first non-empty frame, that will give
+			 * the first orphan spots.
+			 */
+			if ( measurements.isEmpty() )
+				return true;
+
+			/*
+			 * We assume the detector did a good job and that positions measured
+			 * are accurate up to a fraction of the spot radius
+			 */
+			double meanSpotRadius = 0d;
+			for ( final Spot spot : measurements )
+			{
+				meanSpotRadius += spot.getFeature( Spot.RADIUS ).doubleValue();
+			}
+			meanSpotRadius /= measurements.size();
+			positionMeasurementStd = meanSpotRadius / 10d;
+
+			previousOrphanSpots = measurements;
+			return true;
+		}
+
+		// Predict for all Kalman filters, and use it to generate linking
+		// candidates.
+		final List< CVMKalmanFilter > activeKFs = new ArrayList<>( kalmanFiltersMap.keySet() );
+		final double[][] predictedStates = predict( activeKFs );
+		final Map< ComparableRealPoint, CVMKalmanFilter > predictionMap = new HashMap< >( activeKFs.size() );
+		for ( int i = 0; i < activeKFs.size(); i++ )
+		{
+			final CVMKalmanFilter kf = activeKFs.get( i );
+			final ComparableRealPoint point = new ComparableRealPoint( predictedStates[ i ] );
+			predictionMap.put( point, kf );
+
+			if ( savePredictions )
+			{
+				final Spot pred = toSpot( point );
+				final Spot s = kalmanFiltersMap.get( kf );
+				pred.setName( "Pred_" + s.getName() );
+				pred.putFeature( Spot.RADIUS, s.getFeature( Spot.RADIUS ) );
+				predictionsCollection.add( pred, frame );
+			}
+		}
+		final List< ComparableRealPoint > predictions = new ArrayList< >( predictionMap.keySet() );
+
+		// The KF for which we could not find a measurement in the target
+		// frame. Is updated later.
+		final Collection< CVMKalmanFilter > childlessKFs = new HashSet< >( kalmanFiltersMap.keySet() );
+
+		// Spots in the current frame that are not part of a new link (no
+		// parent).
+		final Collection< Spot > orphanSpots = new HashSet< >( measurements );
+
+		// Find the global (in space) optimum for associating a prediction
+		// to a measurement.
+
+		if ( !predictions.isEmpty() && !measurements.isEmpty() )
+		{
+			// Only link measurements to predictions if we have predictions.
+
+			final JaqamanLinkingCostMatrixCreator< ComparableRealPoint, Spot > crm = new JaqamanLinkingCostMatrixCreator< >( predictions, measurements, CF, maxCost, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+			final JaqamanLinker< ComparableRealPoint, Spot > linker = new JaqamanLinker< >( crm );
+			if ( !linker.checkInput() || !linker.process() )
+			{
+				errorMessage = BASE_ERROR_MSG + "Error linking candidates in frame " + frame + ": " + linker.getErrorMessage();
+				logger.error( errorMessage + "\n" );
+				return false;
+			}
+			final Map< ComparableRealPoint, Spot > agnts = linker.getResult();
+			final Map< ComparableRealPoint, Double > costs = linker.getAssignmentCosts();
+
+			// Deal with found links.
+			for ( final ComparableRealPoint cm : agnts.keySet() )
+			{
+				final CVMKalmanFilter kf = predictionMap.get( cm );
+
+				// Create links for found match.
+				final Spot source = kalmanFiltersMap.get( kf );
+				final Spot target = agnts.get( cm );
+				fireLinkFinalized( source, target, costs.get( cm ) );
+
+				// Update Kalman filter
+				kf.update( toMeasurement( target ) );
+
+				// Update Kalman track spot
+				kalmanFiltersMap.put( kf, target );
+
+				// Remove from orphan set
+				orphanSpots.remove( target );
+
+				// Remove from childless KF set
+				childlessKFs.remove( kf );
+			}
+		}
+
+		/*
+		 * Deal with orphans from the previous frame. (We deal with orphans from
+		 * previous frame only now because we want to link in priority target
+		 * spots to predictions. Nucleating new KF from nearest neighbor only
+		 * comes second.
+		 */
+		if ( !previousOrphanSpots.isEmpty() && !orphanSpots.isEmpty() )
+		{
+			/*
+			 * We now deal with orphans of the previous frame. We try to find
+			 * them a target from the list of spots that are not already part of
+			 * a link created via KF. That is: the orphan spots of this frame.
+			 */
+
+			final JaqamanLinkingCostMatrixCreator< Spot, Spot > ic = new JaqamanLinkingCostMatrixCreator< >( previousOrphanSpots, orphanSpots, nucleatingCostFunction, maxInitialCost, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+			final JaqamanLinker< Spot, Spot > newLinker = new JaqamanLinker< >( ic );
+			if ( !newLinker.checkInput() || !newLinker.process() )
+			{
+				errorMessage = BASE_ERROR_MSG + "Error linking spots from frame " + ( frame - 1 ) + " to frame " + frame + ": " + newLinker.getErrorMessage();
+				logger.error( errorMessage + "\n" );
+				return false;
+			}
+			final Map< Spot, Spot > newAssignments = newLinker.getResult();
+			final Map< Spot, Double > assignmentCosts = newLinker.getAssignmentCosts();
+
+			// Build links and new KFs from these links.
+			for ( final Spot source : newAssignments.keySet() )
+			{
+				final Spot target = newAssignments.get( source );
+
+				// Remove from orphan collection.
+				orphanSpots.remove( target );
+
+				// Derive initial state and create Kalman filter.
+				final double[] XP = estimateInitialState( source, target );
+				final CVMKalmanFilter kt = new CVMKalmanFilter( XP, Double.MIN_NORMAL, positionProcessStd, velocityProcessStd, positionMeasurementStd );
+				// We trust the initial state a lot.
+
+				// Store filter and source
+				kalmanFiltersMap.put( kt, target );
+
+				// Add edge to the graph.
+				fireLinkFinalized( source, target, assignmentCosts.get( source ) );
+			}
+		}
+		previousOrphanSpots = orphanSpots;
+
+		// Deal with childless KFs.
+		for ( final CVMKalmanFilter kf : childlessKFs )
+		{
+			// Echo we missed a measurement
+			kf.update( null );
+
+			// We can bridge a limited number of gaps. If too much, we die.
+			// If not, we will use predicted state next time.
+			if ( kf.getNOcclusion() > maxFrameGap )
+			{
+				kalmanFiltersMap.remove( kf );
+			}
+		}
+
+		return true;
+	}
+
+	private void fireLinkFinalized( final Spot source, final Spot target, final double cost )
+	{
+		for ( final LinkListener listener : linkListeners )
+			listener.linkFinalized( source, target, cost );
+	}
+
+	/**
+	 * Runs the prediction step of all the specified Kalman filters, possibly in
+	 * parallel, and returns their predicted states in the same order.
+	 *
+	 * @param kfs
+	 *            the Kalman filters to predict.
+	 * @return a new <code>double[][]</code> array containing the predicted
+	 *         state of each filter.
+	 */
+	private double[][] predict( final List< CVMKalmanFilter > kfs )
+	{
+		final int nKFs = kfs.size();
+		final double[][] states = new double[ nKFs ][ 6 ];
+
+		final int nThreads = Math.min( numThreads, nKFs / MIN_KF_PER_THREAD );
+		if ( nThreads < 2 )
+		{
+			for ( int i = 0; i < nKFs; i++ )
+				kfs.get( i ).predict( states[ i ] );
+			return states;
+		}
+
+		final int chunkSize = ( nKFs + nThreads - 1 ) / nThreads;
+		final Thread[] threads = SimpleMultiThreading.newThreads( nThreads );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			final int from = ithread * chunkSize;
+			final int to = Math.min( nKFs, from + chunkSize );
+			threads[ ithread ] = new Thread( BASE_ERROR_MSG + "prediction thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = from; i < to; i++ )
+						kfs.get( i ).predict( states[ i ] );
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+		return states;
+	}
+
+	private static final double[] toMeasurement( final Spot spot )
+	{
+		final double[] d = new double[] {
+				spot.getDoublePosition( 0 ), spot.getDoublePosition( 1 ), spot.getDoublePosition( 2 )
+		};
+		return d;
+	}
+
+	private static final Spot toSpot( final ComparableRealPoint X )
+	{
+		final Spot spot = new Spot( X, 2d, -1d );
+		return spot;
+	}
+
+	private static final double[] estimateInitialState( final Spot first, final Spot second )
+	{
+		final double[] xp = new double[] { second.getDoublePosition( 0 ), second.getDoublePosition( 1 ), second.getDoublePosition( 2 ),
+				second.diffTo( first, Spot.POSITION_X ), second.diffTo( first, Spot.POSITION_Y ), second.diffTo( first, Spot.POSITION_Z ) };
+		return xp;
+	}
+
+	private static final class ComparableRealPoint extends RealPoint implements Comparable< ComparableRealPoint >
+	{
+		public ComparableRealPoint( final double[] A )
+		{
+			// Wrap array.
+			super( A, false );
+		}
+
+		/**
+		 * Sort based on X, Y, Z
+		 */
+		@Override
+		public int compareTo( final ComparableRealPoint o )
+		{
+			int i = 0;
+			while ( i < n )
+			{
+				if ( getDoublePosition( i ) != o.getDoublePosition( i ) ) { return ( int ) Math.signum( getDoublePosition( i ) - o.getDoublePosition( i ) ); }
+				i++;
+			}
+			return hashCode() - o.hashCode();
+		}
+	}
+
+	/**
+	 * Cost function that returns the square distance between a KF state and a
+	 * spots.
+	 */
+	private static final CostFunction< ComparableRealPoint, Spot > CF = new CostFunction< ComparableRealPoint, Spot >()
+	{
+
+		@Override
+		public double linkingCost( final ComparableRealPoint state, final Spot spot )
+		{
+			final double dx = state.getDoublePosition( 0 ) - spot.getDoublePosition( 0 );
+			final double dy = state.getDoublePosition( 1 ) - spot.getDoublePosition( 1 );
+			final double dz = state.getDoublePosition( 2 ) - spot.getDoublePosition( 2 );
+			return dx * dx + dy * dy + dz * dz + Double.MIN_NORMAL;
+			// So that it's never 0
+		}
+	};
+}
@@ -0,0 +1,286 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import java.util.List;
+
+/**
+ * A 3D kd-tree built from packed coordinates, whose nodes can be flagged as
+ * visited so that nearest-neighbor searches skip them.
+ * <p>
+ * This is the array-backed counterpart of a {@link net.imglib2.KDTree} of
+ * {@link FlagNode}s searched with a {@link NearestNeighborFlagSearchOnKDTree}.
+ * The tree is stored implicitly: the nodes of a range of the arrays are split
+ * at the median index of that range, along the dimension in which the range is
+ * the most extended. Degenerate dimensions, such as Z for 2D data, are
+ * therefore never used to split. Coordinates are stored contiguously in node
+ * order, and searching does not allocate anything.
+ * <p>
+ * Searching changes the state of the tree, which is therefore not
+ * thread-safe.
+ *
+ * @param <T>
+ *            the type of the values stored in the tree.
+ */
+public class FlagKDTree< T >
+{
+
+	private static final int N_DIMS = 3;
+
+	/** Coordinates in node order, packed as x0, y0, z0, x1, y1, z1... */
+	private final double[] pos;
+
+	private final Object[] values;
+
+	private final boolean[] visited;
+
+	/** Split dimension of each node, in node order. */
+	private final byte[] splitDims;
+
+	private final int size;
+
+	private final double[] query = new double[ N_DIMS ];
+
+	private int bestIndex;
+
+	private double bestSquDistance;
+
+	/**
+	 * Builds a tree.
+	 *
+	 * @param values
+	 *            the values to store.
+	 * @param coords
+	 *            the coordinates of the values, packed as
+	 *            <code>x0, y0, z0, x1, y1, z1...</code>, in the same order as
+	 *            the values. This array is not modified.
+	 */
+	public FlagKDTree( final List< T > values, final double[] coords )
+	{
+		this.size = values.size();
+		this.pos = new double[ N_DIMS * size ];
+		this.values = new Object[ size ];
+		this.visited = new boolean[ size ];
+		this.splitDims = new byte[ size ];
+
+		final int[] perm = new int[ size ];
+		for ( int i = 0; i < size; i++ )
+			perm[ i ] = i;
+		build( perm, coords, splitDims, 0, size );
+
+		for ( int i = 0; i < size; i++ )
+		{
+			final int j = perm[ i ];
+			System.arraycopy( coords, N_DIMS * j, pos, N_DIMS * i, N_DIMS );
+			this.values[ i ] = values.get( j );
+		}
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns the number of values in this tree.
+	 *
+	 * @return the number of values.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Searches the nearest node that is not flagged as visited.
+	 *
+	 * @param coords
+	 *            an array containing the coordinates of the query point.
+	 * @param offset
+	 *            the index of the X coordinate of the query point in the
+	 *            array.
+	 * @return the index of the nearest node, or <code>-1</code> if all the
+	 *         nodes are visited.
+	 */
+	public int search( final double[] coords, final int offset )
+	{
+		System.arraycopy( coords, offset, query, 0, N_DIMS );
+		bestIndex = -1;
+		bestSquDistance = Double.MAX_VALUE;
+		if ( size > 0 )
+			searchNode( 0, size );
+		return bestIndex;
+	}
+
+	/**
+	 * Returns the square distance to the node found by the last search.
+	 *
+	 * @return the square distance.
+	 */
+	public double getSquareDistance()
+	{
+		return bestSquDistance;
+	}
+
+	/**
+	 * Returns the value of the specified node.
+	 *
+	 * @param index
+	 *            the node index, as returned by {@link #search(double[], int)}.
+	 * @return the node value.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T get( final int index )
+	{
+		return ( T ) values[ index ];
+	}
+
+	/**
+	 * Flags the specified node as visited. It will be skipped by subsequent
+	 * searches.
+	 *
+	 * @param index
+	 *            the node index, as returned by {@link #search(double[], int)}.
+	 */
+	public void setVisited( final int index )
+	{
+		visited[ index ] = true;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void searchNode( final int lo, final int hi )
+	{
+		final int mid = ( lo + hi ) >>> 1;
+		final int p = N_DIMS * mid;
+
+		// Consider the current node.
+		if ( !visited[ mid ] )
+		{
+			final double dx = pos[ p ] - query[ 0 ];
+			final double dy = pos[ p + 1 ] - query[ 1 ];
+			final double dz = pos[ p + 2 ] - query[ 2 ];
+			final double distance = dx * dx + dy * dy + dz * dz;
+			if ( distance < bestSquDistance )
+			{
+				bestSquDistance = distance;
+				bestIndex = mid;
+			}
+		}
+
+		final int dim = splitDims[ mid ];
+		final double axisDiff = query[ dim ] - pos[ p + dim ];
+		final boolean leftIsNearBranch = axisDiff < 0;
+
+		// Search the near branch.
+		if ( leftIsNearBranch )
+		{
+			if ( lo < mid )
+				searchNode( lo, mid );
+		}
+		else
+		{
+			if ( mid + 1 < hi )
+				searchNode( mid + 1, hi );
+		}
+
+		// Search the away branch - maybe.
+		if ( axisDiff * axisDiff <= bestSquDistance )
+		{
+			if ( leftIsNearBranch )
+			{
+				if ( mid + 1 < hi )
+					searchNode( mid + 1, hi );
+			}
+			else
+			{
+				if ( lo < mid )
+					searchNode( lo, mid );
+			}
+		}
+	}
+
+	/**
+	 * Permutes the indices in the range so that the median along the widest
+	 * dimension is in the middle of the range, then recurses on both halves.
+	 */
+	private static void build( final int[] perm, final double[] coords, final byte[] splitDims, final int lo, final int hi )
+	{
+		if ( hi - lo < 2 )
+			return;
+
+		final double[] min = new double[ N_DIMS ];
+		final double[] max = new double[ N_DIMS ];
+		for ( int d = 0; d < N_DIMS; d++ )
+		{
+			min[ d ] = Double.POSITIVE_INFINITY;
+			max[ d ] = Double.NEGATIVE_INFINITY;
+		}
+		for ( int i = lo; i < hi; i++ )
+		{
+			final int p = N_DIMS * perm[ i ];
+			for ( int d = 0; d < N_DIMS; d++ )
+			{
+				final double c = coords[ p + d ];
+				if ( c < min[ d ] )
+					min[ d ] = c;
+				if ( c > max[ d ] )
+					max[ d ] = c;
+			}
+		}
+		int dim = 0;
+		for ( int d = 1; d < N_DIMS; d++ )
+		{
+			if ( max[ d ] - min[ d ] > max[ dim ] - min[ dim ] )
+				dim = d;
+		}
+
+		final int mid = ( lo + hi ) >>> 1;
+		select( perm, coords, lo, hi - 1, mid, dim );
+		splitDims[ mid ] = ( byte ) dim;
+		build( perm, coords, splitDims, lo, mid );
+		build( perm, coords, splitDims, mid + 1, hi );
+	}
+
+	/**
+	 * Quickselect on the indices in <code>[left, right]</code>, so that the
+	 * element at <code>k</code> is the one that would be there if the range
+	 * was sorted along the specified dimension. Elements equal to the pivot
+	 * are grouped, so that duplicate coordinates do not degrade it.
+	 */
+	private static void select( final int[] perm, final double[] coords, int left, int right, final int k, final int dim )
+	{
+		while ( right > left )
+		{
+			final double pivot = coords[ N_DIMS * perm[ ( left + right ) >>> 1 ] + dim ];
+
+			// Three-way partition: < pivot, == pivot, > pivot.
+			int lt = left;
+			int gt = right;
+			int i = left;
+			while ( i <= gt )
+			{
+				final double c = coords[ N_DIMS * perm[ i ] + dim ];
+				if ( c < pivot )
+					swap( perm, lt++, i++ );
+				else if ( c > pivot )
+					swap( perm, i, gt-- );
+				else
+					i++;
+			}
+
+			if ( k < lt )
+				right = lt - 1;
+			else if ( k > gt )
+				left = gt + 1;
+			else
+				return;
+		}
+	}
+
+	private static final void swap( final int[] perm, final int i, final int j )
+	{
+		final int tmp = perm[ i ];
+		perm[ i ] = perm[ j ];
+		perm[ j ] = tmp;
+	}
+}
@@ -5,14 +5,12 @@ import static fiji.plugin.trackmate.util.TMUtils.checkMapKeys;
 import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.imglib2.KDTree;
-import net.imglib2.RealPoint;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.multithreading.SimpleMultiThreading;
 
@@ -73,58 +71,61 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm	impl
 		final double maxLinkingDistance = (Double) settings.get(KEY_LINKING_MAX_DISTANCE);
 		final double maxDistSquare = maxLinkingDistance  * maxLinkingDistance;
 
-		final TreeSet<Integer> frames = new TreeSet<>(spots.keySet());
-		final Thread[] threads = new Thread[numThreads];
+		final Integer[] frames = spots.keySet().toArray(new Integer[0]);
+		final int nFrames = frames.length;
+		if (nFrames < 2) {
+			processingTime = System.currentTimeMillis() - start;
+			return true;
+		}
+
+		/*
+		 * Link each frame to the next one. The coordinates of a frame pair
+		 * are read and the kd-tree of its target frame is built when the pair
+		 * is processed, and dropped right after, so that each worker only
+		 * holds two frames at a time. Links are collected per worker, and
+		 * added to the graph at once afterwards.
+		 */
 
-		// Prepare the thread array
-		final AtomicInteger ai = new AtomicInteger(frames.first());
+		final AtomicInteger ai = new AtomicInteger(0);
 		final AtomicInteger progress = new AtomicInteger(0);
+		final Thread[] threads = SimpleMultiThreading.newThreads(numThreads);
+		final List<List<Spot>> linkSources = new ArrayList<>(threads.length);
+		final List<List<Spot>> linkTargets = new ArrayList<>(threads.length);
+		final double[][] linkCosts = new double[threads.length][];
+		final int[] nLinks = new int[threads.length];
+
 		for (int ithread = 0; ithread < threads.length; ithread++) {
 
+			final int threadIndex = ithread;
+			final List<Spot> sources = new ArrayList<>();
+			final List<Spot> targets = new ArrayList<>();
+			linkSources.add(sources);
+			linkTargets.add(targets);
+			linkCosts[threadIndex] = new double[16];
+
 			threads[ithread] = new Thread("Nearest neighbor tracker thread "+(1+ithread)+"/"+threads.length) {
 
 				@Override
 				public void run() {
 
-					for (int i = ai.getAndIncrement(); i < frames.last(); i = ai.getAndIncrement()) {
+					for (int i = ai.getAndIncrement(); i < nFrames - 1; i = ai.getAndIncrement()) {
 
 						// Build frame pair
-						final int sourceFrame = i;
-						final int targetFrame = frames.higher(i);
-
-						final int nTargetSpots = spots.getNSpots(targetFrame, true);
-						if (nTargetSpots < 1) {
+						final List<Spot> targetSpots = new ArrayList<>();
+						final double[] targetCoords = pack(frames[i + 1], targetSpots);
+						if (targetSpots.isEmpty()) {
 							continue;
 						}
-
-						final List<RealPoint> targetCoords = new ArrayList<>(nTargetSpots);
-						final List<FlagNode<Spot>> targetNodes = new ArrayList<>(nTargetSpots);
-						final Iterator<Spot> targetIt = spots.iterator(targetFrame, true);
-						while (targetIt.hasNext()) {
-							final double[] coords = new double[3];
-							final Spot spot = targetIt.next();
-							TMUtils.localize(spot, coords);
-							targetCoords.add(new RealPoint(coords));
-							targetNodes.add(new FlagNode<>(spot));
-						}
-
-
-						final KDTree<FlagNode<Spot>> tree = new KDTree<>(targetNodes, targetCoords);
-						final NearestNeighborFlagSearchOnKDTree<Spot> search = new NearestNeighborFlagSearchOnKDTree<>(tree);
+						final FlagKDTree<Spot> tree = new FlagKDTree<>(targetSpots, targetCoords);
+						final List<Spot> sourceSpots = new ArrayList<>();
+						final double[] sourceCoords = pack(frames[i], sourceSpots);
 
 						// For each spot in the source frame, find its nearest neighbor in the target frame
-						final Iterator<Spot> sourceIt = spots.iterator(sourceFrame, true);
-						while (sourceIt.hasNext()) {
-							final Spot source = sourceIt.next();
-							final double[] coords = new double[3];
-							TMUtils.localize(source, coords);
-							final RealPoint sourceCoords = new RealPoint(coords);
-							search.search(sourceCoords);
-
-							final double squareDist = search.getSquareDistance();
-							final FlagNode<Spot> targetNode = search.getSampler().get();
-
-							if (squareDist > maxDistSquare) {
+						for (int j = 0; j < sourceSpots.size(); j++) {
+							final int targetIndex = tree.search(sourceCoords, 3 * j);
+							final double squareDist = tree.getSquareDistance();
+
+							if (targetIndex < 0 || squareDist > maxDistSquare) {
 								// The closest we could find is too far. We skip this source spot and do not create a link
 								continue;
 							}
@@ -132,20 +133,19 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm	impl
 							// Everything is ok. This mode is free and below max dist. We create a link
 							// and mark this node as assigned.
 
-							targetNode.setVisited(true);
-							synchronized (graph) {
-								final DefaultWeightedEdge edge = graph.addEdge(source, targetNode.getValue());
-								graph.setEdgeWeight(edge, squareDist);
+							tree.setVisited(targetIndex);
+							sources.add(sourceSpots.get(j));
+							targets.add(tree.get(targetIndex));
+							if (nLinks[threadIndex] == linkCosts[threadIndex].length) {
+								linkCosts[threadIndex] = Arrays.copyOf(linkCosts[threadIndex], 2 * nLinks[threadIndex]);
 							}
-
+							linkCosts[threadIndex][nLinks[threadIndex]++] = squareDist;
 						}
-						logger.setProgress(progress.incrementAndGet() / (float)frames.size() );
 
+						logger.setProgress(progress.incrementAndGet() / (float)nFrames );
 					}
 				}
 			};
-
-
 		}
 
 		logger.setStatus("Tracking...");
@@ -153,6 +153,16 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm	impl
 
 		SimpleMultiThreading.startAndJoin(threads);
 
+		for (int t = 0; t < threads.length; t++) {
+			final List<Spot> sources = linkSources.get(t);
+			final List<Spot> targets = linkTargets.get(t);
+			final double[] costs = linkCosts[t];
+			for (int k = 0; k < nLinks[t]; k++) {
+				final DefaultWeightedEdge edge = graph.addEdge(sources.get(k), targets.get(k));
+				graph.setEdgeWeight(edge, costs[k]);
+			}
+		}
+
 		logger.setProgress(1);
 		logger.setStatus("");
 
@@ -166,6 +176,23 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm	impl
 		return graph;
 	}
 
+	/**
+	 * Reads the coordinates of the visible spots of a frame in a packed
+	 * array, and adds the spots to the specified list in the same order.
+	 */
+	private double[] pack(final Integer frame, final List<Spot> list) {
+		final double[] coords = new double[3];
+		final double[] packed = new double[3 * spots.getNSpots(frame, true)];
+		int index = 0;
+		for (final Spot spot : spots.iterable(frame, true)) {
+			TMUtils.localize(spot, coords);
+			System.arraycopy(coords, 0, packed, index, 3);
+			index += 3;
+			list.add(spot);
+		}
+		return packed;
+	}
+
 	public void reset() {
 		graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
 		final Iterator<Spot> it = spots.iterator(true);
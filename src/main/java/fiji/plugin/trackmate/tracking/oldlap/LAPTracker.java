@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jgrapht.alg.ConnectivityInspector;
@@ -24,10 +25,15 @@ import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.tracking.LAPUtils;
 import fiji.plugin.trackmate.tracking.SpotTracker;
 import fiji.plugin.trackmate.tracking.oldlap.costmatrix.LinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.oldlap.costmatrix.SparseLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.oldlap.costmatrix.SparseTrackSegmentCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.oldlap.costmatrix.TrackSegmentCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.AssignmentAlgorithm;
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.AssignmentProblem;
 import fiji.plugin.trackmate.tracking.oldlap.hungarian.HungarianAlgorithm;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.multithreading.SimpleMultiThreading;
 
@@ -103,6 +109,22 @@ import net.imglib2.multithreading.SimpleMultiThreading;
  * <p>
  * Solving both LAPs yields complete tracks.
  *
+ * <h2>Sparse mode</h2>
+ *
+ * <p>
+ * By default, the two cost matrices are not built as dense matrices. Only
+ * their non-blocked linking costs and their cutoff value are computed, by
+ * {@link SparseLinkingCostMatrixCreator} and
+ * {@link SparseTrackSegmentCostMatrixCreator}, and the problems are solved by
+ * the {@link JaqamanLinker}, which completes the matrices with the same
+ * alternative cost quadrants. The costs are the same as in the dense mode, so
+ * tracking results are the same up to ties between optimal solutions, but
+ * memory scales with the number of candidate links instead of with the square
+ * of the number of spots or track segments. The dense matrices and the
+ * {@link #createFrameToFrameLinkingCostMatrix(List, List, Map)} and
+ * {@link #createAssignmentProblemSolver()} hooks are used only when the sparse
+ * mode is switched off with {@link #setSparse(boolean)}.
+ *
  * <h2>How to use this class</h2>
  *
  * <p>
@@ -120,8 +142,21 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 	/** Logger used to echo progress on tracking. */
 	protected Logger logger	= Logger.VOID_LOGGER;
 
-	/** The cost matrix for linking individual track segments (step 2). */
+	/**
+	 * The cost matrix for linking individual track segments (step 2). Only
+	 * built in dense mode.
+	 */
 	protected double[][] segmentCosts = null;
+	/**
+	 * The sparse cost matrix creator for linking individual track segments
+	 * (step 2). Only built in sparse mode.
+	 */
+	protected SparseTrackSegmentCostMatrixCreator sparseSegmentCosts = null;
+	/**
+	 * If <code>true</code>, the LAPs are built as sparse cost matrices and
+	 * solved by the {@link JaqamanLinker}.
+	 */
+	protected boolean sparse = true;
 	/** Stores the objects to track as a list of Spots per frame. */
 
 	/**
@@ -214,6 +249,28 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 		return graph;
 	}
 
+	/**
+	 * Sets whether the LAPs are built as sparse cost matrices and solved by the
+	 * {@link JaqamanLinker}, or built as dense matrices and solved by the
+	 * {@link AssignmentAlgorithm} returned by
+	 * {@link #createAssignmentProblemSolver()}. Sparse by default.
+	 *
+	 * @param sparse
+	 *            whether to use sparse cost matrices.
+	 */
+	public void setSparse(final boolean sparse) {
+		this.sparse = sparse;
+	}
+
+	/**
+	 * Returns <code>true</code> if the LAPs are built as sparse cost matrices.
+	 *
+	 * @return whether this tracker uses sparse cost matrices.
+	 */
+	public boolean isSparse() {
+		return sparse;
+	}
+
 	/**
 	 * Set the cost matrix used for step 2, linking track segments into final
 	 * tracks.
@@ -229,6 +286,8 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 	/**
 	 * Get the cost matrix used for step 2, linking track segments into final
 	 * tracks.
+	 * <p>
+	 * Only built in dense mode. It is <code>null</code> in sparse mode.
 	 *
 	 * @return The cost matrix.
 	 */
@@ -359,6 +418,17 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 	 * @return True if executes successfully, false otherwise.
 	 */
 	public boolean createTrackSegmentCostMatrix() {
+		if (sparse) {
+			final SparseTrackSegmentCostMatrixCreator segCosts = new SparseTrackSegmentCostMatrixCreator(trackSegments, settings);
+			segCosts.setNumThreads(numThreads);
+			if (!segCosts.checkInput() || !segCosts.process()) {
+				errorMessage = BASE_ERROR_MESSAGE + segCosts.getErrorMessage();
+				return false;
+			}
+			sparseSegmentCosts = segCosts;
+			return true;
+		}
+
 		final TrackSegmentCostMatrixCreator segCosts = new TrackSegmentCostMatrixCreator(trackSegments, settings);
 		segCosts.setLogger(logger);
 		if (!segCosts.checkInput() || !segCosts.process()) {
@@ -404,6 +474,9 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 			return false;
 		}
 
+		if (sparse)
+			return solveSparseLAPForFinalTracks();
+
 		// Check that the cost matrix for this step exists.
 		if (null == segmentCosts) {
 			errorMessage = "The segment cost matrix (step 2) does not exists.";
@@ -454,6 +527,7 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 		// Prepare the thread array
 		final AtomicInteger ai = new AtomicInteger(0);
 		final AtomicInteger progress = new AtomicInteger(0);
+		final AtomicBoolean ok = new AtomicBoolean(true);
 		for (int ithread = 0; ithread < threads.length; ithread++) {
 
 			threads[ithread] = new Thread("LAPTracker track segment linking thread " + (1 + ithread) + "/" + threads.length) {
@@ -462,6 +536,8 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 				public void run() {
 
 					for (int i = ai.getAndIncrement(); i < framePairs.size(); i = ai.getAndIncrement()) {
+						if (!ok.get())
+							break;
 
 						// Get frame pairs
 						final int lFrame0 = framePairs.get(i)[0];
@@ -478,6 +554,15 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 							t1.add(iterator.next());
 						}
 
+						if (sparse) {
+							if (!solveSparseLAPForFramePair(t0, t1)) {
+								ok.set(false);
+								return;
+							}
+							logger.setProgress(0.5f * progress.incrementAndGet() / framePairs.size());
+							continue;
+						}
+
 						// Create cost matrix
 						final double[][] costMatrix = createFrameToFrameLinkingCostMatrix(t0, t1, settings);
 
@@ -534,6 +619,117 @@ public class LAPTracker extends MultiThreadedBenchmarkAlgorithm implements SpotT
 		SimpleMultiThreading.startAndJoin(threads);
 		logger.setProgress(0.5f);
 		logger.setStatus("");
+		return ok.get();
+	}
+
+	/**
+	 * Solves the frame to frame LAP for the specified spots with sparse cost
+	 * matrices, and updates the graph with found links.
+	 *
+	 * @param t0
+	 *            the list of spots in the first frame
+	 * @param t1
+	 *            the list of spots in the second frame
+	 * @return <code>true</code> if this executes correctly, <code>false</code>
+	 *         otherwise.
+	 */
+	private boolean solveSparseLAPForFramePair(final List<Spot> t0, final List<Spot> t1) {
+		final SparseLinkingCostMatrixCreator creator = new SparseLinkingCostMatrixCreator(t0, t1, settings);
+		final JaqamanLinker<Spot, Spot> linker = new JaqamanLinker<>(creator);
+		if (!linker.checkInput() || !linker.process()) {
+			errorMessage = BASE_ERROR_MESSAGE + linker.getErrorMessage();
+			return false;
+		}
+
+		final Map<Spot, Spot> assignment = linker.getResult();
+		final Map<Spot, Double> costs = linker.getAssignmentCosts();
+		synchronized (graph) {
+			for (final Spot s0 : assignment.keySet()) {
+				final DefaultWeightedEdge edge = graph.addEdge(s0, assignment.get(s0));
+				graph.setEdgeWeight(edge, costs.get(s0));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves the track segment LAP with the sparse cost matrix built in
+	 * {@link #createTrackSegmentCostMatrix()}, and links the track segments
+	 * accordingly.
+	 *
+	 * @return <code>true</code> if this executes correctly, <code>false</code>
+	 *         otherwise.
+	 */
+	private boolean solveSparseLAPForFinalTracks() {
+		if (null == sparseSegmentCosts) {
+			errorMessage = "The segment cost matrix (step 2) does not exists.";
+			return false;
+		}
+
+		logger.setStatus("Solving for final tracks...");
+		final SparseTrackSegmentCostMatrixCreator creator = sparseSegmentCosts;
+		final JaqamanLinker<Integer, Integer> linker = new JaqamanLinker<>(new CostMatrixCreator<Integer, Integer>() {
+			// The cost matrix is already computed, only expose it.
+
+			@Override
+			public boolean checkInput() {
+				return true;
+			}
+
+			@Override
+			public boolean process() {
+				return true;
+			}
+
+			@Override
+			public String getErrorMessage() {
+				return creator.getErrorMessage();
+			}
+
+			@Override
+			public long getProcessingTime() {
+				return creator.getProcessingTime();
+			}
+
+			@Override
+			public SparseCostMatrix getResult() {
+				return creator.getResult();
+			}
+
+			@Override
+			public List<Integer> getSourceList() {
+				return creator.getSourceList();
+			}
+
+			@Override
+			public List<Integer> getTargetList() {
+				return creator.getTargetList();
+			}
+
+			@Override
+			public double getAlternativeCostForSource(final Integer source) {
+				return creator.getAlternativeCostForSource(source);
+			}
+
+			@Override
+			public double getAlternativeCostForTarget(final Integer target) {
+				return creator.getAlternativeCostForTarget(target);
+			}
+		});
+		if (!linker.checkInput() || !linker.process()) {
+			errorMessage = BASE_ERROR_MESSAGE + linker.getErrorMessage();
+			return false;
+		}
+
+		// Every assignment of the top-left quadrant is a gap closing, merging or splitting event.
+		final Map<Integer, Integer> assignment = linker.getResult();
+		final Map<Integer, Double> costs = linker.getAssignmentCosts();
+		for (final Integer source : assignment.keySet()) {
+			final Spot s0 = creator.getSourceSpot(source);
+			final Spot s1 = creator.getTargetSpot(assignment.get(source));
+			final DefaultWeightedEdge edge = graph.addEdge(s0, s1);
+			graph.setEdgeWeight(edge, costs.get(source));
+		}
 		return true;
 	}
 
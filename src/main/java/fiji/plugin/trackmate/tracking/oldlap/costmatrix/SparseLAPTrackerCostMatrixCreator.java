@@ -0,0 +1,145 @@
+package fiji.plugin.trackmate.tracking.oldlap.costmatrix;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.DefaultCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+
+/**
+ * Base class for the sparse counterparts of the {@link LinkingCostMatrixCreator}
+ * and of the {@link TrackSegmentCostMatrixCreator}, that let the
+ * {@link fiji.plugin.trackmate.tracking.oldlap.LAPTracker} solve its problems
+ * with the {@link JaqamanLinker}.
+ * <p>
+ * The dense cost matrices of the LAP tracker are made of a top-left quadrant
+ * of linking costs, in which impossible links have the blocking value, and of
+ * three quadrants of alternative costs, all set to the same cutoff value. This
+ * is the structure the {@link JaqamanLinker} builds from a sparse top-left
+ * quadrant and an alternative cost, so only the non-blocked linking costs and
+ * the cutoff value need to be computed and stored. Memory is then linear in
+ * the number of candidate links, instead of quadratic in the number of spots
+ * or segments.
+ *
+ * @param <K>
+ *            the type of sources.
+ * @param <J>
+ *            the type of targets.
+ */
+public abstract class SparseLAPTrackerCostMatrixCreator< K extends Comparable< K >, J extends Comparable< J > > extends MultiThreadedBenchmarkAlgorithm implements CostMatrixCreator< K, J >
+{
+
+	/** The settings to comply to create a cost matrix. */
+	protected final Map< String, Object > settings;
+
+	private SparseCostMatrix scm;
+
+	private List< K > sourceList = Collections.emptyList();
+
+	private List< J > targetList = Collections.emptyList();
+
+	private double alternativeCost = Double.NaN;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	protected SparseLAPTrackerCostMatrixCreator( final Map< String, Object > settings )
+	{
+		this.settings = settings;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Builds the sparse cost matrix from candidate links.
+	 *
+	 * @param sources
+	 *            the sources of the candidate links.
+	 * @param targets
+	 *            the targets of the candidate links.
+	 * @param costs
+	 *            the costs of the candidate links.
+	 * @param cutoff
+	 *            the alternative cost, used for all sources and targets.
+	 * @return <code>true</code> if the matrix could be built.
+	 */
+	protected boolean build( final List< K > sources, final List< J > targets, final double[] costs, final double cutoff )
+	{
+		if ( costs.length == 0 )
+		{
+			/*
+			 * CAREFUL! The matrix is null if no acceptable links are found.
+			 */
+			scm = null;
+			sourceList = Collections.emptyList();
+			targetList = Collections.emptyList();
+			alternativeCost = Double.NaN;
+			return true;
+		}
+
+		final DefaultCostMatrixCreator< K, J > cmCreator = new DefaultCostMatrixCreator< K, J >( sources, targets, costs, 1d, 1d )
+		{
+			@Override
+			protected double computeAlternativeCosts()
+			{
+				return cutoff;
+			}
+		};
+		if ( !cmCreator.checkInput() || !cmCreator.process() )
+		{
+			errorMessage = cmCreator.getErrorMessage();
+			return false;
+		}
+		scm = cmCreator.getResult();
+		sourceList = cmCreator.getSourceList();
+		targetList = cmCreator.getTargetList();
+		alternativeCost = cutoff;
+		return true;
+	}
+
+	/**
+	 * Returns the cost matrix generated.
+	 * <p>
+	 * Careful, it can be <code>null</code> if no acceptable costs have been
+	 * found. In that case, the lists returned by {@link #getSourceList()} and
+	 * {@link #getTargetList()} are empty.
+	 *
+	 * @return a new {@link SparseCostMatrix} or <code>null</code>.
+	 */
+	@Override
+	public SparseCostMatrix getResult()
+	{
+		return scm;
+	}
+
+	@Override
+	public List< K > getSourceList()
+	{
+		return sourceList;
+	}
+
+	@Override
+	public List< J > getTargetList()
+	{
+		return targetList;
+	}
+
+	@Override
+	public double getAlternativeCostForSource( final K source )
+	{
+		return alternativeCost;
+	}
+
+	@Override
+	public double getAlternativeCostForTarget( final J target )
+	{
+		return alternativeCost;
+	}
+}
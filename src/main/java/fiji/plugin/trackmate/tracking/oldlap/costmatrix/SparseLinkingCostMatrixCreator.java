@@ -0,0 +1,109 @@
+package fiji.plugin.trackmate.tracking.oldlap.costmatrix;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
+
+/**
+ * Sparse counterpart of the {@link LinkingCostMatrixCreator}, for the frame to
+ * frame linking of the {@link fiji.plugin.trackmate.tracking.oldlap.LAPTracker}.
+ * <p>
+ * Costs are computed exactly like in the dense version: a link is blocked if
+ * the two spots are farther than the max linking distance, and its cost is
+ * given by
+ * {@link LAPUtils#computeLinkingCostFor(Spot, Spot, double, double, Map)}
+ * otherwise. The alternative cost is the largest linking cost times the
+ * alternative linking cost factor. Only the links that are not blocked are
+ * stored.
+ */
+public class SparseLinkingCostMatrixCreator extends SparseLAPTrackerCostMatrixCreator< Spot, Spot >
+{
+
+	/** The Spots belonging to time frame t. */
+	protected final List< Spot > t0;
+
+	/** The Spots belonging to time frame t+1. */
+	protected final List< Spot > t1;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public SparseLinkingCostMatrixCreator( final List< Spot > t0, final List< Spot > t1, final Map< String, Object > settings )
+	{
+		super( settings );
+		this.t0 = t0;
+		this.t1 = t1;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		boolean ok = true;
+		final StringBuilder errorHolder = new StringBuilder();
+		ok = ok & checkParameter( settings, KEY_LINKING_MAX_DISTANCE, Double.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_LINKING_FEATURE_PENALTIES, Map.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_BLOCKING_VALUE, Double.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.class, errorHolder );
+		ok = ok & checkParameter( settings, KEY_CUTOFF_PERCENTILE, Double.class, errorHolder );
+		if ( !ok )
+		{
+			errorMessage = errorHolder.toString();
+		}
+		return ok;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
+		final double blockingValue = ( Double ) settings.get( KEY_BLOCKING_VALUE );
+		final double alternativeObjectLinkingCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+
+		final List< Spot > sources = new ArrayList< >();
+		final List< Spot > targets = new ArrayList< >();
+		final ResizableDoubleArray costs = new ResizableDoubleArray();
+		double max = Double.NEGATIVE_INFINITY;
+		for ( final Spot s0 : t0 )
+		{
+			for ( final Spot s1 : t1 )
+			{
+				final double cost = LAPUtils.computeLinkingCostFor( s0, s1, maxDist, blockingValue, featurePenalties );
+				if ( cost < blockingValue )
+				{
+					sources.add( s0 );
+					targets.add( s1 );
+					costs.add( cost );
+					if ( cost > max )
+						max = cost;
+				}
+			}
+		}
+		costs.trimToSize();
+
+		final boolean ok = build( sources, targets, costs.data, alternativeObjectLinkingCostFactor * max );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return ok;
+	}
+}
@@ -0,0 +1,364 @@
+package fiji.plugin.trackmate.tracking.oldlap.costmatrix;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.multithreading.SimpleMultiThreading;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.ResizableDoubleArray;
+import fiji.plugin.trackmate.util.TMUtils;
+
+/**
+ * Sparse counterpart of the {@link TrackSegmentCostMatrixCreator}, for the
+ * gap-closing, merging and splitting step of the
+ * {@link fiji.plugin.trackmate.tracking.oldlap.LAPTracker}.
+ * <p>
+ * Sources and targets are indices in the top-left quadrant of the dense
+ * matrix. Source <code>i &lt; nSegments</code> is the end of track segment
+ * <code>i</code>, and source <code>nSegments + k</code> is the middle point
+ * <code>k</code>, as a splitting candidate. Target <code>j &lt; nSegments</code>
+ * is the start of track segment <code>j</code>, and target
+ * <code>nSegments + k</code> is the middle point <code>k</code>, as a merging
+ * candidate. Middle points are all the spots of the segments that have more
+ * than one spot. The spots they stand for are returned by
+ * {@link #getSourceSpot(Integer)} and {@link #getTargetSpot(Integer)}.
+ * <p>
+ * Costs and the cutoff are computed exactly like in the dense version, from
+ * the gap-closing, merging and splitting cost functions, except that blocked
+ * links are not stored. Candidates are searched only in the frames they can be
+ * found in, so that the whole quadrant is not scanned.
+ */
+public class SparseTrackSegmentCostMatrixCreator extends SparseLAPTrackerCostMatrixCreator< Integer, Integer >
+{
+
+	private final List< SortedSet< Spot > > trackSegments;
+
+	private List< Spot > middlePoints;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public SparseTrackSegmentCostMatrixCreator( final List< SortedSet< Spot > > trackSegments, final Map< String, Object > settings )
+	{
+		super( settings );
+		this.trackSegments = trackSegments;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( trackSegments.isEmpty() )
+		{
+			errorMessage = "There are no track segments.";
+			return false;
+		}
+		final StringBuilder errorHolder = new StringBuilder();
+		if ( !LAPUtils.checkSettingsValidity( settings, errorHolder ) )
+		{
+			errorMessage = errorHolder.toString();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the spot standing for the specified source.
+	 *
+	 * @param source
+	 *            a source of the cost matrix.
+	 * @return the end of a track segment or a splitting middle point.
+	 */
+	public Spot getSourceSpot( final Integer source )
+	{
+		final int i = source.intValue();
+		if ( i < trackSegments.size() )
+			return trackSegments.get( i ).last();
+		return middlePoints.get( i - trackSegments.size() );
+	}
+
+	/**
+	 * Returns the spot standing for the specified target.
+	 *
+	 * @param target
+	 *            a target of the cost matrix.
+	 * @return the start of a track segment or a merging middle point.
+	 */
+	public Spot getTargetSpot( final Integer target )
+	{
+		final int j = target.intValue();
+		if ( j < trackSegments.size() )
+			return trackSegments.get( j ).first();
+		return middlePoints.get( j - trackSegments.size() );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		// 1 - Get parameter values
+		final boolean allowGapClosing = ( Boolean ) settings.get( KEY_ALLOW_GAP_CLOSING );
+		final int frameCutoff = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+		final double gapClosingMaxDist = ( Double ) settings.get( KEY_GAP_CLOSING_MAX_DISTANCE );
+		final Map< String, Double > gapClosingPenalties = ( Map< String, Double > ) settings.get( KEY_GAP_CLOSING_FEATURE_PENALTIES );
+		final boolean allowMerging = ( Boolean ) settings.get( KEY_ALLOW_TRACK_MERGING );
+		final double mergingMaxDist = ( Double ) settings.get( KEY_MERGING_MAX_DISTANCE );
+		final Map< String, Double > mergingPenalties = ( Map< String, Double > ) settings.get( KEY_MERGING_FEATURE_PENALTIES );
+		final boolean allowSplitting = ( Boolean ) settings.get( KEY_ALLOW_TRACK_SPLITTING );
+		final double splittingMaxDist = ( Double ) settings.get( KEY_SPLITTING_MAX_DISTANCE );
+		final Map< String, Double > splittingPenalties = ( Map< String, Double > ) settings.get( KEY_SPLITTING_FEATURE_PENALTIES );
+		final double blockingValue = ( Double ) settings.get( KEY_BLOCKING_VALUE );
+		final double cutoffPercentile = ( Double ) settings.get( KEY_CUTOFF_PERCENTILE );
+		final double alternativeLinkingCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+
+		// 2 - Collect segment starts, ends and middle points, with their frame.
+		final int nSegments = trackSegments.size();
+		final int[] startFrames = new int[ nSegments ];
+		final int[] endFrames = new int[ nSegments ];
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			startFrames[ i ] = trackSegments.get( i ).first().getFeature( Spot.FRAME ).intValue();
+			endFrames[ i ] = trackSegments.get( i ).last().getFeature( Spot.FRAME ).intValue();
+		}
+
+		middlePoints = new ArrayList< >();
+		final List< Integer > middleSegmentList = new ArrayList< >();
+		if ( allowMerging || allowSplitting )
+		{
+			for ( int i = 0; i < nSegments; i++ )
+			{
+				final SortedSet< Spot > trackSegment = trackSegments.get( i );
+				if ( trackSegment.size() > 1 )
+				{
+					for ( final Spot spot : trackSegment )
+					{
+						middlePoints.add( spot );
+						middleSegmentList.add( Integer.valueOf( i ) );
+					}
+				}
+			}
+		}
+		final int nMiddles = middlePoints.size();
+		final int[] middleFrames = new int[ nMiddles ];
+		final int[] middleSegments = new int[ nMiddles ];
+		for ( int k = 0; k < nMiddles; k++ )
+		{
+			middleFrames[ k ] = middlePoints.get( k ).getFeature( Spot.FRAME ).intValue();
+			middleSegments[ k ] = middleSegmentList.get( k ).intValue();
+		}
+
+		// Sort starts and middle points by frame, to look them up by frame.
+		final int[] startOrder = sortByFrame( startFrames );
+		final int[] sortedStartFrames = permute( startFrames, startOrder );
+		final int[] middleOrder = sortByFrame( middleFrames );
+		final int[] sortedMiddleFrames = permute( middleFrames, middleOrder );
+
+		// 3 - Find candidates, row by row.
+		final int nRows = allowSplitting ? nSegments + nMiddles : nSegments;
+		final int[][] rowTargets = new int[ nRows ][];
+		final double[][] rowCosts = new double[ nRows ][];
+
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( "LAPTracker sparse segment cost thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					final ResizableIntArray targets = new ResizableIntArray();
+					final ResizableDoubleArray costs = new ResizableDoubleArray();
+					for ( int row = ai.getAndIncrement(); row < nRows; row = ai.getAndIncrement() )
+					{
+						targets.size = 0;
+						costs.size = 0;
+
+						if ( row < nSegments )
+						{
+							final Spot end = trackSegments.get( row ).last();
+							final int endFrame = endFrames[ row ];
+
+							// Gap closing.
+							if ( allowGapClosing )
+							{
+								for ( int p = firstIndexAtOrAfter( sortedStartFrames, endFrame + 1 ); p < nSegments && sortedStartFrames[ p ] <= endFrame + frameCutoff + 1; p++ )
+								{
+									final int j = startOrder[ p ];
+									if ( j == row )
+										continue;
+									final double cost = LAPUtils.computeLinkingCostFor( end, trackSegments.get( j ).first(), gapClosingMaxDist, blockingValue, gapClosingPenalties );
+									if ( cost < blockingValue )
+									{
+										targets.add( j );
+										costs.add( cost );
+									}
+								}
+							}
+
+							// Merging.
+							if ( allowMerging )
+							{
+								for ( int p = firstIndexAtOrAfter( sortedMiddleFrames, endFrame + 1 ); p < nMiddles && sortedMiddleFrames[ p ] == endFrame + 1; p++ )
+								{
+									final int k = middleOrder[ p ];
+									final double cost = LAPUtils.computeLinkingCostFor( end, middlePoints.get( k ), mergingMaxDist, blockingValue, mergingPenalties );
+									if ( cost < blockingValue )
+									{
+										targets.add( nSegments + k );
+										costs.add( cost );
+									}
+								}
+							}
+						}
+						else
+						{
+							// Splitting.
+							final int k = row - nSegments;
+							final Spot middle = middlePoints.get( k );
+							final int middleFrame = middleFrames[ k ];
+							for ( int p = firstIndexAtOrAfter( sortedStartFrames, middleFrame + 1 ); p < nSegments && sortedStartFrames[ p ] == middleFrame + 1; p++ )
+							{
+								final int j = startOrder[ p ];
+								if ( j == middleSegments[ k ] )
+									continue;
+								final double cost = LAPUtils.computeLinkingCostFor( trackSegments.get( j ).first(), middle, splittingMaxDist, blockingValue, splittingPenalties );
+								if ( cost < blockingValue )
+								{
+									targets.add( j );
+									costs.add( cost );
+								}
+							}
+						}
+
+						rowTargets[ row ] = Arrays.copyOf( targets.data, targets.size );
+						rowCosts[ row ] = Arrays.copyOf( costs.data, costs.size );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		// 4 - Gather candidates and compute the cutoff.
+		int nCandidates = 0;
+		for ( int row = 0; row < nRows; row++ )
+			nCandidates += rowCosts[ row ].length;
+
+		final List< Integer > sources = new ArrayList< >( nCandidates );
+		final List< Integer > targets = new ArrayList< >( nCandidates );
+		final double[] costs = new double[ nCandidates ];
+		int index = 0;
+		for ( int row = 0; row < nRows; row++ )
+		{
+			final Integer source = Integer.valueOf( row );
+			for ( int c = 0; c < rowCosts[ row ].length; c++ )
+			{
+				sources.add( source );
+				targets.add( Integer.valueOf( rowTargets[ row ][ c ] ) );
+				costs[ index++ ] = rowCosts[ row ][ c ];
+			}
+		}
+
+		double cutoff = TMUtils.getPercentile( costs, cutoffPercentile );
+		if ( !( cutoff < blockingValue ) )
+		{
+			// No costs to compute the cutoff from. Same value as in the dense version.
+			cutoff = 10.0d;
+		}
+
+		final boolean ok = build( sources, targets, costs, alternativeLinkingCostFactor * cutoff );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return ok;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Returns the indices that sort the specified frames.
+	 */
+	private static final int[] sortByFrame( final int[] frames )
+	{
+		final long[] keys = new long[ frames.length ];
+		for ( int i = 0; i < frames.length; i++ )
+			keys[ i ] = ( ( long ) frames[ i ] << 32 ) | i;
+		Arrays.sort( keys );
+		final int[] order = new int[ frames.length ];
+		for ( int i = 0; i < frames.length; i++ )
+			order[ i ] = ( int ) keys[ i ];
+		return order;
+	}
+
+	private static final int[] permute( final int[] values, final int[] order )
+	{
+		final int[] permuted = new int[ order.length ];
+		for ( int i = 0; i < order.length; i++ )
+			permuted[ i ] = values[ order[ i ] ];
+		return permuted;
+	}
+
+	/**
+	 * Returns the index of the first element of the sorted array that is
+	 * larger than or equal to the specified value.
+	 */
+	private static final int firstIndexAtOrAfter( final int[] sorted, final int value )
+	{
+		int lo = 0;
+		int hi = sorted.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( sorted[ mid ] < value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Minimal growable int array, to collect the candidates of a row.
+	 */
+	private static final class ResizableIntArray
+	{
+
+		private int[] data = new int[ 16 ];
+
+		private int size = 0;
+
+		private void add( final int val )
+		{
+			if ( size == data.length )
+				data = Arrays.copyOf( data, 2 * size );
+			data[ size++ ] = val;
+		}
+	}
+}
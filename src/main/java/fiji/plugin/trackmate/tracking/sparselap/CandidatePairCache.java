@@ -0,0 +1,394 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.multithreading.SimpleMultiThreading;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostKernel;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+
+/**
+ * A cache for the frame-to-frame linking candidates of a
+ * {@link SpotCollection}, to speed up repeated tracking runs that only differ
+ * by their maximal linking distance or alternative cost factor, for instance
+ * when tuning tracker parameters.
+ * <p>
+ * The candidate pairs of each pair of consecutive frames are computed with
+ * their raw cost at the largest distance requested so far, and are stored with
+ * a stamp of the spot collection and the feature penalties they were computed
+ * with. The stamp is made of the {@link SpotCollection#getVersion() version} of
+ * the collection and of its number of visible spots. A subsequent run with the
+ * same stamp and the same feature penalties, at a smaller or equal distance,
+ * filters the cached candidates instead of computing all the costs again. A
+ * run at a larger distance, with other feature penalties or on a modified spot
+ * collection recomputes the candidates.
+ * <p>
+ * Spots edited through the {@link fiji.plugin.trackmate.Model Model} change
+ * the version of its spot collection. Spots whose position or features are
+ * changed directly do not, and the cache must then be cleared with
+ * {@link #clear()}. The cache holds the candidates of a single spot
+ * collection and only a weak reference to the collection itself, so it can be
+ * kept by long-lived objects like tracker factories.
+ * <p>
+ * Instances can be shared by several trackers, run sequentially or
+ * concurrently. Candidates are computed outside of the lock of the cache; a
+ * caller that comes while they are computed waits for them, and only computes
+ * candidates again if they do not match its request. The candidates returned
+ * by the cache are immutable, and stay valid after the cache is updated.
+ */
+public class CandidatePairCache
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[CandidatePairCache] ";
+
+	private final double minMaxDistance;
+
+	private WeakReference< SpotCollection > spots;
+
+	private long version;
+
+	private int nVisibleSpots;
+
+	private Map< String, Double > featurePenalties;
+
+	private Candidates candidates;
+
+	private int nComputations = 0;
+
+	/** Whether a caller is computing candidates, outside of the lock. */
+	private boolean computing = false;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Creates a cache that computes candidates at the largest distance
+	 * requested.
+	 */
+	public CandidatePairCache()
+	{
+		this( 0d );
+	}
+
+	/**
+	 * Creates a cache that computes candidates at least up to the specified
+	 * distance, so that runs at smaller distances are served from the cache
+	 * from the start.
+	 *
+	 * @param maxDistance
+	 *            the minimal distance to compute candidates at.
+	 */
+	public CandidatePairCache( final double maxDistance )
+	{
+		this.minMaxDistance = maxDistance;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns the linking candidates of the visible spots of the specified
+	 * collection, up to at least the specified distance. Candidates are
+	 * computed if they are not in the cache already.
+	 *
+	 * @param spots
+	 *            the spots to link.
+	 * @param featurePenalties
+	 *            the linking feature penalties. Can be <code>null</code>.
+	 * @param maxDistance
+	 *            the maximal linking distance.
+	 * @param numThreads
+	 *            the number of threads to use if the candidates have to be
+	 *            computed.
+	 * @return the candidates.
+	 */
+	public Candidates get( final SpotCollection spots, final Map< String, Double > featurePenalties, final double maxDistance, final int numThreads )
+	{
+		final Map< String, Double > penalties = ( null == featurePenalties ) ? Collections.< String, Double > emptyMap() : featurePenalties;
+		final double threshold = maxDistance * maxDistance;
+		final long newVersion = spots.getVersion();
+		final int newNVisibleSpots = spots.getNSpots( true );
+
+		synchronized ( this )
+		{
+			// Candidates being computed may be the ones we need.
+			while ( computing )
+			{
+				try
+				{
+					wait();
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if ( null != candidates && spots == this.spots.get() && newVersion == version && newNVisibleSpots == nVisibleSpots && penalties.equals( this.featurePenalties ) && threshold <= candidates.costThreshold )
+				return candidates;
+			computing = true;
+		}
+
+		Candidates computed = null;
+		try
+		{
+			final double maxDist = Math.max( maxDistance, minMaxDistance );
+			computed = compute( spots, penalties, maxDist * maxDist, numThreads );
+			return computed;
+		}
+		finally
+		{
+			synchronized ( this )
+			{
+				if ( null != computed )
+				{
+					candidates = computed;
+					this.spots = new WeakReference< >( spots );
+					this.version = newVersion;
+					this.nVisibleSpots = newNVisibleSpots;
+					this.featurePenalties = new HashMap< >( penalties );
+					nComputations++;
+				}
+				computing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of times candidates had to be computed since this
+	 * cache was created.
+	 *
+	 * @return the number of cache misses.
+	 */
+	public synchronized int getNComputations()
+	{
+		return nComputations;
+	}
+
+	/**
+	 * Empties this cache.
+	 */
+	public synchronized void clear()
+	{
+		spots = null;
+		featurePenalties = null;
+		candidates = null;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static Candidates compute( final SpotCollection spots, final Map< String, Double > penalties, final double threshold, final int numThreads )
+	{
+		final Integer[] frames = spots.keySet().toArray( new Integer[ 0 ] );
+		final int nPairs = Math.max( 0, frames.length - 1 );
+		final FeaturePenaltyCostKernel kernel = new FeaturePenaltyCostKernel( penalties );
+
+		final List< List< Spot > > frameSpots = new ArrayList< >( frames.length );
+		final double[][] framePacked = new double[ frames.length ][];
+		for ( int i = 0; i < frames.length; i++ )
+			frameSpots.add( null );
+
+		final int[][] candidateSources = new int[ nPairs ][];
+		final int[][] candidateTargets = new int[ nPairs ][];
+		final double[][] candidateCosts = new double[ nPairs ][];
+
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = ai.getAndIncrement(); i < frames.length; i = ai.getAndIncrement() )
+					{
+						final List< Spot > list = new ArrayList< >( spots.getNSpots( frames[ i ], true ) );
+						for ( final Iterator< Spot > iterator = spots.iterator( frames[ i ], true ); iterator.hasNext(); )
+							list.add( iterator.next() );
+						frameSpots.set( i, list );
+						framePacked[ i ] = kernel.pack( list );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		ai.set( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = ai.getAndIncrement(); i < nPairs; i = ai.getAndIncrement() )
+					{
+						final int nSources = frameSpots.get( i ).size();
+						final int nTargets = frameSpots.get( i + 1 ).size();
+						final double[] packedSources = framePacked[ i ];
+						final double[] packedTargets = framePacked[ i + 1 ];
+
+						int[] sources = new int[ 16 ];
+						int[] targets = new int[ 16 ];
+						double[] costs = new double[ 16 ];
+						int n = 0;
+						for ( int s = 0; s < nSources; s++ )
+						{
+							for ( int t = 0; t < nTargets; t++ )
+							{
+								final double cost = kernel.linkingCost( packedSources, s, packedTargets, t );
+								if ( cost < threshold )
+								{
+									if ( n == costs.length )
+									{
+										sources = Arrays.copyOf( sources, 2 * n );
+										targets = Arrays.copyOf( targets, 2 * n );
+										costs = Arrays.copyOf( costs, 2 * n );
+									}
+									sources[ n ] = s;
+									targets[ n ] = t;
+									costs[ n ] = cost;
+									n++;
+								}
+							}
+						}
+						candidateSources[ i ] = Arrays.copyOf( sources, n );
+						candidateTargets[ i ] = Arrays.copyOf( targets, n );
+						candidateCosts[ i ] = Arrays.copyOf( costs, n );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		return new Candidates( threshold, frames, frameSpots, candidateSources, candidateTargets, candidateCosts );
+	}
+
+	/*
+	 * INNER CLASS
+	 */
+
+	/**
+	 * The linking candidates of a spot collection, as returned by the cache.
+	 * Instances are immutable.
+	 */
+	public static class Candidates
+	{
+
+		private final double costThreshold;
+
+		private final Integer[] frames;
+
+		private final List< List< Spot > > frameSpots;
+
+		/*
+		 * Candidates of each frame pair, as indices in the spot lists of the
+		 * source and target frames and raw cost.
+		 */
+
+		private final int[][] candidateSources;
+
+		private final int[][] candidateTargets;
+
+		private final double[][] candidateCosts;
+
+		private Candidates( final double costThreshold, final Integer[] frames, final List< List< Spot > > frameSpots, final int[][] candidateSources, final int[][] candidateTargets, final double[][] candidateCosts )
+		{
+			this.costThreshold = costThreshold;
+			this.frames = frames;
+			this.frameSpots = frameSpots;
+			this.candidateSources = candidateSources;
+			this.candidateTargets = candidateTargets;
+			this.candidateCosts = candidateCosts;
+		}
+
+		/**
+		 * Returns the frames of the spot collection, in increasing order.
+		 * Frame pairs are made of consecutive frames in this array.
+		 *
+		 * @return the frames.
+		 */
+		public Integer[] getFrames()
+		{
+			return frames.clone();
+		}
+
+		/**
+		 * Returns the number of candidate pairs for the specified frame pair,
+		 * at the distance they were computed at.
+		 *
+		 * @param pair
+		 *            the index of the frame pair, that is the index of its
+		 *            source frame in the array returned by {@link #getFrames()}.
+		 * @return the number of candidates.
+		 */
+		public int getNCandidates( final int pair )
+		{
+			return candidateCosts[ pair ].length;
+		}
+
+		/**
+		 * Creates a cost matrix creator for the specified frame pair, from the
+		 * candidates whose cost is below the specified threshold.
+		 *
+		 * @param pair
+		 *            the index of the frame pair, that is the index of its
+		 *            source frame in the array returned by {@link #getFrames()}.
+		 * @param threshold
+		 *            the cost above which candidates are discarded. Must not be
+		 *            larger than the square of the distance the candidates were
+		 *            requested at.
+		 * @param alternativeCostFactor
+		 *            the alternative cost factor.
+		 * @param percentile
+		 *            the percentile of costs used to compute the alternative
+		 *            cost.
+		 * @return a new cost matrix creator, or <code>null</code> if there is
+		 *         no candidate for this frame pair.
+		 */
+		public JaqamanLinkingCostMatrixCreator< Spot, Spot > createCostMatrixCreator( final int pair, final double threshold, final double alternativeCostFactor, final double percentile )
+		{
+			if ( threshold > costThreshold )
+				throw new IllegalArgumentException( BASE_ERROR_MESSAGE + "Requested cost threshold " + threshold + " is larger than the one of the cached candidates, " + costThreshold + "." );
+
+			final List< Spot > sourceSpots = frameSpots.get( pair );
+			final List< Spot > targetSpots = frameSpots.get( pair + 1 );
+			final int[] sources = candidateSources[ pair ];
+			final int[] targets = candidateTargets[ pair ];
+			final double[] costs = candidateCosts[ pair ];
+
+			final List< Spot > accSources = new ArrayList< >();
+			final List< Spot > accTargets = new ArrayList< >();
+			final double[] accCosts = new double[ costs.length ];
+			int n = 0;
+			for ( int k = 0; k < costs.length; k++ )
+			{
+				if ( costs[ k ] < threshold )
+				{
+					accSources.add( sourceSpots.get( sources[ k ] ) );
+					accTargets.add( targetSpots.get( targets[ k ] ) );
+					accCosts[ n++ ] = costs[ k ];
+				}
+			}
+			if ( n == 0 )
+				return null;
+
+			return new JaqamanLinkingCostMatrixCreator< >( accSources, accTargets, Arrays.copyOf( accCosts, n ), alternativeCostFactor, percentile );
+		}
+	}
+}
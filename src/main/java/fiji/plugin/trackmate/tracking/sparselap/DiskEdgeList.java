@@ -0,0 +1,242 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker.LinkListener;
+
+/**
+ * A list of links spilled to a file as they are created, so that the links of
+ * very large datasets do not have to be held in memory.
+ * <p>
+ * Each link is stored as the ID of its source spot, the ID of its target spot
+ * and its cost, in a fixed-size binary record. This list can be registered
+ * directly as a {@link LinkListener} of an
+ * {@link fiji.plugin.trackmate.tracking.OnlineSpotTracker}. Once all the links
+ * have been written, the list must be closed before it is read back with
+ * {@link #read(EdgeVisitor)}.
+ */
+public class DiskEdgeList implements LinkListener, Closeable
+{
+
+	/** Size in bytes of one link record. */
+	public static final int RECORD_SIZE = 4 + 4 + 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File file;
+
+	private final boolean temporary;
+
+	private DataOutputStream out;
+
+	private long size = 0;
+
+	/**
+	 * Creates a new edge list that spills its links to a temporary file. The
+	 * file is deleted by {@link #delete()} or when the JVM exits.
+	 *
+	 * @throws IOException
+	 *             if the temporary file cannot be created.
+	 */
+	public DiskEdgeList() throws IOException
+	{
+		this( File.createTempFile( "TrackMate-edges-", ".bin" ), true );
+	}
+
+	/**
+	 * Creates a new edge list that spills its links to the specified file. The
+	 * file is overwritten if it exists.
+	 *
+	 * @param file
+	 *            the file to write the links to.
+	 * @param temporary
+	 *            if <code>true</code>, the file will be deleted when
+	 *            {@link #delete()} is called or when the JVM exits.
+	 * @throws IOException
+	 *             if the file cannot be opened for writing.
+	 */
+	public DiskEdgeList( final File file, final boolean temporary ) throws IOException
+	{
+		this.file = file;
+		this.temporary = temporary;
+		if ( temporary )
+			file.deleteOnExit();
+		this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE ) );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Appends a link to this list.
+	 *
+	 * @param sourceID
+	 *            the ID of the source spot.
+	 * @param targetID
+	 *            the ID of the target spot.
+	 * @param cost
+	 *            the link cost.
+	 * @throws IOException
+	 *             if the link cannot be written.
+	 */
+	public synchronized void add( final int sourceID, final int targetID, final double cost ) throws IOException
+	{
+		if ( null == out )
+			throw new IOException( "Cannot add links to the closed edge list " + file + "." );
+		out.writeInt( sourceID );
+		out.writeInt( targetID );
+		out.writeDouble( cost );
+		size++;
+	}
+
+	/**
+	 * Appends a link to this list. I/O errors are rethrown as unchecked
+	 * exceptions, since the listener signature does not allow checked ones.
+	 */
+	@Override
+	public void linkFinalized( final Spot source, final Spot target, final double cost )
+	{
+		try
+		{
+			add( source.ID(), target.ID(), cost );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * Returns the number of links in this list.
+	 *
+	 * @return the number of links.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the file the links are written to.
+	 *
+	 * @return the file.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Flushes and closes the output of this list. No links can be added after
+	 * this call.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if ( null == out )
+			return;
+		out.close();
+		out = null;
+	}
+
+	/**
+	 * Closes this list and deletes the file backing it, if it is a temporary
+	 * file.
+	 *
+	 * @throws IOException
+	 *             if the list cannot be closed.
+	 */
+	public void delete() throws IOException
+	{
+		close();
+		if ( temporary )
+			file.delete();
+	}
+
+	/**
+	 * Reads back all the links of this list, in the order they were added.
+	 * The list is closed first if needed.
+	 *
+	 * @param visitor
+	 *            the visitor that will receive each link.
+	 * @throws IOException
+	 *             if the links cannot be read.
+	 */
+	public void read( final EdgeVisitor visitor ) throws IOException
+	{
+		close();
+		final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE ) );
+		try
+		{
+			for ( long i = 0; i < size; i++ )
+			{
+				final int sourceID = in.readInt();
+				final int targetID = in.readInt();
+				final double cost = in.readDouble();
+				visitor.visit( sourceID, targetID, cost );
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds a graph from the links of this list. Only practical when the
+	 * graph fits in memory.
+	 *
+	 * @param spots
+	 *            a map from spot IDs to spots, that must contain all the
+	 *            spots of the links.
+	 * @return a new graph.
+	 * @throws IOException
+	 *             if the links cannot be read.
+	 */
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > toGraph( final Map< Integer, Spot > spots ) throws IOException
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		read( new EdgeVisitor()
+		{
+			@Override
+			public void visit( final int sourceID, final int targetID, final double cost )
+			{
+				final Spot source = spots.get( Integer.valueOf( sourceID ) );
+				final Spot target = spots.get( Integer.valueOf( targetID ) );
+				graph.addVertex( source );
+				graph.addVertex( target );
+				final DefaultWeightedEdge edge = graph.addEdge( source, target );
+				graph.setEdgeWeight( edge, cost );
+			}
+		} );
+		return graph;
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString() + ": " + size + " links in " + file;
+	}
+
+	/**
+	 * Interface for visitors of the links stored in a {@link DiskEdgeList}.
+	 */
+	public static interface EdgeVisitor
+	{
+		public void visit( final int sourceID, final int targetID, final double cost );
+	}
+}
@@ -0,0 +1,178 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostKernel;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+
+/**
+ * Online version of the {@link SparseLAPFrameToFrameTracker}.
+ * <p>
+ * Each new frame is linked to the previous frame processed, with the same
+ * settings map and the same cost function as the offline tracker. Since
+ * frame-to-frame links cannot be modified by later frames, they are reported
+ * to the listeners as soon as a frame is processed, and only the spots of the
+ * last frame are retained, with their data packed for the cost kernel.
+ * <p>
+ * Like for the offline tracker, two frames passed successively are linked
+ * even if they are not contiguous.
+ */
+public class OnlineSparseLAPFrameToFrameTracker implements OnlineSpotTracker
+{
+	private final static String BASE_ERROR_MESSAGE = "[OnlineSparseLAPFrameToFrameTracker] ";
+
+	private final List< LinkListener > linkListeners = new ArrayList<>();
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private String errorMessage;
+
+	private final Map< String, Object > settings;
+
+	private FeaturePenaltyCostKernel costKernel;
+
+	private double costThreshold;
+
+	private double alternativeCostFactor;
+
+	/** The spots of the last frame processed. */
+	private List< Spot > previousSpots = Collections.emptyList();
+
+	/** The spots of the last frame processed, packed by the cost kernel. */
+	private double[] previousPacked;
+
+	private int lastFrame = Integer.MIN_VALUE;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * @param settings
+	 *            the settings map, with the same keys as for the
+	 *            {@link SparseLAPFrameToFrameTracker}.
+	 */
+	public OnlineSparseLAPFrameToFrameTracker( final Map< String, Object > settings )
+	{
+		this.settings = settings;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean processFrame( final int frame, final Collection< Spot > spots )
+	{
+		if ( lastFrame == Integer.MIN_VALUE )
+		{
+			// First frame. Check parameters.
+			final StringBuilder errorHolder = new StringBuilder();
+			if ( !SparseLAPFrameToFrameTracker.checkSettingsValidity( settings, errorHolder ) )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + errorHolder.toString();
+				return false;
+			}
+			costKernel = SparseLAPFrameToFrameTracker.createCostKernel( settings );
+			final double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+			costThreshold = maxDist * maxDist;
+			alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		}
+		else if ( frame <= lastFrame )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Frames must be processed in increasing order. Got frame " + frame + " after frame " + lastFrame + ".";
+			return false;
+		}
+
+		final List< Spot > sources = previousSpots;
+		final double[] packedSources = previousPacked;
+		final List< Spot > targets = new ArrayList<>( spots );
+		final double[] packedTargets = costKernel.pack( targets );
+		previousSpots = targets;
+		previousPacked = packedTargets;
+		final int previousFrame = lastFrame;
+		lastFrame = frame;
+
+		if ( sources.isEmpty() || targets.isEmpty() )
+			return true;
+
+		/*
+		 * Run the linker.
+		 */
+
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator< >( sources, targets, costKernel, packedSources, packedTargets, costThreshold, alternativeCostFactor, 1d );
+		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker< >( creator );
+		if ( !linker.checkInput() || !linker.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "At frame " + previousFrame + " to " + frame + ": " + linker.getErrorMessage();
+			return false;
+		}
+
+		/*
+		 * Emit links.
+		 */
+
+		final Map< Spot, Double > costs = linker.getAssignmentCosts();
+		final Map< Spot, Spot > assignment = linker.getResult();
+		for ( final Spot source : assignment.keySet() )
+		{
+			final double cost = costs.get( source );
+			final Spot target = assignment.get( source );
+			for ( final LinkListener listener : linkListeners )
+				listener.linkFinalized( source, target, cost );
+		}
+		return true;
+	}
+
+	@Override
+	public boolean finish()
+	{
+		// All links have already been emitted.
+		previousSpots = Collections.emptyList();
+		previousPacked = null;
+		return true;
+	}
+
+	@Override
+	public int getLastFrame()
+	{
+		return lastFrame;
+	}
+
+	@Override
+	public boolean addLinkListener( final LinkListener listener )
+	{
+		if ( linkListeners.contains( listener ) )
+			return false;
+		return linkListeners.add( listener );
+	}
+
+	@Override
+	public boolean removeLinkListener( final LinkListener listener )
+	{
+		return linkListeners.remove( listener );
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+}
@@ -0,0 +1,170 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker.LinkListener;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import net.imglib2.algorithm.Benchmark;
+
+/**
+ * A {@link SpotTracker} that feeds the frames of a {@link SpotCollection} to a
+ * {@link SlidingWindowSparseLAPTracker}, so that it can be used like the other
+ * trackers.
+ * <p>
+ * The spots are all in memory already, but the LAP problems are only built
+ * on a window of frames at a time, which bounds the memory the tracker needs
+ * on top of the spots and of the resulting graph. Every visible spot is a
+ * vertex of the resulting graph, as for the {@link SparseLAPTracker}.
+ */
+public class SlidingWindowSparseLAPSpotTracker implements SpotTracker, Benchmark
+{
+
+	private final SpotCollection spots;
+
+	private final Map< String, Object > settings;
+
+	private SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph;
+
+	private String errorMessage;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private long processingTime;
+
+	private int numThreads;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * @param spots
+	 *            the spots to track.
+	 * @param settings
+	 *            the settings map, with the same keys as for the
+	 *            {@link SparseLAPTracker}.
+	 */
+	public SlidingWindowSparseLAPSpotTracker( final SpotCollection spots, final Map< String, Object > settings )
+	{
+		this.spots = spots;
+		this.settings = settings;
+		setNumThreads();
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > getResult()
+	{
+		return graph;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		for ( final Iterator< Spot > iterator = spots.iterator( true ); iterator.hasNext(); )
+			graph.addVertex( iterator.next() );
+
+		final SlidingWindowSparseLAPTracker tracker = new SlidingWindowSparseLAPTracker( settings );
+		tracker.setNumThreads( numThreads );
+		tracker.setLogger( logger );
+		tracker.addLinkListener( new LinkListener()
+		{
+			@Override
+			public void linkFinalized( final Spot source, final Spot target, final double cost )
+			{
+				final DefaultWeightedEdge edge = graph.addEdge( source, target );
+				graph.setEdgeWeight( edge, cost );
+			}
+		} );
+
+		final NavigableSet< Integer > keySet = spots.keySet();
+		int p = 0;
+		for ( final Integer frame : keySet )
+		{
+			if ( !tracker.processFrame( frame, generateSpotList( spots, frame ) ) )
+			{
+				errorMessage = tracker.getErrorMessage();
+				return false;
+			}
+
+			p++;
+			logger.setProgress( ( double ) p / keySet.size() );
+		}
+
+		if ( !tracker.finish() )
+		{
+			errorMessage = tracker.getErrorMessage();
+			return false;
+		}
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	private static final List< Spot > generateSpotList( final SpotCollection spots, final int frame )
+	{
+		final List< Spot > list = new ArrayList< >( spots.getNSpots( frame, true ) );
+		for ( final Iterator< Spot > iterator = spots.iterator( frame, true ); iterator.hasNext(); )
+			list.add( iterator.next() );
+		return list;
+	}
+}
@@ -0,0 +1,362 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.GraphSegmentSplitter;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanSegmentCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import net.imglib2.algorithm.MultiThreaded;
+
+/**
+ * A version of the {@link SparseLAPTracker} that only holds a sliding window of
+ * frames in memory, for datasets too large to fit in RAM as a whole.
+ * <p>
+ * Frames are fed one after another, for instance as they are read from disk.
+ * Frame-to-frame linking is done as each frame arrives, exactly like in the
+ * {@link OnlineSparseLAPFrameToFrameTracker}. Gap-closing, merging and
+ * splitting are then solved on windows of frames. Each window starts with a
+ * block of <code>maxFrameGap + 1</code> frames, followed by an overlap of
+ * <code>maxFrameGap</code> frames so that all the segment links that start in
+ * the block can be found. Only the links whose source lies in the block are
+ * finalized; the ones starting in the overlap are solved again with the next
+ * window, which begins where the block ended. Spots of frames before the
+ * current window are released.
+ * <p>
+ * All the links, frame-to-frame and segment links, are reported to the
+ * {@link LinkListener}s as soon as they are final. They can be spilled to disk
+ * as they come by registering a {@link DiskEdgeList}.
+ * <p>
+ * Since each window is solved separately, the result may differ from the
+ * {@link SparseLAPTracker} in crowded regions: the alternative cost is
+ * computed per window, and a link finalized in a window cannot be challenged
+ * by candidates appearing in the next one.
+ */
+public class SlidingWindowSparseLAPTracker implements OnlineSpotTracker, MultiThreaded
+{
+
+	private final static String BASE_ERROR_MESSAGE = "[SlidingWindowSparseLAPTracker] ";
+
+	private final List< LinkListener > linkListeners = new ArrayList<>();
+
+	private final Map< String, Object > settings;
+
+	private final Map< String, Object > slSettings;
+
+	private final OnlineSparseLAPFrameToFrameTracker frameToFrameLinker;
+
+	private Logger logger = Logger.VOID_LOGGER;
+
+	private String errorMessage;
+
+	private int numThreads;
+
+	/** The spots of the frames currently in the window, by frame. */
+	private final TreeMap< Integer, List< Spot > > window = new TreeMap<>();
+
+	/** Spots of the window that have a frame-to-frame link to an earlier frame. */
+	private final Set< Spot > hasPredecessor = new HashSet<>();
+
+	/** Spots of the window that have a frame-to-frame link to a later frame. */
+	private final Set< Spot > hasSuccessor = new HashSet<>();
+
+	/**
+	 * Spots of the window that are already the target of a finalized segment
+	 * link.
+	 */
+	private final Set< Spot > linkedTargets = new HashSet<>();
+
+	private int maxFrameGap;
+
+	/** First frame of the current window. */
+	private int windowStart;
+
+	private int lastFrame = Integer.MIN_VALUE;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * @param settings
+	 *            the settings map, with the same keys as for the
+	 *            {@link SparseLAPTracker}.
+	 */
+	public SlidingWindowSparseLAPTracker( final Map< String, Object > settings )
+	{
+		this.settings = settings;
+		this.slSettings = SparseLAPTracker.createSegmentSettings( settings );
+		this.frameToFrameLinker = new OnlineSparseLAPFrameToFrameTracker( SparseLAPTracker.createFrameToFrameSettings( settings ) );
+		frameToFrameLinker.addLinkListener( new LinkListener()
+		{
+			@Override
+			public void linkFinalized( final Spot source, final Spot target, final double cost )
+			{
+				hasSuccessor.add( source );
+				hasPredecessor.add( target );
+				fireLinkFinalized( source, target, cost );
+			}
+		} );
+		setNumThreads();
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean processFrame( final int frame, final Collection< Spot > spots )
+	{
+		if ( lastFrame == Integer.MIN_VALUE )
+		{
+			// First frame. Check parameters.
+			final StringBuilder errorHolder = new StringBuilder();
+			if ( !SparseLAPTracker.checkSettingsValidity( settings, errorHolder ) )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "Incorrect settings map:\n" + errorHolder.toString();
+				return false;
+			}
+			maxFrameGap = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+			windowStart = frame;
+		}
+		else if ( frame <= lastFrame )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Frames must be processed in increasing order. Got frame " + frame + " after frame " + lastFrame + ".";
+			return false;
+		}
+
+		/*
+		 * Segment ends of the previous frames are known once this frame is
+		 * linked to them. Solve all the windows that end before this frame.
+		 */
+
+		if ( !frameToFrameLinker.processFrame( frame, spots ) )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + frameToFrameLinker.getErrorMessage();
+			return false;
+		}
+		lastFrame = frame;
+
+		while ( !window.isEmpty() && windowStart + blockSize() + maxFrameGap <= frame )
+		{
+			if ( !solveWindow( false ) )
+				return false;
+		}
+		if ( window.isEmpty() )
+			windowStart = frame;
+
+		window.put( Integer.valueOf( frame ), new ArrayList<>( spots ) );
+		return true;
+	}
+
+	@Override
+	public boolean finish()
+	{
+		if ( lastFrame == Integer.MIN_VALUE )
+			return true;
+
+		if ( !frameToFrameLinker.finish() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + frameToFrameLinker.getErrorMessage();
+			return false;
+		}
+
+		// All segment ends are known now. Solve the remaining frames at once.
+		if ( !window.isEmpty() && !solveWindow( true ) )
+			return false;
+
+		window.clear();
+		hasPredecessor.clear();
+		hasSuccessor.clear();
+		linkedTargets.clear();
+		return true;
+	}
+
+	/**
+	 * Returns the number of frames whose segment links are finalized at each
+	 * window.
+	 */
+	private int blockSize()
+	{
+		return maxFrameGap + 1;
+	}
+
+	/**
+	 * Solves the segment links in the current window, finalizes the ones that
+	 * start in the first block of the window and slides the window past this
+	 * block.
+	 *
+	 * @param last
+	 *            if <code>true</code>, all the frames in memory are solved
+	 *            and all the links are finalized.
+	 */
+	private boolean solveWindow( final boolean last )
+	{
+		final int blockEnd = last ? Integer.MAX_VALUE : windowStart + blockSize();
+		final int windowEnd = last ? Integer.MAX_VALUE : blockEnd + maxFrameGap;
+
+		/*
+		 * Find segment starts, ends and middle points in the window. In the
+		 * frame-to-frame graph, segments are linear so the role of a spot only
+		 * depends on whether it has a predecessor and a successor. Isolated
+		 * spots are not part of a segment, like in GraphSegmentSplitter.
+		 */
+
+		final List< Spot > segmentStarts = new ArrayList<>();
+		final List< Spot > segmentEnds = new ArrayList<>();
+		final List< Spot > middles = new ArrayList<>();
+		for ( final List< Spot > frameSpots : window.headMap( Integer.valueOf( windowEnd ) ).values() )
+		{
+			for ( final Spot spot : frameSpots )
+			{
+				final boolean predecessor = hasPredecessor.contains( spot );
+				final boolean successor = hasSuccessor.contains( spot );
+				if ( predecessor && successor )
+				{
+					middles.add( spot );
+				}
+				else if ( successor )
+				{
+					if ( !linkedTargets.contains( spot ) )
+						segmentStarts.add( spot );
+				}
+				else if ( predecessor )
+				{
+					segmentEnds.add( spot );
+				}
+			}
+		}
+
+		/*
+		 * Solve.
+		 */
+
+		if ( !segmentEnds.isEmpty() || !middles.isEmpty() )
+		{
+			/*
+			 * A middle point already targeted by a finalized merging event is
+			 * left out, which also excludes it from splitting.
+			 */
+			final List< Spot > targetableMiddles = new ArrayList<>( middles.size() );
+			for ( final Spot spot : middles )
+			{
+				if ( !linkedTargets.contains( spot ) )
+					targetableMiddles.add( spot );
+			}
+			final List< List< Spot > > segmentMiddles = Collections.singletonList( targetableMiddles );
+
+			final GraphSegmentSplitter segments = new GraphSegmentSplitter( segmentStarts, segmentEnds, segmentMiddles );
+			final JaqamanSegmentCostMatrixCreator costMatrixCreator = new JaqamanSegmentCostMatrixCreator( segments, slSettings );
+			costMatrixCreator.setNumThreads( numThreads );
+			final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( costMatrixCreator );
+			if ( !linker.checkInput() || !linker.process() )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "In window starting at frame " + windowStart + ": " + linker.getErrorMessage();
+				return false;
+			}
+
+			final Map< Spot, Spot > assignment = linker.getResult();
+			final Map< Spot, Double > costs = linker.getAssignmentCosts();
+			for ( final Spot source : assignment.keySet() )
+			{
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				if ( sourceFrame >= blockEnd )
+					continue;
+
+				final Spot target = assignment.get( source );
+				linkedTargets.add( target );
+				fireLinkFinalized( source, target, costs.get( source ).doubleValue() );
+			}
+		}
+
+		/*
+		 * Slide the window.
+		 */
+
+		if ( !last )
+		{
+			final Iterator< List< Spot > > it = window.headMap( Integer.valueOf( blockEnd ) ).values().iterator();
+			while ( it.hasNext() )
+			{
+				final List< Spot > frameSpots = it.next();
+				hasPredecessor.removeAll( frameSpots );
+				hasSuccessor.removeAll( frameSpots );
+				linkedTargets.removeAll( frameSpots );
+				it.remove();
+			}
+			// Skip frames absent from the data.
+			windowStart = window.isEmpty() ? blockEnd : Math.max( blockEnd, window.firstKey().intValue() );
+			logger.log( "Finalized links up to frame " + ( blockEnd - 1 ) + ".\n" );
+		}
+		return true;
+	}
+
+	private void fireLinkFinalized( final Spot source, final Spot target, final double cost )
+	{
+		for ( final LinkListener listener : linkListeners )
+			listener.linkFinalized( source, target, cost );
+	}
+
+	@Override
+	public int getLastFrame()
+	{
+		return lastFrame;
+	}
+
+	@Override
+	public boolean addLinkListener( final LinkListener listener )
+	{
+		if ( linkListeners.contains( listener ) )
+			return false;
+		return linkListeners.add( listener );
+	}
+
+	@Override
+	public boolean removeLinkListener( final LinkListener listener )
+	{
+		return linkListeners.remove( listener );
+	}
+
+	@Override
+	public void setLogger( final Logger logger )
+	{
+		this.logger = logger;
+		frameToFrameLinker.setLogger( logger );
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+}
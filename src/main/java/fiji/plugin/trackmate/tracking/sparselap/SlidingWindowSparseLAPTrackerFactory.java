@@ -0,0 +1,44 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
+
+import java.util.Map;
+
+import org.scijava.plugin.Plugin;
+
+@Plugin( type = SpotTrackerFactory.class )
+public class SlidingWindowSparseLAPTrackerFactory extends SparseLAPTrackerFactory
+{
+	public static final String THIS3_TRACKER_KEY = "SLIDING_WINDOW_SPARSE_LAP_TRACKER";
+
+	public static final String THIS3_NAME = "Sliding-window LAP tracker";
+
+	public static final String THIS3_INFO_TEXT = "<html>" + "This tracker takes the same parameters as the LAP tracker, but only builds <br>" + "its cost matrices on a sliding window of frames, instead of on the whole <br>" + "movie at once. This bounds the memory it needs for movies with many frames. <br>" + "<p>" + "Gap-closing, splitting and merging are solved on windows of about twice the <br>" + "max frame gap, so the results can differ from the LAP tracker in crowded <br>" + "regions, where a link made in a window cannot be challenged by the next one." + " </html>";
+
+	@Override
+	public String getKey()
+	{
+		return THIS3_TRACKER_KEY;
+	}
+
+	@Override
+	public String getName()
+	{
+		return THIS3_NAME;
+	}
+
+	@Override
+	public String getInfoText()
+	{
+		return THIS3_INFO_TEXT;
+	}
+
+	@Override
+	public SpotTracker create( final SpotCollection spots, final Map< String, Object > settings )
+	{
+		return new SlidingWindowSparseLAPSpotTracker( spots, settings );
+	}
+
+}
@@ -24,9 +24,8 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.tracking.SpotTracker;
-import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
-import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
-import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.CandidatePairCache.Candidates;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostKernel;
 import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
 
@@ -43,6 +42,8 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 
 	private final Map< String, Object > settings;
 
+	private CandidatePairCache candidateCache;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -119,36 +120,44 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 
 		final long start = System.currentTimeMillis();
 
-		// Prepare frame pairs in order, not necessarily separated by 1.
-		final ArrayList< int[] > framePairs = new ArrayList< >( spots.keySet().size() - 1 );
-		final Iterator< Integer > frameIterator = spots.keySet().iterator();
-		int frame0 = frameIterator.next();
-		int frame1;
-		while ( frameIterator.hasNext() )
-		{ // ascending order
-			frame1 = frameIterator.next();
-			framePairs.add( new int[] { frame0, frame1 } );
-			frame0 = frame1;
-		}
-
 		// Prepare cost function
-		@SuppressWarnings( "unchecked" )
-		final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
-		final CostFunction< Spot, Spot > costFunction;
-		if ( null == featurePenalties || featurePenalties.isEmpty() )
+		final FeaturePenaltyCostKernel costKernel = createCostKernel( settings );
+		final Double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
+		final double costThreshold = maxDist * maxDist;
+		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+
+		// Candidate links computed beforehand, if we have a cache.
+		final Candidates candidates;
+		if ( null != candidateCache )
 		{
-			costFunction = new SquareDistCostFunction();
+			@SuppressWarnings( "unchecked" )
+			final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
+			candidates = candidateCache.get( spots, featurePenalties, maxDist, numThreads );
 		}
 		else
 		{
-			costFunction = new FeaturePenaltyCostFunction( featurePenalties );
+			candidates = null;
 		}
-		final Double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
-		final double costThreshold = maxDist * maxDist;
-		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
 
-		// Instantiate graph
-		graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		// Frames in order, not necessarily separated by 1.
+		final Integer[] frames = ( null == candidates ) ? spots.keySet().toArray( new Integer[ 0 ] ) : candidates.getFrames();
+		final int nPairs = frames.length - 1;
+
+		/*
+		 * Each frame belongs to two frame pairs, once as source and once as
+		 * target. Its spot list and packed data are built once and shared by
+		 * the two pairs.
+		 */
+
+		final List< List< Spot > > frameSpots = new ArrayList< >( frames.length );
+		final double[][] framePacked = new double[ frames.length ][];
+		for ( int i = 0; i < frames.length; i++ )
+			frameSpots.add( null );
+
+		// Results of each frame pair, assembled in the graph at the end.
+		final Spot[][] pairSources = new Spot[ Math.max( 0, nPairs ) ][];
+		final Spot[][] pairTargets = new Spot[ Math.max( 0, nPairs ) ][];
+		final double[][] pairCosts = new double[ Math.max( 0, nPairs ) ][];
 
 		// Prepare threads
 		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
@@ -157,6 +166,30 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		final AtomicInteger ai = new AtomicInteger( 0 );
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		final AtomicBoolean ok = new AtomicBoolean( true );
+		if ( null == candidates )
+		{
+			for ( int ithread = 0; ithread < threads.length; ithread++ )
+			{
+				threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
+				{
+					@Override
+					public void run()
+					{
+						for ( int i = ai.getAndIncrement(); i < frames.length; i = ai.getAndIncrement() )
+						{
+							final List< Spot > list = new ArrayList< >( spots.getNSpots( frames[ i ], true ) );
+							for ( final Iterator< Spot > iterator = spots.iterator( frames[ i ], true ); iterator.hasNext(); )
+								list.add( iterator.next() );
+							frameSpots.set( i, list );
+							framePacked[ i ] = costKernel.pack( list );
+						}
+					}
+				};
+			}
+			SimpleMultiThreading.startAndJoin( threads );
+		}
+
+		ai.set( 0 );
 		for ( int ithread = 0; ithread < threads.length; ithread++ )
 		{
 			threads[ ithread ] = new Thread( BASE_ERROR_MESSAGE + " thread " + ( 1 + ithread ) + "/" + threads.length )
@@ -164,63 +197,68 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 				@Override
 				public void run()
 				{
-					for ( int i = ai.getAndIncrement(); i < framePairs.size(); i = ai.getAndIncrement() )
+					for ( int i = ai.getAndIncrement(); i < nPairs; i = ai.getAndIncrement() )
 					{
 						if ( !ok.get() )
 						{
 							break;
 						}
 
-						// Get frame pairs
-						final int lFrame0 = framePairs.get( i )[ 0 ];
-						final int lFrame1 = framePairs.get( i )[ 1 ];
-
-						// Get spots - we have to create a list from each
-						// content.
-						final List< Spot > sources = new ArrayList< >( spots.getNSpots( lFrame0, true ) );
-						for ( final Iterator< Spot > iterator = spots.iterator( lFrame0, true ); iterator.hasNext(); )
-							sources.add( iterator.next() );
+						final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator;
+						if ( null == candidates )
+						{
+							// Get frame pairs
+							final List< Spot > sources = frameSpots.get( i );
+							final List< Spot > targets = frameSpots.get( i + 1 );
 
-						final List< Spot > targets = new ArrayList< >( spots.getNSpots( lFrame1, true ) );
-						for ( final Iterator< Spot > iterator = spots.iterator( lFrame1, true ); iterator.hasNext(); )
-							targets.add( iterator.next() );
+							if ( sources.isEmpty() || targets.isEmpty() )
+								continue;
 
-						if ( sources.isEmpty() || targets.isEmpty() )
-							continue;
+							creator = new JaqamanLinkingCostMatrixCreator< >( sources, targets, costKernel, framePacked[ i ], framePacked[ i + 1 ], costThreshold, alternativeCostFactor, 1d );
+						}
+						else
+						{
+							// Filter the cached candidates.
+							creator = candidates.createCostMatrixCreator( i, costThreshold, alternativeCostFactor, 1d );
+							if ( null == creator )
+								continue;
+						}
 
 						/*
 						 * Run the linker.
 						 */
 
-						final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator< >( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
 						final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker< >( creator );
 						if ( !linker.checkInput() || !linker.process() )
 						{
-							errorMessage = "At frame " + lFrame0 + " to " + lFrame1 + ": " + linker.getErrorMessage();
+							errorMessage = "At frame " + frames[ i ] + " to " + frames[ i + 1 ] + ": " + linker.getErrorMessage();
 							ok.set( false );
 							return;
 						}
 
 						/*
-						 * Update graph.
+						 * Store results.
 						 */
 
-						synchronized ( graph )
+						final Map< Spot, Double > costs = linker.getAssignmentCosts();
+						final Map< Spot, Spot > assignment = linker.getResult();
+						final int nLinks = assignment.size();
+						final Spot[] linkSources = new Spot[ nLinks ];
+						final Spot[] linkTargets = new Spot[ nLinks ];
+						final double[] linkCosts = new double[ nLinks ];
+						int k = 0;
+						for ( final Spot source : assignment.keySet() )
 						{
-							final Map< Spot, Double > costs = linker.getAssignmentCosts();
-							final Map< Spot, Spot > assignment = linker.getResult();
-							for ( final Spot source : assignment.keySet() )
-							{
-								final double cost = costs.get( source );
-								final Spot target = assignment.get( source );
-								graph.addVertex( source );
-								graph.addVertex( target );
-								final DefaultWeightedEdge edge = graph.addEdge( source, target );
-								graph.setEdgeWeight( edge, cost );
-							}
+							linkSources[ k ] = source;
+							linkTargets[ k ] = assignment.get( source );
+							linkCosts[ k ] = costs.get( source );
+							k++;
 						}
+						pairSources[ i ] = linkSources;
+						pairTargets[ i ] = linkTargets;
+						pairCosts[ i ] = linkCosts;
 
-						logger.setProgress( progress.incrementAndGet() / framePairs.size() );
+						logger.setProgress( progress.incrementAndGet() / ( double ) nPairs );
 
 					}
 				}
@@ -229,6 +267,32 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 
 		logger.setStatus( "Frame to frame linking..." );
 		SimpleMultiThreading.startAndJoin( threads );
+
+		/*
+		 * Build the graph at once.
+		 */
+
+		graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		if ( ok.get() )
+		{
+			for ( int i = 0; i < nPairs; i++ )
+			{
+				final Spot[] linkSources = pairSources[ i ];
+				if ( null == linkSources )
+					continue;
+
+				final Spot[] linkTargets = pairTargets[ i ];
+				final double[] linkCosts = pairCosts[ i ];
+				for ( int k = 0; k < linkSources.length; k++ )
+				{
+					graph.addVertex( linkSources[ k ] );
+					graph.addVertex( linkTargets[ k ] );
+					final DefaultWeightedEdge edge = graph.addEdge( linkSources[ k ], linkTargets[ k ] );
+					graph.setEdgeWeight( edge, linkCosts[ k ] );
+				}
+			}
+		}
+
 		logger.setProgress( 1d );
 		logger.setStatus( "" );
 
@@ -244,7 +308,34 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		this.logger = logger;
 	}
 
-	private static final boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
+	/**
+	 * Sets the cache to get linking candidates from. If <code>null</code>,
+	 * the default, candidates are computed at each run.
+	 *
+	 * @param candidateCache
+	 *            the cache to use.
+	 */
+	public void setCandidatePairCache( final CandidatePairCache candidateCache )
+	{
+		this.candidateCache = candidateCache;
+	}
+
+	/**
+	 * Creates the frame-to-frame linking cost kernel specified by a settings
+	 * map.
+	 *
+	 * @param settings
+	 *            the tracker settings map.
+	 * @return a new cost kernel.
+	 */
+	static final FeaturePenaltyCostKernel createCostKernel( final Map< String, Object > settings )
+	{
+		@SuppressWarnings( "unchecked" )
+		final Map< String, Double > featurePenalties = ( Map< String, Double > ) settings.get( KEY_LINKING_FEATURE_PENALTIES );
+		return new FeaturePenaltyCostKernel( featurePenalties );
+	}
+
+	static final boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
 	{
 		if ( null == settings )
 		{
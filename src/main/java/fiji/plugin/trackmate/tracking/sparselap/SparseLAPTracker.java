@@ -46,6 +46,8 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 
 	private final Map< String, Object > settings;
 
+	private CandidatePairCache candidateCache;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -128,14 +130,11 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		 */
 
 
-		// Prepare settings object
-		final Map< String, Object > ftfSettings = new HashMap< >();
-		ftfSettings.put( KEY_LINKING_MAX_DISTANCE, settings.get( KEY_LINKING_MAX_DISTANCE ) );
-		ftfSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
-		ftfSettings.put( KEY_LINKING_FEATURE_PENALTIES, settings.get( KEY_LINKING_FEATURE_PENALTIES ) );
+		final Map< String, Object > ftfSettings = createFrameToFrameSettings( settings );
 
 		final SparseLAPFrameToFrameTracker frameToFrameLinker = new SparseLAPFrameToFrameTracker( spots, ftfSettings );
 		frameToFrameLinker.setNumThreads( numThreads );
+		frameToFrameLinker.setCandidatePairCache( candidateCache );
 		final SlaveLogger ftfLogger = new SlaveLogger( logger, 0, 0.5 );
 		frameToFrameLinker.setLogger( ftfLogger );
 
@@ -151,24 +150,7 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		 * 2. Gap-closing, merging and splitting.
 		 */
 
-		// Prepare settings object
-		final Map< String, Object > slSettings = new HashMap< >();
-
-		slSettings.put( KEY_ALLOW_GAP_CLOSING, settings.get( KEY_ALLOW_GAP_CLOSING ) );
-		slSettings.put( KEY_GAP_CLOSING_FEATURE_PENALTIES, settings.get( KEY_GAP_CLOSING_FEATURE_PENALTIES ) );
-		slSettings.put( KEY_GAP_CLOSING_MAX_DISTANCE, settings.get( KEY_GAP_CLOSING_MAX_DISTANCE ) );
-		slSettings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP ) );
-
-		slSettings.put( KEY_ALLOW_TRACK_SPLITTING, settings.get( KEY_ALLOW_TRACK_SPLITTING ) );
-		slSettings.put( KEY_SPLITTING_FEATURE_PENALTIES, settings.get( KEY_SPLITTING_FEATURE_PENALTIES ) );
-		slSettings.put( KEY_SPLITTING_MAX_DISTANCE, settings.get( KEY_SPLITTING_MAX_DISTANCE ) );
-
-		slSettings.put( KEY_ALLOW_TRACK_MERGING, settings.get( KEY_ALLOW_TRACK_MERGING ) );
-		slSettings.put( KEY_MERGING_FEATURE_PENALTIES, settings.get( KEY_MERGING_FEATURE_PENALTIES ) );
-		slSettings.put( KEY_MERGING_MAX_DISTANCE, settings.get( KEY_MERGING_MAX_DISTANCE ) );
-
-		slSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
-		slSettings.put( KEY_CUTOFF_PERCENTILE, settings.get( KEY_CUTOFF_PERCENTILE ) );
+		final Map< String, Object > slSettings = createSegmentSettings( settings );
 
 		// Solve.
 		final SparseLAPSegmentTracker segmentLinker = new SparseLAPSegmentTracker( graph, slSettings );
@@ -197,7 +179,58 @@ public class SparseLAPTracker extends MultiThreadedBenchmarkAlgorithm implements
 		this.logger = logger;
 	}
 
-	private static final boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
+	/**
+	 * Sets the cache to get frame-to-frame linking candidates from. If
+	 * <code>null</code>, the default, candidates are computed at each run.
+	 *
+	 * @param candidateCache
+	 *            the cache to use.
+	 */
+	public void setCandidatePairCache( final CandidatePairCache candidateCache )
+	{
+		this.candidateCache = candidateCache;
+	}
+
+	/**
+	 * Extracts the settings of the frame-to-frame linking step from a settings
+	 * map of this tracker.
+	 */
+	static final Map< String, Object > createFrameToFrameSettings( final Map< String, Object > settings )
+	{
+		final Map< String, Object > ftfSettings = new HashMap< >();
+		ftfSettings.put( KEY_LINKING_MAX_DISTANCE, settings.get( KEY_LINKING_MAX_DISTANCE ) );
+		ftfSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
+		ftfSettings.put( KEY_LINKING_FEATURE_PENALTIES, settings.get( KEY_LINKING_FEATURE_PENALTIES ) );
+		return ftfSettings;
+	}
+
+	/**
+	 * Extracts the settings of the gap-closing, merging and splitting step from
+	 * a settings map of this tracker.
+	 */
+	static final Map< String, Object > createSegmentSettings( final Map< String, Object > settings )
+	{
+		final Map< String, Object > slSettings = new HashMap< >();
+
+		slSettings.put( KEY_ALLOW_GAP_CLOSING, settings.get( KEY_ALLOW_GAP_CLOSING ) );
+		slSettings.put( KEY_GAP_CLOSING_FEATURE_PENALTIES, settings.get( KEY_GAP_CLOSING_FEATURE_PENALTIES ) );
+		slSettings.put( KEY_GAP_CLOSING_MAX_DISTANCE, settings.get( KEY_GAP_CLOSING_MAX_DISTANCE ) );
+		slSettings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP ) );
+
+		slSettings.put( KEY_ALLOW_TRACK_SPLITTING, settings.get( KEY_ALLOW_TRACK_SPLITTING ) );
+		slSettings.put( KEY_SPLITTING_FEATURE_PENALTIES, settings.get( KEY_SPLITTING_FEATURE_PENALTIES ) );
+		slSettings.put( KEY_SPLITTING_MAX_DISTANCE, settings.get( KEY_SPLITTING_MAX_DISTANCE ) );
+
+		slSettings.put( KEY_ALLOW_TRACK_MERGING, settings.get( KEY_ALLOW_TRACK_MERGING ) );
+		slSettings.put( KEY_MERGING_FEATURE_PENALTIES, settings.get( KEY_MERGING_FEATURE_PENALTIES ) );
+		slSettings.put( KEY_MERGING_MAX_DISTANCE, settings.get( KEY_MERGING_MAX_DISTANCE ) );
+
+		slSettings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ) );
+		slSettings.put( KEY_CUTOFF_PERCENTILE, settings.get( KEY_CUTOFF_PERCENTILE ) );
+		return slSettings;
+	}
+
+	static final boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
 	{
 		if ( null == settings )
 		{
@@ -0,0 +1,135 @@
+package fiji.plugin.trackmate.tracking.sparselap.costfunction;
+
+import java.util.List;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * A compiled version of the {@link FeaturePenaltyCostFunction} and of the
+ * {@link SquareDistCostFunction}, that works on spot data gathered in packed
+ * arrays.
+ * <p>
+ * The position and the penalized features of a list of spots are read once
+ * with {@link #pack(List)}, into a <code>double[]</code> array that stores,
+ * for each spot, X, Y, Z and the feature values in the iteration order of the
+ * penalty map. Costs are then computed from the indices of the spots in their
+ * lists, without any feature lookup. With no feature penalties, the cost is
+ * the square distance.
+ * <p>
+ * The cost values are exactly the ones returned by the non-compiled cost
+ * functions. The only difference is that a feature missing from a spot is
+ * ignored, like a feature with a <code>NaN</code> value.
+ */
+public class FeaturePenaltyCostKernel
+{
+
+	private final String[] features;
+
+	private final double[] factors;
+
+	private final int stride;
+
+	/**
+	 * Creates a cost kernel.
+	 *
+	 * @param featurePenalties
+	 *            the feature penalty map. Can be <code>null</code> or empty,
+	 *            in which case the cost is the square distance.
+	 */
+	public FeaturePenaltyCostKernel( final Map< String, Double > featurePenalties )
+	{
+		final int nFeatures = ( null == featurePenalties ) ? 0 : featurePenalties.size();
+		this.features = new String[ nFeatures ];
+		this.factors = new double[ nFeatures ];
+		if ( nFeatures > 0 )
+		{
+			int i = 0;
+			for ( final String feature : featurePenalties.keySet() )
+			{
+				features[ i ] = feature;
+				factors[ i ] = featurePenalties.get( feature ).doubleValue();
+				i++;
+			}
+		}
+		this.stride = 3 + nFeatures;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns the number of elements used in a packed array for each spot.
+	 *
+	 * @return the stride of packed arrays.
+	 */
+	public int getStride()
+	{
+		return stride;
+	}
+
+	/**
+	 * Gathers the data needed by this kernel for the specified spots in a
+	 * packed array.
+	 *
+	 * @param spots
+	 *            the spots to pack.
+	 * @return a new array.
+	 */
+	public double[] pack( final List< Spot > spots )
+	{
+		final double[] data = new double[ stride * spots.size() ];
+		int p = 0;
+		for ( final Spot spot : spots )
+		{
+			data[ p++ ] = spot.getFeature( Spot.POSITION_X ).doubleValue();
+			data[ p++ ] = spot.getFeature( Spot.POSITION_Y ).doubleValue();
+			data[ p++ ] = spot.getFeature( Spot.POSITION_Z ).doubleValue();
+			for ( int f = 0; f < features.length; f++ )
+			{
+				final Double val = spot.getFeature( features[ f ] );
+				data[ p++ ] = ( null == val ) ? Double.NaN : val.doubleValue();
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the cost to link two spots.
+	 *
+	 * @param sources
+	 *            the packed array containing the source spot.
+	 * @param i
+	 *            the index of the source spot in its list.
+	 * @param targets
+	 *            the packed array containing the target spot.
+	 * @param j
+	 *            the index of the target spot in its list.
+	 * @return the cost.
+	 */
+	public double linkingCost( final double[] sources, final int i, final double[] targets, final int j )
+	{
+		final int ps = i * stride;
+		final int pt = j * stride;
+
+		final double dx = targets[ pt ] - sources[ ps ];
+		final double dy = targets[ pt + 1 ] - sources[ ps + 1 ];
+		final double dz = targets[ pt + 2 ] - sources[ ps + 2 ];
+		final double d2 = dx * dx + dy * dy + dz * dz;
+		if ( factors.length == 0 )
+			return d2;
+
+		double penalty = 1;
+		for ( int f = 0; f < factors.length; f++ )
+		{
+			final double a = sources[ ps + 3 + f ];
+			final double b = targets[ pt + 3 + f ];
+			final double ndiff = ( a == -b ) ? 0d : Math.abs( a - b ) / ( ( a + b ) / 2 );
+			if ( Double.isNaN( ndiff ) )
+				continue;
+			penalty += factors[ f ] * 1.5 * ndiff;
+		}
+		return d2 * penalty * penalty;
+	}
+}
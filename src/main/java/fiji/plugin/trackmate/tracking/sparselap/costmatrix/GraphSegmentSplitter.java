@@ -56,6 +56,24 @@ public class GraphSegmentSplitter
 		}
 	}
 
+	/**
+	 * Creates a segment splitter from segment starts, ends and middle points
+	 * already determined by the caller.
+	 *
+	 * @param segmentStarts
+	 *            the first spot of each segment.
+	 * @param segmentEnds
+	 *            the last spot of each segment.
+	 * @param segmentMiddles
+	 *            the middle points of the segments, grouped in lists.
+	 */
+	public GraphSegmentSplitter( final List< Spot > segmentStarts, final List< Spot > segmentEnds, final List< List< Spot >> segmentMiddles )
+	{
+		this.segmentStarts = segmentStarts;
+		this.segmentEnds = segmentEnds;
+		this.segmentMiddles = segmentMiddles;
+	}
+
 	public List< Spot > getSegmentEnds()
 	{
 		return segmentEnds;
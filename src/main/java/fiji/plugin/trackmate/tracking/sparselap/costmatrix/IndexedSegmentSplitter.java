@@ -0,0 +1,269 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.multithreading.SimpleMultiThreading;
+
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * A parallel alternative to the {@link GraphSegmentSplitter}, for graphs made
+ * of linear segments, such as the ones generated by frame-to-frame linking.
+ * <p>
+ * In such graphs, each spot has at most one neighbor in an earlier frame and
+ * at most one in a later frame. The role of a spot in its segment then only
+ * depends on its neighbors: a segment start has a successor but no
+ * predecessor, an end has a predecessor but no successor, and middle points
+ * have both. Isolated spots are not part of a segment and are skipped, like
+ * in the {@link GraphSegmentSplitter}. Each spot is examined once,
+ * concurrently, without computing connected components nor sorting segments.
+ * <p>
+ * Segment starts, ends and middle points are returned as arrays of indices in
+ * the spot array returned by {@link #getSpots()}, sorted by frame. If the
+ * graph is not made of linear segments, {@link #isLinear()} returns
+ * <code>false</code> and the {@link GraphSegmentSplitter} must be used
+ * instead.
+ */
+public class IndexedSegmentSplitter
+{
+
+	private static final byte NONE = 0;
+
+	private static final byte START = 1;
+
+	private static final byte END = 2;
+
+	private static final byte MIDDLE = 3;
+
+	private static final byte NON_LINEAR = -1;
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Spot[] spots;
+
+	private final int[] frames;
+
+	private final int[] segmentStarts;
+
+	private final int[] segmentEnds;
+
+	private final int[] segmentMiddles;
+
+	private final boolean linear;
+
+	public IndexedSegmentSplitter( final UndirectedGraph< Spot, DefaultWeightedEdge > graph, final int numThreads )
+	{
+		this.spots = graph.vertexSet().toArray( new Spot[ 0 ] );
+		final int nSpots = spots.length;
+		this.frames = new int[ nSpots ];
+		final byte[] roles = new byte[ nSpots ];
+
+		// Read frames.
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( "IndexedSegmentSplitter thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int start = ai.getAndAdd( CHUNK_SIZE ); start < nSpots; start = ai.getAndAdd( CHUNK_SIZE ) )
+					{
+						final int end = Math.min( nSpots, start + CHUNK_SIZE );
+						for ( int i = start; i < end; i++ )
+							frames[ i ] = spots[ i ].getFeature( Spot.FRAME ).intValue();
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		// Determine the role of each spot from its neighbors.
+		ai.set( 0 );
+		for ( int ithread = 0; ithread < threads.length; ithread++ )
+		{
+			threads[ ithread ] = new Thread( "IndexedSegmentSplitter thread " + ( 1 + ithread ) + "/" + threads.length )
+			{
+				@Override
+				public void run()
+				{
+					for ( int start = ai.getAndAdd( CHUNK_SIZE ); start < nSpots; start = ai.getAndAdd( CHUNK_SIZE ) )
+					{
+						final int end = Math.min( nSpots, start + CHUNK_SIZE );
+						for ( int i = start; i < end; i++ )
+							roles[ i ] = role( graph, spots[ i ], frames[ i ] );
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin( threads );
+
+		int nStarts = 0;
+		int nEnds = 0;
+		int nMiddles = 0;
+		boolean isLinear = true;
+		for ( final byte role : roles )
+		{
+			switch ( role )
+			{
+			case START:
+				nStarts++;
+				break;
+			case END:
+				nEnds++;
+				break;
+			case MIDDLE:
+				nMiddles++;
+				break;
+			case NON_LINEAR:
+				isLinear = false;
+				break;
+			default:
+				break;
+			}
+		}
+		this.linear = isLinear;
+
+		/*
+		 * Group by frame. We sort the frame and index of each spot packed in a
+		 * long.
+		 */
+
+		final long[] starts = new long[ nStarts ];
+		final long[] ends = new long[ nEnds ];
+		final long[] middles = new long[ nMiddles ];
+		nStarts = 0;
+		nEnds = 0;
+		nMiddles = 0;
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final long key = ( ( long ) frames[ i ] << 32 ) | i;
+			switch ( roles[ i ] )
+			{
+			case START:
+				starts[ nStarts++ ] = key;
+				break;
+			case END:
+				ends[ nEnds++ ] = key;
+				break;
+			case MIDDLE:
+				middles[ nMiddles++ ] = key;
+				break;
+			default:
+				break;
+			}
+		}
+		this.segmentStarts = sortedIndices( starts );
+		this.segmentEnds = sortedIndices( ends );
+		this.segmentMiddles = sortedIndices( middles );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns <code>true</code> if the graph is made of linear segments. If
+	 * not, the results of this splitter are not meaningful.
+	 *
+	 * @return whether the graph is made of linear segments.
+	 */
+	public boolean isLinear()
+	{
+		return linear;
+	}
+
+	/**
+	 * Returns the spots of the graph. Segment indices point into this array.
+	 *
+	 * @return the spots.
+	 */
+	public Spot[] getSpots()
+	{
+		return spots;
+	}
+
+	/**
+	 * Returns the frame of each spot, in the order of {@link #getSpots()}.
+	 *
+	 * @return the frames.
+	 */
+	public int[] getFrames()
+	{
+		return frames;
+	}
+
+	/**
+	 * Returns the indices of the segment starts, sorted by frame.
+	 *
+	 * @return the segment starts.
+	 */
+	public int[] getSegmentStarts()
+	{
+		return segmentStarts;
+	}
+
+	/**
+	 * Returns the indices of the segment ends, sorted by frame.
+	 *
+	 * @return the segment ends.
+	 */
+	public int[] getSegmentEnds()
+	{
+		return segmentEnds;
+	}
+
+	/**
+	 * Returns the indices of the segment middle points, sorted by frame.
+	 *
+	 * @return the segment middle points.
+	 */
+	public int[] getSegmentMiddles()
+	{
+		return segmentMiddles;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static final byte role( final UndirectedGraph< Spot, DefaultWeightedEdge > graph, final Spot spot, final int frame )
+	{
+		int nPredecessors = 0;
+		int nSuccessors = 0;
+		for ( final DefaultWeightedEdge edge : graph.edgesOf( spot ) )
+		{
+			Spot other = graph.getEdgeSource( edge );
+			if ( other == spot )
+				other = graph.getEdgeTarget( edge );
+
+			final int otherFrame = other.getFeature( Spot.FRAME ).intValue();
+			if ( otherFrame < frame )
+				nPredecessors++;
+			else if ( otherFrame > frame )
+				nSuccessors++;
+			else
+				return NON_LINEAR;
+		}
+
+		if ( nPredecessors > 1 || nSuccessors > 1 )
+			return NON_LINEAR;
+		if ( nPredecessors == 0 )
+			return ( nSuccessors == 0 ) ? NONE : START;
+		return ( nSuccessors == 0 ) ? END : MIDDLE;
+	}
+
+	private static final int[] sortedIndices( final long[] keys )
+	{
+		Arrays.sort( keys );
+		final int[] indices = new int[ keys.length ];
+		for ( int i = 0; i < keys.length; i++ )
+			indices[ i ] = ( int ) keys[ i ];
+		return indices;
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.List;
 
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostKernel;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
 
 /**
@@ -28,6 +29,14 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 
 	private final CostFunction< K, J > costFunction;
 
+	private final FeaturePenaltyCostKernel kernel;
+
+	private final double[] packedSources;
+
+	private final double[] packedTargets;
+
+	private final double[] candidateCosts;
+
 	private SparseCostMatrix scm;
 
 	private long processingTime;
@@ -51,11 +60,84 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		this.sources = sources;
 		this.targets = targets;
 		this.costFunction = costFunction;
+		this.kernel = null;
+		this.packedSources = null;
+		this.packedTargets = null;
+		this.candidateCosts = null;
 		this.costThreshold = costThreshold;
 		this.alternativeCostFactor = alternativeCostFactor;
 		this.percentile = percentile;
 	}
 
+	/**
+	 * Instantiates a cost matrix creator that computes costs with a compiled
+	 * {@link FeaturePenaltyCostKernel}, from the packed data of the sources and
+	 * targets.
+	 *
+	 * @param sources
+	 *            the source list.
+	 * @param targets
+	 *            the target list.
+	 * @param kernel
+	 *            the cost kernel.
+	 * @param packedSources
+	 *            the data of the sources, packed by the kernel in the same
+	 *            order as in the source list.
+	 * @param packedTargets
+	 *            the data of the targets, packed by the kernel in the same
+	 *            order as in the target list.
+	 * @param costThreshold
+	 *            the cost above which links are not considered.
+	 * @param alternativeCostFactor
+	 *            the alternative cost factor.
+	 * @param percentile
+	 *            the percentile of costs used to compute the alternative cost.
+	 */
+	public JaqamanLinkingCostMatrixCreator( final List< K > sources, final List< J > targets, final FeaturePenaltyCostKernel kernel, final double[] packedSources, final double[] packedTargets, final double costThreshold, final double alternativeCostFactor, final double percentile )
+	{
+		this.sources = sources;
+		this.targets = targets;
+		this.costFunction = null;
+		this.kernel = kernel;
+		this.packedSources = packedSources;
+		this.packedTargets = packedTargets;
+		this.candidateCosts = null;
+		this.costThreshold = costThreshold;
+		this.alternativeCostFactor = alternativeCostFactor;
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Instantiates a cost matrix creator from candidate links computed
+	 * beforehand, for instance by a cache. The three lists are read in
+	 * parallel: the i-th candidate links the i-th source to the i-th target
+	 * with the i-th cost. All candidates are accepted.
+	 *
+	 * @param candidateSources
+	 *            the sources of the candidate links.
+	 * @param candidateTargets
+	 *            the targets of the candidate links.
+	 * @param candidateCosts
+	 *            the costs of the candidate links.
+	 * @param alternativeCostFactor
+	 *            the alternative cost factor.
+	 * @param percentile
+	 *            the percentile of costs used to compute the alternative cost.
+	 */
+	public JaqamanLinkingCostMatrixCreator( final List< K > candidateSources, final List< J > candidateTargets, final double[] candidateCosts, final double alternativeCostFactor, final double percentile )
+	{
+		this.sources = candidateSources;
+		this.targets = candidateTargets;
+		this.costFunction = null;
+		this.kernel = null;
+		this.packedSources = null;
+		this.packedTargets = null;
+		this.candidateCosts = candidateCosts;
+		this.costThreshold = Double.POSITIVE_INFINITY;
+		this.alternativeCostFactor = alternativeCostFactor;
+		this.percentile = percentile;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -79,19 +161,50 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 
 		final List< K > accSources = new ArrayList< >();
 		final List< J > accTargets = new ArrayList< >();
-		final ResizableDoubleArray costs = new ResizableDoubleArray();
+		final ResizableDoubleArray costs;
 
-		for ( final K source : sources )
+		if ( null != candidateCosts )
+		{
+			accSources.addAll( ( List< K > ) sources );
+			accTargets.addAll( ( List< J > ) targets );
+			costs = new ResizableDoubleArray( candidateCosts.clone() );
+		}
+		else if ( null == kernel )
 		{
-			for ( final J target : targets )
+			costs = new ResizableDoubleArray();
+			for ( final K source : sources )
 			{
+				for ( final J target : targets )
+				{
 
-				final double cost = costFunction.linkingCost( source, target );
-				if ( cost < costThreshold )
+					final double cost = costFunction.linkingCost( source, target );
+					if ( cost < costThreshold )
+					{
+						accSources.add( source );
+						accTargets.add( target );
+						costs.add( cost );
+					}
+				}
+			}
+		}
+		else
+		{
+			costs = new ResizableDoubleArray();
+			final List< K > sourceList = ( List< K > ) sources;
+			final List< J > targetList = ( List< J > ) targets;
+			final int nSources = sourceList.size();
+			final int nTargets = targetList.size();
+			for ( int i = 0; i < nSources; i++ )
+			{
+				for ( int j = 0; j < nTargets; j++ )
 				{
-					accSources.add( source );
-					accTargets.add( target );
-					costs.add( cost );
+					final double cost = kernel.linkingCost( packedSources, i, packedTargets, j );
+					if ( cost < costThreshold )
+					{
+						accSources.add( sourceList.get( i ) );
+						accTargets.add( targetList.get( j ) );
+						costs.add( cost );
+					}
 				}
 			}
 		}
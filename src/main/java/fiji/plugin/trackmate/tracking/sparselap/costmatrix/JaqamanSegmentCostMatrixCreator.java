@@ -18,10 +18,12 @@ import static fiji.plugin.trackmate.util.TMUtils.checkParameter;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostKernel;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +73,8 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 
 	private final UndirectedGraph< Spot, DefaultWeightedEdge > graph;
 
+	private final GraphSegmentSplitter presetSegments;
+
 	private double alternativeCost = -1;
 
 	private int numThreads;
@@ -83,6 +87,22 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 	public JaqamanSegmentCostMatrixCreator( final UndirectedGraph< Spot, DefaultWeightedEdge > graph, final Map< String, Object > settings )
 	{
 		this.graph = graph;
+		this.presetSegments = null;
+		this.settings = settings;
+		setNumThreads();
+	}
+
+	/**
+	 * Instantiates a cost matrix creator for the top-left quadrant of the
+	 * segment linking cost matrix, using segment starts, ends and middle points
+	 * that have already been determined. This is used when the graph the
+	 * segments belong to is not available as a whole.
+	 *
+	 */
+	public JaqamanSegmentCostMatrixCreator( final GraphSegmentSplitter segments, final Map< String, Object > settings )
+	{
+		this.graph = null;
+		this.presetSegments = segments;
 		this.settings = settings;
 		setNumThreads();
 	}
@@ -105,6 +125,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return errorMessage;
 	}
 
+	@SuppressWarnings( "deprecation" )
 	@Override
 	public boolean process()
 	{
@@ -117,7 +138,8 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		// Gap closing.
 		@SuppressWarnings( "unchecked" )
 		final Map< String, Double > gcFeaturePenalties = ( Map< String, Double > ) settings.get( KEY_GAP_CLOSING_FEATURE_PENALTIES );
-		final CostFunction< Spot, Spot > gcCostFunction = getCostFunctionFor( gcFeaturePenalties );
+		final FeaturePenaltyCostKernel gcCostKernel = getCostKernelFor( gcFeaturePenalties );
+		final CostFunction< Spot, Spot > gcCostFunction = ( null == gcCostKernel ) ? getCostFunctionFor( gcFeaturePenalties ) : null;
 		final int maxFrameInterval = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
 		final double gcMaxDistance = ( Double ) settings.get( KEY_GAP_CLOSING_MAX_DISTANCE );
 		final double gcCostThreshold = gcMaxDistance * gcMaxDistance;
@@ -126,7 +148,8 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		// Merging
 		@SuppressWarnings( "unchecked" )
 		final Map< String, Double > mFeaturePenalties = ( Map< String, Double > ) settings.get( KEY_MERGING_FEATURE_PENALTIES );
-		final CostFunction< Spot, Spot > mCostFunction = getCostFunctionFor( mFeaturePenalties );
+		final FeaturePenaltyCostKernel mCostKernel = getCostKernelFor( mFeaturePenalties );
+		final CostFunction< Spot, Spot > mCostFunction = ( null == mCostKernel ) ? getCostFunctionFor( mFeaturePenalties ) : null;
 		final double mMaxDistance = ( Double ) settings.get( KEY_MERGING_MAX_DISTANCE );
 		final double mCostThreshold = mMaxDistance * mMaxDistance;
 		final boolean allowMerging = ( Boolean ) settings.get( KEY_ALLOW_TRACK_MERGING );
@@ -134,7 +157,8 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		// Splitting
 		@SuppressWarnings( "unchecked" )
 		final Map< String, Double > sFeaturePenalties = ( Map< String, Double > ) settings.get( KEY_SPLITTING_FEATURE_PENALTIES );
-		final CostFunction< Spot, Spot > sCostFunction = getCostFunctionFor( sFeaturePenalties );
+		final FeaturePenaltyCostKernel sCostKernel = getCostKernelFor( sFeaturePenalties );
+		final CostFunction< Spot, Spot > sCostFunction = ( null == sCostKernel ) ? getCostFunctionFor( sFeaturePenalties ) : null;
 		final boolean allowSplitting = ( Boolean ) settings.get( KEY_ALLOW_TRACK_SPLITTING );
 		final double sMaxDistance = ( Double ) settings.get( KEY_SPLITTING_MAX_DISTANCE );
 		final double sCostThreshold = sMaxDistance * sMaxDistance;
@@ -158,30 +182,77 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 
 		final boolean mergingOrSplitting = allowMerging || allowSplitting;
 
-		final GraphSegmentSplitter segmentSplitter = new GraphSegmentSplitter( graph, mergingOrSplitting );
-		final List< Spot > segmentEnds = segmentSplitter.getSegmentEnds();
-		final List< Spot > segmentStarts = segmentSplitter.getSegmentStarts();
-
-		/*
-		 * Generate all middle points list. We have to sort it by the same order
-		 * we will sort the unique list of targets, otherwise the SCM will
-		 * complains it does not receive columns in the right order.
-		 */
+		final List< Spot > segmentEnds;
+		final List< Spot > segmentStarts;
 		final List< Spot > allMiddles;
-		if ( mergingOrSplitting )
+		final int[] endFrames;
+		final int[] startFrames;
+		final int[] middleFrames;
+
+		final IndexedSegmentSplitter indexedSplitter = ( null == presetSegments ) ? new IndexedSegmentSplitter( graph, numThreads ) : null;
+		if ( null != indexedSplitter && indexedSplitter.isLinear() )
 		{
-			final List< List< Spot > > segmentMiddles = segmentSplitter.getSegmentMiddles();
-			allMiddles = new ArrayList< >();
-			for ( final List< Spot > segment : segmentMiddles )
-			{
-				allMiddles.addAll( segment );
-			}
+			/*
+			 * Frame-to-frame graphs are made of linear segments. The splitter
+			 * gives them as indices sorted by frame, with the spot frames.
+			 */
+			final Spot[] spots = indexedSplitter.getSpots();
+			final int[] frames = indexedSplitter.getFrames();
+			final int[] ends = indexedSplitter.getSegmentEnds();
+			final int[] starts = indexedSplitter.getSegmentStarts();
+			final int[] middles = mergingOrSplitting ? indexedSplitter.getSegmentMiddles() : new int[ 0 ];
+			segmentEnds = select( spots, ends );
+			segmentStarts = select( spots, starts );
+			allMiddles = select( spots, middles );
+			endFrames = select( frames, ends );
+			startFrames = select( frames, starts );
+			middleFrames = select( frames, middles );
 		}
 		else
 		{
-			allMiddles = Collections.emptyList();
+			final GraphSegmentSplitter segmentSplitter = ( null != presetSegments ) ? presetSegments : new GraphSegmentSplitter( graph, mergingOrSplitting );
+			segmentEnds = sortByFrame( segmentSplitter.getSegmentEnds() );
+			segmentStarts = sortByFrame( segmentSplitter.getSegmentStarts() );
+
+			/*
+			 * Generate all middle points list. We have to sort it by the same
+			 * order we will sort the unique list of targets, otherwise the SCM
+			 * will complains it does not receive columns in the right order.
+			 */
+			if ( mergingOrSplitting )
+			{
+				final List< List< Spot > > segmentMiddles = segmentSplitter.getSegmentMiddles();
+				allMiddles = new ArrayList< >();
+				for ( final List< Spot > segment : segmentMiddles )
+				{
+					allMiddles.addAll( segment );
+				}
+				Collections.sort( allMiddles, Spot.frameComparator );
+			}
+			else
+			{
+				allMiddles = Collections.emptyList();
+			}
+
+			endFrames = getFrames( segmentEnds );
+			startFrames = getFrames( segmentStarts );
+			middleFrames = getFrames( allMiddles );
 		}
 
+		/*
+		 * Gather the data needed to compute costs in packed arrays, once.
+		 */
+
+		final boolean gcPacked = allowGapClosing && null != gcCostKernel;
+		final boolean mPacked = allowMerging && null != mCostKernel;
+		final boolean sPacked = allowSplitting && null != sCostKernel;
+		final double[] gcEnds = gcPacked ? gcCostKernel.pack( segmentEnds ) : null;
+		final double[] gcStarts = gcPacked ? gcCostKernel.pack( segmentStarts ) : null;
+		final double[] mEnds = mPacked ? mCostKernel.pack( segmentEnds ) : null;
+		final double[] mMiddles = mPacked ? mCostKernel.pack( allMiddles ) : null;
+		final double[] sMiddles = sPacked ? sCostKernel.pack( allMiddles ) : null;
+		final double[] sStarts = sPacked ? sCostKernel.pack( segmentStarts ) : null;
+
 		final Object lock = new Object();
 
 		/*
@@ -198,14 +269,16 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		 */
 
 		final ExecutorService executorGCM = Executors.newFixedThreadPool( numThreads );
-		for ( final Spot source : segmentEnds )
+		for ( int is = 0; is < segmentEnds.size(); is++ )
 		{
+			final int i = is;
 			executorGCM.submit( new Runnable()
 			{
 				@Override
 				public void run()
 				{
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+					final Spot source = segmentEnds.get( i );
+					final int sourceFrame = endFrames[ i ];
 
 					/*
 					 * Iterate over segment starts - GAP-CLOSING.
@@ -213,19 +286,20 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 
 					if ( allowGapClosing )
 					{
-						for ( final Spot target : segmentStarts )
+						// Starts are sorted by frame: only iterate over the
+						// ones within the user frame interval specification.
+						for ( int j = firstIndexAfter( startFrames, sourceFrame ); j < startFrames.length; j++ )
 						{
-							// Check frame interval, must be within user
-							// specification.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff < 1 || tdiff > maxFrameInterval )
+							final int tdiff = startFrames[ j ] - sourceFrame;
+							if ( tdiff > maxFrameInterval )
 							{
-								continue;
+								break;
 							}
 
 							// Check max distance
-							final double cost = gcCostFunction.linkingCost( source, target );
+							final double cost = gcPacked
+									? gcCostKernel.linkingCost( gcEnds, i, gcStarts, j )
+									: gcCostFunction.linkingCost( source, segmentStarts.get( j ) );
 							if ( cost > gcCostThreshold )
 							{
 								continue;
@@ -234,7 +308,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 							synchronized ( lock )
 							{
 								sources.add( source );
-								targets.add( target );
+								targets.add( segmentStarts.get( j ) );
 								linkCosts.add( cost );
 							}
 						}
@@ -246,18 +320,19 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 
 					if ( allowMerging )
 					{
-						for ( final Spot target : allMiddles )
+						for ( int j = firstIndexAfter( middleFrames, sourceFrame ); j < middleFrames.length; j++ )
 						{
 							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
+							final int tdiff = middleFrames[ j ] - sourceFrame;
 							if ( tdiff != 1 )
 							{
-								continue;
+								break;
 							}
 
 							// Check max distance
-							final double cost = mCostFunction.linkingCost( source, target );
+							final double cost = mPacked
+									? mCostKernel.linkingCost( mEnds, i, mMiddles, j )
+									: mCostFunction.linkingCost( source, allMiddles.get( j ) );
 							if ( cost > mCostThreshold )
 							{
 								continue;
@@ -266,7 +341,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 							synchronized ( lock )
 							{
 								sources.add( source );
-								targets.add( target );
+								targets.add( allMiddles.get( j ) );
 								linkCosts.add( cost );
 							}
 						}
@@ -291,27 +366,30 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		if ( allowSplitting )
 		{
 			final ExecutorService executorS = Executors.newFixedThreadPool( numThreads );
-			for ( final Spot source : allMiddles )
+			for ( int is = 0; is < allMiddles.size(); is++ )
 			{
+				final int i = is;
 				executorS.submit( new Runnable()
 				{
 					@Override
 					public void run()
 					{
-						final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-						for ( final Spot target : segmentStarts )
+						final Spot source = allMiddles.get( i );
+						final int sourceFrame = middleFrames[ i ];
+						for ( int j = firstIndexAfter( startFrames, sourceFrame ); j < startFrames.length; j++ )
 						{
 							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
+							final int tdiff = startFrames[ j ] - sourceFrame;
 
 							if ( tdiff != 1 )
 							{
-								continue;
+								break;
 							}
 
 							// Check max distance
-							final double cost = sCostFunction.linkingCost( source, target );
+							final double cost = sPacked
+									? sCostKernel.linkingCost( sMiddles, i, sStarts, j )
+									: sCostFunction.linkingCost( source, segmentStarts.get( j ) );
 							if ( cost > sCostThreshold )
 							{
 								continue;
@@ -319,7 +397,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 							synchronized ( lock )
 							{
 								sources.add( source );
-								targets.add( target );
+								targets.add( segmentStarts.get( j ) );
 								linkCosts.add( cost );
 							}
 						}
@@ -378,6 +456,18 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return true;
 	}
 
+	/**
+	 * Returns the cost function to use for the specified feature penalties.
+	 *
+	 * @param featurePenalties
+	 *            the feature penalty map. Can be <code>null</code>.
+	 * @return a new cost function.
+	 * @deprecated costs are computed with the kernel returned by
+	 *             {@link #getCostKernelFor(Map)}. Subclasses overriding this
+	 *             method to return another cost function still get it used,
+	 *             without the compiled kernel.
+	 */
+	@Deprecated
 	protected CostFunction< Spot, Spot > getCostFunctionFor( final Map< String, Double > featurePenalties )
 	{
 		// Link Nick Perry original non sparse LAP framework.
@@ -393,6 +483,75 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return costFunction;
 	}
 
+	/**
+	 * Returns the compiled cost kernel to use for the specified feature
+	 * penalties, or <code>null</code> if {@link #getCostFunctionFor(Map)}
+	 * returns a cost function the kernel does not reproduce. Costs are then
+	 * computed with that cost function.
+	 *
+	 * @param featurePenalties
+	 *            the feature penalty map. Can be <code>null</code>.
+	 * @return a new cost kernel, or <code>null</code>.
+	 */
+	@SuppressWarnings( "deprecation" )
+	protected FeaturePenaltyCostKernel getCostKernelFor( final Map< String, Double > featurePenalties )
+	{
+		final Class< ? > costFunctionClass = getCostFunctionFor( featurePenalties ).getClass();
+		if ( costFunctionClass != SquareDistCostFunction.class && costFunctionClass != FeaturePenaltyCostFunction.class )
+			return null;
+		return new FeaturePenaltyCostKernel( featurePenalties );
+	}
+
+	private static final List< Spot > sortByFrame( final List< Spot > spots )
+	{
+		final List< Spot > sorted = new ArrayList< >( spots );
+		Collections.sort( sorted, Spot.frameComparator );
+		return sorted;
+	}
+
+	/**
+	 * Returns the index of the first element strictly greater than the
+	 * specified frame in a sorted frame array.
+	 */
+	private static final int firstIndexAfter( final int[] frames, final int frame )
+	{
+		int lo = 0;
+		int hi = frames.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( frames[ mid ] <= frame )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private static final List< Spot > select( final Spot[] spots, final int[] indices )
+	{
+		final Spot[] selected = new Spot[ indices.length ];
+		for ( int i = 0; i < indices.length; i++ )
+			selected[ i ] = spots[ indices[ i ] ];
+		return Arrays.asList( selected );
+	}
+
+	private static final int[] select( final int[] values, final int[] indices )
+	{
+		final int[] selected = new int[ indices.length ];
+		for ( int i = 0; i < indices.length; i++ )
+			selected[ i ] = values[ indices[ i ] ];
+		return selected;
+	}
+
+	private static final int[] getFrames( final List< Spot > spots )
+	{
+		final int[] frames = new int[ spots.size() ];
+		for ( int i = 0; i < frames.length; i++ )
+			frames[ i ] = spots.get( i ).getFeature( Spot.FRAME ).intValue();
+		return frames;
+	}
+
 	@Override
 	public SparseCostMatrix getResult()
 	{
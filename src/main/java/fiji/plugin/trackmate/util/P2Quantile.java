@@ -0,0 +1,168 @@
+package fiji.plugin.trackmate.util;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a quantile of a stream of values in constant memory, with the P²
+ * algorithm of Jain and Chlamtac (<i>The P² algorithm for dynamic calculation
+ * of quantiles and histograms without storing observations</i>, Communications
+ * of the ACM, 1985).
+ * <p>
+ * Five markers are maintained, whose heights approximate the min, the max, the
+ * desired quantile and two intermediate quantiles. Marker heights are adjusted
+ * with a piecewise-parabolic interpolation as values come in. The estimate is
+ * exact for up to 5 values.
+ */
+public class P2Quantile
+{
+
+	private final double p;
+
+	/** Marker heights. */
+	private final double[] q = new double[ 5 ];
+
+	/** Marker positions, 0-based. */
+	private final int[] n = new int[ 5 ];
+
+	/** Desired marker positions. */
+	private final double[] np = new double[ 5 ];
+
+	/** Increments of the desired marker positions. */
+	private final double[] dn;
+
+	private int count = 0;
+
+	/**
+	 * Creates an estimator for the specified quantile.
+	 *
+	 * @param p
+	 *            the quantile to estimate, between 0 and 1.
+	 */
+	public P2Quantile( final double p )
+	{
+		if ( p < 0 || p > 1 ) { throw new IllegalArgumentException( "Quantile must be between 0 and 1, was " + p + "." ); }
+		this.p = p;
+		this.dn = new double[] { 0, p / 2, p, ( 1 + p ) / 2, 1 };
+	}
+
+	/**
+	 * Returns the quantile estimated by this instance.
+	 *
+	 * @return the quantile, between 0 and 1.
+	 */
+	public double getP()
+	{
+		return p;
+	}
+
+	/**
+	 * Returns the number of values added so far.
+	 *
+	 * @return the number of values.
+	 */
+	public int getN()
+	{
+		return count;
+	}
+
+	/**
+	 * Adds a value to the stream.
+	 *
+	 * @param x
+	 *            the value.
+	 */
+	public void add( final double x )
+	{
+		if ( count < 5 )
+		{
+			q[ count++ ] = x;
+			if ( count == 5 )
+			{
+				Arrays.sort( q );
+				for ( int i = 0; i < 5; i++ )
+					n[ i ] = i;
+				np[ 0 ] = 0;
+				np[ 1 ] = 2 * p;
+				np[ 2 ] = 4 * p;
+				np[ 3 ] = 2 + 2 * p;
+				np[ 4 ] = 4;
+			}
+			return;
+		}
+		count++;
+
+		// Find the cell of x, and update the extreme markers.
+		final int k;
+		if ( x < q[ 0 ] )
+		{
+			q[ 0 ] = x;
+			k = 0;
+		}
+		else if ( x >= q[ 4 ] )
+		{
+			q[ 4 ] = x;
+			k = 3;
+		}
+		else
+		{
+			int i = 1;
+			while ( x >= q[ i ] )
+				i++;
+			k = i - 1;
+		}
+
+		for ( int i = k + 1; i < 5; i++ )
+			n[ i ]++;
+		for ( int i = 0; i < 5; i++ )
+			np[ i ] += dn[ i ];
+
+		// Adjust the heights of the middle markers.
+		for ( int i = 1; i < 4; i++ )
+		{
+			final double d = np[ i ] - n[ i ];
+			if ( ( d >= 1 && n[ i + 1 ] - n[ i ] > 1 ) || ( d <= -1 && n[ i - 1 ] - n[ i ] < -1 ) )
+			{
+				final int s = d > 0 ? 1 : -1;
+				final double qp = parabolic( i, s );
+				if ( q[ i - 1 ] < qp && qp < q[ i + 1 ] )
+					q[ i ] = qp;
+				else
+					q[ i ] = linear( i, s );
+				n[ i ] += s;
+			}
+		}
+	}
+
+	/**
+	 * Returns the current estimate of the quantile. For up to 5 values, this
+	 * is the value of rank <code>floor(p * n)</code>, with n the number of
+	 * values. Returns {@link Double#NaN} if no value was added.
+	 *
+	 * @return the quantile estimate.
+	 */
+	public double getQuantile()
+	{
+		if ( count == 0 )
+			return Double.NaN;
+		if ( count <= 5 )
+		{
+			// With 5 values, the middle marker is still the median, not the quantile.
+			final double[] sorted = Arrays.copyOf( q, count );
+			Arrays.sort( sorted );
+			return sorted[ Math.min( count - 1, ( int ) ( p * count ) ) ];
+		}
+		return q[ 2 ];
+	}
+
+	private double parabolic( final int i, final int s )
+	{
+		return q[ i ] + ( double ) s / ( n[ i + 1 ] - n[ i - 1 ] )
+				* ( ( n[ i ] - n[ i - 1 ] + s ) * ( q[ i + 1 ] - q[ i ] ) / ( n[ i + 1 ] - n[ i ] )
+						+ ( n[ i + 1 ] - n[ i ] - s ) * ( q[ i ] - q[ i - 1 ] ) / ( n[ i ] - n[ i - 1 ] ) );
+	}
+
+	private double linear( final int i, final int s )
+	{
+		return q[ i ] + s * ( q[ i + s ] - q[ i ] ) / ( n[ i + s ] - n[ i ] );
+	}
+}
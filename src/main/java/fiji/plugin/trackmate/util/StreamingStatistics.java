@@ -0,0 +1,215 @@
+package fiji.plugin.trackmate.util;
+
+import java.util.Arrays;
+
+/**
+ * Computes descriptive statistics of a stream of values in bounded memory.
+ * <p>
+ * The count, sum, min, max, mean and variance are exact, the variance being
+ * computed with Welford's online algorithm. Quantiles are exact as long as at
+ * most <code>maxExactValues</code> values were added: values are buffered and
+ * quantiles are read from the sorted buffer. Past this number, the buffer is
+ * dropped and quantiles are estimated with one {@link P2Quantile} each, in
+ * constant memory.
+ * <p>
+ * Exact quantiles follow the convention used throughout TrackMate: the
+ * quantile <code>p</code> of <code>n</code> values is the value of rank
+ * <code>floor(p * n)</code> in ascending order, so the median is the upper
+ * median.
+ */
+public class StreamingStatistics
+{
+
+	private final int maxExactValues;
+
+	private final double[] quantiles;
+
+	private double[] buffer;
+
+	private boolean sorted;
+
+	private P2Quantile[] estimators;
+
+	private int n = 0;
+
+	private double sum = 0;
+
+	private double mean = 0;
+
+	private double M2 = 0;
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param maxExactValues
+	 *            the max number of values for which quantiles are computed
+	 *            exactly. Use 0 to always estimate them, and
+	 *            {@link Integer#MAX_VALUE} to always compute them exactly.
+	 * @param quantiles
+	 *            the quantiles that will be queried, between 0 and 1. If none
+	 *            are specified, only the median can be queried.
+	 */
+	public StreamingStatistics( final int maxExactValues, final double... quantiles )
+	{
+		this.maxExactValues = Math.max( 0, maxExactValues );
+		this.quantiles = quantiles.length == 0 ? new double[] { 0.5 } : quantiles.clone();
+		this.buffer = new double[ Math.min( 16, this.maxExactValues ) ];
+		if ( this.maxExactValues == 0 )
+			startEstimating();
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param val
+	 *            the value.
+	 */
+	public void add( final double val )
+	{
+		n++;
+		sum += val;
+		final double delta = val - mean;
+		mean += delta / n;
+		M2 += delta * ( val - mean );
+		if ( val < min )
+			min = val;
+		if ( val > max )
+			max = val;
+
+		if ( null != estimators )
+		{
+			for ( final P2Quantile estimator : estimators )
+				estimator.add( val );
+			return;
+		}
+
+		if ( n > maxExactValues )
+		{
+			startEstimating();
+			for ( final P2Quantile estimator : estimators )
+				estimator.add( val );
+			return;
+		}
+
+		if ( n > buffer.length )
+			buffer = Arrays.copyOf( buffer, ( int ) Math.min( maxExactValues, 2l * buffer.length + 1 ) );
+		buffer[ n - 1 ] = val;
+		sorted = false;
+	}
+
+	/**
+	 * Returns <code>true</code> if the quantiles are exact, that is, if no
+	 * more than <code>maxExactValues</code> values were added.
+	 *
+	 * @return whether quantiles are exact.
+	 */
+	public boolean isExact()
+	{
+		return null == estimators;
+	}
+
+	public int getN()
+	{
+		return n;
+	}
+
+	public double getSum()
+	{
+		return sum;
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	public double getMean()
+	{
+		return mean;
+	}
+
+	/**
+	 * Returns the sample variance, normalized by <code>n - 1</code>.
+	 *
+	 * @return the sample variance.
+	 */
+	public double getVariance()
+	{
+		return M2 / ( n - 1 );
+	}
+
+	/**
+	 * Returns the population variance, normalized by <code>n</code>.
+	 *
+	 * @return the population variance.
+	 */
+	public double getPopulationVariance()
+	{
+		return M2 / n;
+	}
+
+	public double getMedian()
+	{
+		return getQuantile( 0.5 );
+	}
+
+	/**
+	 * Returns the specified quantile of the values added so far, exact or
+	 * estimated. Returns {@link Double#NaN} if no value was added.
+	 *
+	 * @param p
+	 *            the quantile, between 0 and 1. Must be one of the quantiles
+	 *            specified at construction.
+	 * @return the quantile value.
+	 */
+	public double getQuantile( final double p )
+	{
+		int index = -1;
+		for ( int i = 0; i < quantiles.length; i++ )
+		{
+			if ( quantiles[ i ] == p )
+			{
+				index = i;
+				break;
+			}
+		}
+		if ( index < 0 ) { throw new IllegalArgumentException( "Quantile " + p + " was not declared." ); }
+		if ( n == 0 )
+			return Double.NaN;
+
+		if ( null != estimators )
+			return estimators[ index ].getQuantile();
+
+		if ( !sorted )
+		{
+			Arrays.sort( buffer, 0, n );
+			sorted = true;
+		}
+		return buffer[ Math.min( n - 1, ( int ) ( p * n ) ) ];
+	}
+
+	/**
+	 * Switches to estimated quantiles, feeding the buffered values to the
+	 * estimators.
+	 */
+	private void startEstimating()
+	{
+		estimators = new P2Quantile[ quantiles.length ];
+		for ( int i = 0; i < quantiles.length; i++ )
+		{
+			estimators[ i ] = new P2Quantile( quantiles[ i ] );
+			for ( int j = 0; j < n - 1; j++ )
+				estimators[ i ].add( buffer[ j ] );
+		}
+		buffer = null;
+	}
+}
@@ -96,7 +96,12 @@ public class PerTrackFeatureColorGenerator implements TrackColorGenerator, Model
 		}
 	}
 
-	private void refreshColorMap()
+	/**
+	 * Recomputes the color of each track from the current feature values,
+	 * rescaling the min and max first in automatic mode. Must be called when
+	 * track features are computed after the model change that affected them.
+	 */
+	public void refreshColorMap()
 	{
 		final TrackModel trackModel = model.getTrackModel();
 		final Set< Integer > trackIDs = trackModel.trackIDs( true );
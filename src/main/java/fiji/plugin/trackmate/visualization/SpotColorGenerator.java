@@ -6,6 +6,7 @@ import fiji.plugin.trackmate.ModelChangeListener;
 import fiji.plugin.trackmate.Spot;
 
 import java.awt.Color;
+import java.util.Collections;
 import java.util.Set;
 
 import org.jfree.chart.renderer.InterpolatePaintScale;
@@ -109,6 +110,7 @@ public class SpotColorGenerator implements FeatureColorGenerator< Spot >, ModelC
 	private void computeSpotColors()
 	{
 		if ( null == feature ) { return; }
+		model.getFeatureModel().ensureSpotFeatures( Collections.singleton( feature ) );
 
 		// Get min & max
 		min = Float.POSITIVE_INFINITY;
@@ -40,6 +40,16 @@ public class SpotColorGeneratorPerTrackFeature implements FeatureColorGenerator<
 		return trackColorGenerator.getFeature();
 	}
 
+	/**
+	 * Recomputes the color of each track from the current feature values.
+	 *
+	 * @see PerTrackFeatureColorGenerator#refreshColorMap()
+	 */
+	public void refreshColorMap()
+	{
+		trackColorGenerator.refreshColorMap();
+	}
+
 	@Override
 	public void terminate()
 	{
@@ -207,7 +207,7 @@ public class TrackSchemeGraphLayout extends mxGraphLayout implements Benchmark
 					 * Layout in branches for merging tracks
 					 */
 
-					final TrackBranchDecomposition branchDecomposition = ConvexBranchesDecomposition.processTrack( trackID, model.getTrackModel(), neighborCache, false, false );
+					final TrackBranchDecomposition branchDecomposition = model.getBranchDecompositionCache().get( trackID, false, false ).toTrackBranchDecomposition();
 					final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
 					final DepthFirstIterator< List< Spot >, DefaultEdge > depthFirstIterator = new DepthFirstIterator< >( branchGraph );
 
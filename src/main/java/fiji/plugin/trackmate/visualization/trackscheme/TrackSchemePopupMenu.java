@@ -62,6 +62,7 @@ public class TrackSchemePopupMenu extends JPopupMenu
 			final Double value = Double.valueOf( previousColor.getRGB() );
 			trackScheme.getModel().getFeatureModel().putEdgeFeature( edge, ManualEdgeColorAnalyzer.FEATURE, value );
 		}
+		trackScheme.getModel().getFeatureModel().invalidateTrackFeatureColumns();
 	}
 
 	private void manualColorVertices( final ArrayList< mxCell > vertices )
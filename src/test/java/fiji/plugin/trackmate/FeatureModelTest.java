@@ -0,0 +1,160 @@
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.features.FeatureColumn;
+import fiji.plugin.trackmate.features.FeatureFilter;
+
+public class FeatureModelTest
+{
+
+	private static final String TRACK_FEATURE = "TEST_TRACK_FEATURE";
+
+	private Model model;
+
+	private Integer trackID;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			Spot previous = null;
+			for ( int t = 0; t < 10; t++ )
+			{
+				final Spot spot = new Spot( 0d, 0d, 0d, 1d, t, "S" + t );
+				model.addSpotTo( spot, t );
+				if ( null != previous )
+					model.addEdge( previous, spot, 1 );
+				previous = spot;
+			}
+			trackID = model.getTrackModel().trackIDOf( previous );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final Map< String, String > names = new HashMap< >();
+		names.put( TRACK_FEATURE, "Test" );
+		final Map< String, Dimension > dimensions = new HashMap< >();
+		dimensions.put( TRACK_FEATURE, Dimension.NONE );
+		final Map< String, Boolean > isInt = new HashMap< >();
+		isInt.put( TRACK_FEATURE, Boolean.FALSE );
+		model.getFeatureModel().declareTrackFeatures( Collections.singleton( TRACK_FEATURE ), names, names, dimensions, isInt );
+		model.getFeatureModel().putTrackFeature( trackID, TRACK_FEATURE, 3. );
+	}
+
+	@Test
+	public void testSpotColumns()
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final FeatureColumn all = fm.getSpotFeatureColumn( Spot.QUALITY, false );
+		assertEquals( 10, all.size() );
+		assertEquals( 0., all.getMin(), 0. );
+		assertEquals( 9., all.getMax(), 0. );
+		assertSame( all, fm.getSpotFeatureColumn( Spot.QUALITY, false ) );
+		assertSame( all, fm.getSpotFeatureColumns( Collections.singleton( Spot.QUALITY ), false ).get( Spot.QUALITY ) );
+
+		// Filtering only discards the columns of visible spots.
+		final FeatureColumn visible = fm.getSpotFeatureColumn( Spot.QUALITY, true );
+		model.filterSpots( Collections.singleton( new FeatureFilter( Spot.QUALITY, 4.5, true ) ), true );
+		assertSame( all, fm.getSpotFeatureColumn( Spot.QUALITY, false ) );
+		assertNotSame( visible, fm.getSpotFeatureColumn( Spot.QUALITY, true ) );
+		assertEquals( 5, fm.getSpotFeatureColumn( Spot.QUALITY, true ).size() );
+
+		// Modifications discard all the columns.
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( new Spot( 0d, 0d, 0d, 1d, 20d ), 0 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		final FeatureColumn modified = fm.getSpotFeatureColumn( Spot.QUALITY, false );
+		assertNotSame( all, modified );
+		assertEquals( 11, modified.size() );
+		assertEquals( 20., modified.getMax(), 0. );
+	}
+
+	@Test
+	public void testTrackColumns()
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final FeatureColumn column = fm.getTrackFeatureColumn( TRACK_FEATURE, false );
+		assertEquals( 1, column.size() );
+		assertEquals( 3., column.getValues()[ 0 ], 0. );
+		assertSame( column, fm.getTrackFeatureColumn( TRACK_FEATURE, false ) );
+
+		// The legacy accessor returns a copy.
+		final double[] values = fm.getTrackFeatureValues( TRACK_FEATURE, false );
+		assertNotSame( column.getValues(), values );
+		values[ 0 ] = 0.;
+		assertEquals( 3., fm.getTrackFeatureColumn( TRACK_FEATURE, false ).getValues()[ 0 ], 0. );
+
+		// Columns are discarded once per batch of stored values.
+		fm.putTrackFeature( trackID, TRACK_FEATURE, 5. );
+		assertSame( column, fm.getTrackFeatureColumn( TRACK_FEATURE, false ) );
+		fm.invalidateTrackFeatureColumns();
+		final FeatureColumn updated = fm.getTrackFeatureColumn( TRACK_FEATURE, false );
+		assertNotSame( column, updated );
+		assertEquals( 5., updated.getValues()[ 0 ], 0. );
+
+		// Hiding the track only discards the columns of visible tracks.
+		final FeatureColumn visible = fm.getTrackFeatureColumn( TRACK_FEATURE, true );
+		assertEquals( 1, visible.size() );
+		model.beginUpdate();
+		try
+		{
+			model.setTrackVisibility( trackID, false );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertSame( updated, fm.getTrackFeatureColumn( TRACK_FEATURE, false ) );
+		assertEquals( 0, fm.getTrackFeatureColumn( TRACK_FEATURE, true ).size() );
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final double[] values = new double[] { 0., 1., 1., 2., 2., 2., 3., Double.NaN, 10. };
+		final FeatureColumn column = new FeatureColumn( values );
+		assertTrue( column.hasData() );
+		assertEquals( 0., column.getMin(), 0. );
+		assertEquals( 10., column.getMax(), 0. );
+
+		final int[] histogram = column.getHistogram();
+		assertEquals( histogram.length, column.getNBins() );
+		assertTrue( histogram.length >= FeatureColumn.MIN_BINS );
+		int total = 0;
+		for ( final int count : histogram )
+			total += count;
+		assertEquals( 8, total );
+		// 8 bins of width 1.25.
+		assertEquals( 8, histogram.length );
+		assertEquals( 3, histogram[ 0 ] );
+		assertEquals( 1, histogram[ histogram.length - 1 ] );
+		assertSame( histogram, column.getHistogram() );
+
+		final FeatureColumn nans = new FeatureColumn( new double[] { Double.NaN, Double.NaN } );
+		assertFalse( nans.hasData() );
+		assertEquals( 0, nans.getNBins() );
+	}
+}
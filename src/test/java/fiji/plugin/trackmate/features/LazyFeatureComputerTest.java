@@ -0,0 +1,161 @@
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackDurationAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackFeatureAccumulator;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+public class LazyFeatureComputerTest
+{
+
+	private static final int N_TRACKS = 5;
+
+	private static final int DEPTH = 8;
+
+	private Model model;
+
+	private Settings settings;
+
+	private Spot last;
+
+	private int durationCount;
+
+	private int indexCount;
+
+	private int edgeCount;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int j = 0; j <= DEPTH; j++ )
+				{
+					final Spot spot = new Spot( i, j, 0d, 1d, -1d );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( j ) );
+					model.addSpotTo( spot, j );
+					if ( null != previous )
+						model.addEdge( previous, spot, 1 );
+					previous = spot;
+				}
+				last = previous;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		settings = new Settings();
+		settings.addTrackAnalyzer( new TrackDurationAnalyzer()
+		{
+			@Override
+			public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+			{
+				// One per track.
+				synchronized ( LazyFeatureComputerTest.this )
+				{
+					durationCount++;
+				}
+				return super.createAccumulator( trackID, nSpots, nEdges, model );
+			}
+		} );
+		settings.addTrackAnalyzer( new TrackIndexAnalyzer()
+		{
+			@Override
+			public void process( final Collection< Integer > trackIDs, final Model model )
+			{
+				indexCount++;
+				super.process( trackIDs, model );
+			}
+		} );
+		settings.addEdgeAnalyzer( new EdgeTargetAnalyzer()
+		{
+			@Override
+			public void process( final Collection< org.jgrapht.graph.DefaultWeightedEdge > edges, final Model model )
+			{
+				edgeCount++;
+				super.process( edges, model );
+			}
+		} );
+	}
+
+	@Test
+	public void testLazy()
+	{
+		final TrackMate trackmate = new TrackMate( model, settings );
+		trackmate.setLazyFeatures( true );
+		assertTrue( trackmate.computeTrackFeatures( false ) );
+		assertTrue( trackmate.computeEdgeFeatures( false ) );
+
+		// Declared, but not computed.
+		final FeatureModel fm = model.getFeatureModel();
+		assertTrue( fm.getTrackFeatures().contains( TrackDurationAnalyzer.TRACK_DURATION ) );
+		assertTrue( fm.getEdgeFeatures().contains( EdgeTargetAnalyzer.SPOT_SOURCE_ID ) );
+		assertEquals( 0, durationCount );
+		assertEquals( 0, indexCount );
+		assertEquals( 0, edgeCount );
+
+		// Computed on first request only.
+		final Integer trackID = model.getTrackModel().trackIDs( false ).iterator().next();
+		assertEquals( DEPTH, fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DURATION ).doubleValue(), 1e-9 );
+		assertNotNull( fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_START ) );
+		assertEquals( N_TRACKS, durationCount );
+		assertEquals( 0, indexCount );
+		assertEquals( 0, edgeCount );
+
+		// Computed again after the model is modified, for the modified track only.
+		model.beginUpdate();
+		try
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+			spot.putFeature( Spot.POSITION_T, Double.valueOf( DEPTH + 1 ) );
+			model.addSpotTo( spot, DEPTH + 1 );
+			model.addEdge( last, spot, 1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		final Integer lastTrackID = model.getTrackModel().trackIDOf( last );
+		assertEquals( DEPTH + 1, fm.getTrackFeature( lastTrackID, TrackDurationAnalyzer.TRACK_DURATION ).doubleValue(), 1e-9 );
+		assertEquals( N_TRACKS + 1, durationCount );
+
+		// Everything is computed before exporting.
+		fm.ensureAllFeatures();
+		assertEquals( N_TRACKS + 1, durationCount );
+		assertEquals( 1, indexCount );
+		assertEquals( 1, edgeCount );
+	}
+
+	@Test
+	public void testEager()
+	{
+		final TrackMate trackmate = new TrackMate( model, settings );
+		assertTrue( trackmate.computeTrackFeatures( false ) );
+		assertTrue( trackmate.computeEdgeFeatures( false ) );
+		assertEquals( N_TRACKS, durationCount );
+		assertEquals( 1, indexCount );
+		assertEquals( 1, edgeCount );
+		assertEquals( null, model.getFeatureModel().getLazyFeatureComputer() );
+	}
+}
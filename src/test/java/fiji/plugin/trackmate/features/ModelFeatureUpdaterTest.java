@@ -0,0 +1,212 @@
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.edges.EdgeVelocityAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackFeatureAccumulator;
+import fiji.plugin.trackmate.features.track.TrackSpeedStatisticsAnalyzer;
+
+public class ModelFeatureUpdaterTest
+{
+
+	private static final int N_TRACKS = 3;
+
+	private static final int DEPTH = 5;
+
+	private Model model;
+
+	private Settings settings;
+
+	private Spot spot;
+
+	private int velocityCount;
+
+	private int speedCount;
+
+	private int updateCount;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int j = 0; j <= DEPTH; j++ )
+				{
+					final Spot s = new Spot( i, j, 0d, 1d, -1d );
+					s.putFeature( Spot.POSITION_T, Double.valueOf( j ) );
+					model.addSpotTo( s, j );
+					if ( null != previous )
+						model.addEdge( previous, s, 1 );
+					previous = s;
+				}
+				spot = previous;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		settings = new Settings();
+		settings.addEdgeAnalyzer( new EdgeVelocityAnalyzer()
+		{
+			@Override
+			public void process( final Collection< DefaultWeightedEdge > edges, final Model model )
+			{
+				synchronized ( ModelFeatureUpdaterTest.this )
+				{
+					velocityCount++;
+				}
+				super.process( edges, model );
+			}
+		} );
+		settings.addTrackAnalyzer( new TrackSpeedStatisticsAnalyzer()
+		{
+			@Override
+			public TrackFeatureAccumulator createAccumulator( final Integer trackID, final int nSpots, final int nEdges, final Model model )
+			{
+				// One per track.
+				synchronized ( ModelFeatureUpdaterTest.this )
+				{
+					speedCount++;
+				}
+				return super.createAccumulator( trackID, nSpots, nEdges, model );
+			}
+		} );
+	}
+
+	@Test
+	public void testSynchronous()
+	{
+		final ModelFeatureUpdater updater = createUpdater( 0 );
+		move( 0.5 );
+		assertEquals( 1, updateCount );
+		assertEquals( 1, velocityCount );
+		assertEquals( 1, speedCount );
+		updater.quit();
+	}
+
+	@Test
+	public void testSynchronousByDefault()
+	{
+		final ModelFeatureUpdater updater = new ModelFeatureUpdater( model, settings );
+		assertEquals( 0, updater.getDelay() );
+		move( 0.5 );
+		assertEquals( 1, velocityCount );
+		assertEquals( 1, speedCount );
+		updater.quit();
+	}
+
+	@Test
+	public void testBurstIsCoalesced()
+	{
+		final ModelFeatureUpdater updater = createUpdater( 10000 );
+		for ( int i = 0; i < 10; i++ )
+			move( 0.1 );
+		assertEquals( 0, updateCount );
+		assertEquals( 0, velocityCount );
+
+		updater.update();
+		assertEquals( 1, updateCount );
+		assertEquals( 1, velocityCount );
+		assertEquals( 1, speedCount );
+
+		// Nothing left to do.
+		updater.update();
+		assertEquals( 1, updateCount );
+		updater.quit();
+	}
+
+	@Test
+	public void testBurstIsCoalescedAfterDelay() throws InterruptedException
+	{
+		final ModelFeatureUpdater updater = createUpdater( 50 );
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		updater.addActionListener( new ActionListener()
+		{
+			@Override
+			public void actionPerformed( final ActionEvent e )
+			{
+				latch.countDown();
+			}
+		} );
+		for ( int i = 0; i < 10; i++ )
+			move( 0.1 );
+		assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+		updater.quit();
+		assertEquals( 1, updateCount );
+		assertEquals( 1, velocityCount );
+		assertEquals( 1, speedCount );
+	}
+
+	@Test
+	public void testRadiusOnly()
+	{
+		final ModelFeatureUpdater updater = createUpdater( 0 );
+		model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.RADIUS, Double.valueOf( 2d ) );
+			model.updateFeatures( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( 1, updateCount );
+		assertEquals( 0, velocityCount );
+		assertEquals( 0, speedCount );
+		updater.quit();
+	}
+
+	private ModelFeatureUpdater createUpdater( final long delay )
+	{
+		final ModelFeatureUpdater updater = new ModelFeatureUpdater( model, settings );
+		updater.setDelay( delay );
+		updater.addActionListener( new ActionListener()
+		{
+			@Override
+			public void actionPerformed( final ActionEvent e )
+			{
+				synchronized ( ModelFeatureUpdaterTest.this )
+				{
+					updateCount++;
+				}
+			}
+		} );
+		return updater;
+	}
+
+	private void move( final double dx )
+	{
+		model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.POSITION_X, Double.valueOf( spot.getFeature( Spot.POSITION_X ).doubleValue() + dx ) );
+			model.updateFeatures( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.features.manual.ManualSpotColorAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotContrastAndSNRAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotIntensityAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotMorphologyAnalyzerFactory;
+import fiji.plugin.trackmate.features.spot.SpotRadiusEstimatorFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class SpotFeatureCalculatorTest
+{
+
+	@Test
+	public void testScheduleStages()
+	{
+		final SpotIntensityAnalyzerFactory< UnsignedByteType > intensity = new SpotIntensityAnalyzerFactory< >();
+		final SpotContrastAndSNRAnalyzerFactory< UnsignedByteType > contrast = new SpotContrastAndSNRAnalyzerFactory< >();
+		final SpotMorphologyAnalyzerFactory< UnsignedByteType > morphology = new SpotMorphologyAnalyzerFactory< >();
+		final SpotRadiusEstimatorFactory< UnsignedByteType > radius = new SpotRadiusEstimatorFactory< >();
+		final ManualSpotColorAnalyzerFactory< UnsignedByteType > color = new ManualSpotColorAnalyzerFactory< >();
+
+		final List< SpotAnalyzerFactory< ? > > factories = new ArrayList< >();
+		factories.add( intensity );
+		factories.add( radius );
+		factories.add( contrast );
+		factories.add( morphology );
+		factories.add( color );
+
+		final List< List< SpotAnalyzerFactory< ? > > > stages = SpotFeatureCalculator.scheduleStages( factories );
+		assertEquals( 2, stages.size() );
+
+		final List< SpotAnalyzerFactory< ? > > first = new ArrayList< >();
+		first.add( intensity );
+		first.add( radius );
+		first.add( morphology );
+		first.add( color );
+		assertEquals( first, stages.get( 0 ) );
+
+		final List< SpotAnalyzerFactory< ? > > second = new ArrayList< >();
+		second.add( contrast );
+		assertEquals( second, stages.get( 1 ) );
+	}
+
+	@Test
+	public void testScheduleStagesEmpty()
+	{
+		assertEquals( 0, SpotFeatureCalculator.scheduleStages( new ArrayList< SpotAnalyzerFactory< ? > >() ).size() );
+	}
+}
@@ -0,0 +1,137 @@
+package fiji.plugin.trackmate.features.spot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class SpotIntensityAndContrastAnalyzerTest
+{
+
+	private static final double RADIUS = 2; // physical units
+
+	private static final double[] CENTER = new double[] { 10, 10, 0 }; // physical
+																		// units
+
+	private static final double[] CALIBRATION = new double[] { 0.2, 0.2 };
+
+	/**
+	 * Relative tolerance on the features compared to the separate analyzers.
+	 */
+	private static final double TOLERANCE = 0.05;
+
+	private ImgPlus< UnsignedShortType > imgInt;
+
+	private ImgPlus< FloatType > imgFloat;
+
+	/**
+	 * Creates a 2D image with a bright disc on a dim background, with an
+	 * integer type and a floating-point type. The disc is larger than the
+	 * spot, so that the spot only sees bright pixels.
+	 */
+	@Before
+	public void setUp()
+	{
+		final long[] dims = new long[] { ( long ) ( 2 * CENTER[ 0 ] / CALIBRATION[ 0 ] ), ( long ) ( 2 * CENTER[ 1 ] / CALIBRATION[ 1 ] ) };
+		final Img< UnsignedShortType > img1 = ArrayImgs.unsignedShorts( dims );
+		final Img< FloatType > img2 = ArrayImgs.floats( dims );
+		final Random ran = new Random( 1l );
+		final Cursor< UnsignedShortType > c1 = img1.localizingCursor();
+		final Cursor< FloatType > c2 = img2.cursor();
+		while ( c1.hasNext() )
+		{
+			c1.fwd();
+			c2.fwd();
+			final double dx = c1.getDoublePosition( 0 ) * CALIBRATION[ 0 ] - CENTER[ 0 ];
+			final double dy = c1.getDoublePosition( 1 ) * CALIBRATION[ 1 ] - CENTER[ 1 ];
+			final boolean in = dx * dx + dy * dy <= 2.25 * RADIUS * RADIUS;
+			final int val = ( in ? 1000 : 100 ) + ran.nextInt( 50 );
+			c1.get().set( val );
+			c2.get().set( val + 0.5f );
+		}
+		imgInt = new ImgPlus< >( img1, "int", new AxisType[] { Axes.X, Axes.Y }, CALIBRATION );
+		imgFloat = new ImgPlus< >( img2, "float", new AxisType[] { Axes.X, Axes.Y }, CALIBRATION );
+	}
+
+	@Test
+	public void testHistogramMedian()
+	{
+		checkAgainstSeparateAnalyzers( imgInt );
+	}
+
+	@Test
+	public void testSelectionMedian()
+	{
+		checkAgainstSeparateAnalyzers( imgFloat );
+	}
+
+	@Test
+	public void testSelect()
+	{
+		final Random ran = new Random( 2l );
+		for ( int t = 0; t < 100; t++ )
+		{
+			final int n = 1 + ran.nextInt( 200 );
+			final double[] values = new double[ n + 10 ];
+			for ( int i = 0; i < n; i++ )
+				values[ i ] = ran.nextInt( 20 ); // Plenty of duplicates.
+			final double[] sorted = Arrays.copyOf( values, n );
+			Arrays.sort( sorted );
+			final int k = ran.nextInt( n );
+			assertEquals( sorted[ k ], SpotIntensityAndContrastAnalyzer.select( values, n, k ), 0d );
+		}
+	}
+
+	@Test
+	public void testFuse()
+	{
+		final List< SpotAnalyzerFactory< ? > > factories = new ArrayList< >();
+		factories.add( new SpotIntensityAnalyzerFactory< UnsignedShortType >() );
+		factories.add( new SpotMorphologyAnalyzerFactory< UnsignedShortType >() );
+		factories.add( new SpotContrastAndSNRAnalyzerFactory< UnsignedShortType >() );
+		final List< SpotAnalyzerFactory< ? > > fused = SpotIntensityAndContrastAnalyzerFactory.fuse( factories );
+		assertEquals( 2, fused.size() );
+		assertEquals( SpotIntensityAndContrastAnalyzerFactory.KEY, fused.get( 0 ).getKey() );
+		assertEquals( SpotMorphologyAnalyzerFactory.KEY, fused.get( 1 ).getKey() );
+
+		factories.remove( 2 );
+		assertEquals( factories, SpotIntensityAndContrastAnalyzerFactory.fuse( factories ) );
+	}
+
+	private < T extends RealType< T > > void checkAgainstSeparateAnalyzers( final ImgPlus< T > img )
+	{
+		final Spot expected = new Spot( CENTER[ 0 ], CENTER[ 1 ], CENTER[ 2 ], RADIUS, -1d );
+		new SpotIntensityAnalyzer< >( img, null ).process( expected );
+		new SpotContrastAndSNRAnalyzer< >( img, null ).process( expected );
+
+		final Spot spot = new Spot( CENTER[ 0 ], CENTER[ 1 ], CENTER[ 2 ], RADIUS, -1d );
+		new SpotIntensityAndContrastAnalyzer< >( img, null ).process( spot );
+
+		/*
+		 * The inner pixels are picked by distance in the neighborhood of twice
+		 * the radius, and can differ from the spot neighborhood on its border.
+		 * The disc is uniform there, so the values stay close.
+		 */
+		for ( final String feature : SpotIntensityAndContrastAnalyzerFactory.FEATURES )
+		{
+			final double e = expected.getFeature( feature ).doubleValue();
+			assertEquals( feature, e, spot.getFeature( feature ).doubleValue(), TOLERANCE * Math.abs( e ) );
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package fiji.plugin.trackmate.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class BranchDecompositionCacheTest
+{
+
+	private Model model;
+
+	private Spot a, b, c, d, e, f, g;
+
+	private Spot last;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			// A splitting track.
+			a = add( "A", 0 );
+			b = add( "B", 1 );
+			c = add( "C", 2 );
+			d = add( "D", 3 );
+			e = add( "E", 4 );
+			f = add( "F", 3 );
+			g = add( "G", 4 );
+			model.addEdge( a, b, 1 );
+			model.addEdge( b, c, 1 );
+			model.addEdge( c, d, 1 );
+			model.addEdge( d, e, 1 );
+			model.addEdge( c, f, 1 );
+			model.addEdge( f, g, 1 );
+
+			// A linear track.
+			Spot previous = add( "L0", 0 );
+			for ( int t = 1; t < 5; t++ )
+			{
+				final Spot spot = add( "L" + t, t );
+				model.addEdge( previous, spot, 1 );
+				previous = spot;
+			}
+			last = previous;
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private Spot add( final String name, final int frame )
+	{
+		final Spot spot = new Spot( frame, 0d, 0d, 1d, -1d, name );
+		spot.putFeature( Spot.POSITION_T, Double.valueOf( frame ) );
+		model.addSpotTo( spot, frame );
+		return spot;
+	}
+
+	@Test
+	public void testDecomposition()
+	{
+		final Integer trackID = model.getTrackModel().trackIDOf( a );
+		final CompactBranchDecomposition decomposition = model.getBranchDecompositionCache().get( trackID, true, true );
+		assertEquals( 7, decomposition.nSpots() );
+		assertEquals( 6, decomposition.nEdges() );
+
+		final Set< List< Spot > > branches = new HashSet< >();
+		for ( int i = 0; i < decomposition.nBranches(); i++ )
+			branches.add( decomposition.getBranch( i ) );
+		final Set< List< Spot > > expected = new HashSet< >();
+		expected.add( Arrays.asList( a, b, c ) );
+		expected.add( Arrays.asList( d, e ) );
+		expected.add( Arrays.asList( f, g ) );
+		assertEquals( expected, branches );
+
+		assertEquals( 2, decomposition.nLinks() );
+		for ( int l = 0; l < decomposition.nLinks(); l++ )
+		{
+			final int source = decomposition.getLinkSource( l );
+			assertSame( c, decomposition.getSpot( source ) );
+			assertSame( c, decomposition.getLastSpot( decomposition.branchOf( source ) ) );
+			final int target = decomposition.getLinkTarget( l );
+			assertEquals( 0, target - decomposition.getBranchStart( decomposition.branchOf( target ) ) );
+		}
+	}
+
+	@Test
+	public void testInvalidation()
+	{
+		final BranchDecompositionCache cache = model.getBranchDecompositionCache();
+		final Integer splitID = model.getTrackModel().trackIDOf( a );
+		final Integer linearID = model.getTrackModel().trackIDOf( last );
+
+		final Map< Integer, CompactBranchDecomposition > first = cache.get( model.getTrackModel().trackIDs( false ), true, true, 2 );
+		assertEquals( 2, first.size() );
+		assertSame( first.get( splitID ), cache.get( splitID, true, true ) );
+		assertSame( first.get( linearID ), cache.get( linearID, true, true ) );
+
+		// Cached per flag combination.
+		assertNotSame( first.get( splitID ), cache.get( splitID, false, false ) );
+
+		// Only the modified track is decomposed again.
+		model.beginUpdate();
+		try
+		{
+			final Spot spot = add( "L5", 5 );
+			model.addEdge( last, spot, 1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertSame( first.get( splitID ), cache.get( splitID, true, true ) );
+		final CompactBranchDecomposition modified = cache.get( linearID, true, true );
+		assertNotSame( first.get( linearID ), modified );
+		assertEquals( 6, modified.nSpots() );
+		assertEquals( 1, modified.nBranches() );
+
+		// Unknown tracks.
+		assertNull( cache.get( Integer.valueOf( -1 ), true, true ) );
+	}
+}
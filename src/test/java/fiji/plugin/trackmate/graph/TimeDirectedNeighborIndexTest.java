@@ -0,0 +1,171 @@
+package fiji.plugin.trackmate.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+public class TimeDirectedNeighborIndexTest
+{
+
+	private static final int N_FRAMES = 20;
+
+	private static final int N_SPOTS_PER_FRAME = 10;
+
+	private Model model;
+
+	private List< Spot > spots;
+
+	private Random ran;
+
+	@Before
+	public void setUp()
+	{
+		ran = new Random( 4l );
+		model = new Model();
+		spots = new ArrayList< >();
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+				{
+					final Spot spot = new Spot( i, t, 0d, 1d, -1d );
+					model.addSpotTo( spot, t );
+					spots.add( spot );
+				}
+			}
+			for ( int i = 0; i < 300; i++ )
+				addRandomEdge();
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private void addRandomEdge()
+	{
+		final Spot a = spots.get( ran.nextInt( spots.size() ) );
+		final Spot b = spots.get( ran.nextInt( spots.size() ) );
+		if ( a == b || model.getTrackModel().containsEdge( a, b ) || a.diffTo( b, Spot.FRAME ) == 0d )
+			return;
+		model.addEdge( a, b, 1 );
+	}
+
+	@Test
+	public void testIndex()
+	{
+		final TimeDirectedNeighborIndex index = model.getTrackModel().getDirectedNeighborIndex();
+		assertSame( index, model.getTrackModel().getDirectedNeighborIndex() );
+		check( index );
+	}
+
+	@Test
+	public void testIncrementalUpdates()
+	{
+		final TimeDirectedNeighborIndex index = model.getTrackModel().getDirectedNeighborIndex();
+		for ( int round = 0; round < 20; round++ )
+		{
+			model.beginUpdate();
+			try
+			{
+				// Enough edits in some rounds to trigger a rebuild.
+				final int nEdits = round % 5 == 4 ? 200 : 5;
+				for ( int i = 0; i < nEdits; i++ )
+				{
+					switch ( ran.nextInt( 5 ) )
+					{
+					case 0:
+					case 1:
+						addRandomEdge();
+						break;
+					case 2:
+					{
+						final Set< DefaultWeightedEdge > edges = model.getTrackModel().edgeSet();
+						if ( !edges.isEmpty() )
+						{
+							final Iterator< DefaultWeightedEdge > it = edges.iterator();
+							DefaultWeightedEdge edge = it.next();
+							for ( int k = ran.nextInt( edges.size() ); k > 0; k-- )
+								edge = it.next();
+							model.removeEdge( edge );
+						}
+						break;
+					}
+					case 3:
+					{
+						final Spot spot = spots.remove( ran.nextInt( spots.size() ) );
+						model.removeSpot( spot );
+						break;
+					}
+					default:
+					{
+						final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+						final int from = spot.getFeature( Spot.FRAME ).intValue();
+						model.moveSpotFrom( spot, from, ( from + 3 ) % N_FRAMES );
+						break;
+					}
+					}
+				}
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			check( index );
+		}
+	}
+
+	private void check( final TimeDirectedNeighborIndex index )
+	{
+		final TrackModel tm = model.getTrackModel();
+		for ( final Spot spot : tm.vertexSet() )
+		{
+			final int frame = spot.getFeature( Spot.FRAME ).intValue();
+			final Set< Spot > predecessors = new HashSet< >();
+			final Set< Spot > successors = new HashSet< >();
+			for ( final DefaultWeightedEdge edge : tm.edgesOf( spot ) )
+			{
+				final Spot source = tm.getEdgeSource( edge );
+				final Spot other = source == spot ? tm.getEdgeTarget( edge ) : source;
+				final int otherFrame = other.getFeature( Spot.FRAME ).intValue();
+				if ( otherFrame < frame )
+					predecessors.add( other );
+				else if ( otherFrame > frame )
+					successors.add( other );
+			}
+			assertEquals( predecessors, index.predecessorsOf( spot ) );
+			assertEquals( successors, index.successorsOf( spot ) );
+			assertEquals( predecessors, new HashSet< >( index.predecessorListOf( spot ) ) );
+
+			final int i = index.indexOf( spot );
+			assertSame( spot, index.getSpot( i ) );
+			assertEquals( successors.size(), index.nSuccessors( i ) );
+			for ( int k = 0; k < index.nSuccessors( i ); k++ )
+			{
+				final Spot successor = index.getSpot( index.getSuccessor( i, k ) );
+				assertSame( tm.getEdge( spot, successor ), index.getSuccessorEdge( i, k ) );
+			}
+			for ( int k = 0; k < index.nPredecessors( i ); k++ )
+			{
+				final Spot predecessor = index.getSpot( index.getPredecessor( i, k ) );
+				assertSame( tm.getEdge( predecessor, spot ), index.getPredecessorEdge( i, k ) );
+			}
+		}
+	}
+}
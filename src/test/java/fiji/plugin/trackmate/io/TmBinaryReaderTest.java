@@ -0,0 +1,189 @@
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class TmBinaryReaderTest
+{
+
+	private Model model;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		model = TmModelFixture.create();
+		file = File.createTempFile( "TrackMate", "." + TmBinaryFile.EXTENSION );
+		file.deleteOnExit();
+		final TmBinaryWriter writer = new TmBinaryWriter( file );
+		writer.appendLog( "A log." );
+		writer.appendModel( model );
+		writer.writeToFile();
+	}
+
+	@Test
+	public void testReader()
+	{
+		assertTrue( TmBinaryFile.isBinaryFile( file ) );
+		final TmBinaryReader reader = new TmBinaryReader( file );
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		assertEquals( "A log.", reader.getLog() );
+		final Model loaded = reader.getModel();
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		check( loaded );
+	}
+
+	@Test
+	public void testColumns() throws IOException
+	{
+		try ( final TmBinaryFile binary = new TmBinaryFile( file ) )
+		{
+			assertEquals( 16, binary.getNSpots() );
+			assertEquals( 12, binary.getNEdges() );
+			assertEquals( 3, binary.getNTracks() );
+			assertEquals( 5, binary.getNSpotChunks() );
+
+			for ( int chunk = 0; chunk < binary.getNSpotChunks(); chunk++ )
+			{
+				final int frame = binary.getSpotChunkFrame( chunk );
+				final int[] ids = binary.getSpotIDs( chunk );
+				final double[] x = binary.getSpotFeature( chunk, Spot.POSITION_X );
+				final double[] quality = binary.getSpotFeature( chunk, Spot.QUALITY );
+				assertEquals( model.getSpots().getNSpots( frame, false ), ids.length );
+				for ( int i = 0; i < ids.length; i++ )
+				{
+					final Spot spot = model.getSpots().search( ids[ i ] );
+					assertEquals( spot.getFeature( Spot.POSITION_X ).doubleValue(), x[ i ], 0d );
+					assertEquals( spot.getFeature( Spot.QUALITY ).doubleValue(), quality[ i ], 0d );
+				}
+			}
+
+			// Missing values are NaN.
+			int missing = 0;
+			for ( final double value : binary.getEdgeFeature( 0, TmModelFixture.EDGE_FEATURE ) )
+			{
+				if ( Double.isNaN( value ) )
+					missing++;
+			}
+			assertEquals( 3, missing );
+		}
+	}
+
+	@Test
+	public void testLargeFrames() throws IOException
+	{
+		final Model big = new Model();
+		big.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < TmBinaryFile.CHUNK_SIZE + 10; i++ )
+				big.addSpotTo( new Spot( i, 0d, 0d, 1d, i ), 0 );
+			big.addSpotTo( new Spot( 0d, 0d, 0d, 1d, 0d ), 1 );
+		}
+		finally
+		{
+			big.endUpdate();
+		}
+		final File other = File.createTempFile( "TrackMate", "." + TmBinaryFile.EXTENSION );
+		other.deleteOnExit();
+		final TmBinaryWriter writer = new TmBinaryWriter( other );
+		writer.appendModel( big );
+		writer.writeToFile();
+
+		try ( final TmBinaryFile binary = new TmBinaryFile( other ) )
+		{
+			assertEquals( 3, binary.getNSpotChunks() );
+			assertEquals( TmBinaryFile.CHUNK_SIZE, binary.getSpotChunkSize( 0 ) );
+			assertEquals( 10, binary.getSpotChunkSize( 1 ) );
+			assertEquals( 0, binary.getSpotChunkFrame( 1 ) );
+			assertEquals( 1, binary.getSpotChunkFrame( 2 ) );
+		}
+
+		final TmBinaryReader reader = new TmBinaryReader( other );
+		reader.setNumThreads( 4 );
+		final Model loaded = reader.getModel();
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		assertEquals( TmBinaryFile.CHUNK_SIZE + 10, loaded.getSpots().getNSpots( 0, false ) );
+		assertEquals( 1, loaded.getSpots().getNSpots( 1, false ) );
+	}
+
+	@Test
+	public void testOverwrite() throws IOException
+	{
+		try ( final TmBinaryFile binary = new TmBinaryFile( file ) )
+		{
+			final Model other = new Model();
+			other.addSpotTo( new Spot( 0d, 0d, 0d, 1d, 0d ), 0 );
+			final TmBinaryWriter writer = new TmBinaryWriter( file );
+			writer.appendModel( other );
+			writer.writeToFile();
+
+			// The file opened before is replaced, not modified.
+			assertEquals( 16, binary.getNSpots() );
+			assertEquals( model.getSpots().getNSpots( 0, false ), binary.getSpotIDs( 0 ).length );
+		}
+
+		try ( final TmBinaryFile binary = new TmBinaryFile( file ) )
+		{
+			assertEquals( 1, binary.getNSpots() );
+			assertEquals( 1, binary.getSpotIDs( 0 ).length );
+		}
+
+		final File[] leftovers = file.getAbsoluteFile().getParentFile().listFiles();
+		for ( final File leftover : leftovers )
+			assertFalse( leftover.getName().startsWith( file.getName() ) && leftover.getName().endsWith( ".tmp" ) );
+	}
+
+	@Test
+	public void testConversion() throws IOException
+	{
+		final File xml = File.createTempFile( "TrackMate", ".xml" );
+		xml.deleteOnExit();
+		final File binary = File.createTempFile( "TrackMate", "." + TmBinaryFile.EXTENSION );
+		binary.deleteOnExit();
+
+		assertTrue( TmBinaryConverter.toXml( file, xml, Logger.VOID_LOGGER ) );
+		assertFalse( TmBinaryFile.isBinaryFile( xml ) );
+		final TmXmlReader xmlReader = new TmXmlReader( xml );
+		assertEquals( "A log.", xmlReader.getLog() );
+		check( xmlReader.getModel() );
+		assertTrue( xmlReader.getErrorMessage(), xmlReader.isReadingOk() );
+
+		assertTrue( TmBinaryConverter.toBinary( xml, binary, Logger.VOID_LOGGER ) );
+		final TmBinaryReader binaryReader = new TmBinaryReader( binary );
+		assertEquals( "A log.", binaryReader.getLog() );
+		check( binaryReader.getModel() );
+		assertTrue( binaryReader.getErrorMessage(), binaryReader.isReadingOk() );
+	}
+
+	@Test
+	public void testNotBinary() throws IOException
+	{
+		final File xml = File.createTempFile( "TrackMate", ".xml" );
+		xml.deleteOnExit();
+		final TmXmlWriter writer = new TmXmlWriter( xml );
+		writer.appendModel( model );
+		writer.writeToFile();
+		assertFalse( TmBinaryFile.isBinaryFile( xml ) );
+
+		final TmBinaryReader reader = new TmBinaryReader( xml );
+		assertFalse( reader.isReadingOk() );
+	}
+
+	private void check( final Model loaded )
+	{
+		TmModelFixture.check( model, loaded );
+	}
+}
@@ -0,0 +1,150 @@
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+
+/**
+ * The model saved and read back by the reader tests, and the check that a
+ * loaded model is identical to it.
+ */
+class TmModelFixture
+{
+
+	static final String TRACK_FEATURE = "TEST_TRACK_FEATURE";
+
+	static final String EDGE_FEATURE = "TEST_EDGE_FEATURE";
+
+	private TmModelFixture()
+	{}
+
+	/**
+	 * Creates a model with three tracks of five spots, one of them hidden, and
+	 * a lonely spot. The edge feature of the first edge of each track is
+	 * missing.
+	 *
+	 * @return a new model.
+	 */
+	static Model create()
+	{
+		final Model model = new Model();
+		model.setPhysicalUnits( "um", "s" );
+		final FeatureModel fm = model.getFeatureModel();
+
+		final Map< String, String > names = new HashMap< >();
+		names.put( TRACK_FEATURE, "Track test" );
+		names.put( EDGE_FEATURE, "Edge test" );
+		names.put( EdgeTargetAnalyzer.EDGE_COST, "Cost" );
+		final Map< String, Dimension > dimensions = new HashMap< >();
+		dimensions.put( TRACK_FEATURE, Dimension.LENGTH );
+		dimensions.put( EDGE_FEATURE, Dimension.NONE );
+		dimensions.put( EdgeTargetAnalyzer.EDGE_COST, Dimension.NONE );
+		final Map< String, Boolean > isInt = new HashMap< >();
+		isInt.put( TRACK_FEATURE, Boolean.FALSE );
+		isInt.put( EDGE_FEATURE, Boolean.TRUE );
+		isInt.put( EdgeTargetAnalyzer.EDGE_COST, Boolean.FALSE );
+		fm.declareTrackFeatures( Collections.singleton( TRACK_FEATURE ), names, names, dimensions, isInt );
+		fm.declareEdgeFeatures( Arrays.asList( EDGE_FEATURE, EdgeTargetAnalyzer.EDGE_COST ), names, names, dimensions, isInt );
+
+		model.beginUpdate();
+		try
+		{
+			for ( int track = 0; track < 3; track++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < 5; t++ )
+				{
+					final Spot spot = new Spot( track, 0.5 * t, 0d, 1d, track + 0.1 * t, "T" + track + "S" + t );
+					model.addSpotTo( spot, t );
+					if ( null != previous )
+					{
+						final DefaultWeightedEdge edge = model.addEdge( previous, spot, 2d * t );
+						// The feature of the first edge of each track is missing.
+						if ( t > 1 )
+							fm.putEdgeFeature( edge, EDGE_FEATURE, Double.valueOf( t ) );
+						fm.putEdgeFeature( edge, EdgeTargetAnalyzer.EDGE_COST, Double.valueOf( 2d * t ) );
+					}
+					previous = spot;
+				}
+			}
+			// A lonely spot.
+			model.addSpotTo( new Spot( 10d, 10d, 0d, 1d, Double.NaN ), 2 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final TrackModel tm = model.getTrackModel();
+		final Iterator< Integer > it = tm.trackIDs( false ).iterator();
+		final Integer hidden = it.next();
+		model.setTrackVisibility( hidden, false );
+		for ( final Integer trackID : tm.trackIDs( false ) )
+			fm.putTrackFeature( trackID, TRACK_FEATURE, Double.valueOf( 1.5 * trackID ) );
+
+		return model;
+	}
+
+	/**
+	 * Checks that a loaded model has the same spots, tracks and features as
+	 * the saved one.
+	 *
+	 * @param model
+	 *            the saved model.
+	 * @param loaded
+	 *            the model read back.
+	 */
+	static void check( final Model model, final Model loaded )
+	{
+		assertNotNull( loaded );
+		assertEquals( model.getSpaceUnits(), loaded.getSpaceUnits() );
+		assertEquals( model.getTimeUnits(), loaded.getTimeUnits() );
+		assertEquals( model.getSpots().getNSpots( false ), loaded.getSpots().getNSpots( false ) );
+
+		final Map< Integer, Spot > spots = new HashMap< >();
+		for ( final Spot spot : loaded.getSpots().iterable( false ) )
+			spots.put( spot.ID(), spot );
+		for ( final Spot spot : model.getSpots().iterable( false ) )
+		{
+			final Spot other = spots.get( spot.ID() );
+			assertNotNull( other );
+			assertEquals( spot.getName(), other.getName() );
+			assertEquals( spot.getFeatures(), other.getFeatures() );
+		}
+
+		final TrackModel tm = model.getTrackModel();
+		final TrackModel ltm = loaded.getTrackModel();
+		assertEquals( tm.trackIDs( false ), ltm.trackIDs( false ) );
+		assertEquals( tm.trackIDs( true ), ltm.trackIDs( true ) );
+		assertEquals( tm.edgeSet().size(), ltm.edgeSet().size() );
+		for ( final Integer trackID : tm.trackIDs( false ) )
+		{
+			assertEquals( tm.name( trackID ), ltm.name( trackID ) );
+			assertEquals( model.getFeatureModel().getTrackFeature( trackID, TRACK_FEATURE ), loaded.getFeatureModel().getTrackFeature( trackID, TRACK_FEATURE ) );
+		}
+		for ( final DefaultWeightedEdge edge : tm.edgeSet() )
+		{
+			final Spot source = spots.get( tm.getEdgeSource( edge ).ID() );
+			final Spot target = spots.get( tm.getEdgeTarget( edge ).ID() );
+			final DefaultWeightedEdge other = ltm.getEdge( source, target );
+			assertNotNull( other );
+			assertEquals( tm.getEdgeWeight( edge ), ltm.getEdgeWeight( other ), 0d );
+			assertEquals( model.getFeatureModel().getEdgeFeature( edge, EDGE_FEATURE ), loaded.getFeatureModel().getEdgeFeature( other, EDGE_FEATURE ) );
+			assertEquals( model.getFeatureModel().getEdgeFeature( edge, EdgeTargetAnalyzer.EDGE_COST ), loaded.getFeatureModel().getEdgeFeature( other, EdgeTargetAnalyzer.EDGE_COST ) );
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class TmXmlReaderTest
+{
+
+	private Model model;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		model = TmModelFixture.create();
+		file = File.createTempFile( "TrackMate", ".xml" );
+		file.deleteOnExit();
+		final TmXmlWriter writer = new TmXmlWriter( file );
+		writer.appendLog( "A log." );
+		writer.appendModel( model );
+		writer.writeToFile();
+	}
+
+	@Test
+	public void testStreamingReader()
+	{
+		final TmXmlReader reader = new TmXmlReader( file );
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		assertEquals( "A log.", reader.getLog() );
+		assertNull( "Spots should not be read for the log only.", reader.cache );
+		final Model loaded = reader.getModel();
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		check( loaded );
+
+		// Each call returns a new model.
+		check( reader.getModel() );
+	}
+
+	@Test
+	public void testSameAsDocumentReader()
+	{
+		final TmXmlReader reader = new TmXmlReader( file, false );
+		final Model loaded = reader.getModel();
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		check( loaded );
+	}
+
+	@Test
+	public void testParallelSpotParsing() throws IOException
+	{
+		final Model big = new Model();
+		big.beginUpdate();
+		try
+		{
+			// More spots than a chunk in some frames.
+			for ( int t = 0; t < 6; t++ )
+				for ( int i = 0; i < ( t % 2 == 0 ? 2500 : 10 ); i++ )
+					big.addSpotTo( new Spot( i, t, 0d, 1d, i * 0.1 + t ), t );
+		}
+		finally
+		{
+			big.endUpdate();
+		}
+		final File other = File.createTempFile( "TrackMate", ".xml" );
+		other.deleteOnExit();
+		final TmXmlWriter writer = new TmXmlWriter( other );
+		writer.appendModel( big );
+		writer.writeToFile();
+
+		final TmXmlReader sequential = new TmXmlReader( other );
+		sequential.setNumThreads( 1 );
+		final Model expected = sequential.getModel();
+		final TmXmlReader parallel = new TmXmlReader( other );
+		parallel.setNumThreads( 4 );
+		final Model loaded = parallel.getModel();
+		assertTrue( parallel.getErrorMessage(), parallel.isReadingOk() );
+
+		assertEquals( big.getSpots().getNSpots( false ), loaded.getSpots().getNSpots( false ) );
+		for ( final Integer frame : expected.getSpots().keySet() )
+		{
+			assertEquals( expected.getSpots().getNSpots( frame, false ), loaded.getSpots().getNSpots( frame, false ) );
+			final Map< Integer, Spot > spots = new HashMap< >();
+			for ( final Iterator< Spot > it = loaded.getSpots().iterator( frame, false ); it.hasNext(); )
+			{
+				final Spot spot = it.next();
+				spots.put( spot.ID(), spot );
+			}
+			for ( final Iterator< Spot > it = expected.getSpots().iterator( frame, false ); it.hasNext(); )
+			{
+				final Spot spot = it.next();
+				assertEquals( spot.getFeatures(), spots.get( spot.ID() ).getFeatures() );
+			}
+		}
+	}
+
+	@Test
+	public void testUnexpectedOrder() throws IOException
+	{
+		// Tracks before spots.
+		final File other = File.createTempFile( "TrackMate", ".xml" );
+		other.deleteOnExit();
+		try ( Writer writer = new OutputStreamWriter( new FileOutputStream( other ), "UTF-8" ) )
+		{
+			writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+					+ "<TrackMate version=\"2.8.2\">\n"
+					+ "  <Model spatialunits=\"um\" timeunits=\"s\">\n"
+					+ "    <FeatureDeclarations><SpotFeatures /><EdgeFeatures /><TrackFeatures /></FeatureDeclarations>\n"
+					+ "    <AllTracks>\n"
+					+ "      <Track name=\"Track_0\" TRACK_ID=\"0\">\n"
+					+ "        <Edge SPOT_SOURCE_ID=\"1\" SPOT_TARGET_ID=\"2\" LINK_COST=\"3.0\" />\n"
+					+ "      </Track>\n"
+					+ "    </AllTracks>\n"
+					+ "    <FilteredTracks><TrackID TRACK_ID=\"0\" /></FilteredTracks>\n"
+					+ "    <AllSpots nspots=\"2\">\n"
+					+ "      <SpotsInFrame frame=\"0\"><Spot ID=\"1\" name=\"A\" FRAME=\"0\" POSITION_X=\"1.0\" /></SpotsInFrame>\n"
+					+ "      <SpotsInFrame frame=\"1\"><Spot ID=\"2\" name=\"B\" FRAME=\"1\" POSITION_X=\"2.0\" /></SpotsInFrame>\n"
+					+ "    </AllSpots>\n"
+					+ "  </Model>\n"
+					+ "</TrackMate>\n" );
+		}
+
+		final TmXmlReader reader = new TmXmlReader( other );
+		final Model loaded = reader.getModel();
+		assertTrue( reader.getErrorMessage(), reader.isReadingOk() );
+		assertEquals( 2, loaded.getSpots().getNSpots( false ) );
+		assertEquals( 1, loaded.getTrackModel().nTracks( true ) );
+		final DefaultWeightedEdge edge = loaded.getTrackModel().edgeSet().iterator().next();
+		assertEquals( 3d, loaded.getTrackModel().getEdgeWeight( edge ), 0d );
+		assertEquals( 1, loaded.getTrackModel().getEdgeSource( edge ).ID() );
+	}
+
+	private void check( final Model loaded )
+	{
+		TmModelFixture.check( model, loaded );
+	}
+}
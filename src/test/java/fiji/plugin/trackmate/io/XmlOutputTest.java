@@ -0,0 +1,72 @@
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.jdom2.Element;
+import org.junit.Test;
+
+public class XmlOutputTest
+{
+
+	@Test
+	public void testNumbers() throws IOException
+	{
+		final double[] values = new double[] { 0d, -0d, 1d, -1d, 12d, 9999999d, 1e7, -1e7, 123456789d, 0.1, -2.5, 1e-5,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE };
+		for ( final double value : values )
+			assertEquals( Double.toString( value ), doubleAttribute( value ) );
+
+		final Random ran = new Random( 1l );
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final double value = ran.nextBoolean() ? ( ran.nextInt( 20000000 ) - 10000000 ) : ran.nextGaussian() * 1000;
+			assertEquals( Double.toString( value ), doubleAttribute( value ) );
+		}
+
+		final int[] ints = new int[] { 0, 7, -7, 10, 1234567890, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		for ( final int value : ints )
+		{
+			final StringWriter writer = new StringWriter();
+			final XmlOutput out = new XmlOutput( writer );
+			out.startElement( "A" );
+			out.attribute( "v", value );
+			out.endElement( "A" );
+			assertEquals( "<A v=\"" + value + "\" />\r\n", writer.toString() );
+		}
+	}
+
+	@Test
+	public void testElements() throws IOException
+	{
+		final Element root = new Element( "Root" );
+		root.setAttribute( "name", "a \"b\" & <c>\n" );
+		final Element log = new Element( "Log" );
+		log.addContent( "  Some text & more.\n" );
+		root.addContent( log );
+		root.addContent( new Element( "Empty" ) );
+
+		final StringWriter writer = new StringWriter();
+		final XmlOutput out = new XmlOutput( writer );
+		out.element( root );
+		out.flush();
+		assertEquals( "<Root name=\"a &quot;b&quot; &amp; &lt;c&gt;&#xA;\">\r\n"
+				+ "  <Log>Some text &amp; more.</Log>\r\n"
+				+ "  <Empty />\r\n"
+				+ "</Root>\r\n", writer.toString() );
+	}
+
+	private static String doubleAttribute( final double value ) throws IOException
+	{
+		final StringWriter writer = new StringWriter();
+		final XmlOutput out = new XmlOutput( writer );
+		out.startElement( "A" );
+		out.attribute( "v", value );
+		out.endElement( "A" );
+		final String str = writer.toString();
+		return str.substring( "<A v=\"".length(), str.length() - "\" />\r\n".length() );
+	}
+}
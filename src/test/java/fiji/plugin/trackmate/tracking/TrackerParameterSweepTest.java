@@ -0,0 +1,143 @@
+package fiji.plugin.trackmate.tracking;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.TrackerParameterSweep.SweepResult;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTracker;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTrackerFactory;
+
+public class TrackerParameterSweepTest
+{
+
+	private static final int NFRAMES = 20;
+
+	private static final int NTRACKS = 16;
+
+	@Test
+	public void testSweep()
+	{
+		final SpotCollection spots = new SpotCollection();
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > groundTruth = createTracks( spots );
+		final Model reference = new Model();
+		reference.setTracks( groundTruth, false );
+
+		final SparseLAPTrackerFactory factory = new SparseLAPTrackerFactory();
+		final Map< String, Object > base = factory.getDefaultSettings();
+		base.put( KEY_ALLOW_GAP_CLOSING, false );
+		final Map< String, List< ? > > values = new LinkedHashMap< >();
+		values.put( KEY_LINKING_MAX_DISTANCE, Arrays.asList( 0.1, 5., 15. ) );
+		final List< Map< String, Object > > grid = TrackerParameterSweep.createGrid( base, values );
+		assertEquals( "Unexpected grid size.", 3, grid.size() );
+
+		final TrackerParameterSweep sweep = new TrackerParameterSweep( factory, spots, grid, reference.getTrackModel() );
+		sweep.setNumThreads( 3 );
+		if ( !sweep.checkInput() || !sweep.process() )
+			fail( sweep.getErrorMessage() );
+
+		final List< SweepResult > results = sweep.getResult();
+		assertEquals( "Unexpected number of results.", grid.size(), results.size() );
+		for ( int i = 0; i < grid.size(); i++ )
+		{
+			final SweepResult result = results.get( i );
+			assertTrue( result.toString(), result.ok );
+			assertEquals( "Results are not in grid order.", i, result.index );
+
+			// Same as a sequential run.
+			final SparseLAPTracker tracker = new SparseLAPTracker( spots, grid.get( i ) );
+			if ( !tracker.checkInput() || !tracker.process() )
+				fail( tracker.getErrorMessage() );
+			assertEquals( "Unexpected number of links for configuration #" + i + ".", tracker.getResult().edgeSet().size(), result.nLinks );
+			assertEquals( "Inconsistent scores for configuration #" + i + ".", groundTruth.edgeSet().size(), result.nTruePositives + result.nFalseNegatives );
+		}
+
+		// Too small a distance links nothing, a distance matching the motion links everything right.
+		assertEquals( "Expected no links for a tiny linking distance.", 0, results.get( 0 ).nLinks );
+		assertEquals( "Expected perfect tracking for a well-chosen linking distance.", 1d, results.get( 1 ).getF1(), 1e-9 );
+	}
+
+	@Test
+	public void testFailure()
+	{
+		final SpotCollection spots = new SpotCollection();
+		createTracks( spots );
+
+		// Throws an error, not an exception, for one configuration.
+		final SparseLAPTrackerFactory factory = new SparseLAPTrackerFactory()
+		{
+			@Override
+			public SpotTracker create( final SpotCollection spots, final Map< String, Object > settings )
+			{
+				if ( ( ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE ) ).doubleValue() > 10. )
+					throw new StackOverflowError( "Too far." );
+				return super.create( spots, settings );
+			}
+		};
+		final Map< String, Object > base = factory.getDefaultSettings();
+		base.put( KEY_ALLOW_GAP_CLOSING, false );
+		final Map< String, List< ? > > values = new LinkedHashMap< >();
+		values.put( KEY_LINKING_MAX_DISTANCE, Arrays.asList( 5., 15. ) );
+		final List< Map< String, Object > > grid = TrackerParameterSweep.createGrid( base, values );
+
+		final TrackerParameterSweep sweep = new TrackerParameterSweep( factory, spots, grid, null );
+		sweep.setNumThreads( 2 );
+		if ( !sweep.checkInput() || !sweep.process() )
+			fail( sweep.getErrorMessage() );
+
+		final List< SweepResult > results = sweep.getResult();
+		assertEquals( "Unexpected number of results.", 2, results.size() );
+		assertTrue( results.get( 0 ).toString(), results.get( 0 ).ok );
+		final SweepResult failed = results.get( 1 );
+		assertNotNull( "Missing result for the failed configuration.", failed );
+		assertFalse( "Configuration should have failed.", failed.ok );
+		assertEquals( 1, failed.index );
+		assertTrue( "Unexpected error message: " + failed.errorMessage, failed.errorMessage.contains( "Too far." ) );
+	}
+
+	/**
+	 * Straight tracks well separated from each other, with some noise.
+	 */
+	private static final SimpleWeightedGraph< Spot, DefaultWeightedEdge > createTracks( final SpotCollection spots )
+	{
+		final Random ran = new Random( 1l );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph< >( DefaultWeightedEdge.class );
+		final Spot[] previous = new Spot[ NTRACKS ];
+		for ( int frame = 0; frame < NFRAMES; frame++ )
+		{
+			final List< Spot > frameSpots = new ArrayList< >( NTRACKS );
+			for ( int i = 0; i < NTRACKS; i++ )
+			{
+				final double x = 40. * ( i % 4 ) + frame + 0.2 * ran.nextGaussian();
+				final double y = 40. * ( i / 4 ) + 0.2 * ran.nextGaussian();
+				final Spot spot = new Spot( x, y, 0., 1., -1. );
+				frameSpots.add( spot );
+				graph.addVertex( spot );
+				if ( null != previous[ i ] )
+					graph.addEdge( previous[ i ], spot );
+				previous[ i ] = spot;
+			}
+			spots.put( frame, frameSpots );
+		}
+		spots.setVisible( true );
+		return graph;
+	}
+}
@@ -0,0 +1,152 @@
+package fiji.plugin.trackmate.tracking.chunked;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTrackerFactory;
+
+public class ChunkedSpotTrackerTest
+{
+
+	private static final int NFRAMES = 40;
+
+	private static final int NTRACKS = 12;
+
+	/**
+	 * Tracking in chunks run in separate processes must give the same result
+	 * as tracking at once, including for gaps at chunk borders.
+	 */
+	@Test
+	public void testSameAsSingleRun()
+	{
+		final SpotCollection spots = createTracks();
+		final SparseLAPTrackerFactory factory = new SparseLAPTrackerFactory();
+		final Map< String, Object > settings = factory.getDefaultSettings();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 3d );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 6d );
+		/*
+		 * The alternative cost depends on the costs of the whole problem. Make
+		 * it loose enough for all the gaps to be closed in both cases.
+		 */
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.5d );
+
+		final SpotTracker reference = factory.create( spots, settings );
+		if ( !reference.checkInput() || !reference.process() )
+			fail( reference.getErrorMessage() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > expected = reference.getResult();
+
+		final ChunkedSpotTracker tracker = new ChunkedSpotTracker( spots, factory, settings );
+		tracker.setChunkSize( 10 );
+		tracker.setOverlap( 4 );
+		tracker.setNumThreads( 2 );
+		tracker.setLauncher( CommandChunkLauncher.local( 256 ) );
+		if ( !tracker.checkInput() || !tracker.process() )
+			fail( tracker.getErrorMessage() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = tracker.getResult();
+
+		assertEquals( "Unexpected number of spots.", expected.vertexSet().size(), graph.vertexSet().size() );
+		assertEquals( "Unexpected number of links.", expected.edgeSet().size(), graph.edgeSet().size() );
+		for ( final DefaultWeightedEdge edge : expected.edgeSet() )
+		{
+			final Spot source = expected.getEdgeSource( edge );
+			final Spot target = expected.getEdgeTarget( edge );
+			final DefaultWeightedEdge found = graph.getEdge( source, target );
+			assertNotNull( "Link " + source + " - " + target + " was not found.", found );
+			assertEquals( "Unexpected weight for link " + source + " - " + target + ".", expected.getEdgeWeight( edge ), graph.getEdgeWeight( found ), 1e-9 );
+		}
+		// All gaps are closed, except the one before the last frame.
+		assertTrue( "Expected gaps to be closed.", graph.edgeSet().size() >= NTRACKS * ( NFRAMES - 2 ) - 1 );
+	}
+
+	@Test
+	public void testWorkerFailure()
+	{
+		final SpotCollection spots = createTracks();
+		final SparseLAPTrackerFactory factory = new SparseLAPTrackerFactory();
+		final ChunkedSpotTracker tracker = new ChunkedSpotTracker( spots, factory, factory.getDefaultSettings() );
+		tracker.setChunkSize( 20 );
+		tracker.setLauncher( new CommandChunkLauncher( "java", "-version-that-does-not-exist" ) );
+		assertTrue( tracker.checkInput() );
+		assertTrue( "Worker failure was not reported.", !tracker.process() );
+		assertNotNull( tracker.getErrorMessage() );
+	}
+
+	/**
+	 * Missing features and <code>NaN</code> values must both survive a chunk
+	 * file.
+	 */
+	@Test
+	public void testChunkFeatures() throws IOException
+	{
+		final Spot spot1 = new Spot( 1., 2., 0., 1., -1. );
+		spot1.putFeature( "NAN", Double.NaN );
+		final Spot spot2 = new Spot( 3., 4., 0., 1., -1. );
+		spot2.putFeature( "OTHER", 5. );
+		final SpotCollection spots = new SpotCollection();
+		spots.add( spot1, 0 );
+		spots.add( spot2, 0 );
+		spots.setVisible( true );
+
+		final File file = File.createTempFile( "TrackMateChunk", ".tmch" );
+		try
+		{
+			ChunkIO.writeChunk( file, SparseLAPTrackerFactory.class.getName(), new HashMap< String, Object >(), 1, spots, new int[] { 0 } );
+			final ChunkIO.Chunk chunk = ChunkIO.readChunk( file );
+			assertEquals( 2, chunk.spots.getNSpots( 0, true ) );
+			for ( final Spot spot : chunk.spots.iterable( 0, true ) )
+			{
+				final Spot source = ( spot.ID() == spot1.ID() ) ? spot1 : spot2;
+				assertEquals( "Unexpected features for " + spot, source.getFeatures(), spot.getFeatures() );
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Well separated straight tracks, each missing one spot. Some gaps fall on
+	 * chunk borders.
+	 */
+	private static SpotCollection createTracks()
+	{
+		final Random ran = new Random( 5l );
+		final SpotCollection spots = new SpotCollection();
+		for ( int frame = 0; frame < NFRAMES; frame++ )
+		{
+			final List< Spot > frameSpots = new ArrayList< >( NTRACKS );
+			for ( int i = 0; i < NTRACKS; i++ )
+			{
+				if ( frame == 5 + 3 * i )
+					continue;
+				final double x = 30. * ( i % 4 ) + 2. * frame + 0.1 * ran.nextGaussian();
+				final double y = 30. * ( i / 4 ) + 0.1 * ran.nextGaussian();
+				frameSpots.add( new Spot( x, y, 0., 1., -1. ) );
+			}
+			spots.put( frame, frameSpots );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+}
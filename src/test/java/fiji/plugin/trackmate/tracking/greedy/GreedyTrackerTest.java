@@ -0,0 +1,194 @@
+package fiji.plugin.trackmate.tracking.greedy;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.alg.ConnectivityInspector;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+public class GreedyTrackerTest
+{
+
+	private static final int NFRAMES = 30;
+
+	private static final int NTRACKS = 25;
+
+	@Test
+	public void testTracking()
+	{
+		final List< List< Spot > > tracks = new ArrayList< >();
+		final SpotCollection spots = createTracks( tracks, -1 );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = track( spots, false );
+		assertEquals( "Unexpected number of links.", NTRACKS * ( NFRAMES - 1 ), graph.edgeSet().size() );
+		verifyTracks( graph, tracks );
+	}
+
+	@Test
+	public void testGapClosing()
+	{
+		final int gapFrame = 12;
+		final List< List< Spot > > tracks = new ArrayList< >();
+		final SpotCollection spots = createTracks( tracks, gapFrame );
+
+		// Without gap closing, every track is cut in two: spots move farther than
+		// the max linking distance over the missing frame.
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph1 = track( spots, false );
+		assertEquals( "Unexpected number of tracks without gap closing.", 2 * NTRACKS, new ConnectivityInspector< >( graph1 ).connectedSets().size() );
+
+		// With gap closing, tracks are restored.
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph2 = track( spots, true );
+		assertEquals( "Unexpected number of links.", NTRACKS * ( NFRAMES - 2 ), graph2.edgeSet().size() );
+		verifyTracks( graph2, tracks );
+	}
+
+	@Test
+	public void testShortestLinksWin()
+	{
+		// A short and a long candidate for the same target, whatever the order.
+		for ( int permutation = 0; permutation < 2; permutation++ )
+		{
+			final Spot near = new Spot( 0d, 0d, 0d, 1d, -1d );
+			final Spot far = new Spot( 3d, 0d, 0d, 1d, -1d );
+			final Spot target = new Spot( 0.5, 0d, 0d, 1d, -1d );
+			final SpotCollection spots = new SpotCollection();
+			spots.put( 0, permutation == 0 ? Arrays.asList( near, far ) : Arrays.asList( far, near ) );
+			spots.put( 1, Arrays.asList( target ) );
+			spots.setVisible( true );
+
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = track( spots, false );
+			assertEquals( "Expected a single link.", 1, graph.edgeSet().size() );
+			final DefaultWeightedEdge edge = graph.getEdge( near, target );
+			assertNotNull( "The shortest link was not accepted.", edge );
+			assertEquals( "Unexpected link cost.", 0.25, graph.getEdgeWeight( edge ), 1e-12 );
+		}
+	}
+
+	@Test
+	public void testTiesFollowSpotID()
+	{
+		/*
+		 * Two candidates with the same cost for the same target. With these
+		 * IDs, the spot sets of the collection iterate over the second spot
+		 * first.
+		 */
+		final Spot first = createSpot( 1000000, -1d );
+		final Spot second = createSpot( 1000001, 1d );
+		final Spot target = createSpot( 1000002, 0d );
+		final SpotCollection spots = new SpotCollection();
+		spots.put( 0, Arrays.asList( first, second ) );
+		spots.put( 1, Arrays.asList( target ) );
+		spots.setVisible( true );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = track( spots, false );
+		assertEquals( "Expected a single link.", 1, graph.edgeSet().size() );
+		assertNotNull( "The tie was not resolved by spot ID.", graph.getEdge( first, target ) );
+	}
+
+	@Test
+	public void testRadixSort()
+	{
+		final Random ran = new Random( 3l );
+		final int n = 10000;
+		final double[] costs = new double[ n ];
+		final long[] keys = new long[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			costs[ i ] = ( i % 10 == 0 ) ? 1d : ran.nextDouble() * 100;
+			keys[ i ] = RadixSort.costKey( costs[ i ] );
+		}
+		final int[] order = RadixSort.sort( keys, n );
+		for ( int i = 1; i < n; i++ )
+		{
+			final double previous = costs[ order[ i - 1 ] ];
+			final double current = costs[ order[ i ] ];
+			assertTrue( "Costs are not sorted at " + i + ".", previous <= current );
+			if ( previous == current )
+				assertTrue( "The sort is not stable at " + i + ".", order[ i - 1 ] < order[ i ] );
+		}
+	}
+
+	private static SimpleWeightedGraph< Spot, DefaultWeightedEdge > track( final SpotCollection spots, final boolean allowGapClosing )
+	{
+		final Map< String, Object > settings = new HashMap< >();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 3d );
+		settings.put( KEY_ALLOW_GAP_CLOSING, allowGapClosing );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 8d );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, 2 );
+
+		final GreedyTracker tracker = new GreedyTracker( spots, settings );
+		tracker.setNumThreads( 2 );
+		if ( !tracker.checkInput() || !tracker.process() )
+			fail( tracker.getErrorMessage() );
+		return tracker.getResult();
+	}
+
+	private static Spot createSpot( final int ID, final double x )
+	{
+		final Spot spot = new Spot( ID );
+		spot.putFeature( Spot.POSITION_X, Double.valueOf( x ) );
+		spot.putFeature( Spot.POSITION_Y, Double.valueOf( 0d ) );
+		spot.putFeature( Spot.POSITION_Z, Double.valueOf( 0d ) );
+		spot.putFeature( Spot.RADIUS, Double.valueOf( 1d ) );
+		return spot;
+	}
+
+	/**
+	 * Well separated straight tracks with some noise, on a grid. Spots are
+	 * added in a shuffled order.
+	 */
+	private static SpotCollection createTracks( final List< List< Spot > > tracks, final int gapFrame )
+	{
+		final Random ran = new Random( 1l );
+		for ( int i = 0; i < NTRACKS; i++ )
+			tracks.add( new ArrayList< Spot >() );
+
+		final SpotCollection spots = new SpotCollection();
+		for ( int frame = 0; frame < NFRAMES; frame++ )
+		{
+			if ( frame == gapFrame )
+				continue;
+			final List< Spot > frameSpots = new ArrayList< >( NTRACKS );
+			for ( int i = 0; i < NTRACKS; i++ )
+			{
+				final double x = 20. * ( i % 5 ) + 2. * frame + 0.1 * ran.nextGaussian();
+				final double y = 20. * ( i / 5 ) + 0.1 * ran.nextGaussian();
+				final Spot spot = new Spot( x, y, 0., 1., -1. );
+				frameSpots.add( spot );
+				tracks.get( i ).add( spot );
+			}
+			final List< Spot > shuffled = new ArrayList< >( frameSpots );
+			Collections.shuffle( shuffled, ran );
+			spots.put( frame, shuffled );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+
+	private static void verifyTracks( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final List< List< Spot > > tracks )
+	{
+		final ConnectivityInspector< Spot, DefaultWeightedEdge > inspector = new ConnectivityInspector< >( graph );
+		assertEquals( "Did not get the right number of tracks.", tracks.size(), inspector.connectedSets().size() );
+		for ( final List< Spot > track : tracks )
+			assertEquals( "Track was not found.", track.size(), inspector.connectedSetOf( track.get( 0 ) ).size() );
+	}
+}
@@ -0,0 +1,210 @@
+package fiji.plugin.trackmate.tracking.kalman;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CVMKalmanFilterTest
+{
+
+	private static final double TOLERANCE = 1e-9;
+
+	/**
+	 * Compares the unrolled filter against a direct implementation of the
+	 * matrix Kalman equations on a noisy constant-velocity trajectory with
+	 * occlusions.
+	 */
+	@Test
+	public void testAgainstMatrixFormulation()
+	{
+		final Random ran = new Random( 1l );
+		final double[] X0 = new double[] { 10., -5., 2., 1.5, -0.7, 0.2 };
+		final double initStateCovariance = 1e-2;
+		final double positionProcessStd = 3.;
+		final double velocityProcessStd = 2.;
+		final double positionMeasurementStd = 0.5;
+
+		final CVMKalmanFilter kf = new CVMKalmanFilter( X0, initStateCovariance, positionProcessStd, velocityProcessStd, positionMeasurementStd );
+		final ReferenceFilter ref = new ReferenceFilter( X0, initStateCovariance, positionProcessStd, velocityProcessStd, positionMeasurementStd );
+
+		final double[] position = new double[] { X0[ 0 ], X0[ 1 ], X0[ 2 ] };
+		for ( int t = 0; t < 50; t++ )
+		{
+			final double[] actual = kf.predict();
+			final double[] expected = ref.predict();
+			for ( int i = 0; i < 6; i++ )
+				assertEquals( "Bad prediction for state component " + i + " at step " + t + ".", expected[ i ], actual[ i ], TOLERANCE );
+
+			final double[] measurement;
+			if ( t % 7 == 3 )
+			{
+				measurement = null;
+			}
+			else
+			{
+				measurement = new double[ 3 ];
+				for ( int d = 0; d < 3; d++ )
+				{
+					position[ d ] += X0[ 3 + d ];
+					measurement[ d ] = position[ d ] + positionMeasurementStd * ran.nextGaussian();
+				}
+			}
+			kf.update( measurement );
+			ref.update( measurement );
+
+			assertEquals( "Bad position error at step " + t + ".", ref.getPositionError(), kf.getPositionError(), TOLERANCE );
+			assertEquals( "Bad velocity error at step " + t + ".", ref.getVelocityError(), kf.getVelocityError(), TOLERANCE );
+		}
+		assertEquals( "Bad number of occlusions.", 7, kf.getNOcclusion() );
+	}
+
+	@Test
+	public void testPredictInPlace()
+	{
+		final double[] X0 = new double[] { 1., 2., 3., 0.1, 0.2, 0.3 };
+		final CVMKalmanFilter kf1 = new CVMKalmanFilter( X0, 1., 1., 1., 1. );
+		final CVMKalmanFilter kf2 = new CVMKalmanFilter( X0, 1., 1., 1., 1. );
+
+		final double[] out = new double[ 6 ];
+		kf2.predict( out );
+		final double[] expected = kf1.predict();
+		for ( int i = 0; i < 6; i++ )
+			assertEquals( "Bad prediction for state component " + i + ".", expected[ i ], out[ i ], 0. );
+	}
+
+	/**
+	 * Straightforward implementation of the Kalman filter equations with full
+	 * 6×6 matrices.
+	 */
+	private static final class ReferenceFilter
+	{
+		private final double[][] A;
+
+		private final double[][] H;
+
+		private final double[][] Q;
+
+		private final double[][] R;
+
+		private double[][] P;
+
+		private double[][] X;
+
+		private double[][] Xp;
+
+		public ReferenceFilter( final double[] X0, final double initStateCovariance, final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd )
+		{
+			X = new double[ 6 ][ 1 ];
+			for ( int i = 0; i < 6; i++ )
+				X[ i ][ 0 ] = X0[ i ];
+
+			A = identity( 6, 6, 1. );
+			for ( int i = 0; i < 3; i++ )
+				A[ i ][ 3 + i ] = 1.;
+
+			H = identity( 3, 6, 1. );
+			P = identity( 6, 6, initStateCovariance );
+
+			Q = identity( 6, 6, 1. );
+			for ( int i = 0; i < 3; i++ )
+			{
+				Q[ i ][ i ] = positionProcessStd * positionProcessStd;
+				Q[ 3 + i ][ 3 + i ] = velocityProcessStd * velocityProcessStd;
+			}
+			R = identity( 3, 3, positionMeasurementStd * positionMeasurementStd );
+		}
+
+		public double[] predict()
+		{
+			Xp = times( A, X );
+			P = plus( times( A, times( P, transpose( A ) ) ), Q, 1. );
+			final double[] out = new double[ 6 ];
+			for ( int i = 0; i < 6; i++ )
+				out[ i ] = Xp[ i ][ 0 ];
+			return out;
+		}
+
+		public void update( final double[] Xm )
+		{
+			if ( null == Xm )
+			{
+				X = Xp;
+				return;
+			}
+			final double[][] XM = new double[ 3 ][ 1 ];
+			for ( int i = 0; i < 3; i++ )
+				XM[ i ][ 0 ] = Xm[ i ];
+
+			final double[][] S = plus( times( H, times( P, transpose( H ) ) ), R, 1. );
+			final double[][] K = times( times( P, transpose( H ) ), inverseDiagonal( S ) );
+			X = plus( Xp, times( K, plus( XM, times( H, Xp ), -1. ) ), 1. );
+			P = times( plus( identity( 6, 6, 1. ), times( K, H ), -1. ), P );
+		}
+
+		public double getPositionError()
+		{
+			return Math.sqrt( ( P[ 0 ][ 0 ] + P[ 1 ][ 1 ] + P[ 2 ][ 2 ] ) / 3. );
+		}
+
+		public double getVelocityError()
+		{
+			return Math.sqrt( ( P[ 3 ][ 3 ] + P[ 4 ][ 4 ] + P[ 5 ][ 5 ] ) / 3. );
+		}
+
+		private static double[][] identity( final int m, final int n, final double val )
+		{
+			final double[][] I = new double[ m ][ n ];
+			for ( int i = 0; i < Math.min( m, n ); i++ )
+				I[ i ][ i ] = val;
+			return I;
+		}
+
+		private static double[][] times( final double[][] M, final double[][] N )
+		{
+			final double[][] out = new double[ M.length ][ N[ 0 ].length ];
+			for ( int i = 0; i < M.length; i++ )
+				for ( int j = 0; j < N[ 0 ].length; j++ )
+					for ( int k = 0; k < N.length; k++ )
+						out[ i ][ j ] += M[ i ][ k ] * N[ k ][ j ];
+			return out;
+		}
+
+		private static double[][] plus( final double[][] M, final double[][] N, final double factor )
+		{
+			final double[][] out = new double[ M.length ][ M[ 0 ].length ];
+			for ( int i = 0; i < M.length; i++ )
+				for ( int j = 0; j < M[ 0 ].length; j++ )
+					out[ i ][ j ] = M[ i ][ j ] + factor * N[ i ][ j ];
+			return out;
+		}
+
+		private static double[][] transpose( final double[][] M )
+		{
+			final double[][] out = new double[ M[ 0 ].length ][ M.length ];
+			for ( int i = 0; i < M.length; i++ )
+				for ( int j = 0; j < M[ 0 ].length; j++ )
+					out[ j ][ i ] = M[ i ][ j ];
+			return out;
+		}
+
+		/*
+		 * S stays diagonal for this model. We check it before inverting.
+		 */
+		private static double[][] inverseDiagonal( final double[][] S )
+		{
+			final double[][] out = new double[ S.length ][ S.length ];
+			for ( int i = 0; i < S.length; i++ )
+			{
+				for ( int j = 0; j < S.length; j++ )
+				{
+					if ( i != j )
+						assertEquals( "Innovation covariance should be diagonal.", 0., S[ i ][ j ], TOLERANCE );
+				}
+				out[ i ][ i ] = 1. / S[ i ][ i ];
+			}
+			return out;
+		}
+	}
+}
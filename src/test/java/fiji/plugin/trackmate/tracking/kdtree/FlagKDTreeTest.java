@@ -0,0 +1,63 @@
+package fiji.plugin.trackmate.tracking.kdtree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FlagKDTreeTest
+{
+
+	/**
+	 * Compares searches against an exhaustive search, while flagging the nodes
+	 * found as visited. Z is constant, like for 2D data.
+	 */
+	@Test
+	public void testAgainstExhaustiveSearch()
+	{
+		final Random ran = new Random( 7l );
+		final int n = 500;
+		final double[] coords = new double[ 3 * n ];
+		final List< Integer > values = new ArrayList<>( n );
+		for ( int i = 0; i < n; i++ )
+		{
+			// Round to get duplicate coordinates.
+			coords[ 3 * i ] = Math.round( 100. * ran.nextDouble() );
+			coords[ 3 * i + 1 ] = 100. * ran.nextDouble();
+			values.add( Integer.valueOf( i ) );
+		}
+		final FlagKDTree< Integer > tree = new FlagKDTree<>( values, coords );
+		assertEquals( n, tree.size() );
+
+		final boolean[] visited = new boolean[ n ];
+		final double[] query = new double[ 3 ];
+		for ( int q = 0; q < n + 1; q++ )
+		{
+			query[ 0 ] = 100. * ran.nextDouble();
+			query[ 1 ] = 100. * ran.nextDouble();
+
+			double best = Double.MAX_VALUE;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( visited[ i ] )
+					continue;
+				final double dx = coords[ 3 * i ] - query[ 0 ];
+				final double dy = coords[ 3 * i + 1 ] - query[ 1 ];
+				best = Math.min( best, dx * dx + dy * dy );
+			}
+
+			final int index = tree.search( query, 0 );
+			if ( q == n )
+			{
+				assertEquals( "All nodes are visited, the search should fail.", -1, index );
+				break;
+			}
+			assertEquals( "Wrong nearest neighbor distance for query " + q + ".", best, tree.getSquareDistance(), 0. );
+			tree.setVisited( index );
+			visited[ tree.get( index ).intValue() ] = true;
+		}
+	}
+}
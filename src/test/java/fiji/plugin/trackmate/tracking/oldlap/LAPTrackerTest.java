@@ -1,8 +1,13 @@
 package fiji.plugin.trackmate.tracking.oldlap;
 
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -156,6 +161,75 @@ public class LAPTrackerTest
 		verifyTracks( graph, groups, nFrames );
 	}
 
+	/**
+	 * The sparse and dense modes must find the same links, with the same
+	 * costs, including gap closing, merging and splitting events.
+	 */
+	@Test
+	public void testSparseMatchesDense()
+	{
+		final int nFrames = 20;
+		final SpotCollection spotCollection = new SpotCollection();
+		for ( int t = 0; t < nFrames; t++ )
+		{
+			final List< Spot > spots = new ArrayList< >();
+			// Track A.
+			spots.add( new Spot( 0d, t, 0d, 1d, -1d ) );
+			// Track B, with a gap.
+			if ( t != 10 )
+				spots.add( new Spot( 20d, t, 0d, 1d, -1d ) );
+			// Track C, splitting from A.
+			if ( t >= 10 )
+				spots.add( new Spot( t - 9d, t + 0.2, 0d, 1d, -1d ) );
+			// Track D, merging into E.
+			if ( t >= 5 && t < 15 )
+				spots.add( new Spot( 25d + t, t - 0.2, 0d, 1d, -1d ) );
+			// Track E.
+			spots.add( new Spot( 40d, t, 0d, 1d, -1d ) );
+			spotCollection.put( t, spots );
+		}
+		spotCollection.setVisible( true );
+
+		final Map< String, Object > trackerSettings = LAPUtils.getDefaultLAPSettingsMap();
+		trackerSettings.put( KEY_LINKING_MAX_DISTANCE, 2d );
+		trackerSettings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 3d );
+		trackerSettings.put( KEY_ALLOW_TRACK_MERGING, true );
+		trackerSettings.put( KEY_MERGING_MAX_DISTANCE, 2d );
+		trackerSettings.put( KEY_ALLOW_TRACK_SPLITTING, true );
+		trackerSettings.put( KEY_SPLITTING_MAX_DISTANCE, 2d );
+
+		final LAPTracker sparseTracker = new LAPTracker( spotCollection, trackerSettings );
+		assertTrue( "The LAP tracker should be sparse by default.", sparseTracker.isSparse() );
+		if ( !sparseTracker.checkInput() || !sparseTracker.process() )
+		{
+			fail( sparseTracker.getErrorMessage() );
+		}
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > sparseGraph = sparseTracker.getResult();
+
+		final LAPTracker denseTracker = new LAPTracker( spotCollection, trackerSettings );
+		denseTracker.setSparse( false );
+		if ( !denseTracker.checkInput() || !denseTracker.process() )
+		{
+			fail( denseTracker.getErrorMessage() );
+		}
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > denseGraph = denseTracker.getResult();
+
+		// 19 links in A and E, 17 + 1 gap in B, 9 + 1 split in C, 9 + 1 merge in D.
+		assertEquals( "Unexpected number of links in sparse mode.", 76, sparseGraph.edgeSet().size() );
+		assertEquals( "Sparse and dense modes do not have the same number of links.", denseGraph.edgeSet().size(), sparseGraph.edgeSet().size() );
+		for ( final DefaultWeightedEdge edge : denseGraph.edgeSet() )
+		{
+			final Spot source = denseGraph.getEdgeSource( edge );
+			final Spot target = denseGraph.getEdgeTarget( edge );
+			final DefaultWeightedEdge sparseEdge = sparseGraph.getEdge( source, target );
+			assertTrue( "Link " + source + " - " + target + " is missing in sparse mode.", null != sparseEdge );
+			assertEquals( "Unexpected cost for link " + source + " - " + target + ".", denseGraph.getEdgeWeight( edge ), sparseGraph.getEdgeWeight( sparseEdge ), 1e-9 );
+		}
+
+		final ConnectivityInspector< Spot, DefaultWeightedEdge > inspector = new ConnectivityInspector< >( sparseGraph );
+		assertEquals( "Did not get the right number of tracks, ", 3, inspector.connectedSets().size() );
+	}
+
 	private static void verifyTracks( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph, final List< List< Spot >> groups, final int nFrames )
 	{
 
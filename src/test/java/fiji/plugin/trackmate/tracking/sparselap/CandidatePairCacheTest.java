@@ -0,0 +1,175 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.sparselap.CandidatePairCache.Candidates;
+
+public class CandidatePairCacheTest
+{
+
+	private static final double[] DISTANCES = new double[] { 6., 2., 4., 3. };
+
+	@Test
+	public void testSameAsUncached()
+	{
+		final SpotCollection spots = createSpots();
+		final CandidatePairCache cache = new CandidatePairCache();
+
+		for ( final double maxDistance : DISTANCES )
+		{
+			final Map< String, Object > settings = createSettings( maxDistance );
+			assertEquals( "Cached and uncached runs differ for a max distance of " + maxDistance + ".", linkKeys( track( spots, settings, null ) ), linkKeys( track( spots, settings, cache ) ) );
+		}
+		assertEquals( "Candidates should have been computed once only.", 1, cache.getNComputations() );
+
+		// Larger distance.
+		track( spots, createSettings( 8. ), cache );
+		assertEquals( "Candidates should have been recomputed for a larger distance.", 2, cache.getNComputations() );
+
+		// Other penalties.
+		final Map< String, Object > settings = createSettings( 4. );
+		final Map< String, Double > penalties = new HashMap< >();
+		penalties.put( Spot.QUALITY, 1. );
+		settings.put( KEY_LINKING_FEATURE_PENALTIES, penalties );
+		assertEquals( "Cached and uncached runs differ with feature penalties.", linkKeys( track( spots, settings, null ) ), linkKeys( track( spots, settings, cache ) ) );
+		assertEquals( "Candidates should have been recomputed for other feature penalties.", 3, cache.getNComputations() );
+
+		// Modified spot collection.
+		final Spot spot = spots.iterator( 3, true ).next();
+		spots.remove( spot, 3 );
+		assertEquals( "Cached and uncached runs differ after removing a spot.", linkKeys( track( spots, settings, null ) ), linkKeys( track( spots, settings, cache ) ) );
+		assertEquals( "Candidates should have been recomputed after removing a spot.", 4, cache.getNComputations() );
+	}
+
+	@Test
+	public void testModelEdits()
+	{
+		final Model model = new Model();
+		model.setSpots( createSpots(), false );
+		final SpotCollection spots = model.getSpots();
+		final CandidatePairCache cache = new CandidatePairCache();
+		final Map< String, Object > settings = createSettings( 4. );
+		track( spots, settings, cache );
+		track( spots, settings, cache );
+		assertEquals( "Candidates should have been computed once only.", 1, cache.getNComputations() );
+
+		// Move a spot through the model.
+		final Spot spot = spots.iterator( 3, true ).next();
+		model.beginUpdate();
+		try
+		{
+			spot.putFeature( Spot.POSITION_X, spot.getFeature( Spot.POSITION_X ) + 3. );
+			model.updateFeatures( spot );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( "Cached and uncached runs differ after moving a spot.", linkKeys( track( spots, settings, null ) ), linkKeys( track( spots, settings, cache ) ) );
+		assertEquals( "Candidates should have been recomputed after moving a spot.", 2, cache.getNComputations() );
+	}
+
+	@Test
+	public void testConcurrentRequests() throws InterruptedException
+	{
+		final SpotCollection spots = createSpots();
+		final CandidatePairCache cache = new CandidatePairCache();
+		final Candidates[] results = new Candidates[ 4 ];
+		final Thread[] threads = new Thread[ results.length ];
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			final int index = i;
+			threads[ i ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					results[ index ] = cache.get( spots, null, 4., 1 );
+				}
+			};
+			threads[ i ].start();
+		}
+		for ( final Thread thread : threads )
+			thread.join();
+
+		assertEquals( "Concurrent identical requests should compute candidates once only.", 1, cache.getNComputations() );
+		for ( final Candidates candidates : results )
+			assertSame( "Concurrent identical requests should get the same candidates.", results[ 0 ], candidates );
+	}
+
+	private static final SimpleWeightedGraph< Spot, DefaultWeightedEdge > track( final SpotCollection spots, final Map< String, Object > settings, final CandidatePairCache cache )
+	{
+		final SparseLAPFrameToFrameTracker tracker = new SparseLAPFrameToFrameTracker( spots, settings );
+		tracker.setCandidatePairCache( cache );
+		if ( !tracker.checkInput() || !tracker.process() )
+			fail( tracker.getErrorMessage() );
+		return tracker.getResult();
+	}
+
+	private static final Map< String, Object > createSettings( final double maxDistance )
+	{
+		final Map< String, Object > settings = new HashMap< >();
+		settings.put( KEY_LINKING_MAX_DISTANCE, maxDistance );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05 );
+		settings.put( KEY_LINKING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+		return settings;
+	}
+
+	private static final Set< String > linkKeys( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final Set< String > keys = new HashSet< >();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+			keys.add( graph.getEdgeSource( edge ).ID() + "-" + graph.getEdgeTarget( edge ).ID() + ":" + graph.getEdgeWeight( edge ) );
+		return keys;
+	}
+
+	/**
+	 * Random walks in a crowded field, so that the distance matters.
+	 */
+	private static final SpotCollection createSpots()
+	{
+		final Random ran = new Random( 17l );
+		final int nParticles = 100;
+		final double[][] positions = new double[ nParticles ][ 2 ];
+		for ( final double[] position : positions )
+		{
+			position[ 0 ] = 50. * ran.nextDouble();
+			position[ 1 ] = 50. * ran.nextDouble();
+		}
+
+		final SpotCollection spots = new SpotCollection();
+		for ( int frame = 0; frame < 10; frame++ )
+		{
+			final List< Spot > frameSpots = new ArrayList< >( nParticles );
+			for ( final double[] position : positions )
+			{
+				position[ 0 ] += ran.nextGaussian();
+				position[ 1 ] += ran.nextGaussian();
+				frameSpots.add( new Spot( position[ 0 ], position[ 1 ], 0., 1., 1. + ran.nextDouble() ) );
+			}
+			spots.put( frame, frameSpots );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+}
@@ -0,0 +1,146 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker.LinkListener;
+
+public class OnlineSparseLAPFrameToFrameTrackerTest
+{
+
+	private static final int NFRAMES = 30;
+
+	private static final int NSPOTS = 50;
+
+	@Test
+	public void testSameAsOffline()
+	{
+		final SpotCollection spots = createSpots();
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 5d );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05d );
+
+		// Offline.
+		final SparseLAPFrameToFrameTracker offline = new SparseLAPFrameToFrameTracker( spots, settings );
+		if ( !offline.checkInput() || !offline.process() )
+			fail( offline.getErrorMessage() );
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = offline.getResult();
+		final Set< String > expected = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+		{
+			final Spot source = graph.getEdgeSource( edge );
+			final Spot target = graph.getEdgeTarget( edge );
+			expected.add( linkKey( source, target ) );
+		}
+
+		// Online.
+		final Set< String > actual = new HashSet<>();
+		final OnlineSparseLAPFrameToFrameTracker online = new OnlineSparseLAPFrameToFrameTracker( settings );
+		online.addLinkListener( new LinkListener()
+		{
+			@Override
+			public void linkFinalized( final Spot source, final Spot target, final double cost )
+			{
+				assertTrue( "Link should be created towards the last frame processed.", target.getFeature( Spot.FRAME ).intValue() == online.getLastFrame() );
+				assertTrue( "Link was emitted twice.", actual.add( linkKey( source, target ) ) );
+			}
+		} );
+		for ( final Integer frame : spots.keySet() )
+		{
+			final List< Spot > frameSpots = new ArrayList<>();
+			for ( final Spot spot : spots.iterable( frame, true ) )
+				frameSpots.add( spot );
+			if ( !online.processFrame( frame, frameSpots ) )
+				fail( online.getErrorMessage() );
+		}
+		if ( !online.finish() )
+			fail( online.getErrorMessage() );
+
+		assertEquals( "Online and offline trackers did not create the same number of links.", expected.size(), actual.size() );
+		assertEquals( "Online and offline trackers did not create the same links.", expected, actual );
+	}
+
+	@Test
+	public void testFrameOrder()
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 5d );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05d );
+
+		final OnlineSparseLAPFrameToFrameTracker online = new OnlineSparseLAPFrameToFrameTracker( settings );
+		final List< Spot > frameSpots = new ArrayList<>();
+		frameSpots.add( new Spot( 0., 0., 0., 1., -1. ) );
+		assertTrue( online.processFrame( 2, frameSpots ) );
+		assertFalse( "Processing a past frame should fail.", online.processFrame( 1, frameSpots ) );
+	}
+
+	private static final String linkKey( final Spot source, final Spot target )
+	{
+		final Spot s1;
+		final Spot s2;
+		if ( source.getFeature( Spot.FRAME ).intValue() < target.getFeature( Spot.FRAME ).intValue() )
+		{
+			s1 = source;
+			s2 = target;
+		}
+		else
+		{
+			s1 = target;
+			s2 = source;
+		}
+		return s1.ID() + "->" + s2.ID();
+	}
+
+	private static final SpotCollection createSpots()
+	{
+		final Random ran = new Random( 3l );
+		final SpotCollection spots = new SpotCollection();
+		final double[][] positions = new double[ NSPOTS ][ 3 ];
+		for ( int i = 0; i < NSPOTS; i++ )
+		{
+			positions[ i ][ 0 ] = 100. * ran.nextDouble();
+			positions[ i ][ 1 ] = 100. * ran.nextDouble();
+		}
+		for ( int frame = 0; frame < NFRAMES; frame++ )
+		{
+			// Skip a frame to check non-contiguous frames.
+			if ( frame == 10 )
+				continue;
+
+			final List< Spot > frameSpots = new ArrayList<>( NSPOTS );
+			for ( int i = 0; i < NSPOTS; i++ )
+			{
+				positions[ i ][ 0 ] += ran.nextGaussian();
+				positions[ i ][ 1 ] += ran.nextGaussian();
+				// Some spots are not detected in some frames.
+				if ( ran.nextDouble() < 0.1 )
+					continue;
+				final Spot spot = new Spot( positions[ i ][ 0 ], positions[ i ][ 1 ], positions[ i ][ 2 ], 1., -1. );
+				spot.putFeature( Spot.POSITION_T, Double.valueOf( frame ) );
+				frameSpots.add( spot );
+			}
+			spots.put( frame, frameSpots );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+}
@@ -0,0 +1,169 @@
+package fiji.plugin.trackmate.tracking.sparselap;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.OnlineSpotTracker.LinkListener;
+
+public class SlidingWindowSparseLAPTrackerTest
+{
+
+	private static final int NFRAMES = 40;
+
+	private static final int NTRACKS = 25;
+
+	/**
+	 * On tracks that are well separated, windowed gap-closing must give the
+	 * same result as gap-closing on the whole dataset.
+	 */
+	@Test
+	public void testSameAsOffline() throws IOException
+	{
+		final SpotCollection spots = createSpots();
+		final Map< String, Object > settings = createSettings();
+
+		// Offline.
+		final SparseLAPTracker offline = new SparseLAPTracker( spots, settings );
+		if ( !offline.checkInput() || !offline.process() )
+			fail( offline.getErrorMessage() );
+		final Set< String > expected = linkKeys( offline.getResult() );
+
+		// Sliding window, spilled to disk.
+		final Set< String > actual = new HashSet<>();
+		final DiskEdgeList edges = new DiskEdgeList();
+		final SlidingWindowSparseLAPTracker tracker = new SlidingWindowSparseLAPTracker( settings );
+		tracker.addLinkListener( edges );
+		tracker.addLinkListener( new LinkListener()
+		{
+			@Override
+			public void linkFinalized( final Spot source, final Spot target, final double cost )
+			{
+				assertTrue( "Link was emitted twice.", actual.add( linkKey( source, target ) ) );
+			}
+		} );
+		for ( final Integer frame : spots.keySet() )
+		{
+			final List< Spot > frameSpots = new ArrayList<>();
+			for ( final Spot spot : spots.iterable( frame, true ) )
+				frameSpots.add( spot );
+			if ( !tracker.processFrame( frame, frameSpots ) )
+				fail( tracker.getErrorMessage() );
+		}
+		if ( !tracker.finish() )
+			fail( tracker.getErrorMessage() );
+
+		assertEquals( "Windowed and offline trackers did not create the same links.", expected, actual );
+
+		// Read back the spilled links.
+		final Map< Integer, Spot > idMap = new HashMap<>();
+		for ( final Spot spot : spots.iterable( true ) )
+			idMap.put( Integer.valueOf( spot.ID() ), spot );
+		assertEquals( "Unexpected number of links on disk.", expected.size(), edges.size() );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = edges.toGraph( idMap );
+		assertEquals( "Links read from disk differ from the links emitted.", expected, linkKeys( graph ) );
+		edges.delete();
+	}
+
+	@Test
+	public void testSpotTracker()
+	{
+		final SpotCollection spots = createSpots();
+		final Map< String, Object > settings = createSettings();
+
+		final SparseLAPTracker offline = new SparseLAPTracker( spots, settings );
+		if ( !offline.checkInput() || !offline.process() )
+			fail( offline.getErrorMessage() );
+
+		final SlidingWindowSparseLAPSpotTracker tracker = new SlidingWindowSparseLAPSpotTracker( spots, settings );
+		if ( !tracker.checkInput() || !tracker.process() )
+			fail( tracker.getErrorMessage() );
+
+		assertEquals( "Every visible spot should be in the graph.", spots.getNSpots( true ), tracker.getResult().vertexSet().size() );
+		assertEquals( "Windowed and offline trackers did not create the same links.", linkKeys( offline.getResult() ), linkKeys( tracker.getResult() ) );
+	}
+
+	private static final Map< String, Object > createSettings()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put( KEY_LINKING_MAX_DISTANCE, 5d );
+		settings.put( KEY_ALLOW_GAP_CLOSING, true );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, 10d );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, 2 );
+		settings.put( KEY_ALLOW_TRACK_MERGING, false );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, false );
+		settings.put( KEY_CUTOFF_PERCENTILE, 1d );
+		return settings;
+	}
+
+	private static final Set< String > linkKeys( final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph )
+	{
+		final Set< String > keys = new HashSet<>();
+		for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+			keys.add( linkKey( graph.getEdgeSource( edge ), graph.getEdgeTarget( edge ) ) );
+		return keys;
+	}
+
+	private static final String linkKey( final Spot source, final Spot target )
+	{
+		if ( source.getFeature( Spot.FRAME ).intValue() < target.getFeature( Spot.FRAME ).intValue() )
+			return source.ID() + "->" + target.ID();
+		return target.ID() + "->" + source.ID();
+	}
+
+	/**
+	 * Tracks on a grid, far apart compared to the linking distances, with
+	 * random detection misses.
+	 */
+	private static final SpotCollection createSpots()
+	{
+		final Random ran = new Random( 5l );
+		final SpotCollection spots = new SpotCollection();
+		final double[][] positions = new double[ NTRACKS ][ 2 ];
+		for ( int i = 0; i < NTRACKS; i++ )
+		{
+			positions[ i ][ 0 ] = 50. * ( i % 5 );
+			positions[ i ][ 1 ] = 50. * ( i / 5 );
+		}
+		for ( int frame = 0; frame < NFRAMES; frame++ )
+		{
+			final List< Spot > frameSpots = new ArrayList<>( NTRACKS );
+			for ( int i = 0; i < NTRACKS; i++ )
+			{
+				positions[ i ][ 0 ] += 0.5 * ran.nextGaussian();
+				positions[ i ][ 1 ] += 0.5 * ran.nextGaussian();
+				if ( ran.nextDouble() < 0.2 )
+					continue;
+				final Spot spot = new Spot( positions[ i ][ 0 ], positions[ i ][ 1 ], 0., 1., -1. );
+				spot.putFeature( Spot.POSITION_T, Double.valueOf( frame ) );
+				frameSpots.add( spot );
+			}
+			spots.put( frame, frameSpots );
+		}
+		spots.setVisible( true );
+		return spots;
+	}
+}
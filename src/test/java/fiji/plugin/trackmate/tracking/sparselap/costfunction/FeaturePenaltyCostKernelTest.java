@@ -0,0 +1,72 @@
+package fiji.plugin.trackmate.tracking.sparselap.costfunction;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class FeaturePenaltyCostKernelTest
+{
+
+	@Test
+	public void testSameAsFeaturePenaltyCostFunction()
+	{
+		final Map< String, Double > penalties = new HashMap<>();
+		penalties.put( Spot.QUALITY, 1. );
+		penalties.put( Spot.RADIUS, 0.5 );
+		penalties.put( "MEAN_INTENSITY", 2. );
+
+		final List< Spot > sources = createSpots( 1l, 30 );
+		final List< Spot > targets = createSpots( 2l, 40 );
+		// A NaN feature value must be ignored.
+		sources.get( 0 ).putFeature( "MEAN_INTENSITY", Double.NaN );
+
+		final FeaturePenaltyCostFunction cf = new FeaturePenaltyCostFunction( penalties );
+		final FeaturePenaltyCostKernel kernel = new FeaturePenaltyCostKernel( penalties );
+		compare( sources, targets, cf, kernel );
+	}
+
+	@Test
+	public void testSameAsSquareDistCostFunction()
+	{
+		final List< Spot > sources = createSpots( 3l, 30 );
+		final List< Spot > targets = createSpots( 4l, 40 );
+		compare( sources, targets, new SquareDistCostFunction(), new FeaturePenaltyCostKernel( null ) );
+		compare( sources, targets, new SquareDistCostFunction(), new FeaturePenaltyCostKernel( new HashMap< String, Double >() ) );
+	}
+
+	private static final void compare( final List< Spot > sources, final List< Spot > targets, final CostFunction< Spot, Spot > cf, final FeaturePenaltyCostKernel kernel )
+	{
+		final double[] packedSources = kernel.pack( sources );
+		final double[] packedTargets = kernel.pack( targets );
+		for ( int i = 0; i < sources.size(); i++ )
+		{
+			for ( int j = 0; j < targets.size(); j++ )
+			{
+				final double expected = cf.linkingCost( sources.get( i ), targets.get( j ) );
+				final double actual = kernel.linkingCost( packedSources, i, packedTargets, j );
+				assertEquals( "Bad cost for pair " + i + " - " + j + ".", expected, actual, 0. );
+			}
+		}
+	}
+
+	private static final List< Spot > createSpots( final long seed, final int n )
+	{
+		final Random ran = new Random( seed );
+		final List< Spot > spots = new ArrayList<>( n );
+		for ( int i = 0; i < n; i++ )
+		{
+			final Spot spot = new Spot( 10. * ran.nextDouble(), 10. * ran.nextDouble(), 10. * ran.nextDouble(), 0.5 + ran.nextDouble(), ran.nextDouble() );
+			spot.putFeature( "MEAN_INTENSITY", 100. * ran.nextDouble() );
+			spots.add( spot );
+		}
+		return spots;
+	}
+}
@@ -0,0 +1,105 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class IndexedSegmentSplitterTest
+{
+
+	@Test
+	public void testSameAsGraphSegmentSplitter()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = createSegments( new Random( 11l ), 200, 30 );
+
+		final GraphSegmentSplitter expected = new GraphSegmentSplitter( graph, true );
+		final IndexedSegmentSplitter splitter = new IndexedSegmentSplitter( graph, 4 );
+		assertTrue( "Segments should be found linear.", splitter.isLinear() );
+
+		final Spot[] spots = splitter.getSpots();
+		assertEquals( "Bad segment starts.", new HashSet<>( expected.getSegmentStarts() ), select( spots, splitter.getSegmentStarts() ) );
+		assertEquals( "Bad segment ends.", new HashSet<>( expected.getSegmentEnds() ), select( spots, splitter.getSegmentEnds() ) );
+		assertEquals( "Bad segment middles.", flatten( expected.getSegmentMiddles() ), select( spots, splitter.getSegmentMiddles() ) );
+
+		// Indices must be sorted by frame.
+		final int[] frames = splitter.getFrames();
+		for ( final int[] indices : new int[][] { splitter.getSegmentStarts(), splitter.getSegmentEnds(), splitter.getSegmentMiddles() } )
+		{
+			for ( int i = 1; i < indices.length; i++ )
+				assertTrue( "Indices are not sorted by frame.", frames[ indices[ i - 1 ] ] <= frames[ indices[ i ] ] );
+		}
+	}
+
+	@Test
+	public void testNonLinear()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		final Spot mother = createSpot( 0 );
+		final Spot daughter1 = createSpot( 1 );
+		final Spot daughter2 = createSpot( 1 );
+		graph.addVertex( mother );
+		graph.addVertex( daughter1 );
+		graph.addVertex( daughter2 );
+		graph.addEdge( mother, daughter1 );
+		graph.addEdge( mother, daughter2 );
+		assertFalse( "A division should be detected as non-linear.", new IndexedSegmentSplitter( graph, 1 ).isLinear() );
+	}
+
+	private static final Set< Spot > flatten( final List< List< Spot > > lists )
+	{
+		final Set< Spot > set = new HashSet<>();
+		for ( final List< Spot > list : lists )
+			set.addAll( list );
+		return set;
+	}
+
+	private static final Set< Spot > select( final Spot[] spots, final int[] indices )
+	{
+		final Set< Spot > set = new HashSet<>();
+		for ( final int index : indices )
+			set.add( spots[ index ] );
+		return set;
+	}
+
+	private static final Spot createSpot( final int frame )
+	{
+		final Spot spot = new Spot( 0., 0., 0., 1., -1. );
+		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+		return spot;
+	}
+
+	/**
+	 * Random linear segments, plus isolated spots.
+	 */
+	private static final SimpleWeightedGraph< Spot, DefaultWeightedEdge > createSegments( final Random ran, final int nSegments, final int nFrames )
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			final int start = ran.nextInt( nFrames );
+			final int length = 1 + ran.nextInt( nFrames - start );
+			final List< Spot > segment = new ArrayList<>( length );
+			for ( int t = start; t < start + length; t++ )
+			{
+				final Spot spot = createSpot( t );
+				graph.addVertex( spot );
+				if ( !segment.isEmpty() )
+					graph.addEdge( segment.get( segment.size() - 1 ), spot );
+				segment.add( spot );
+			}
+		}
+		return graph;
+	}
+}
@@ -0,0 +1,147 @@
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_BLOCKING_VALUE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+
+public class JaqamanSegmentCostMatrixCreatorTest
+{
+
+	@Test
+	public void testCostKernel()
+	{
+		final JaqamanSegmentCostMatrixCreator creator = new JaqamanSegmentCostMatrixCreator( createSegments(), createSettings() );
+		if ( !creator.checkInput() || !creator.process() )
+			fail( creator.getErrorMessage() );
+
+		// Square distance between the end of a segment and the next start.
+		assertEquals( 1, creator.getResult().getCosts().length );
+		assertEquals( 4., creator.getResult().getCosts()[ 0 ], 0d );
+	}
+
+	@Test
+	public void testDeprecatedCostFunction()
+	{
+		final JaqamanSegmentCostMatrixCreator creator = new JaqamanSegmentCostMatrixCreator( createSegments(), createSettings() )
+		{
+			@Override
+			@Deprecated
+			protected CostFunction< Spot, Spot > getCostFunctionFor( final Map< String, Double > featurePenalties )
+			{
+				return new CostFunction< Spot, Spot >()
+				{
+					@Override
+					public double linkingCost( final Spot source, final Spot target )
+					{
+						return 7.;
+					}
+				};
+			}
+		};
+		assertNull( "No cost kernel expected for a custom cost function.", creator.getCostKernelFor( null ) );
+		if ( !creator.checkInput() || !creator.process() )
+			fail( creator.getErrorMessage() );
+
+		assertEquals( 1, creator.getResult().getCosts().length );
+		assertEquals( 7., creator.getResult().getCosts()[ 0 ], 0d );
+	}
+
+	/**
+	 * The indices of the {@link IndexedSegmentSplitter} must give the same
+	 * cost matrix as the lists of the {@link GraphSegmentSplitter}.
+	 */
+	@Test
+	public void testSameAsGraphSegmentSplitter()
+	{
+		final Random ran = new Random( 7l );
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		for ( int i = 0; i < 50; i++ )
+		{
+			final int start = ran.nextInt( 20 );
+			final int length = 1 + ran.nextInt( 20 - start );
+			Spot previous = null;
+			for ( int t = start; t < start + length; t++ )
+			{
+				final Spot spot = createSpot( 50. * ran.nextDouble(), t );
+				graph.addVertex( spot );
+				if ( null != previous )
+					graph.addEdge( previous, spot );
+				previous = spot;
+			}
+		}
+		final Map< String, Object > settings = createSettings();
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, true );
+		settings.put( KEY_ALLOW_TRACK_MERGING, true );
+
+		final JaqamanSegmentCostMatrixCreator expected = new JaqamanSegmentCostMatrixCreator( new GraphSegmentSplitter( graph, true ), settings );
+		final JaqamanSegmentCostMatrixCreator actual = new JaqamanSegmentCostMatrixCreator( graph, settings );
+		for ( final JaqamanSegmentCostMatrixCreator creator : new JaqamanSegmentCostMatrixCreator[] { expected, actual } )
+		{
+			creator.setNumThreads( 1 );
+			if ( !creator.checkInput() || !creator.process() )
+				fail( creator.getErrorMessage() );
+		}
+
+		assertTrue( "Expected candidate links.", expected.getResult().getCosts().length > 0 );
+		assertEquals( "Bad sources.", expected.getSourceList(), actual.getSourceList() );
+		assertEquals( "Bad targets.", expected.getTargetList(), actual.getTargetList() );
+		assertEquals( "Bad costs.", Arrays.toString( expected.getResult().getCosts() ), Arrays.toString( actual.getResult().getCosts() ) );
+	}
+
+	private static final Map< String, Object > createSettings()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.remove( KEY_LINKING_MAX_DISTANCE );
+		settings.remove( KEY_LINKING_FEATURE_PENALTIES );
+		settings.remove( KEY_BLOCKING_VALUE );
+		settings.put( KEY_ALLOW_GAP_CLOSING, true );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, false );
+		settings.put( KEY_ALLOW_TRACK_MERGING, false );
+		return settings;
+	}
+
+	/**
+	 * Two segments, the second one starting one frame after the first one
+	 * ends.
+	 */
+	private static final SimpleWeightedGraph< Spot, DefaultWeightedEdge > createSegments()
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		final Spot[] spots = new Spot[] {
+				createSpot( 0., 0 ),
+				createSpot( 0., 1 ),
+				createSpot( 2., 3 ),
+				createSpot( 2., 4 ) };
+		for ( final Spot spot : spots )
+			graph.addVertex( spot );
+		graph.addEdge( spots[ 0 ], spots[ 1 ] );
+		graph.addEdge( spots[ 2 ], spots[ 3 ] );
+		return graph;
+	}
+
+	private static final Spot createSpot( final double x, final int frame )
+	{
+		final Spot spot = new Spot( x, 0., 0., 1., -1. );
+		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+		return spot;
+	}
+}
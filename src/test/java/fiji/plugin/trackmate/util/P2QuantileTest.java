@@ -0,0 +1,44 @@
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class P2QuantileTest
+{
+
+	private static final double[] VALUES = new double[] { 7, -2, 3.5, 10, 1 };
+
+	@Test
+	public void testFiveValues()
+	{
+		final double[] sorted = Arrays.copyOf( VALUES, VALUES.length );
+		Arrays.sort( sorted );
+		for ( final double p : new double[] { 0, 0.1, 0.25, 0.5, 0.75, 0.9, 1 } )
+		{
+			final P2Quantile quantile = new P2Quantile( p );
+			for ( final double val : VALUES )
+				quantile.add( val );
+			assertEquals( 5, quantile.getN() );
+			assertEquals( "Quantile " + p, sorted[ Math.min( 4, ( int ) ( p * 5 ) ) ], quantile.getQuantile(), 0d );
+		}
+	}
+
+	@Test
+	public void testFewValues()
+	{
+		for ( int n = 1; n < 5; n++ )
+		{
+			final double[] sorted = Arrays.copyOf( VALUES, n );
+			Arrays.sort( sorted );
+			final P2Quantile quantile = new P2Quantile( 0.9 );
+			for ( int i = 0; i < n; i++ )
+				quantile.add( VALUES[ i ] );
+			assertEquals( sorted[ Math.min( n - 1, ( int ) ( 0.9 * n ) ) ], quantile.getQuantile(), 0d );
+		}
+		assertTrue( Double.isNaN( new P2Quantile( 0.5 ).getQuantile() ) );
+	}
+}
@@ -0,0 +1,101 @@
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamingStatisticsTest
+{
+
+	@Test
+	public void testExact()
+	{
+		final Random ran = new Random( 1l );
+		final int n = 1001;
+		final double[] values = new double[ n ];
+		final StreamingStatistics stats = new StreamingStatistics( n, 0.1, 0.5, 0.9 );
+		double sum = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			values[ i ] = ran.nextGaussian();
+			sum += values[ i ];
+			stats.add( values[ i ] );
+		}
+		assertTrue( stats.isExact() );
+
+		final double mean = sum / n;
+		double M2 = 0;
+		for ( final double val : values )
+			M2 += ( val - mean ) * ( val - mean );
+		Arrays.sort( values );
+
+		assertEquals( n, stats.getN() );
+		assertEquals( sum, stats.getSum(), 1e-9 );
+		assertEquals( mean, stats.getMean(), 1e-12 );
+		assertEquals( M2 / ( n - 1 ), stats.getVariance(), 1e-12 );
+		assertEquals( M2 / n, stats.getPopulationVariance(), 1e-12 );
+		assertEquals( values[ 0 ], stats.getMin(), 0d );
+		assertEquals( values[ n - 1 ], stats.getMax(), 0d );
+		assertEquals( values[ n / 2 ], stats.getMedian(), 0d );
+		assertEquals( values[ n / 10 ], stats.getQuantile( 0.1 ), 0d );
+		assertEquals( values[ 9 * n / 10 ], stats.getQuantile( 0.9 ), 0d );
+	}
+
+	@Test
+	public void testEstimated()
+	{
+		final Random ran = new Random( 2l );
+		final int n = 200000;
+		final StreamingStatistics stats = new StreamingStatistics( 1000, 0.5, 0.95 );
+		final StreamingStatistics exact = new StreamingStatistics( Integer.MAX_VALUE, 0.5, 0.95 );
+		for ( int i = 0; i < n; i++ )
+		{
+			final double val = 10 + 2 * ran.nextGaussian();
+			stats.add( val );
+			exact.add( val );
+		}
+		assertFalse( stats.isExact() );
+		assertTrue( exact.isExact() );
+
+		// Exact moments whatever the mode.
+		assertEquals( exact.getMean(), stats.getMean(), 1e-9 );
+		assertEquals( exact.getVariance(), stats.getVariance(), 1e-9 );
+		assertEquals( exact.getMin(), stats.getMin(), 0d );
+		assertEquals( exact.getMax(), stats.getMax(), 0d );
+
+		// Estimated quantiles, within a small fraction of the std.
+		assertEquals( exact.getMedian(), stats.getMedian(), 0.02 );
+		assertEquals( exact.getQuantile( 0.95 ), stats.getQuantile( 0.95 ), 0.05 );
+	}
+
+	@Test
+	public void testFewValues()
+	{
+		final StreamingStatistics stats = new StreamingStatistics( 0 );
+		assertTrue( Double.isNaN( stats.getMedian() ) );
+		stats.add( 3 );
+		stats.add( 1 );
+		stats.add( 2 );
+		assertFalse( stats.isExact() );
+		// Exact for up to 5 values.
+		assertEquals( 2, stats.getMedian(), 0d );
+	}
+
+	@Test
+	public void testUndeclaredQuantile()
+	{
+		try
+		{
+			new StreamingStatistics( 10 ).getQuantile( 0.25 );
+			fail( "Querying an undeclared quantile should fail." );
+		}
+		catch ( final IllegalArgumentException e )
+		{}
+	}
+}